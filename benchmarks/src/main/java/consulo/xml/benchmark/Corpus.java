@@ -0,0 +1,87 @@
+package consulo.xml.benchmark;
+
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates instance documents for the bundled catalog schemas.
+ * The same size and seed always give the same document.
+ */
+public final class Corpus {
+    public static final String NAMESPACE = "urn:consulo:benchmark:catalog";
+
+    private static final String[] CATEGORIES = {"books", "music", "video", "games"};
+    private static final String[] WORDS = {
+        "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel",
+        "india", "juliet", "kilo", "lima", "mike", "november", "oscar", "papa"
+    };
+
+    private Corpus() {
+    }
+
+    public static byte[] generate(int items) {
+        return generate(items, 42L);
+    }
+
+    public static byte[] generate(int items, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(items * 320);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<catalog xmlns=\"").append(NAMESPACE).append("\" version=\"1\">\n");
+        for (int i = 0; i < items; i++) {
+            boolean available = random.nextInt(8) != 0;
+            sb.append("  <item id=\"i").append(i).append('"');
+            sb.append(" price=\"").append(random.nextInt(10000)).append('.').append(random.nextInt(90) + 10).append('"');
+            sb.append(" quantity=\"").append(available ? random.nextInt(500) : 0).append('"');
+            if (random.nextBoolean()) {
+                sb.append(" available=\"").append(available).append('"');
+            }
+            sb.append(">\n");
+            sb.append("    <name>").append(word(random)).append(' ').append(word(random)).append("</name>\n");
+            sb.append("    <category>").append(CATEGORIES[random.nextInt(CATEGORIES.length)]).append("</category>\n");
+            if (random.nextBoolean()) {
+                sb.append("    <released>").append(1990 + random.nextInt(35)).append('-')
+                    .append(pad(1 + random.nextInt(12))).append('-').append(pad(1 + random.nextInt(28))).append("</released>\n");
+            }
+            if (random.nextInt(3) == 0) {
+                sb.append("    <description>").append(word(random)).append(" <em>").append(word(random)).append("</em> ")
+                    .append(word(random)).append(" &amp; ").append(word(random)).append("</description>\n");
+            }
+            for (int j = random.nextInt(4); j > 0; j--) {
+                sb.append("    <tag>").append(word(random)).append("</tag>\n");
+            }
+            sb.append("  </item>\n");
+        }
+        sb.append("</catalog>\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static InputSource source(byte[] document) {
+        InputSource in = new InputSource(new ByteArrayInputStream(document));
+        in.setSystemId("urn:consulo:benchmark:document");
+        return in;
+    }
+
+    /**
+     * Returns an InputSource for one of the bundled schemas, e.g. {@code catalog.rnc}.
+     */
+    public static InputSource schema(String fileName) {
+        URL url = Corpus.class.getResource(fileName);
+        if (url == null) {
+            throw new IllegalArgumentException("no such schema: " + fileName);
+        }
+        return new InputSource(url.toExternalForm());
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String pad(int n) {
+        return n < 10 ? "0" + n : Integer.toString(n);
+    }
+}
@@ -0,0 +1,60 @@
+package consulo.xml.benchmark;
+
+import com.thaiopensource.datatype.xsd.DatatypeLibraryImpl;
+import org.openjdk.jmh.annotations.*;
+import org.relaxng.datatype.Datatype;
+import org.relaxng.datatype.DatatypeException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Datatype#isValid} of XSD datatypes on attribute values of the kind found in numeric documents,
+ * with each value checked as it would be by a validator that never needs the value itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatatypeBenchmark {
+    @Param({"int", "decimal", "double", "dateTime", "duration"})
+    public String type;
+
+    private Datatype myDatatype;
+    private String[] myValues;
+
+    @Setup
+    public void setUp() throws DatatypeException {
+        myDatatype = new DatatypeLibraryImpl(new com.thaiopensource.datatype.xsd.regex.java.RegexEngineImpl()).createDatatype(type);
+        myValues = createValues(type);
+    }
+
+    @Benchmark
+    public int isValid() {
+        int valid = 0;
+        for (String value : myValues) {
+            if (myDatatype.isValid(value, null)) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    private static String[] createValues(String type) {
+        switch (type) {
+            case "int":
+                return new String[]{"0", "-17", "2147483647", "123456", " 42 "};
+            case "decimal":
+                return new String[]{"0.5", "-1234.5678", "99999999999.99", "+.25", "1e3"};
+            case "double":
+                return new String[]{"1.5E10", "-0.001", "INF", "3.14159", "NaN"};
+            case "dateTime":
+                return new String[]{"2024-02-29T23:59:59Z", "1999-12-31T00:00:00.123+01:00", "2023-06-15T12:30:00", "2021-04-31T00:00:00Z"};
+            case "duration":
+                return new String[]{"P1Y2M3DT4H5M6.7S", "PT15M", "-P10D", "PT"};
+            default:
+                throw new IllegalArgumentException(type);
+        }
+    }
+}
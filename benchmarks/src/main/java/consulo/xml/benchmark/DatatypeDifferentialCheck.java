@@ -0,0 +1,163 @@
+package consulo.xml.benchmark;
+
+import com.thaiopensource.datatype.CharSequenceDatatype;
+import com.thaiopensource.datatype.xsd.DatatypeLibraryImpl;
+import org.relaxng.datatype.Datatype;
+import org.relaxng.datatype.DatatypeBuilder;
+import org.relaxng.datatype.DatatypeException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the allocation-free fast path of the XSD datatypes against the path that normalizes the string and
+ * creates the value. {@link Datatype#checkValid} always takes the latter, so for every string
+ * {@link Datatype#isValid}, {@link CharSequenceDatatype#isValid(CharSequence, org.relaxng.datatype.ValidationContext)}
+ * and {@link Datatype#createValue} must agree with it.
+ * <p>
+ * The strings are random strings over the characters of the lexical spaces and mutations of valid values.
+ * Usage: {@code DatatypeDifferentialCheck [stringsPerDatatype [seed]]}; exits with status 1 on any disagreement.
+ */
+public final class DatatypeDifferentialCheck {
+    private static final String ALPHABET = "0123456789+-.:eEINFaPYMDTHSZ \t\n";
+    private static final int MAX_REPORTED = 20;
+
+    private static final String[] TYPES = {
+        "decimal", "integer", "nonPositiveInteger", "negativeInteger", "nonNegativeInteger", "positiveInteger",
+        "long", "int", "short", "byte", "unsignedLong", "unsignedInt", "unsignedShort", "unsignedByte",
+        "double", "float", "duration",
+        "dateTime", "date", "time", "gYearMonth", "gYear", "gMonthDay", "gDay", "gMonth"
+    };
+
+    // type, then facet name/value pairs
+    private static final String[][] RESTRICTIONS = {
+        {"decimal", "totalDigits", "5", "fractionDigits", "2"},
+        {"decimal", "minInclusive", "-1.5", "maxInclusive", "2.25"},
+        {"decimal", "minExclusive", "0", "maxExclusive", "1000000000000000000000"},
+        {"integer", "minExclusive", "-10", "maxInclusive", "99999999999999999999"},
+        {"int", "minInclusive", "-100", "maxExclusive", "1000"},
+        {"long", "maxInclusive", "9223372036854775806"},
+        {"int", "pattern", "[0-9]{3}"},
+        {"double", "minInclusive", "0"},
+        {"dateTime", "minInclusive", "2000-01-01T00:00:00Z"},
+        {"duration", "maxExclusive", "P1Y"}
+    };
+
+    private static final String[] SEEDS = {
+        "0", "-17", "+42", "2147483647", "-2147483648", "2147483648", "9223372036854775807", "9223372036854775808",
+        "32767", "-32768", "255", "65535", "4294967295", "18446744073709551615", "0.5", "-1234.5678", "+.25",
+        "99999999999.99", "007.100", "1.5E10", "-0.001", "INF", "-INF", "NaN", "3.4028235E38", "1e-45",
+        "P1Y2M3DT4H5M6.7S", "PT15M", "-P10D", "PT", "P", "P1Y", "PT0.5S",
+        "2024-02-29T23:59:59Z", "2023-02-29T00:00:00Z", "1999-12-31T00:00:00.123+01:00", "2023-06-15T12:30:00",
+        "2021-04-31T00:00:00Z", "0001-01-01T00:00:00-14:00", "12345-01-01T00:00:00Z", "2020-01-01T24:00:00Z",
+        "2020-01-01", "2020-01-01+13:00", "12:30:00", "23:59:60", "2020-12", "2020", "-0044", "--12-31", "---15", "--02"
+    };
+
+    private DatatypeDifferentialCheck() {
+    }
+
+    public static void main(String[] args) throws DatatypeException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42L;
+        DatatypeLibraryImpl library = new DatatypeLibraryImpl(new com.thaiopensource.datatype.xsd.regex.java.RegexEngineImpl());
+        List<String> names = new ArrayList<>();
+        List<Datatype> datatypes = new ArrayList<>();
+        for (String type : TYPES) {
+            names.add(type);
+            datatypes.add(library.createDatatype(type));
+        }
+        for (String[] restriction : RESTRICTIONS) {
+            DatatypeBuilder builder = library.createDatatypeBuilder(restriction[0]);
+            StringBuilder name = new StringBuilder(restriction[0]);
+            for (int i = 1; i < restriction.length; i += 2) {
+                builder.addParameter(restriction[i], restriction[i + 1], null);
+                name.append(' ').append(restriction[i]).append('=').append(restriction[i + 1]);
+            }
+            names.add(name.toString());
+            datatypes.add(builder.createDatatype());
+        }
+
+        Random random = new Random(seed);
+        long checked = 0;
+        int disagreements = 0;
+        for (int i = 0; i < datatypes.size(); i++) {
+            Datatype datatype = datatypes.get(i);
+            for (int j = 0; j < count; j++) {
+                String str = random.nextBoolean() ? randomString(random) : mutate(SEEDS[random.nextInt(SEEDS.length)], random);
+                String problem = check(datatype, str);
+                checked++;
+                if (problem != null && ++disagreements <= MAX_REPORTED) {
+                    System.out.println(names.get(i) + ": \"" + escape(str) + "\": " + problem);
+                }
+            }
+        }
+        System.out.println(checked + " strings checked, " + disagreements + " disagreements");
+        if (disagreements > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static String check(Datatype datatype, String str) {
+        boolean expected;
+        try {
+            datatype.checkValid(str, null);
+            expected = true;
+        }
+        catch (DatatypeException e) {
+            expected = false;
+        }
+        if (datatype.isValid(str, null) != expected) {
+            return "isValid is " + !expected;
+        }
+        if (datatype instanceof CharSequenceDatatype
+            && ((CharSequenceDatatype) datatype).isValid(new StringBuilder(str), null) != expected) {
+            return "isValid(CharSequence) is " + !expected;
+        }
+        if ((datatype.createValue(str, null) != null) != expected) {
+            return "createValue is " + (expected ? "null" : "not null");
+        }
+        return null;
+    }
+
+    private static String randomString(Random random) {
+        int length = random.nextInt(24);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    private static String mutate(String value, Random random) {
+        StringBuilder sb = new StringBuilder(value);
+        int edits = random.nextInt(3);
+        for (int i = 0; i < edits; i++) {
+            int at = random.nextInt(sb.length() + 1);
+            char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            switch (random.nextInt(3)) {
+                case 0:
+                    sb.insert(at, c);
+                    break;
+                case 1:
+                    if (at < sb.length()) {
+                        sb.deleteCharAt(at);
+                    }
+                    break;
+                default:
+                    if (at < sb.length()) {
+                        sb.setCharAt(at, c);
+                    }
+                    break;
+            }
+        }
+        if (random.nextInt(4) == 0) {
+            sb.insert(0, ' ').append("\t\n");
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String str) {
+        return str.replace("\t", "\\t").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,65 @@
+package consulo.xml.benchmark;
+
+/**
+ * Generates synthetic RELAX NG grammars with a configurable number of element definitions.
+ * Definition {@code e<i>} may contain {@code e<2i+1>} and {@code e<2i+2>}, so the element tree is a binary tree.
+ */
+public final class Grammars {
+    public static final String NAMESPACE = "urn:consulo:benchmark:grammar";
+
+    private Grammars() {
+    }
+
+    public static String generateRnc(int defines) {
+        StringBuilder sb = new StringBuilder(defines * 96);
+        sb.append("default namespace = \"").append(NAMESPACE).append("\"\n");
+        sb.append("datatypes xsd = \"http://www.w3.org/2001/XMLSchema-datatypes\"\n\n");
+        sb.append("start = e0\n");
+        for (int i = 0; i < defines; i++) {
+            sb.append("e").append(i).append(" = element e").append(i).append(" {\n");
+            sb.append("  attribute a").append(i).append(" { xsd:token }?,\n");
+            int left = 2 * i + 1;
+            int right = 2 * i + 2;
+            if (right < defines) {
+                sb.append("  (e").append(left).append(" | e").append(right).append(")*\n");
+            }
+            else if (left < defines) {
+                sb.append("  e").append(left).append("*\n");
+            }
+            else {
+                sb.append("  text\n");
+            }
+            sb.append("}\n");
+        }
+        return sb.toString();
+    }
+
+    public static String generateRng(int defines) {
+        StringBuilder sb = new StringBuilder(defines * 256);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<grammar xmlns=\"http://relaxng.org/ns/structure/1.0\" ns=\"").append(NAMESPACE).append("\"");
+        sb.append(" datatypeLibrary=\"http://www.w3.org/2001/XMLSchema-datatypes\">\n");
+        sb.append("  <start><ref name=\"e0\"/></start>\n");
+        for (int i = 0; i < defines; i++) {
+            sb.append("  <define name=\"e").append(i).append("\">\n");
+            sb.append("    <element name=\"e").append(i).append("\">\n");
+            sb.append("      <optional><attribute name=\"a").append(i).append("\"><data type=\"token\"/></attribute></optional>\n");
+            int left = 2 * i + 1;
+            int right = 2 * i + 2;
+            if (right < defines) {
+                sb.append("      <zeroOrMore><choice><ref name=\"e").append(left).append("\"/><ref name=\"e").append(right)
+                    .append("\"/></choice></zeroOrMore>\n");
+            }
+            else if (left < defines) {
+                sb.append("      <zeroOrMore><ref name=\"e").append(left).append("\"/></zeroOrMore>\n");
+            }
+            else {
+                sb.append("      <text/>\n");
+            }
+            sb.append("    </element>\n");
+            sb.append("  </define>\n");
+        }
+        sb.append("</grammar>\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,181 @@
+package consulo.xml.benchmark;
+
+import com.thaiopensource.datatype.xsd.DatatypeLibraryFactoryImpl;
+import com.thaiopensource.datatype.xsd.regex.java.RegexEngineImpl;
+import com.thaiopensource.relaxng.match.MatchContext;
+import com.thaiopensource.relaxng.match.MatchablePattern;
+import com.thaiopensource.relaxng.match.MatchablePatternLoader;
+import com.thaiopensource.relaxng.match.Matcher;
+import com.thaiopensource.resolver.xml.sax.SAX;
+import com.thaiopensource.resolver.xml.sax.SAXResolver;
+import com.thaiopensource.xml.util.Name;
+import org.openjdk.jmh.annotations.*;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raw {@link Matcher} event throughput, without XML parsing.
+ * The SAX events of the corpus are recorded once and replayed against a fresh matcher on each invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatternMatcherBenchmark {
+    private static final int START_TAG_OPEN = 0;
+    private static final int ATTRIBUTE = 1;
+    private static final int START_TAG_CLOSE = 2;
+    private static final int TEXT = 3;
+    private static final int END_TAG = 4;
+
+    private static final MatchContext CONTEXT = new MatchContext() {
+        @Override
+        public String getPrefix(String namespaceURI) {
+            return Corpus.NAMESPACE.equals(namespaceURI) ? "" : null;
+        }
+
+        @Override
+        public String resolveNamespacePrefix(String prefix) {
+            return prefix.isEmpty() ? Corpus.NAMESPACE : null;
+        }
+
+        @Override
+        public String getBaseUri() {
+            return null;
+        }
+
+        @Override
+        public boolean isUnparsedEntity(String entityName) {
+            return false;
+        }
+
+        @Override
+        public boolean isNotation(String notationName) {
+            return false;
+        }
+    };
+
+    @Param({"100", "10000"})
+    public int items;
+
+    private Matcher myMatcher;
+    private int[] myKinds;
+    private Name[] myNames;
+    private String[] myValues;
+
+    @Setup
+    public void setUp() throws Exception {
+        SAXResolver resolver = new SAXResolver();
+        MatchablePattern pattern = new MatchablePatternLoader().load(SAX.createInput(Corpus.schema("catalog.rnc")),
+                                                                     resolver,
+                                                                     Schemas.SILENT,
+                                                                     new DatatypeLibraryFactoryImpl(new RegexEngineImpl()),
+                                                                     MatchablePatternLoader.COMPACT_SYNTAX_FLAG);
+        myMatcher = pattern.createMatcher();
+        record(Corpus.generate(items));
+        if (!replay()) {
+            throw new IllegalStateException("generated corpus is invalid");
+        }
+    }
+
+    @Benchmark
+    public boolean replay() {
+        Matcher matcher = myMatcher.start();
+        boolean ok = matcher.matchStartDocument();
+        boolean textTyped = false;
+        for (int i = 0; i < myKinds.length; i++) {
+            Name name = myNames[i];
+            switch (myKinds[i]) {
+                case START_TAG_OPEN:
+                    ok &= matcher.matchStartTagOpen(name, null, CONTEXT);
+                    break;
+                case ATTRIBUTE:
+                    ok &= matcher.matchAttributeName(name, null, CONTEXT);
+                    ok &= matcher.matchAttributeValue(myValues[i], name, null, CONTEXT);
+                    break;
+                case START_TAG_CLOSE:
+                    ok &= matcher.matchStartTagClose(name, null, CONTEXT);
+                    textTyped = matcher.isTextTyped();
+                    break;
+                case TEXT:
+                    if (textTyped) {
+                        // text is always followed by the end-tag of the same element in a typed context
+                        ok &= matcher.matchTextBeforeEndTag(myValues[i], name, null, CONTEXT);
+                        textTyped = false;
+                    }
+                    else {
+                        ok &= matcher.matchTextBeforeStartTag(myValues[i], CONTEXT);
+                    }
+                    break;
+                case END_TAG:
+                    ok &= matcher.matchEndTag(name, null, CONTEXT);
+                    textTyped = false;
+                    break;
+            }
+        }
+        return matcher.matchEndDocument() && ok;
+    }
+
+    private void record(byte[] document) throws Exception {
+        List<Integer> kinds = new ArrayList<>();
+        List<Name> names = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.newSAXParser().parse(new ByteArrayInputStream(document), new DefaultHandler() {
+            private final StringBuilder myText = new StringBuilder();
+            private final List<Name> myOpen = new ArrayList<>();
+
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                flushText(null);
+                Name name = new Name(uri, localName);
+                myOpen.add(name);
+                add(START_TAG_OPEN, name, null);
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    add(ATTRIBUTE, new Name(attributes.getURI(i), attributes.getLocalName(i)), attributes.getValue(i));
+                }
+                add(START_TAG_CLOSE, name, null);
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName) {
+                Name name = myOpen.remove(myOpen.size() - 1);
+                flushText(name);
+                add(END_TAG, name, null);
+            }
+
+            @Override
+            public void characters(char[] ch, int start, int length) {
+                myText.append(ch, start, length);
+            }
+
+            private void flushText(Name name) {
+                if (myText.length() > 0) {
+                    add(TEXT, name, myText.toString());
+                    myText.setLength(0);
+                }
+            }
+
+            private void add(int kind, Name name, String value) {
+                kinds.add(kind);
+                names.add(name);
+                values.add(value);
+            }
+        });
+        myKinds = new int[kinds.size()];
+        for (int i = 0; i < myKinds.length; i++) {
+            myKinds[i] = kinds.get(i);
+        }
+        myNames = names.toArray(new Name[0]);
+        myValues = values.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,62 @@
+package consulo.xml.benchmark;
+
+import com.thaiopensource.datatype.xsd.regex.Regex;
+import com.thaiopensource.datatype.xsd.regex.RegexEngine;
+import com.thaiopensource.datatype.xsd.regex.RegexSyntaxException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Regex#matches} of the {@code java.util.regex} and the automaton {@link RegexEngine}s on XSD pattern facets.
+ * The {@code nested} pattern has a quantified group containing a quantifier, and its input is a long token that
+ * almost matches, which makes a backtracking matcher try a number of ways to split the token that grows as a high
+ * power of its length.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegexEngineBenchmark {
+    @Param({"java", "automaton"})
+    public String engine;
+
+    @Param({"simple", "nested"})
+    public String pattern;
+
+    @Param({"16", "24"})
+    public int length;
+
+    private Regex myRegex;
+    private String myInput;
+
+    @Setup
+    public void setUp() throws RegexSyntaxException {
+        RegexEngine regexEngine = engine.equals("java")
+            ? new com.thaiopensource.datatype.xsd.regex.java.RegexEngineImpl()
+            : new com.thaiopensource.datatype.xsd.regex.automaton.RegexEngineImpl();
+        StringBuilder sb = new StringBuilder();
+        if (pattern.equals("simple")) {
+            myRegex = regexEngine.compile("[A-Z]{2}\\d{2}[A-Z0-9]{4}\\d{7}([A-Z0-9]?){0,16}");
+            sb.append("GB82WEST1234569876543");
+            while (sb.length() < length) {
+                sb.append('7');
+            }
+        }
+        else {
+            myRegex = regexEngine.compile("(\\w*a){8}-");
+            while (sb.length() < length) {
+                sb.append('a');
+            }
+            sb.append('!');
+        }
+        myInput = sb.toString();
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return myRegex.matches(myInput);
+    }
+}
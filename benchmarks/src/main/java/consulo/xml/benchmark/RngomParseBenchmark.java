@@ -0,0 +1,60 @@
+package consulo.xml.benchmark;
+
+import org.kohsuke.rngom.ast.om.ParsedPattern;
+import org.kohsuke.rngom.digested.DPattern;
+import org.kohsuke.rngom.digested.DPatternSnapshot;
+import org.kohsuke.rngom.digested.DSchemaBuilderImpl;
+import org.kohsuke.rngom.parse.Parseable;
+import org.kohsuke.rngom.parse.compact.CompactParseable;
+import org.kohsuke.rngom.parse.xml.SAXParseable;
+import org.openjdk.jmh.annotations.*;
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of generated grammars into the digested model with rngom,
+ * through {@code CompactSyntax} for {@code rnc} and {@code SchemaParser} for {@code rng},
+ * compared with reading the same pattern from a precompiled {@link DPatternSnapshot}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RngomParseBenchmark {
+    @Param({"rnc", "rng"})
+    public String syntax;
+
+    @Param({"50", "2000"})
+    public int defines;
+
+    private String myGrammar;
+    private byte[] mySnapshot;
+
+    @Setup
+    public void setUp() throws Exception {
+        myGrammar = "rnc".equals(syntax) ? Grammars.generateRnc(defines) : Grammars.generateRng(defines);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DPatternSnapshot.write((DPattern) parse(), out, URI.create("urn:consulo:benchmark:"));
+        mySnapshot = out.toByteArray();
+    }
+
+    @Benchmark
+    public ParsedPattern parse() throws Exception {
+        InputSource in = new InputSource(new StringReader(myGrammar));
+        in.setSystemId("urn:consulo:benchmark:grammar." + syntax);
+        Parseable parseable = "rnc".equals(syntax) ? new CompactParseable(in, Schemas.SILENT) : new SAXParseable(in, Schemas.SILENT);
+        return parseable.parse(new DSchemaBuilderImpl());
+    }
+
+    @Benchmark
+    public DPattern readSnapshot() throws Exception {
+        return DPatternSnapshot.read(new ByteArrayInputStream(mySnapshot), "urn:consulo:benchmark:");
+    }
+}
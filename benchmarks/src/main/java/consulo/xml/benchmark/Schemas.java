@@ -0,0 +1,91 @@
+package consulo.xml.benchmark;
+
+import com.thaiopensource.datatype.xsd.DatatypeLibraryFactoryImpl;
+import com.thaiopensource.datatype.xsd.regex.java.RegexEngineImpl;
+import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.util.PropertyMapBuilder;
+import com.thaiopensource.validate.Option;
+import com.thaiopensource.validate.SchemaReader;
+import com.thaiopensource.validate.ValidateProperty;
+import com.thaiopensource.validate.auto.AutoSchemaReader;
+import com.thaiopensource.validate.auto.SchemaReaderFactorySchemaReceiverFactory;
+import com.thaiopensource.validate.auto.SchemaReceiver;
+import com.thaiopensource.validate.auto.SchemaReceiverFactory;
+import com.thaiopensource.validate.nvdl.NvdlSchemaReceiverFactory;
+import com.thaiopensource.validate.prop.rng.RngProperty;
+import com.thaiopensource.validate.rng.CompactSchemaReader;
+import com.thaiopensource.validate.rng.SAXSchemaReceiverFactory;
+import com.thaiopensource.validate.schematron.SchematronSchemaReaderFactory;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Schema readers and properties for the benchmarks.
+ * The schema languages are wired explicitly, so no META-INF/services registration is needed.
+ */
+public final class Schemas {
+    public static final ErrorHandler SILENT = new ErrorHandler() {
+        @Override
+        public void warning(SAXParseException exception) {
+        }
+
+        @Override
+        public void error(SAXParseException exception) {
+        }
+
+        @Override
+        public void fatalError(SAXParseException exception) {
+        }
+    };
+
+    private static final SchemaReceiverFactory RECEIVER_FACTORY = new SchemaReceiverFactory() {
+        private final SchemaReceiverFactory[] myFactories = {
+            new SAXSchemaReceiverFactory(),
+            new NvdlSchemaReceiverFactory(),
+            new SchemaReaderFactorySchemaReceiverFactory(new SchematronSchemaReaderFactory())
+        };
+
+        @Override
+        public SchemaReceiver createSchemaReceiver(String namespaceUri, PropertyMap properties) {
+            for (SchemaReceiverFactory factory : myFactories) {
+                SchemaReceiver receiver = factory.createSchemaReceiver(namespaceUri, properties);
+                if (receiver != null) {
+                    return receiver;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Option getOption(String uri) {
+            for (SchemaReceiverFactory factory : myFactories) {
+                Option option = factory.getOption(uri);
+                if (option != null) {
+                    return option;
+                }
+            }
+            return null;
+        }
+    };
+
+    private Schemas() {
+    }
+
+    public static PropertyMap properties() {
+        PropertyMapBuilder builder = new PropertyMapBuilder();
+        builder.put(ValidateProperty.ERROR_HANDLER, SILENT);
+        builder.put(RngProperty.DATATYPE_LIBRARY_FACTORY, new DatatypeLibraryFactoryImpl(new RegexEngineImpl()));
+        builder.put(SchemaReceiverFactory.PROPERTY, RECEIVER_FACTORY);
+        return builder.toPropertyMap();
+    }
+
+    /**
+     * @param extension one of {@code rng}, {@code rnc}, {@code sch}, {@code nvdl}
+     */
+    public static SchemaReader reader(String extension) {
+        if ("rnc".equals(extension)) {
+            return CompactSchemaReader.getInstance();
+        }
+        return new AutoSchemaReader(RECEIVER_FACTORY);
+    }
+}
@@ -0,0 +1,55 @@
+package consulo.xml.benchmark;
+
+import com.thaiopensource.xml.tok.ContentToken;
+import com.thaiopensource.xml.tok.ExtensibleTokenException;
+import com.thaiopensource.xml.tok.TokenException;
+import com.thaiopensource.xml.tok.Tokenizer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scanning of a generated catalog with {@link Tokenizer#tokenizeContent}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+    @Param({"100", "10000"})
+    public int items;
+
+    private char[] myBuffer;
+    private final ContentToken myToken = new ContentToken();
+
+    @Setup
+    public void setUp() {
+        myBuffer = new String(Corpus.generate(items), StandardCharsets.UTF_8).toCharArray();
+    }
+
+    @Benchmark
+    public int tokenizeContent() {
+        int count = 0;
+        int off = 0;
+        int end = myBuffer.length;
+        while (off < end) {
+            try {
+                Tokenizer.tokenizeContent(myBuffer, off, end, myToken);
+                off = myToken.getTokenEnd();
+                count++;
+            }
+            catch (ExtensibleTokenException e) {
+                // trailing data characters
+                count++;
+                break;
+            }
+            catch (TokenException e) {
+                throw new IllegalStateException("cannot tokenize corpus at offset " + off, e);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,116 @@
+package consulo.xml.benchmark;
+
+import com.thaiopensource.relaxng.edit.SchemaCollection;
+import com.thaiopensource.relaxng.input.parse.compact.CompactParseInputFormat;
+import com.thaiopensource.relaxng.output.OutputDirectory;
+import com.thaiopensource.relaxng.output.OutputFormat;
+import com.thaiopensource.relaxng.output.dtd.DtdOutputFormat;
+import com.thaiopensource.relaxng.output.rnc.RncOutputFormat;
+import com.thaiopensource.relaxng.output.rng.RngOutputFormat;
+import com.thaiopensource.relaxng.output.xsd.XsdOutputFormat;
+import com.thaiopensource.xml.out.CharRepertoire;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of a generated grammar with trang's {@code relaxng.output} writers.
+ * The input is parsed once; only the output step is measured, and the output is discarded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrangOutputBenchmark {
+    @Param({"rng", "rnc", "xsd", "dtd"})
+    public String format;
+
+    @Param({"50", "2000"})
+    public int defines;
+
+    private SchemaCollection mySchemas;
+    private OutputFormat myOutputFormat;
+
+    @Setup
+    public void setUp() throws Exception {
+        File file = File.createTempFile("grammar", ".rnc");
+        try {
+            Files.write(file.toPath(), Grammars.generateRnc(defines).getBytes(StandardCharsets.UTF_8));
+            mySchemas = new CompactParseInputFormat().load(file.toURI().toString(), new String[0], format, Schemas.SILENT, null);
+        }
+        finally {
+            file.delete();
+        }
+        myOutputFormat = createOutputFormat(format);
+    }
+
+    @Benchmark
+    public void output() throws Exception {
+        myOutputFormat.output(mySchemas, new DiscardingOutputDirectory(), new String[0], "rnc", Schemas.SILENT);
+    }
+
+    private static OutputFormat createOutputFormat(String format) {
+        switch (format) {
+            case "rng":
+                return new RngOutputFormat();
+            case "rnc":
+                return new RncOutputFormat();
+            case "xsd":
+                return new XsdOutputFormat();
+            case "dtd":
+                return new DtdOutputFormat();
+            default:
+                throw new IllegalArgumentException(format);
+        }
+    }
+
+    private static class DiscardingOutputDirectory implements OutputDirectory {
+        private int myLineLength = 72;
+        private int myIndent = 2;
+
+        @Override
+        public Stream open(String sourceUri, String encoding) {
+            return new Stream(Writer.nullWriter(), "UTF-8", CharRepertoire.getInstance("UTF-8"));
+        }
+
+        @Override
+        public String reference(String fromSourceUri, String toSourceUri) {
+            return toSourceUri.substring(toSourceUri.lastIndexOf('/') + 1);
+        }
+
+        @Override
+        public String getLineSeparator() {
+            return "\n";
+        }
+
+        @Override
+        public int getLineLength() {
+            return myLineLength;
+        }
+
+        @Override
+        public void setLineLength(int lineLength) {
+            myLineLength = lineLength;
+        }
+
+        @Override
+        public int getIndent() {
+            return myIndent;
+        }
+
+        @Override
+        public void setIndent(int indent) {
+            myIndent = indent;
+        }
+
+        @Override
+        public void setEncoding(String encoding) {
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package consulo.xml.benchmark;
+
+import com.thaiopensource.validate.ValidationDriver;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ValidationDriver#validate} of a generated catalog against each supported schema language.
+ * XML Schema is not included: this tree has no XSD schema reader for jing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+    @Param({"rng", "rnc", "sch", "nvdl"})
+    public String schema;
+
+    @Param({"100", "10000"})
+    public int items;
+
+    private ValidationDriver myDriver;
+    private byte[] myDocument;
+
+    @Setup
+    public void setUp() throws Exception {
+        myDriver = new ValidationDriver(Schemas.properties(), Schemas.reader(schema));
+        if (!myDriver.loadSchema(Corpus.schema("catalog." + schema))) {
+            throw new IllegalStateException("cannot load catalog." + schema);
+        }
+        myDocument = Corpus.generate(items);
+        if (!myDriver.validate(Corpus.source(myDocument))) {
+            throw new IllegalStateException("generated corpus is invalid against catalog." + schema);
+        }
+    }
+
+    @Benchmark
+    public boolean validate() throws Exception {
+        return myDriver.validate(Corpus.source(myDocument));
+    }
+}
@@ -0,0 +1,15 @@
+package com.thaiopensource.datatype;
+
+import org.relaxng.datatype.Datatype;
+import org.relaxng.datatype.ValidationContext;
+
+/**
+ * A datatype that can check text held in a buffer, so that the caller need not copy it into a String.
+ */
+public interface CharSequenceDatatype extends Datatype {
+  /**
+   * Same as <code>isValid</code>. The characters must not change during the call and
+   * are not retained after it.
+   */
+  boolean isValid(CharSequence chars, ValidationContext vc);
+}
@@ -1,5 +1,6 @@
 package com.thaiopensource.datatype.xsd;
 
+import com.thaiopensource.datatype.CharSequenceDatatype;
 import com.thaiopensource.datatype.Datatype2;
 import com.thaiopensource.util.Localizer;
 import org.relaxng.datatype.DatatypeException;
@@ -7,7 +8,7 @@ import org.relaxng.datatype.DatatypeStreamingValidator;
 import org.relaxng.datatype.ValidationContext;
 import org.relaxng.datatype.helpers.StreamingValidatorImpl;
 
-abstract class DatatypeBase implements Datatype2 {
+abstract class DatatypeBase implements Datatype2, CharSequenceDatatype {
   abstract boolean lexicallyAllows(String str);
   private final int whiteSpace;
 
@@ -15,6 +16,10 @@ abstract class DatatypeBase implements Datatype2 {
   static final int WHITE_SPACE_REPLACE = 1;
   static final int WHITE_SPACE_COLLAPSE = 2;
 
+  static final int FAST_INVALID = 0;
+  static final int FAST_VALID = 1;
+  static final int FAST_UNKNOWN = 2;
+
   DatatypeBase() {
     whiteSpace = WHITE_SPACE_COLLAPSE;
   }
@@ -28,10 +33,26 @@ abstract class DatatypeBase implements Datatype2 {
   }
 
   public boolean isValid(String str, ValidationContext vc) {
+    switch (fastCheck(str)) {
+    case FAST_VALID:
+      return true;
+    case FAST_INVALID:
+      return false;
+    }
     str = normalizeWhiteSpace(str);
     return lexicallyAllows(str) && allowsValue(str, vc);
   }
 
+  public boolean isValid(CharSequence chars, ValidationContext vc) {
+    switch (fastCheck(chars)) {
+    case FAST_VALID:
+      return true;
+    case FAST_INVALID:
+      return false;
+    }
+    return isValid(chars.toString(), vc);
+  }
+
   public void checkValid(String str, ValidationContext vc) throws DatatypeException {
     str = normalizeWhiteSpace(str);
     checkLexicallyAllows(str);
@@ -39,8 +60,12 @@ abstract class DatatypeBase implements Datatype2 {
   }
 
   public Object createValue(String str, ValidationContext vc) {
+    int fast = fastCheck(str);
+    if (fast == FAST_INVALID)
+      return null;
     str = normalizeWhiteSpace(str);
-    if (!lexicallyAllows(str))
+    // a string that fastCheck accepted is lexically allowed
+    if (fast == FAST_UNKNOWN && !lexicallyAllows(str))
       return null;
     try {
       return getValue(str, vc);
@@ -50,6 +75,27 @@ abstract class DatatypeBase implements Datatype2 {
     }
   }
 
+  private int fastCheck(CharSequence str) {
+    if (whiteSpace != WHITE_SPACE_COLLAPSE)
+      return FAST_UNKNOWN;
+    int start = 0;
+    int end = str.length();
+    while (start < end && isWhiteSpace(str.charAt(start)))
+      start++;
+    while (end > start && isWhiteSpace(str.charAt(end - 1)))
+      end--;
+    return fastCheck(str, start, end);
+  }
+
+  /* Decides whether the characters of str from start to end, which have no leading or trailing
+     white space, are valid without creating a normalized string or a value. Returns FAST_VALID,
+     FAST_INVALID, or FAST_UNKNOWN if the value must be created to decide. Only datatypes with a
+     collapsed lexical space that contains no white space implement this; their scanners then reject
+     any white space left inside the range just as lexicallyAllows would reject the collapsed string. */
+  int fastCheck(CharSequence str, int start, int end) {
+    return FAST_UNKNOWN;
+  }
+
   final String normalizeWhiteSpace(String str) {
     switch (whiteSpace) {
     case WHITE_SPACE_COLLAPSE:
@@ -104,6 +150,17 @@ abstract class DatatypeBase implements Datatype2 {
     return null;
   }
 
+  static private boolean isWhiteSpace(char c) {
+    switch (c) {
+    case '\r':
+    case '\n':
+    case '\t':
+    case ' ':
+      return true;
+    }
+    return false;
+  }
+
   static private String collapseWhiteSpace(String s) {
     int i = collapseStart(s);
     if (i < 0)
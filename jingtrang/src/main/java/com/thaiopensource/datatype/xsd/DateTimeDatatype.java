@@ -77,6 +77,122 @@ class DateTimeDatatype extends RegexDatatype implements OrderRelation {
     return pattern.toString();
   }
 
+  /**
+   * Scans the lexical representation according to the template, checking the ranges that the
+   * calendar would check in getValue. Years other than 0001 to 9999 and time zones more than 12
+   * hours from UTC are left to getValue.
+   */
+  int fastCheck(CharSequence str, int start, int end) {
+    int year = 2000; // any leap year will do
+    int month = 1;
+    int day = 1;
+    int pos = start;
+    for (int templateIndex = 0, templateLength = template.length();
+         templateIndex < templateLength;
+         templateIndex++) {
+      char templateChar = template.charAt(templateIndex);
+      switch (templateChar) {
+      case 'Y':
+        if (pos < end && str.charAt(pos) == '-')
+          return FAST_UNKNOWN;
+        int yearEnd = skipDigits(str, pos, end);
+        if (yearEnd - pos < 4)
+          return FAST_INVALID;
+        if (yearEnd - pos > 4)
+          return FAST_UNKNOWN;
+        year = parse2Digits(str, pos)*100 + parse2Digits(str, pos + 2);
+        if (year == 0)
+          return FAST_UNKNOWN;
+        pos = yearEnd;
+        break;
+      case 'M':
+        month = parse2Digits(str, pos, end);
+        if (month < 1 || month > 12)
+          return FAST_INVALID;
+        pos += 2;
+        break;
+      case 'D':
+        day = parse2Digits(str, pos, end);
+        if (day < 1)
+          return FAST_INVALID;
+        pos += 2;
+        break;
+      case 't':
+        if (!checkField(str, pos, end, 23) || !checkSeparator(str, pos + 2, end, ':')
+            || !checkField(str, pos + 3, end, 59) || !checkSeparator(str, pos + 5, end, ':')
+            // 60 is allowed for a leap second
+            || !checkField(str, pos + 6, end, 60))
+          return FAST_INVALID;
+        pos += 8;
+        if (pos < end && str.charAt(pos) == '.')
+          pos = skipDigits(str, pos + 1, end);
+        break;
+      default:
+        if (!checkSeparator(str, pos, end, templateChar))
+          return FAST_INVALID;
+        pos++;
+        break;
+      }
+    }
+    if (day > daysInMonth(year, month))
+      return FAST_INVALID;
+    if (pos == end)
+      return FAST_VALID;
+    switch (str.charAt(pos)) {
+    case 'Z':
+      return pos + 1 == end ? FAST_VALID : FAST_INVALID;
+    case '+':
+    case '-':
+      if (end - pos != 6 || !checkField(str, pos + 1, end, 99) || !checkSeparator(str, pos + 3, end, ':')
+          || !checkField(str, pos + 4, end, 59))
+        return FAST_INVALID;
+      return parse2Digits(str, pos + 1) > 12 ? FAST_UNKNOWN : FAST_VALID;
+    }
+    return FAST_INVALID;
+  }
+
+  static private boolean checkField(CharSequence str, int i, int end, int max) {
+    int n = parse2Digits(str, i, end);
+    return n >= 0 && n <= max;
+  }
+
+  static private boolean checkSeparator(CharSequence str, int i, int end, char c) {
+    return i < end && str.charAt(i) == c;
+  }
+
+  /**
+   * Returns the value of the two digits at i, or -1 if there are not two digits there.
+   */
+  static private int parse2Digits(CharSequence str, int i, int end) {
+    if (i + 2 > end)
+      return -1;
+    char c1 = str.charAt(i);
+    char c2 = str.charAt(i + 1);
+    if (c1 < '0' || c1 > '9' || c2 < '0' || c2 > '9')
+      return -1;
+    return (c1 - '0')*10 + (c2 - '0');
+  }
+
+  static private int skipDigits(CharSequence str, int i, int end) {
+    while (i < end && str.charAt(i) >= '0' && str.charAt(i) <= '9')
+      i++;
+    return i;
+  }
+
+  static private int daysInMonth(int year, int month) {
+    switch (month) {
+    // Thirty days have September, April, June and November...
+    case 9:
+    case 4:
+    case 6:
+    case 11:
+      return 30;
+    case 2:
+      return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+    }
+    return 31;
+  }
+
   static private class DateTime {
     private final Date date;
     private final int leapMilliseconds;
@@ -287,7 +403,7 @@ class DateTimeDatatype extends RegexDatatype implements OrderRelation {
     return (Integer.parseInt(str.substring(i + 1, i + 3))*60 + Integer.parseInt(str.substring(i + 4)))*60*1000*sign;
   }
 
-  static private int parse2Digits(String str, int i) {
+  static private int parse2Digits(CharSequence str, int i) {
     return (str.charAt(i) - '0')*10 + (str.charAt(i + 1) - '0');
   }
 
@@ -3,14 +3,27 @@ package com.thaiopensource.datatype.xsd;
 import org.relaxng.datatype.ValidationContext;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 class DecimalDatatype extends DatatypeBase implements OrderRelation {
+  /**
+   * Integers returned by parseSmallInteger are less than this in absolute value.
+   */
+  static private final long SMALL_LIMIT = 1000000000000000000L;
+  static final long NOT_SMALL = Long.MIN_VALUE;
 
   boolean lexicallyAllows(String str) {
-    int len = str.length();
-    if (len == 0)
+    return lexicallyAllows(str, 0, str.length());
+  }
+
+  int fastCheck(CharSequence str, int start, int end) {
+    // every lexically allowed decimal has a value
+    return lexicallyAllows(str, start, end) ? FAST_VALID : FAST_INVALID;
+  }
+
+  static boolean lexicallyAllows(CharSequence str, int i, int len) {
+    if (i == len)
       return false;
-    int i = 0;
     switch (str.charAt(i)) {
     case '+':
     case '-':
@@ -48,6 +61,75 @@ class DecimalDatatype extends DatatypeBase implements OrderRelation {
     return true;
   }
 
+  /**
+   * Returns the scale of a lexically allowed decimal, that is the number of digits after its decimal point.
+   */
+  static int getScale(CharSequence str, int start, int end) {
+    for (int i = start; i < end; i++)
+      if (str.charAt(i) == '.')
+        return end - i - 1;
+    return 0;
+  }
+
+  /**
+   * Returns the precision of a lexically allowed decimal, that is the number of digits in its unscaled
+   * value, as computed by PrecisionRestrictDatatype.getPrecision.
+   */
+  static int getPrecision(CharSequence str, int start, int end) {
+    int digits = 0;
+    for (int i = start; i < end; i++) {
+      char c = str.charAt(i);
+      if (c >= '1' && c <= '9' || (c == '0' && digits > 0))
+        digits++;
+    }
+    return digits == 0 ? 1 : digits;
+  }
+
+  /**
+   * Returns the value of a lexically allowed decimal that is an integer of less than
+   * 19 significant digits, or NOT_SMALL if it is some other decimal.
+   */
+  static long parseSmallInteger(CharSequence str, int start, int end) {
+    int i = start;
+    boolean negative = false;
+    switch (str.charAt(i)) {
+    case '-':
+      negative = true;
+      // fall through
+    case '+':
+      i++;
+    }
+    long n = 0;
+    int digits = 0;
+    for (; i < end; i++) {
+      char c = str.charAt(i);
+      if (c == '.')
+        break;
+      if (digits > 0 || c != '0') {
+        if (++digits == 19)
+          return NOT_SMALL;
+        n = n*10 + (c - '0');
+      }
+    }
+    for (i++; i < end; i++)
+      if (str.charAt(i) != '0')
+        return NOT_SMALL;
+    return negative ? -n : n;
+  }
+
+  /**
+   * Rounds a limit to an integer that compares with every value returned by parseSmallInteger
+   * as the rounded limit does.
+   */
+  static long toSmallLimit(BigDecimal limit, RoundingMode mode) {
+    BigDecimal n = limit.setScale(0, mode);
+    if (n.compareTo(BigDecimal.valueOf(SMALL_LIMIT)) > 0)
+      return SMALL_LIMIT;
+    if (n.compareTo(BigDecimal.valueOf(-SMALL_LIMIT)) < 0)
+      return -SMALL_LIMIT;
+    return n.longValue();
+  }
+
   String getLexicalSpaceKey() {
     return "decimal";
   }
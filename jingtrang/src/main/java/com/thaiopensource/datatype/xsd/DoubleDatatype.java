@@ -5,14 +5,22 @@ import org.relaxng.datatype.ValidationContext;
 class DoubleDatatype extends DatatypeBase implements OrderRelation {
 
   boolean lexicallyAllows(String str) {
-    if (str.equals("INF") || str.equals("-INF") || str.equals("NaN"))
+    return lexicallyAllows(str, 0, str.length());
+  }
+
+  int fastCheck(CharSequence str, int start, int end) {
+    // every lexically allowed number has a value, rounding to infinity or zero if need be
+    return lexicallyAllows(str, start, end) ? FAST_VALID : FAST_INVALID;
+  }
+
+  static boolean lexicallyAllows(CharSequence str, int start, int end) {
+    if (regionEquals(str, start, end, "INF") || regionEquals(str, start, end, "-INF") || regionEquals(str, start, end, "NaN"))
       return true;
-    int len = str.length();
     boolean hadSign = false;
     boolean hadDecimalPoint = false;
     boolean hadDigit = false;
     boolean hadE = false;
-    for (int i = 0; i < len; i++) {
+    for (int i = start; i < end; i++) {
       switch (str.charAt(i)) {
       case '+':
       case '-':
@@ -53,6 +61,15 @@ class DoubleDatatype extends DatatypeBase implements OrderRelation {
     return hadDigit;
   }
 
+  static private boolean regionEquals(CharSequence str, int start, int end, String s) {
+    if (end - start != s.length())
+      return false;
+    for (int i = 0; i < s.length(); i++)
+      if (str.charAt(start + i) != s.charAt(i))
+        return false;
+    return true;
+  }
+
   String getLexicalSpaceKey() {
     return "float";
   }
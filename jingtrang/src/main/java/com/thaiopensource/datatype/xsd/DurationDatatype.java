@@ -23,6 +23,58 @@ class DurationDatatype extends RegexDatatype implements OrderRelation {
     return last != 'P' && last != 'T';
   }
 
+  int fastCheck(CharSequence str, int start, int end) {
+    // every lexically allowed duration has a value
+    return lexicallyAllows(str, start, end) ? FAST_VALID : FAST_INVALID;
+  }
+
+  /**
+   * Matches PATTERN, with at least one component and no T unless there are time components,
+   * without using the regex engine.
+   */
+  static private boolean lexicallyAllows(CharSequence str, int start, int end) {
+    int i = start;
+    if (i < end && str.charAt(i) == '-')
+      i++;
+    if (i == end || str.charAt(i++) != 'P')
+      return false;
+    String designators = "YMD";
+    int nextDesignator = 0;
+    boolean hadComponent = false;
+    while (i < end) {
+      if (str.charAt(i) == 'T') {
+        if (designators.equals("HMS") || ++i == end)
+          return false;
+        designators = "HMS";
+        nextDesignator = 0;
+      }
+      int digitsStart = i;
+      i = skipDigits(str, i, end);
+      boolean hadDigit = i > digitsStart;
+      boolean hadDecimalPoint = false;
+      if (i < end && str.charAt(i) == '.') {
+        hadDecimalPoint = true;
+        int fractionStart = ++i;
+        i = skipDigits(str, i, end);
+        hadDigit |= i > fractionStart;
+      }
+      if (!hadDigit || i == end)
+        return false;
+      int d = designators.indexOf(str.charAt(i++), nextDesignator);
+      if (d < 0 || (hadDecimalPoint && designators.charAt(d) != 'S'))
+        return false;
+      nextDesignator = d + 1;
+      hadComponent = true;
+    }
+    return hadComponent;
+  }
+
+  static private int skipDigits(CharSequence str, int i, int end) {
+    while (i < end && str.charAt(i) >= '0' && str.charAt(i) <= '9')
+      i++;
+    return i;
+  }
+
   String getLexicalSpaceKey() {
     return "duration";
   }
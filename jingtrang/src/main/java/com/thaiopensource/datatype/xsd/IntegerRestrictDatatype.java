@@ -11,6 +11,12 @@ class IntegerRestrictDatatype extends ScaleRestrictDatatype {
     return super.lexicallyAllows(str) && str.charAt(str.length() - 1) != '.';
   }
 
+  int fastCheck(CharSequence str, int start, int end) {
+    if (end > start && str.charAt(end - 1) == '.')
+      return FAST_INVALID;
+    return super.fastCheck(str, start, end);
+  }
+
   void checkLexicallyAllows(String str) throws DatatypeException {
     if (!lexicallyAllows(str))
       throw createLexicallyInvalidException();
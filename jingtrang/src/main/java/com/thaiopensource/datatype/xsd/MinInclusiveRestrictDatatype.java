@@ -2,16 +2,33 @@ package com.thaiopensource.datatype.xsd;
 
 import org.relaxng.datatype.DatatypeException;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
 class MinInclusiveRestrictDatatype extends ValueRestrictDatatype {
   private final OrderRelation order;
   private final Object limit;
   private final String limitString;
+  private final long fastLimit;
 
   MinInclusiveRestrictDatatype(DatatypeBase base, Object limit, String limitString) {
     super(base);
     this.order = base.getOrderRelation();
     this.limit = limit;
     this.limitString = limitString;
+    // v >= limit holds for an integer v just when v >= ceiling(limit)
+    this.fastLimit = (limit instanceof BigDecimal
+                      ? DecimalDatatype.toSmallLimit((BigDecimal)limit, RoundingMode.CEILING)
+                      : DecimalDatatype.NOT_SMALL);
+  }
+
+  int fastCheckRestriction(CharSequence str, int start, int end) {
+    if (fastLimit == DecimalDatatype.NOT_SMALL)
+      return FAST_UNKNOWN;
+    long n = DecimalDatatype.parseSmallInteger(str, start, end);
+    if (n == DecimalDatatype.NOT_SMALL)
+      return FAST_UNKNOWN;
+    return n >= fastLimit ? FAST_VALID : FAST_INVALID;
   }
 
   void checkRestriction(Object value) throws DatatypeException {
@@ -17,6 +17,14 @@ class PatternRestrictDatatype extends RestrictDatatype {
     return pattern.matches(str) && super.lexicallyAllows(str);
   }
 
+  int fastCheck(CharSequence str, int start, int end) {
+    int result = base.fastCheck(str, start, end);
+    if (result != FAST_VALID)
+      return result;
+    // no copy is made in the usual case of a value without surrounding white space
+    return pattern.matches(str.subSequence(start, end).toString()) ? FAST_VALID : FAST_INVALID;
+  }
+
   void checkLexicallyAllows(String str) throws DatatypeException {
     super.checkLexicallyAllows(str);
     if (!pattern.matches(str))
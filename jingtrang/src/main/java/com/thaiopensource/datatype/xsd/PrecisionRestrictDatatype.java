@@ -12,6 +12,10 @@ class PrecisionRestrictDatatype extends ValueRestrictDatatype {
     this.precision = precision;
   }
 
+  int fastCheckRestriction(CharSequence str, int start, int end) {
+    return DecimalDatatype.getPrecision(str, start, end) > precision ? FAST_INVALID : FAST_VALID;
+  }
+
   void checkRestriction(Object obj) throws DatatypeException {
     final int actualPrecision = getPrecision((BigDecimal)obj);
     if (actualPrecision > precision) {
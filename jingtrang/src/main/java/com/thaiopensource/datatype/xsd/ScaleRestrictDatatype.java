@@ -12,6 +12,10 @@ class ScaleRestrictDatatype extends ValueRestrictDatatype {
     this.scale = scale;
   }
 
+  int fastCheckRestriction(CharSequence str, int start, int end) {
+    return DecimalDatatype.getScale(str, start, end) > scale ? FAST_INVALID : FAST_VALID;
+  }
+
   void checkRestriction(Object obj) throws DatatypeException {
     int actualScale = ((BigDecimal)obj).scale();
     if (actualScale > scale) {
@@ -14,5 +14,18 @@ abstract class ValueRestrictDatatype extends RestrictDatatype {
     return obj;
   }
 
+  int fastCheck(CharSequence str, int start, int end) {
+    int result = base.fastCheck(str, start, end);
+    if (result != FAST_VALID)
+      return result;
+    return fastCheckRestriction(str, start, end);
+  }
+
+  /* Requires base.fastCheck to have returned FAST_VALID. Returns FAST_UNKNOWN if checkRestriction
+     needs the value to decide. */
+  int fastCheckRestriction(CharSequence str, int start, int end) {
+    return FAST_UNKNOWN;
+  }
+
   abstract void checkRestriction(Object obj) throws DatatypeException;
 }
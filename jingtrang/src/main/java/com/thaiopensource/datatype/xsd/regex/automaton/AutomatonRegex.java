@@ -0,0 +1,173 @@
+package com.thaiopensource.datatype.xsd.regex.automaton;
+
+import com.thaiopensource.datatype.xsd.regex.Regex;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Matches by running a deterministic automaton that is built lazily from an {@link Nfa}:
+ * each deterministic state is a set of automaton states, and its transition for a character is
+ * computed the first time that character is seen in that state. Matching therefore takes time
+ * linear in the length of the string. The built states are shared by all threads; if there
+ * get to be more than <code>MAX_STATES</code> of them, they are discarded and built again.
+ */
+final class AutomatonRegex implements Regex {
+  private static final int MAX_STATES = 2000;
+  private static final int ASCII_SIZE = 128;
+
+  private final Nfa nfa;
+  private volatile Cache cache;
+
+  AutomatonRegex(Nfa nfa) {
+    this.nfa = nfa;
+    this.cache = new Cache();
+  }
+
+  public boolean matches(String str) {
+    Cache cache = this.cache;
+    State state = cache.start;
+    for (int i = 0, len = str.length(); i < len; ) {
+      int c = str.codePointAt(i);
+      i += Character.charCount(c);
+      State next = state.get(c);
+      if (next == null)
+        next = cache.computeNext(state, c);
+      if (next.isDead())
+        return false;
+      state = next;
+    }
+    return state.isAccepting();
+  }
+
+  private final class Cache {
+    private final ConcurrentHashMap<StateKey, State> states = new ConcurrentHashMap<StateKey, State>();
+    private final State start;
+
+    Cache() {
+      boolean[] seen = new boolean[nfa.size()];
+      IntList set = new IntList();
+      addClosure(nfa.start, seen, set);
+      start = intern(set);
+    }
+
+    State computeNext(State state, int c) {
+      boolean[] seen = new boolean[nfa.size()];
+      IntList set = new IntList();
+      for (int s : state.nfaStates) {
+        CharPredicate predicate = nfa.predicates[s];
+        if (predicate != null && predicate.contains(c))
+          addClosure(nfa.out1[s], seen, set);
+      }
+      State next = intern(set);
+      state.put(c, next);
+      return next;
+    }
+
+    private void addClosure(int s, boolean[] seen, IntList set) {
+      IntList stack = new IntList();
+      stack.add(s);
+      while (stack.size > 0) {
+        s = stack.items[--stack.size];
+        if (seen[s])
+          continue;
+        seen[s] = true;
+        if (nfa.predicates[s] == null && s != Nfa.MATCH) {
+          stack.add(nfa.out2[s]);
+          stack.add(nfa.out1[s]);
+        }
+        else
+          set.add(s);
+      }
+    }
+
+    private State intern(IntList set) {
+      int[] nfaStates = Arrays.copyOf(set.items, set.size);
+      Arrays.sort(nfaStates);
+      StateKey key = new StateKey(nfaStates);
+      State state = states.get(key);
+      if (state == null) {
+        state = new State(nfaStates);
+        State old = states.putIfAbsent(key, state);
+        if (old != null)
+          state = old;
+        else if (states.size() > MAX_STATES && AutomatonRegex.this.cache == this)
+          AutomatonRegex.this.cache = new Cache();
+      }
+      return state;
+    }
+  }
+
+  private static final class State {
+    final int[] nfaStates;
+    private final State[] ascii = new State[ASCII_SIZE];
+    private volatile Map<Integer, State> other;
+
+    State(int[] nfaStates) {
+      this.nfaStates = nfaStates;
+    }
+
+    boolean isAccepting() {
+      return nfaStates.length > 0 && nfaStates[0] == Nfa.MATCH;
+    }
+
+    boolean isDead() {
+      return nfaStates.length == 0;
+    }
+
+    State get(int c) {
+      if (c < ASCII_SIZE)
+        return ascii[c];
+      Map<Integer, State> map = other;
+      return map == null ? null : map.get(c);
+    }
+
+    void put(int c, State next) {
+      // States only have final fields, so a racy write publishes them safely;
+      // a reader that misses the write just computes the transition again.
+      if (c < ASCII_SIZE) {
+        ascii[c] = next;
+        return;
+      }
+      Map<Integer, State> map = other;
+      if (map == null) {
+        synchronized (this) {
+          map = other;
+          if (map == null)
+            other = map = new ConcurrentHashMap<Integer, State>();
+        }
+      }
+      map.put(c, next);
+    }
+  }
+
+  private static final class StateKey {
+    private final int[] nfaStates;
+    private final int hashCode;
+
+    StateKey(int[] nfaStates) {
+      this.nfaStates = nfaStates;
+      this.hashCode = Arrays.hashCode(nfaStates);
+    }
+
+    public int hashCode() {
+      return hashCode;
+    }
+
+    public boolean equals(Object obj) {
+      return obj instanceof StateKey && Arrays.equals(nfaStates, ((StateKey)obj).nfaStates);
+    }
+  }
+
+  private static final class IntList {
+    int[] items = new int[8];
+    int size = 0;
+
+    void add(int n) {
+      if (size == items.length)
+        items = Arrays.copyOf(items, size * 2);
+      items[size++] = n;
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package com.thaiopensource.datatype.xsd.regex.automaton;
+
+import com.thaiopensource.datatype.xsd.regex.RegexSyntaxException;
+import com.thaiopensource.datatype.xsd.regex.java.Translator;
+
+import java.util.regex.Pattern;
+
+/**
+ * A set of characters matched by a single atom of a regular expression.
+ */
+abstract class CharPredicate {
+  abstract boolean contains(int c);
+
+  static final CharPredicate DOT = new CharPredicate() {
+    boolean contains(int c) {
+      return c != '\n' && c != '\r';
+    }
+  };
+
+  static class Literal extends CharPredicate {
+    private final int c;
+
+    Literal(int c) {
+      this.c = c;
+    }
+
+    boolean contains(int c) {
+      return this.c == c;
+    }
+  }
+
+  /**
+   * A character class expression or class escape. Membership is decided by the translation
+   * that the <code>java.util.regex</code> based engine uses for the same class, so that both
+   * engines agree on categories, blocks and the naming escapes. ASCII membership is
+   * precomputed; other characters are only tested when the automaton first sees them.
+   */
+  static class Translated extends CharPredicate {
+    private final Pattern pattern;
+    private final long ascii0;
+    private final long ascii1;
+
+    Translated(String classExpr) throws RegexSyntaxException {
+      pattern = Pattern.compile(Translator.translate(classExpr));
+      long bits0 = 0;
+      long bits1 = 0;
+      for (int c = 0; c < 64; c++) {
+        if (test(c))
+          bits0 |= 1L << c;
+        if (test(c + 64))
+          bits1 |= 1L << c;
+      }
+      ascii0 = bits0;
+      ascii1 = bits1;
+    }
+
+    boolean contains(int c) {
+      if (c < 64)
+        return (ascii0 & (1L << c)) != 0;
+      if (c < 128)
+        return (ascii1 & (1L << (c - 64))) != 0;
+      return test(c);
+    }
+
+    private boolean test(int c) {
+      return pattern.matcher(new String(Character.toChars(c))).matches();
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package com.thaiopensource.datatype.xsd.regex.automaton;
+
+import java.util.Arrays;
+
+/**
+ * A Thompson automaton. State <code>MATCH</code> accepts; every other state either consumes
+ * one character of its predicate and moves to <code>out1</code>, or, if it has no predicate,
+ * moves to both <code>out1</code> and <code>out2</code> without consuming anything.
+ */
+final class Nfa {
+  static final int MATCH = 0;
+
+  final CharPredicate[] predicates;
+  final int[] out1;
+  final int[] out2;
+  final int start;
+
+  private Nfa(CharPredicate[] predicates, int[] out1, int[] out2, int start) {
+    this.predicates = predicates;
+    this.out1 = out1;
+    this.out2 = out2;
+    this.start = start;
+  }
+
+  int size() {
+    return predicates.length;
+  }
+
+  static Nfa build(Node node) {
+    Builder builder = new Builder();
+    int start = node.build(builder, MATCH);
+    return builder.toNfa(start);
+  }
+
+  static final class Builder {
+    private CharPredicate[] predicates = new CharPredicate[16];
+    private int[] out1 = new int[16];
+    private int[] out2 = new int[16];
+    private int used = 1; // MATCH
+
+    int addChar(CharPredicate predicate, int next) {
+      int s = newState();
+      predicates[s] = predicate;
+      out1[s] = next;
+      out2[s] = -1;
+      return s;
+    }
+
+    int addSplit(int next1, int next2) {
+      int s = newState();
+      out1[s] = next1;
+      out2[s] = next2;
+      return s;
+    }
+
+    void setOut1(int s, int next) {
+      out1[s] = next;
+    }
+
+    private int newState() {
+      if (used == predicates.length) {
+        predicates = Arrays.copyOf(predicates, used * 2);
+        out1 = Arrays.copyOf(out1, used * 2);
+        out2 = Arrays.copyOf(out2, used * 2);
+      }
+      return used++;
+    }
+
+    Nfa toNfa(int start) {
+      out1[MATCH] = -1;
+      out2[MATCH] = -1;
+      return new Nfa(Arrays.copyOf(predicates, used), Arrays.copyOf(out1, used), Arrays.copyOf(out2, used), start);
+    }
+  }
+}
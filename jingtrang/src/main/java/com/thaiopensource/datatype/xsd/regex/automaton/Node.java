@@ -0,0 +1,132 @@
+package com.thaiopensource.datatype.xsd.regex.automaton;
+
+import java.util.List;
+
+/**
+ * A node of the syntax tree of a regular expression.
+ */
+abstract class Node {
+  static final int UNBOUNDED = -1;
+
+  /**
+   * Returns the number of automaton states needed for this node, saturating at
+   * <code>Long.MAX_VALUE / 2</code>.
+   */
+  abstract long stateCount();
+
+  /**
+   * Adds the states matching this node followed by the states starting at <code>next</code>.
+   *
+   * @return the start state
+   */
+  abstract int build(Nfa.Builder builder, int next);
+
+  static long add(long n1, long n2) {
+    return Math.min(n1 + n2, Long.MAX_VALUE / 2);
+  }
+
+  static long multiply(long n1, long n2) {
+    if (n1 != 0 && n2 > Long.MAX_VALUE / 2 / n1)
+      return Long.MAX_VALUE / 2;
+    return n1 * n2;
+  }
+
+  static class Leaf extends Node {
+    private final CharPredicate predicate;
+
+    Leaf(CharPredicate predicate) {
+      this.predicate = predicate;
+    }
+
+    long stateCount() {
+      return 1;
+    }
+
+    int build(Nfa.Builder builder, int next) {
+      return builder.addChar(predicate, next);
+    }
+  }
+
+  static class Sequence extends Node {
+    private final List<Node> members;
+
+    Sequence(List<Node> members) {
+      this.members = members;
+    }
+
+    long stateCount() {
+      long n = 0;
+      for (Node member : members)
+        n = add(n, member.stateCount());
+      return n;
+    }
+
+    int build(Nfa.Builder builder, int next) {
+      for (int i = members.size() - 1; i >= 0; i--)
+        next = members.get(i).build(builder, next);
+      return next;
+    }
+  }
+
+  static class Choice extends Node {
+    private final List<Node> branches;
+
+    Choice(List<Node> branches) {
+      this.branches = branches;
+    }
+
+    long stateCount() {
+      long n = branches.size() - 1;
+      for (Node branch : branches)
+        n = add(n, branch.stateCount());
+      return n;
+    }
+
+    int build(Nfa.Builder builder, int next) {
+      int start = branches.get(branches.size() - 1).build(builder, next);
+      for (int i = branches.size() - 2; i >= 0; i--)
+        start = builder.addSplit(branches.get(i).build(builder, next), start);
+      return start;
+    }
+  }
+
+  static class Repeat extends Node {
+    private final Node child;
+    private final int min;
+    private final int max;
+
+    Repeat(Node child, int min, int max) {
+      this.child = child;
+      this.min = min;
+      this.max = max;
+    }
+
+    long stateCount() {
+      if (max == UNBOUNDED)
+        return add(multiply(child.stateCount(), Math.max(min, 1)), 1);
+      return add(multiply(child.stateCount(), max), max - min);
+    }
+
+    int build(Nfa.Builder builder, int next) {
+      int tail = next;
+      int copies = min;
+      if (max == UNBOUNDED) {
+        // the last required copy loops back to itself
+        int split = builder.addSplit(-1, next);
+        int body = child.build(builder, split);
+        builder.setOut1(split, body);
+        if (min == 0)
+          return split;
+        tail = body;
+        copies--;
+      }
+      else {
+        for (int i = min; i < max; i++)
+          tail = builder.addSplit(child.build(builder, tail), next);
+      }
+      for (int i = 0; i < copies; i++)
+        tail = child.build(builder, tail);
+      return tail;
+    }
+  }
+}
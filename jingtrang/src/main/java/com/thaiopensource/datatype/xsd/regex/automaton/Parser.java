@@ -0,0 +1,161 @@
+package com.thaiopensource.datatype.xsd.regex.automaton;
+
+import com.thaiopensource.datatype.xsd.regex.RegexSyntaxException;
+import com.thaiopensource.util.Utf16;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the syntax tree of a regular expression in the syntax of XML Schema Part 2.
+ * The expression must already have been checked, which the engine does by translating it
+ * with {@link com.thaiopensource.datatype.xsd.regex.java.Translator}; this parser only
+ * determines the structure of branches, pieces and atoms.
+ */
+class Parser {
+  private final String regExp;
+  private final int length;
+  private int pos = 0;
+  private final Map<String, CharPredicate> classes = new HashMap<String, CharPredicate>();
+
+  Parser(String regExp) {
+    this.regExp = regExp;
+    this.length = regExp.length();
+  }
+
+  Node parse() throws RegexSyntaxException {
+    return parseRegExp();
+  }
+
+  private Node parseRegExp() throws RegexSyntaxException {
+    Node branch = parseBranch();
+    if (pos == length || regExp.charAt(pos) != '|')
+      return branch;
+    List<Node> branches = new ArrayList<Node>();
+    branches.add(branch);
+    while (pos < length && regExp.charAt(pos) == '|') {
+      pos++;
+      branches.add(parseBranch());
+    }
+    return new Node.Choice(branches);
+  }
+
+  private Node parseBranch() throws RegexSyntaxException {
+    List<Node> pieces = new ArrayList<Node>();
+    while (pos < length) {
+      char c = regExp.charAt(pos);
+      if (c == '|' || c == ')')
+        break;
+      pieces.add(parseQuantifier(parseAtom()));
+    }
+    if (pieces.size() == 1)
+      return pieces.get(0);
+    return new Node.Sequence(pieces);
+  }
+
+  private Node parseAtom() throws RegexSyntaxException {
+    int start = pos;
+    char c = regExp.charAt(pos++);
+    switch (c) {
+    case '(':
+      Node node = parseRegExp();
+      pos++; // ')'
+      return node;
+    case '.':
+      return new Node.Leaf(CharPredicate.DOT);
+    case '\\':
+      char e = regExp.charAt(pos++);
+      switch (e) {
+      case 'n':
+        return literal('\n');
+      case 'r':
+        return literal('\r');
+      case 't':
+        return literal('\t');
+      case 'p':
+      case 'P':
+        pos = regExp.indexOf('}', pos) + 1;
+        return translated(start);
+      }
+      if ("\\|.-^?*+(){}[]".indexOf(e) >= 0)
+        return literal(e);
+      return translated(start);
+    case '[':
+      skipCharClassExpr();
+      return translated(start);
+    }
+    if (Utf16.isSurrogate1(c) && pos < length && Utf16.isSurrogate2(regExp.charAt(pos)))
+      return literal(Utf16.scalarValue(c, regExp.charAt(pos++)));
+    return literal(c);
+  }
+
+  private void skipCharClassExpr() {
+    // pos is just after the opening '['; a nested '[' can only start a subtraction
+    int depth = 1;
+    do {
+      char c = regExp.charAt(pos++);
+      if (c == '\\') {
+        char e = regExp.charAt(pos++);
+        if (e == 'p' || e == 'P')
+          pos = regExp.indexOf('}', pos) + 1;
+      }
+      else if (c == '[')
+        depth++;
+      else if (c == ']')
+        depth--;
+    } while (depth > 0);
+  }
+
+  private Node parseQuantifier(Node atom) {
+    if (pos == length)
+      return atom;
+    switch (regExp.charAt(pos)) {
+    case '*':
+      pos++;
+      return new Node.Repeat(atom, 0, Node.UNBOUNDED);
+    case '+':
+      pos++;
+      return new Node.Repeat(atom, 1, Node.UNBOUNDED);
+    case '?':
+      pos++;
+      return new Node.Repeat(atom, 0, 1);
+    case '{':
+      pos++;
+      int min = parseQuantExact();
+      int max = min;
+      if (regExp.charAt(pos) == ',') {
+        pos++;
+        max = regExp.charAt(pos) == '}' ? Node.UNBOUNDED : parseQuantExact();
+      }
+      pos++; // '}'
+      // no string is long enough to tell a bound of Integer.MAX_VALUE from no bound
+      if (max == Integer.MAX_VALUE)
+        max = Node.UNBOUNDED;
+      return new Node.Repeat(atom, min, max);
+    }
+    return atom;
+  }
+
+  private int parseQuantExact() {
+    long n = 0;
+    for (char c = regExp.charAt(pos); c >= '0' && c <= '9'; c = regExp.charAt(++pos))
+      n = Math.min(n * 10 + (c - '0'), Integer.MAX_VALUE);
+    return (int)n;
+  }
+
+  private Node literal(int c) {
+    return new Node.Leaf(new CharPredicate.Literal(c));
+  }
+
+  private Node translated(int start) throws RegexSyntaxException {
+    String classExpr = regExp.substring(start, pos);
+    CharPredicate predicate = classes.get(classExpr);
+    if (predicate == null) {
+      predicate = new CharPredicate.Translated(classExpr);
+      classes.put(classExpr, predicate);
+    }
+    return new Node.Leaf(predicate);
+  }
+}
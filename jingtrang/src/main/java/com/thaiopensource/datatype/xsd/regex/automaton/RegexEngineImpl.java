@@ -0,0 +1,35 @@
+package com.thaiopensource.datatype.xsd.regex.automaton;
+
+import com.thaiopensource.datatype.xsd.regex.Regex;
+import com.thaiopensource.datatype.xsd.regex.RegexEngine;
+import com.thaiopensource.datatype.xsd.regex.RegexSyntaxException;
+import com.thaiopensource.datatype.xsd.regex.java.Translator;
+
+import java.util.regex.Pattern;
+
+/**
+ * An implementation of <code>RegexEngine</code> that matches in time linear in the length
+ * of the string, whatever the regular expression, by running a lazily built deterministic
+ * automaton instead of a backtracking matcher.
+ * <p>
+ * Syntax checking and the meaning of character classes are shared with the
+ * <code>java.util.regex</code> based engine, so both accept the same expressions and agree on
+ * the strings they match. Counted repetitions are unrolled; an expression that would need more
+ * than <code>MAX_NFA_STATES</code> states when unrolled is matched with <code>java.util.regex</code>.
+ */
+public class RegexEngineImpl implements RegexEngine {
+  private static final int MAX_NFA_STATES = 10000;
+
+  public Regex compile(String str) throws RegexSyntaxException {
+    String translated = Translator.translate(str);
+    Node node = new Parser(str).parse();
+    if (node.stateCount() < MAX_NFA_STATES)
+      return new AutomatonRegex(Nfa.build(node));
+    final Pattern pattern = Pattern.compile(translated);
+    return new Regex() {
+      public boolean matches(String str) {
+        return pattern.matcher(str).matches();
+      }
+    };
+  }
+}
@@ -37,6 +37,7 @@ import com.thaiopensource.xml.util.Name;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 import org.xml.sax.XMLReader;
 
 import java.io.IOException;
@@ -48,6 +49,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 class Inferrer {
   private final Schema schema;
@@ -214,17 +217,118 @@ class Inferrer {
     }
   }
 
-  static SchemaCollection infer(String[] args, Options options, ErrorHandler eh) throws SAXException, IOException {
+  /**
+   * Parses a range of the documents. A range longer than a batch is split in halves that are parsed in parallel,
+   * and the handler of the second half is merged into that of the first.
+   */
+  static private class ParseTask extends RecursiveTask<InferHandler> {
+    private final String[] uris;
+    private final int start;
+    private final int end;
+    private final int batchSize;
+    private final Options options;
+    private final ErrorHandler eh;
+
+    ParseTask(String[] uris, int start, int end, int batchSize, Options options, ErrorHandler eh) {
+      this.uris = uris;
+      this.start = start;
+      this.end = end;
+      this.batchSize = batchSize;
+      this.options = options;
+      this.eh = eh;
+    }
+
+    protected InferHandler compute() {
+      if (end - start <= batchSize) {
+        try {
+          return parse(uris, start, end, options, eh);
+        }
+        catch (SAXException e) {
+          throw new ParseFailure(e);
+        }
+        catch (IOException e) {
+          throw new ParseFailure(e);
+        }
+      }
+      int middle = (start + end) >>> 1;
+      ParseTask second = new ParseTask(uris, middle, end, batchSize, options, eh);
+      second.fork();
+      InferHandler handler = new ParseTask(uris, start, middle, batchSize, options, eh).compute();
+      handler.merge(second.join());
+      return handler;
+    }
+  }
+
+  /**
+   * Carries a checked exception out of a ParseTask.
+   */
+  static private class ParseFailure extends RuntimeException {
+    ParseFailure(Exception cause) {
+      super(cause);
+    }
+  }
+
+  /**
+   * Serializes the reports of the parsing threads.
+   */
+  static private class SynchronizedErrorHandler implements ErrorHandler {
+    private final ErrorHandler eh;
+
+    SynchronizedErrorHandler(ErrorHandler eh) {
+      this.eh = eh;
+    }
+
+    public synchronized void warning(SAXParseException exception) throws SAXException {
+      eh.warning(exception);
+    }
+
+    public synchronized void error(SAXParseException exception) throws SAXException {
+      eh.error(exception);
+    }
+
+    public synchronized void fatalError(SAXParseException exception) throws SAXException {
+      eh.fatalError(exception);
+    }
+  }
+
+  private static InferHandler parse(String[] uris, int start, int end, Options options, ErrorHandler eh) throws SAXException, IOException {
     InferHandler handler = new InferHandler(new DatatypeLibraryLoader());
     XMLReader xr = new SAXResolver(options.resolver).createXMLReader();
     xr.setErrorHandler(eh);
     xr.setContentHandler(handler);
-    for (int i = 0; i < args.length; i++) {
-      InputSource in = new InputSource(args[i]);
+    for (int i = start; i < end; i++) {
+      InputSource in = new InputSource(uris[i]);
       if (options.encoding != null)
         in.setEncoding(options.encoding);
       xr.parse(in);
     }
+    return handler;
+  }
+
+  static SchemaCollection infer(String[] args, Options options, ErrorHandler eh) throws SAXException, IOException {
+    InferHandler handler;
+    int parallelism = ForkJoinPool.getCommonPoolParallelism();
+    if (args.length == 1 || parallelism <= 1)
+      handler = parse(args, 0, args.length, options, eh);
+    else {
+      // a few batches per thread, so that a thread with small documents can take over more of them
+      int batchSize = Math.max(1, args.length / (parallelism * 4));
+      if (eh != null)
+        eh = new SynchronizedErrorHandler(eh);
+      try {
+        handler = new ParseTask(args, 0, args.length, batchSize, options, eh).invoke();
+      }
+      catch (RuntimeException e) {
+        for (Throwable t = e; t != null; t = t.getCause())
+          if (t instanceof ParseFailure) {
+            Throwable cause = t.getCause();
+            if (cause instanceof SAXException)
+              throw (SAXException)cause;
+            throw (IOException)cause;
+          }
+        throw e;
+      }
+    }
     SchemaCollection sc = new SchemaCollection();
     sc.setMainUri(args[0]);
     SchemaDocument sd = new SchemaDocument(new Inferrer(handler.getSchema()).grammar);
@@ -8,15 +8,15 @@ import org.iso_relax.verifier.Verifier;
 import org.iso_relax.verifier.VerifierConfigurationException;
 
 class SchemaImpl implements Schema {
-  private final SchemaPatternBuilder spb;
+  private final ValidatorPatternBuilder vpb;
   private final Pattern start;
 
-  SchemaImpl(Pattern start, SchemaPatternBuilder spb) {
+  SchemaImpl(Pattern start, SchemaPatternBuilder spb, boolean compiled) {
     this.start = start;
-    this.spb = spb;
+    this.vpb = new ValidatorPatternBuilder(spb, start, compiled);
   }
 
   public Verifier newVerifier() throws VerifierConfigurationException {
-    return new VerifierImpl(start, new ValidatorPatternBuilder(spb));
+    return new VerifierImpl(start, vpb);
   }
 }
@@ -22,6 +22,8 @@ import org.xml.sax.EntityResolver;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
 import org.xml.sax.Locator;
 
 import javax.xml.transform.sax.SAXSource;
@@ -30,9 +32,29 @@ import java.io.IOException;
 public class VerifierFactoryImpl extends VerifierFactory {
   private final DatatypeLibraryFactory dlf = new DatatypeLibraryLoader();
   private final ErrorHandler eh = new DraconianErrorHandler();
+  private boolean compiled = false;
+
+  /**
+   * The name of the feature that makes the verifiers of a schema keep their derivatives in arrays
+   * indexed by name, like the compiled option of the RELAX NG schema reader. It is off by default.
+   */
+  static final public String FEATURE_COMPILED = "http://www.thaiopensource.com/validate/compiled";
 
   public VerifierFactoryImpl() { }
 
+  public void setFeature(String feature, boolean value) throws SAXNotRecognizedException, SAXNotSupportedException {
+    if (FEATURE_COMPILED.equals(feature))
+      compiled = value;
+    else
+      super.setFeature(feature, value);
+  }
+
+  public boolean isFeature(String feature) throws SAXNotRecognizedException, SAXNotSupportedException {
+    if (FEATURE_COMPILED.equals(feature))
+      return compiled;
+    return super.isFeature(feature);
+  }
+
   public Schema compileSchema(InputSource inputSource) throws SAXException, IOException {
     SchemaPatternBuilder spb = new SchemaPatternBuilder();
     Resolver resolver = null;
@@ -45,7 +67,7 @@ public class VerifierFactoryImpl extends VerifierFactory {
                                                                                                          saxResolver,
                                                                                                          eh);
     try {
-      return new SchemaImpl(SchemaBuilderImpl.parse(parseable, eh, dlf, spb, false), spb);
+      return new SchemaImpl(SchemaBuilderImpl.parse(parseable, eh, dlf, spb, false), spb, compiled);
     }
     catch (IllegalSchemaException e) {
       throw new SAXException("unreported schema error");
@@ -41,6 +41,7 @@ public abstract class SchemaFactoryImpl extends SchemaFactory2 {
   /* If this is true, then logically datatypeLibraryFactory is an instance of DatatypeLibraryLoader,
      but we create it lazily, so that we don't need to create it if the user specifies their own. */
   private boolean defaultDatatypeLibraryFactory = true;
+  private boolean compiled = false;
 
   /**
    * The name of the property that can be used to specify a DatatypeLibraryFactory.
@@ -57,6 +58,15 @@ public abstract class SchemaFactoryImpl extends SchemaFactory2 {
    */
   static final public String PROPERTY_DATATYPE_LIBRARY_FACTORY = "http://relaxng.org/properties/datatype-library-factory";
 
+  /**
+   * The name of the feature that makes the validators of a schema keep their derivatives in arrays
+   * indexed by name, like the compiled option of the RELAX NG schema reader.
+   * It is off by default.
+   * @see #setFeature
+   * @see #getFeature
+   */
+  static final public String FEATURE_COMPILED = "http://www.thaiopensource.com/validate/compiled";
+
   protected SchemaFactoryImpl() {
   }
 
@@ -73,7 +83,7 @@ public abstract class SchemaFactoryImpl extends SchemaFactory2 {
             = createParseable(source, saxResolver, eh);
     SchemaPatternBuilder spb = new SchemaPatternBuilder();
     try {
-      return new SchemaImpl(this, spb, SchemaBuilderImpl.parse(parseable, eh, getDatatypeLibraryFactory(), spb, false));
+      return new SchemaImpl(this, spb, SchemaBuilderImpl.parse(parseable, eh, getDatatypeLibraryFactory(), spb, false), compiled);
     }
     catch (IOException io) {
       // this is a truly bizarre API; why can't we just throw the IOException
@@ -87,6 +97,19 @@ public abstract class SchemaFactoryImpl extends SchemaFactory2 {
     }
   }
 
+  public void setFeature(String name, boolean value) throws SAXNotRecognizedException, SAXNotSupportedException {
+    if (FEATURE_COMPILED.equals(name))
+      compiled = value;
+    else
+      super.setFeature(name, value);
+  }
+
+  public boolean getFeature(String name) throws SAXNotRecognizedException, SAXNotSupportedException {
+    if (FEATURE_COMPILED.equals(name))
+      return compiled;
+    return super.getFeature(name);
+  }
+
   public void setProperty(String name, Object object) throws SAXNotRecognizedException, SAXNotSupportedException {
     if (PROPERTY_DATATYPE_LIBRARY_FACTORY.equals(name)) {
       if (object instanceof DatatypeLibraryFactory) {
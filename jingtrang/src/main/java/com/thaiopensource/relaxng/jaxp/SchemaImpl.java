@@ -8,16 +8,16 @@ import com.thaiopensource.validation.ValidatorHandler2;
 
 class SchemaImpl extends Schema2 {
   private final SchemaFactoryImpl factory;
-  private final SchemaPatternBuilder spb;
+  private final ValidatorPatternBuilder vpb;
   private final Pattern start;
   
-  SchemaImpl(SchemaFactoryImpl factory, SchemaPatternBuilder spb, Pattern start) {
+  SchemaImpl(SchemaFactoryImpl factory, SchemaPatternBuilder spb, Pattern start, boolean compiled) {
     this.factory = factory;
-    this.spb = spb;
+    this.vpb = new ValidatorPatternBuilder(spb, start, compiled);
     this.start = start;
   }
 
   public ValidatorHandler2 newValidatorHandler() {
-    return new ValidatorHandlerImpl(factory, start, new ValidatorPatternBuilder(spb));
+    return new ValidatorHandlerImpl(factory, start, vpb);
   }
 }
@@ -8,6 +8,8 @@ import com.thaiopensource.relaxng.sax.Context;
 import com.thaiopensource.validation.ValidatorHandler2;
 import com.thaiopensource.xml.sax.DraconianErrorHandler;
 import com.thaiopensource.xml.util.Name;
+import com.thaiopensource.xml.util.NameTable;
+import com.thaiopensource.xml.util.WhiteSpace;
 import org.w3c.dom.ls.LSResourceResolver;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
@@ -29,7 +31,8 @@ class ValidatorHandlerImpl extends ValidatorHandler2 {
   private ErrorHandler actualErrorHandler = defaultErrorHandler;
 
   private boolean bufferingCharacters = false;
-  private final StringBuffer charBuf = new StringBuffer();
+  private final StringBuilder charBuf = new StringBuilder();
+  private final NameTable nameTable = new NameTable();
   private Locator locator = null;
   private final Context context;
   private ContentHandler contentHandler = null;
@@ -57,13 +60,15 @@ class ValidatorHandlerImpl extends ValidatorHandler2 {
 			   Attributes atts) throws SAXException {
     if (bufferingCharacters) {
       bufferingCharacters = false;
-      check(matcher.matchTextBeforeStartTag(charBuf.toString(), context));
+      // same as matchTextBeforeStartTag (see Matcher), but without turning charBuf into a String
+      if (!WhiteSpace.isBlank(charBuf))
+        check(matcher.matchUntypedText(context));
     }
-    Name name = new Name(namespaceURI, localName);
+    Name name = nameTable.get(namespaceURI, localName);
     check(matcher.matchStartTagOpen(name, qName, context));
     int len = atts.getLength();
     for (int i = 0; i < len; i++) {
-      Name attName = new Name(atts.getURI(i), atts.getLocalName(i));
+      Name attName = nameTable.get(atts.getURI(i), atts.getLocalName(i));
       String attQName = atts.getQName(i);
       check(matcher.matchAttributeName(attName, attQName, context));
       check(matcher.matchAttributeValue(atts.getValue(i), attName, attQName, context));
@@ -80,13 +85,13 @@ class ValidatorHandlerImpl extends ValidatorHandler2 {
   public void endElement(String namespaceURI,
 			 String localName,
 			 String qName) throws SAXException {
+    Name name = nameTable.get(namespaceURI, localName);
     if (bufferingCharacters) {
       bufferingCharacters = false;
       if (charBuf.length() > 0)
-        check(matcher.matchTextBeforeEndTag(charBuf.toString(), new Name(namespaceURI, localName),
-                                            qName, context));
+        check(matcher.matchTextBeforeEndTag(charBuf, name, qName, context));
     }
-    check(matcher.matchEndTag(new Name(namespaceURI, localName), qName, context));
+    check(matcher.matchEndTag(name, qName, context));
     if (contentHandler != null)
       contentHandler.endElement(namespaceURI, localName, qName);
   }
@@ -189,7 +194,8 @@ class ValidatorHandlerImpl extends ValidatorHandler2 {
     // namespace declarations on the start-tag shouldn't apply to the characters before the start-tag
     if (bufferingCharacters) {
       bufferingCharacters = false;
-      check(matcher.matchTextBeforeStartTag(charBuf.toString(), context));
+      if (!WhiteSpace.isBlank(charBuf))
+        check(matcher.matchUntypedText(context));
     }
     context.startPrefixMapping(prefix, uri);
     if (contentHandler != null)
@@ -29,6 +29,10 @@ import java.io.IOException;
 public class MatchablePatternLoader {
   public static final int COMPACT_SYNTAX_FLAG = 0x1;
   public static final int FEASIBLE_FLAG = 0x2;
+  /**
+   * Keeps the derivatives of the matchers in arrays indexed by name, as RngProperty.COMPILED does for schemas.
+   */
+  public static final int COMPILED_FLAG = 0x4;
   public MatchablePattern load(Input input,
                                SAXResolver saxResolver,
                                ErrorHandler eh,
@@ -46,7 +50,7 @@ public class MatchablePatternLoader {
       Pattern start = SchemaBuilderImpl.parse(parseable, eh, dlf, spb, false);
       if ((flags & FEASIBLE_FLAG) != 0)
         start = FeasibleTransform.transform(spb, start);
-      return new MatchablePatternImpl(spb, start);
+      return new MatchablePatternImpl(spb, start, (flags & COMPILED_FLAG) != 0);
     }
     catch (IllegalSchemaException e) {
       throw new IncorrectSchemaException();
@@ -41,6 +41,10 @@ import java.util.Set;
  * to optimize calls to <code>matchTextBeforeStartTag</code>
  * or <code>matchTextBeforeEndTag</code> into calls to <code>matchUntypedText</code>,
  * but this is only allowed when <code>isTextTyped</code> returns false.
+ * The one exception is text followed by a StartTagOpen event: since text that is followed
+ * by an element can never match a datatype, <code>matchTextBeforeStartTag</code> may always be
+ * replaced by ignoring the text if it consists of whitespace and by calling
+ * <code>matchUntypedText</code> otherwise, whatever <code>isTextTyped</code> returns.
  * <p/>
  * <p>Each method <code>match<var>E</var></code> returns false if matching
  * the event against the document resulted in an error and true otherwise.
@@ -156,6 +160,18 @@ public interface Matcher {
    */
   boolean matchTextBeforeEndTag(String string, Name name, String qName, MatchContext context);
 
+  /**
+   * Same as <code>matchTextBeforeEndTag</code> with a String, for text collected in a buffer.
+   * The characters are used only during the call, so the caller may reuse the buffer afterwards.
+   *
+   * @param chars the text to be matched
+   * @param name the name of the parent element
+   * @param qName the qName of the parent element
+   * @param context a match context
+   * @return false if there was an error, true otherwise
+   */
+  boolean matchTextBeforeEndTag(CharSequence chars, Name name, String qName, MatchContext context);
+
   /**
    * Match a Text event that occurs immediately before a StartTagOpen event.
    * All text between two tags must be collected together: consecutive
@@ -180,7 +196,8 @@ public interface Matcher {
    * Furthermore it is not necessary to collect up all the text between tags;
    * consecutive calls to <code>matchUntypedText</code> are allowed.
    * <code>matchUntypedText</code> must not be used unless <code>isTextTyped</code>
-   * returns false.
+   * returns false, or the text is followed by a StartTagOpen event and contains
+   * non-whitespace characters.
    * @param context a match context
    * @return false if there was an error, true otherwise
    */
@@ -1,18 +1,19 @@
 package com.thaiopensource.relaxng.pattern;
 
+import com.thaiopensource.xml.util.WhiteSpace;
 import org.relaxng.datatype.ValidationContext;
 
 import java.util.List;
 
 class BlankDataDerivType extends DataDerivType {
-  private PatternMemo blankMemo;
-  private PatternMemo nonBlankMemo;
+  private volatile PatternMemo blankMemo;
+  private volatile PatternMemo nonBlankMemo;
 
   BlankDataDerivType() { }
 
-  PatternMemo dataDeriv(ValidatorPatternBuilder builder, Pattern p, String str, ValidationContext vc,
+  PatternMemo dataDeriv(ValidatorPatternBuilder builder, Pattern p, CharSequence str, ValidationContext vc,
                         List<DataDerivFailure> fail) {
-    if (DataDerivFunction.isBlank(str)) {
+    if (WhiteSpace.isBlank(str)) {
       if (blankMemo == null || (fail != null && blankMemo.isNotAllowed()))
         blankMemo = super.dataDeriv(builder, p, str, vc, fail);
       return blankMemo;
@@ -8,30 +8,27 @@ import java.util.List;
 
 class DataDataDerivType extends DataDerivType {
   private final DataPattern dp;
-  private PatternMemo validMemo;
-  private PatternMemo invalidMemo;
+  private volatile PatternMemo validMemo;
+  private volatile PatternMemo invalidMemo;
 
   DataDataDerivType(DataPattern dp) {
     this.dp = dp;
   }
 
-  PatternMemo dataDeriv(ValidatorPatternBuilder builder, Pattern p, String str, ValidationContext vc,
+  PatternMemo dataDeriv(ValidatorPatternBuilder builder, Pattern p, CharSequence str, ValidationContext vc,
                         List<DataDerivFailure> fail) {
-    boolean isValid;
     final Datatype dt = dp.getDatatype();
+    boolean isValid = DataDerivFunction.isValid(dt, str, vc);
     DataDerivFailure ddf = null;
-    if (fail != null) {
+    if (!isValid && fail != null) {
       try {
-        dt.checkValid(str, vc);
+        dt.checkValid(str.toString(), vc);
         isValid = true;
       }
       catch (DatatypeException e) {
-        isValid = false;
         ddf = new DataDerivFailure(dp, e);
       }
     }
-    else
-      isValid = dt.isValid(str, vc);
     if (isValid) {
       if (validMemo == null || (fail != null && validMemo.isNotAllowed()))
         validMemo = super.dataDeriv(builder, p, str, vc, fail);
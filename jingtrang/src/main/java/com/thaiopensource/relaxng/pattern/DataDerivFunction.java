@@ -1,5 +1,7 @@
 package com.thaiopensource.relaxng.pattern;
 
+import com.thaiopensource.datatype.CharSequenceDatatype;
+import com.thaiopensource.xml.util.WhiteSpace;
 import org.relaxng.datatype.Datatype;
 import org.relaxng.datatype.ValidationContext;
 import org.relaxng.datatype.DatatypeException;
@@ -10,32 +12,18 @@ import java.util.List;
 class DataDerivFunction extends AbstractPatternFunction<Pattern> {
   private final ValidatorPatternBuilder builder;
   private final ValidationContext vc;
-  private final String str;
+  private final CharSequence str;
+  // str as a String, made only when a datatype needs one
+  private String string;
   private final List<DataDerivFailure> fail;
 
-  DataDerivFunction(String str, ValidationContext vc, ValidatorPatternBuilder builder, List<DataDerivFailure> fail) {
+  DataDerivFunction(CharSequence str, ValidationContext vc, ValidatorPatternBuilder builder, List<DataDerivFailure> fail) {
     this.str = str;
     this.vc = vc;
     this.builder = builder;
     this.fail = fail;
   }
 
-  static boolean isBlank(String str) {
-    int len = str.length();
-    for (int i = 0; i < len; i++) {
-      switch (str.charAt(i)) {
-      case '\r':
-      case '\n':
-      case ' ':
-      case '\t':
-	break;
-      default:
-	return false;
-      }
-    }
-    return true;
-  }
-
   public Pattern caseText(TextPattern p) {
     return p;
   }
@@ -80,7 +68,7 @@ class DataDerivFunction extends AbstractPatternFunction<Pattern> {
 
   private PatternMemo tokenDeriv(PatternMemo p, int tokenIndex, int start, int end) {
     int failStartSize = failSize();
-    PatternMemo deriv = p.dataDeriv(str.substring(start, end), vc, fail);
+    PatternMemo deriv = p.dataDeriv(str.subSequence(start, end), vc, fail);
     if (fail != null && deriv.isNotAllowed()) {
       for (int i = fail.size() - 1; i >= failStartSize; --i)
         fail.get(i).setToken(tokenIndex, start, end);
@@ -90,13 +78,13 @@ class DataDerivFunction extends AbstractPatternFunction<Pattern> {
 
   public Pattern caseValue(ValuePattern p) {
     Datatype dt = p.getDatatype();
-    Object value = dt.createValue(str, vc);
+    Object value = dt.createValue(string(), vc);
     if (value != null && dt.sameValue(p.getValue(), value))
       return builder.makeEmpty();
     if (fail != null) {
       if (value == null) {
         try {
-          dt.checkValid(str, vc);
+          dt.checkValid(string(), vc);
         }
         catch (DatatypeException e) {
           fail.add(new DataDerivFailure(dt, p.getDatatypeName(), e));
@@ -111,20 +99,29 @@ class DataDerivFunction extends AbstractPatternFunction<Pattern> {
   public Pattern caseData(DataPattern p) {
     if (p.allowsAnyString())
       return builder.makeEmpty();
+    if (isValid(p.getDatatype(), str, vc))
+      return builder.makeEmpty();
     if (fail != null) {
       try {
-        p.getDatatype().checkValid(str, vc);
+        p.getDatatype().checkValid(string(), vc);
+        // isValid and checkValid disagree; trust checkValid as before
         return builder.makeEmpty();
       }
       catch (DatatypeException e) {
         fail.add(new DataDerivFailure(p, e));
-        return builder.makeNotAllowed();
       }
     }
-    if (p.getDatatype().isValid(str, vc))
-      return builder.makeEmpty();
-    else
-      return builder.makeNotAllowed();
+    return builder.makeNotAllowed();
+  }
+
+  /**
+   * Checks text against a datatype, without copying it into a String if the datatype can check
+   * the characters directly.
+   */
+  static boolean isValid(Datatype dt, CharSequence str, ValidationContext vc) {
+    if (dt instanceof CharSequenceDatatype)
+      return ((CharSequenceDatatype)dt).isValid(str, vc);
+    return dt.isValid(str.toString(), vc);
   }
 
   public Pattern caseDataExcept(DataExceptPattern p) {
@@ -142,7 +139,7 @@ class DataDerivFunction extends AbstractPatternFunction<Pattern> {
     final int failStartSize = failSize();
     if (memoApplyWithFailure(p1).isNullable())
       return p.getOperand2();
-    if (p1.isNullable() && isBlank(str)) {
+    if (p1.isNullable() && WhiteSpace.isBlank(str)) {
       clearFailures(failStartSize);
       return p.getOperand2();
     }
@@ -195,6 +192,12 @@ class DataDerivFunction extends AbstractPatternFunction<Pattern> {
     return builder.getPatternMemo(p).dataDeriv(str, vc, fail).getPattern();
   }
 
+  private String string() {
+    if (string == null)
+      string = str.toString();
+    return string;
+  }
+
   private int failSize() {
     return fail == null ? 0 : fail.size(); 
   }
@@ -4,16 +4,20 @@ import com.thaiopensource.relaxng.match.MatchablePattern;
 import com.thaiopensource.relaxng.match.Matcher;
 
 public class MatchablePatternImpl implements MatchablePattern {
-  private final SchemaPatternBuilder spb;
+  private final ValidatorPatternBuilder vpb;
   private final Pattern start;
 
   public MatchablePatternImpl(SchemaPatternBuilder spb, Pattern start) {
-    this.spb = spb;
+    this(spb, start, false);
+  }
+
+  public MatchablePatternImpl(SchemaPatternBuilder spb, Pattern start, boolean compiled) {
+    this.vpb = new ValidatorPatternBuilder(spb, start, compiled);
     this.start = start;
   }
 
   public Matcher createMatcher() {
-    return new PatternMatcher(start, new ValidatorPatternBuilder(spb));
+    return new PatternMatcher(start, vpb);
   }
 
 }
@@ -0,0 +1,177 @@
+package com.thaiopensource.relaxng.pattern;
+
+import com.thaiopensource.util.VoidValue;
+import com.thaiopensource.xml.util.Name;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Numbers the names a compiled ValidatorPatternBuilder can tell apart, once, from the name classes
+ * of the schema. Every name that a name class mentions gets an index of its own; any other name
+ * gets the index of its namespace if a name class mentions that namespace, and 0 otherwise.
+ * Names with the same index are contained in the same name classes, so they have the same derivatives.
+ * <p>
+ * Immutable once built; looking up a name neither allocates nor locks.
+ */
+final class NameIndex {
+  private final Name[] names;
+  private final int[] nameIndexes;
+  private final String[] namespaces;
+  private final int[] namespaceIndexes;
+  private final int size;
+
+  private NameIndex(Set<Name> nameSet, Set<String> namespaceSet) {
+    names = new Name[tableSize(nameSet.size())];
+    nameIndexes = new int[names.length];
+    namespaces = new String[tableSize(namespaceSet.size())];
+    namespaceIndexes = new int[namespaces.length];
+    int index = 1;
+    for (Name name : nameSet) {
+      int h;
+      for (h = firstIndex(name.hashCode(), names.length); names[h] != null; h = nextIndex(h, names.length))
+        ;
+      names[h] = name;
+      nameIndexes[h] = index++;
+    }
+    for (String ns : namespaceSet) {
+      int h;
+      for (h = firstIndex(ns.hashCode(), namespaces.length); namespaces[h] != null; h = nextIndex(h, namespaces.length))
+        ;
+      namespaces[h] = ns;
+      namespaceIndexes[h] = index++;
+    }
+    size = index;
+  }
+
+  static NameIndex build(Pattern start) {
+    Collector collector = new Collector();
+    start.apply(collector);
+    return new NameIndex(collector.names, collector.namespaces);
+  }
+
+  /**
+   * @return the number of indexes, all of which are less than it
+   */
+  int size() {
+    return size;
+  }
+
+  int get(Name name) {
+    for (int h = firstIndex(name.hashCode(), names.length); names[h] != null; h = nextIndex(h, names.length)) {
+      if (names[h] == name || names[h].equals(name))
+        return nameIndexes[h];
+    }
+    String ns = name.getNamespaceUri();
+    for (int h = firstIndex(ns.hashCode(), namespaces.length); namespaces[h] != null; h = nextIndex(h, namespaces.length)) {
+      if (namespaces[h].equals(ns))
+        return namespaceIndexes[h];
+    }
+    return 0;
+  }
+
+  // at most half full, so that a probe always ends at an empty slot
+  private static int tableSize(int n) {
+    int size = 2;
+    while (size < n << 1)
+      size <<= 1;
+    return size;
+  }
+
+  private static int firstIndex(int hc, int length) {
+    return hc & (length - 1);
+  }
+
+  private static int nextIndex(int i, int length) {
+    return i == 0 ? length - 1 : i - 1;
+  }
+
+  private static class Collector extends AbstractPatternFunction<VoidValue> implements NameClassVisitor {
+    private final Set<Name> names = new LinkedHashSet<Name>();
+    private final Set<String> namespaces = new LinkedHashSet<String>();
+    private final Set<Pattern> visited = new HashSet<Pattern>();
+
+    public VoidValue caseOther(Pattern p) {
+      return VoidValue.VOID;
+    }
+
+    public VoidValue caseElement(ElementPattern p) {
+      if (visited.add(p)) {
+        p.getNameClass().accept(this);
+        p.getContent().apply(this);
+      }
+      return VoidValue.VOID;
+    }
+
+    public VoidValue caseAttribute(AttributePattern p) {
+      if (visited.add(p))
+        p.getNameClass().accept(this);
+      return VoidValue.VOID;
+    }
+
+    public VoidValue caseRef(RefPattern p) {
+      if (visited.add(p))
+        p.getPattern().apply(this);
+      return VoidValue.VOID;
+    }
+
+    public VoidValue caseGroup(GroupPattern p) {
+      return caseBinary(p);
+    }
+
+    public VoidValue caseInterleave(InterleavePattern p) {
+      return caseBinary(p);
+    }
+
+    public VoidValue caseChoice(ChoicePattern p) {
+      return caseBinary(p);
+    }
+
+    public VoidValue caseAfter(AfterPattern p) {
+      return caseBinary(p);
+    }
+
+    public VoidValue caseOneOrMore(OneOrMorePattern p) {
+      p.getOperand().apply(this);
+      return VoidValue.VOID;
+    }
+
+    private VoidValue caseBinary(BinaryPattern p) {
+      p.getOperand1().apply(this);
+      p.getOperand2().apply(this);
+      return VoidValue.VOID;
+    }
+
+    public void visitChoice(NameClass nc1, NameClass nc2) {
+      nc1.accept(this);
+      nc2.accept(this);
+    }
+
+    public void visitNsName(String ns) {
+      namespaces.add(ns);
+    }
+
+    public void visitNsNameExcept(String ns, NameClass nc) {
+      namespaces.add(ns);
+      nc.accept(this);
+    }
+
+    public void visitAnyName() {
+    }
+
+    public void visitAnyNameExcept(NameClass nc) {
+      nc.accept(this);
+    }
+
+    public void visitName(Name name) {
+      names.add(name);
+    }
+
+    public void visitNull() {
+    }
+
+    public void visitError() {
+    }
+  }
+}
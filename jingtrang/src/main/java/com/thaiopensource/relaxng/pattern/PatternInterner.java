@@ -15,14 +15,16 @@ final class PatternInterner {
   }
 
   PatternInterner(PatternInterner parent) {
-    table = parent.table;
-    if (table != null)
-      table = table.clone();
-    used = parent.used;
-    usedLimit = parent.usedLimit;
+    synchronized (parent) {
+      table = parent.table;
+      if (table != null)
+        table = table.clone();
+      used = parent.used;
+      usedLimit = parent.usedLimit;
+    }
   }
 
-  Pattern intern(Pattern p) {
+  synchronized Pattern intern(Pattern p) {
     int h;
 
     if (table == null) {
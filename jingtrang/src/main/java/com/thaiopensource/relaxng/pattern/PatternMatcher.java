@@ -6,6 +6,7 @@ import com.thaiopensource.relaxng.match.Matcher;
 import com.thaiopensource.util.Equal;
 import com.thaiopensource.util.Localizer;
 import com.thaiopensource.xml.util.Name;
+import com.thaiopensource.xml.util.WhiteSpace;
 import org.relaxng.datatype.Datatype;
 
 import java.util.ArrayList;
@@ -190,6 +191,10 @@ public class PatternMatcher implements Cloneable, Matcher {
   }
 
   public boolean matchTextBeforeEndTag(String string, Name name, String qName, MatchContext context) {
+    return matchTextBeforeEndTag((CharSequence)string, name, qName, context);
+  }
+
+  public boolean matchTextBeforeEndTag(CharSequence string, Name name, String qName, MatchContext context) {
     if (textTyped) {
       ignoreNextEndTagOrAttributeValue = true;
       return setDataDeriv(string, name, qName, context);
@@ -202,8 +207,8 @@ public class PatternMatcher implements Cloneable, Matcher {
     return matchUntypedText(string, context);
   }
 
-  private boolean matchUntypedText(String string, MatchContext context) {
-    if (DataDerivFunction.isBlank(string))
+  private boolean matchUntypedText(CharSequence string, MatchContext context) {
+    if (WhiteSpace.isBlank(string))
       return true;
     return matchUntypedText(context);
   }
@@ -218,7 +223,7 @@ public class PatternMatcher implements Cloneable, Matcher {
     return textTyped;
   }
 
-  private boolean setDataDeriv(String string, Name name, String qName, MatchContext context) {
+  private boolean setDataDeriv(CharSequence string, Name name, String qName, MatchContext context) {
     textTyped = false;
     PatternMemo textOnlyMemo = memo.textOnly();
     dataDerivFailureList.clear();
@@ -229,13 +234,13 @@ public class PatternMatcher implements Cloneable, Matcher {
     if (!ok && (!next.isNotAllowed()
                 || textOnlyMemo.emptyAfter().dataDeriv(string, context).isNotAllowed())) {
       NormalizedNameClass nnc = memo.possibleStartTagNames();
-      if (!nnc.isEmpty() && DataDerivFunction.isBlank(string))
+      if (!nnc.isEmpty() && WhiteSpace.isBlank(string))
         error("blank_not_allowed",
               errorArgQName(qName, name, context, false),
               expectedContent(context));
       else
         error("invalid_element_value", errorArgQName(qName, name, context, false),
-              formatDataDerivFailures(string, context));
+              formatDataDerivFailures(string.toString(), context));
     }
     memo = next;
     return ok;
@@ -3,27 +3,41 @@ package com.thaiopensource.relaxng.pattern;
 import com.thaiopensource.xml.util.Name;
 import org.relaxng.datatype.ValidationContext;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Memo slots may be filled concurrently by validators sharing a ValidatorPatternBuilder.
+ * A race only means that a derivative is computed twice; since getPatternMemo returns
+ * a unique PatternMemo for each pattern, both computations yield the same result.
+ */
 final class PatternMemo {
+  /**
+   * The number of entries at which a memo map keyed by something from the document (a name or a value)
+   * is cleared, so that documents with many distinct names or values cannot make it grow without bound.
+   */
+  static final int MAX_MAP_SIZE = 512;
   private final Pattern pattern;
   private final ValidatorPatternBuilder builder;
   private final boolean notAllowed;
-  private PatternMemo memoEndAttributes;
-  private PatternMemo memoTextOnly;
-  private PatternMemo memoEndTagDeriv;
-  private PatternMemo memoMixedTextDeriv;
-  private PatternMemo memoIgnoreMissingAttributes;
-  private Map<Name, PatternMemo> startTagOpenDerivMap;
-  private Map<Name, PatternMemo> startTagOpenRecoverDerivMap;
-  private Map<Name, PatternMemo> startAttributeDerivMap;
-  private DataDerivType memoDataDerivType;
-  private PatternMemo memoRecoverAfter;
-  private PatternMemo memoEmptyAfter;
-  private NormalizedNameClass memoPossibleAttributeNames;
-  private NormalizedNameClass memoPossibleStartTagNames;
+  private volatile PatternMemo memoEndAttributes;
+  private volatile PatternMemo memoTextOnly;
+  private volatile PatternMemo memoEndTagDeriv;
+  private volatile PatternMemo memoMixedTextDeriv;
+  private volatile PatternMemo memoIgnoreMissingAttributes;
+  private volatile Map<Name, PatternMemo> startTagOpenDerivMap;
+  private volatile Map<Name, PatternMemo> startTagOpenRecoverDerivMap;
+  private volatile Map<Name, PatternMemo> startAttributeDerivMap;
+  // used instead of the maps when the builder is compiled; indexed by ValidatorPatternBuilder.getNameIndex
+  private volatile PatternMemo[] startTagOpenDerivTable;
+  private volatile PatternMemo[] startTagOpenRecoverDerivTable;
+  private volatile PatternMemo[] startAttributeDerivTable;
+  private volatile DataDerivType memoDataDerivType;
+  private volatile PatternMemo memoRecoverAfter;
+  private volatile PatternMemo memoEmptyAfter;
+  private volatile NormalizedNameClass memoPossibleAttributeNames;
+  private volatile NormalizedNameClass memoPossibleStartTagNames;
 
   PatternMemo(Pattern pattern, ValidatorPatternBuilder builder) {
     this.pattern = pattern;
@@ -115,8 +129,19 @@ final class PatternMemo {
 
   private PatternMemo startTagOpenDeriv(Name name, StartTagOpenDerivFunction f) {
     PatternMemo tem;
+    if (builder.isCompiled()) {
+      int index = builder.getNameIndex(name);
+      tem = lookup(startTagOpenDerivTable, index);
+      if (tem == null) {
+        if (f == null)
+          f = new StartTagOpenDerivFunction(name, builder);
+        tem = applyForPatternMemo(f);
+        startTagOpenDerivTable = store(startTagOpenDerivTable, index, tem);
+      }
+      return tem;
+    }
     if (startTagOpenDerivMap == null)
-      startTagOpenDerivMap = new HashMap<Name, PatternMemo>();
+      startTagOpenDerivMap = new ConcurrentHashMap<Name, PatternMemo>();
     else {
       tem = startTagOpenDerivMap.get(name);
       if (tem != null)
@@ -125,7 +150,7 @@ final class PatternMemo {
     if (f == null)
       f = new StartTagOpenDerivFunction(name, builder);
     tem = applyForPatternMemo(f);
-    startTagOpenDerivMap.put(name, tem);
+    putBounded(startTagOpenDerivMap, name, tem);
     return tem;
   }
 
@@ -139,8 +164,19 @@ final class PatternMemo {
 
   private PatternMemo startTagOpenRecoverDeriv(Name name, StartTagOpenRecoverDerivFunction f) {
     PatternMemo tem;
+    if (builder.isCompiled()) {
+      int index = builder.getNameIndex(name);
+      tem = lookup(startTagOpenRecoverDerivTable, index);
+      if (tem == null) {
+        if (f == null)
+          f = new StartTagOpenRecoverDerivFunction(name, builder);
+        tem = applyForPatternMemo(f);
+        startTagOpenRecoverDerivTable = store(startTagOpenRecoverDerivTable, index, tem);
+      }
+      return tem;
+    }
     if (startTagOpenRecoverDerivMap == null)
-      startTagOpenRecoverDerivMap = new HashMap<Name, PatternMemo>();
+      startTagOpenRecoverDerivMap = new ConcurrentHashMap<Name, PatternMemo>();
     else {
       tem = startTagOpenRecoverDerivMap.get(name);
       if (tem != null)
@@ -149,7 +185,7 @@ final class PatternMemo {
     if (f == null)
       f = new StartTagOpenRecoverDerivFunction(name, builder);
     tem = applyForPatternMemo(f);
-    startTagOpenRecoverDerivMap.put(name, tem);
+    putBounded(startTagOpenRecoverDerivMap, name, tem);
     return tem;
   }
 
@@ -163,8 +199,19 @@ final class PatternMemo {
 
   private PatternMemo startAttributeDeriv(Name name, StartAttributeDerivFunction f) {
     PatternMemo tem;
+    if (builder.isCompiled()) {
+      int index = builder.getNameIndex(name);
+      tem = lookup(startAttributeDerivTable, index);
+      if (tem == null) {
+        if (f == null)
+          f = new StartAttributeDerivFunction(name, builder);
+        tem = applyForPatternMemo(f);
+        startAttributeDerivTable = store(startAttributeDerivTable, index, tem);
+      }
+      return tem;
+    }
     if (startAttributeDerivMap == null)
-      startAttributeDerivMap = new HashMap<Name, PatternMemo>();
+      startAttributeDerivMap = new ConcurrentHashMap<Name, PatternMemo>();
     else {
       tem = startAttributeDerivMap.get(name);
       if (tem != null)
@@ -173,7 +220,7 @@ final class PatternMemo {
     if (f == null)
       f = new StartAttributeDerivFunction(name, builder);
     tem = applyForPatternMemo(f);
-    startAttributeDerivMap.put(name, tem);
+    putBounded(startAttributeDerivMap, name, tem);
     return tem;
   }
 
@@ -183,11 +230,11 @@ final class PatternMemo {
     return memoDataDerivType;
   }
 
-  PatternMemo dataDeriv(String str, ValidationContext vc) {
+  PatternMemo dataDeriv(CharSequence str, ValidationContext vc) {
     return dataDerivType().dataDeriv(builder, pattern, str, vc, null);
   }
 
-  PatternMemo dataDeriv(String str, ValidationContext vc, List<DataDerivFailure> fail) {
+  PatternMemo dataDeriv(CharSequence str, ValidationContext vc, List<DataDerivFailure> fail) {
     return dataDerivType().dataDeriv(builder, pattern, str, vc, fail);
   }
 
@@ -224,6 +271,26 @@ final class PatternMemo {
     return memoPossibleAttributeNames;
   }
 
+  static <K> void putBounded(Map<K, PatternMemo> map, K key, PatternMemo memo) {
+    if (map.size() >= MAX_MAP_SIZE)
+      map.clear();
+    map.put(key, memo);
+  }
+
+  private static PatternMemo lookup(PatternMemo[] table, int index) {
+    if (table == null)
+      return null;
+    return table[index];
+  }
+
+  // the tables have a slot for every name index, so they never grow
+  private PatternMemo[] store(PatternMemo[] table, int index, PatternMemo memo) {
+    if (table == null)
+      table = new PatternMemo[builder.getNameIndexCount()];
+    table[index] = memo;
+    return table;
+  }
+
   private PatternMemo applyForPatternMemo(PatternFunction<Pattern> f) {
     return builder.getPatternMemo(pattern.apply(f));
   }
@@ -8,11 +8,11 @@ import java.util.List;
  * DerivType for a Pattern whose derivative wrt any data is always the same.
  */
 class SingleDataDerivType extends DataDerivType {
-  private PatternMemo memo;
+  private volatile PatternMemo memo;
 
   SingleDataDerivType() { }
 
-  PatternMemo dataDeriv(ValidatorPatternBuilder builder, Pattern p, String str, ValidationContext vc,
+  PatternMemo dataDeriv(ValidatorPatternBuilder builder, Pattern p, CharSequence str, ValidationContext vc,
                         List<DataDerivFailure> fail) {
     if (memo == null)
       // this type never adds any failures
@@ -6,9 +6,20 @@ import com.thaiopensource.xml.util.Name;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Builds and memoizes the derivatives used during validation.
+ * An instance is safe for use by multiple threads, so that all validators created
+ * from one schema can share a single derivative cache.
+ * <p>
+ * In compiled mode, the names the schema can tell apart are numbered once, from its name
+ * classes (see NameIndex), and the name-dependent derivatives of each PatternMemo are stored
+ * in arrays indexed by that number, so that the memos form a lazily built automaton.
+ */
 public class ValidatorPatternBuilder extends PatternBuilder {
-  private final Map<Pattern, PatternMemo> patternMemoMap = new HashMap<Pattern, PatternMemo>();
+  private final ConcurrentMap<Pattern, PatternMemo> patternMemoMap = new ConcurrentHashMap<Pattern, PatternMemo>();
   private final PatternFunction<Pattern> endAttributesFunction;
   private final PatternFunction<Pattern> ignoreMissingAttributesFunction;
   private final PatternFunction<Pattern> endTagDerivFunction;
@@ -22,8 +33,7 @@ public class ValidatorPatternBuilder extends PatternBuilder {
   private final PatternFunction<VoidValue> noteChoicesFunction = new NoteChoicesFunction();
   private final PatternFunction<Set<Name>> requiredElementsFunction = new RequiredElementsFunction();
   private final PatternFunction<Set<Name>> requiredAttributesFunction = new RequiredAttributesFunction();
-  private final PossibleNamesFunction possibleStartTagNamesFunction = new PossibleStartTagNamesFunction();
-  private final PossibleNamesFunction possibleAttributeNamesFunction = new PossibleAttributeNamesFunction();
+  private final NameIndex nameIndex;
 
   private class NoteChoicesFunction extends AbstractPatternFunction<VoidValue> {
     public VoidValue caseOther(Pattern p) {
@@ -60,7 +70,15 @@ public class ValidatorPatternBuilder extends PatternBuilder {
   }
 
   public ValidatorPatternBuilder(PatternBuilder builder) {
+    this(builder, null, false);
+  }
+
+  /**
+   * @param start the pattern the validators will start with; used only if compiled is true
+   */
+  public ValidatorPatternBuilder(PatternBuilder builder, Pattern start, boolean compiled) {
     super(builder);
+    this.nameIndex = compiled ? NameIndex.build(start) : null;
     endAttributesFunction = new EndAttributesFunction(this);
     ignoreMissingAttributesFunction = new IgnoreMissingAttributesFunction(this);
     endTagDerivFunction = new EndTagDerivFunction(this);
@@ -74,11 +92,25 @@ public class ValidatorPatternBuilder extends PatternBuilder {
     PatternMemo memo = patternMemoMap.get(p);
     if (memo == null) {
       memo = new PatternMemo(p, this);
-      patternMemoMap.put(p, memo);
+      PatternMemo tem = patternMemoMap.putIfAbsent(p, memo);
+      if (tem != null)
+        return tem;
     }
     return memo;
   }
 
+  boolean isCompiled() {
+    return nameIndex != null;
+  }
+
+  int getNameIndex(Name name) {
+    return nameIndex.get(name);
+  }
+
+  int getNameIndexCount() {
+    return nameIndex.size();
+  }
+
   PatternFunction<Pattern> getEndAttributesFunction() {
     return endAttributesFunction;
   }
@@ -95,12 +127,14 @@ public class ValidatorPatternBuilder extends PatternBuilder {
     return requiredAttributesFunction;
   }
 
+  // PossibleNamesFunction accumulates state, so each use needs its own instance
+
   PossibleNamesFunction getPossibleStartTagNamesFunction() {
-    return possibleStartTagNamesFunction;
+    return new PossibleStartTagNamesFunction();
   }
 
   PossibleNamesFunction getPossibleAttributeNamesFunction() {
-    return possibleAttributeNamesFunction;
+    return new PossibleAttributeNamesFunction();
   }
 
   PatternFunction<Pattern> getEndTagDerivFunction() {
@@ -128,7 +162,8 @@ public class ValidatorPatternBuilder extends PatternBuilder {
     return interner.intern(p);
   }
 
-  Pattern makeChoice(Pattern p1, Pattern p2) {
+  // synchronized because choiceMap is shared scratch space
+  synchronized Pattern makeChoice(Pattern p1, Pattern p2) {
     if (p1 == p2)
       return p1;
     if (p1 == notAllowed)
@@ -5,9 +5,9 @@ import org.relaxng.datatype.Datatype;
 import org.relaxng.datatype.DatatypeException;
 import org.relaxng.datatype.ValidationContext;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * DataDerivType for a pattern which is a choice of values of the same datatype.
@@ -15,8 +15,8 @@ import java.util.Map;
 class ValueDataDerivType extends DataDerivType {
   private final Datatype dt;
   private final Name dtName;
-  private PatternMemo noValue;
-  private Map<DatatypeValue, PatternMemo> valueMap;
+  private volatile PatternMemo noValue;
+  private volatile Map<DatatypeValue, PatternMemo> valueMap;
 
   ValueDataDerivType(Datatype dt, Name dtName) {
     this.dt = dt;
@@ -27,15 +27,17 @@ class ValueDataDerivType extends DataDerivType {
     return new ValueDataDerivType(dt, dtName);
   }
 
-  PatternMemo dataDeriv(ValidatorPatternBuilder builder, Pattern p, String str, ValidationContext vc,
+  PatternMemo dataDeriv(ValidatorPatternBuilder builder, Pattern p, CharSequence str, ValidationContext vc,
                         List<DataDerivFailure> fail) {
-    Object value = dt.createValue(str, vc);
+    // values are created from a String anyway
+    String string = str.toString();
+    Object value = dt.createValue(string, vc);
     if (value == null) {
       if (noValue == null)
-        noValue = super.dataDeriv(builder, p, str, vc, fail);
+        noValue = super.dataDeriv(builder, p, string, vc, fail);
       else if (fail != null && noValue.isNotAllowed()) {
         try {
-          dt.checkValid(str, vc);
+          dt.checkValid(string, vc);
         }
         catch (DatatypeException e) {
           fail.add(new DataDerivFailure(dt, dtName, e));
@@ -46,14 +48,14 @@ class ValueDataDerivType extends DataDerivType {
     else {
       DatatypeValue dtv = new DatatypeValue(value, dt);
       if (valueMap == null)
-        valueMap = new HashMap<DatatypeValue, PatternMemo>();
+        valueMap = new ConcurrentHashMap<DatatypeValue, PatternMemo>();
       PatternMemo tem = valueMap.get(dtv);
       if (tem == null) {
-        tem = super.dataDeriv(builder, p, str, vc, fail);
-        valueMap.put(dtv, tem);
+        tem = super.dataDeriv(builder, p, string, vc, fail);
+        PatternMemo.putBounded(valueMap, dtv, tem);
       }
       else if (tem.isNotAllowed() && fail != null)
-        super.dataDeriv(builder, p, str, vc, fail);
+        super.dataDeriv(builder, p, string, vc, fail);
       return tem;
     }
   }
@@ -3,6 +3,7 @@ package com.thaiopensource.relaxng.sax;
 import com.thaiopensource.relaxng.pattern.IdSoundnessChecker;
 import com.thaiopensource.relaxng.pattern.IdTypeMap;
 import com.thaiopensource.xml.util.Name;
+import com.thaiopensource.xml.util.NameTable;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.ErrorHandler;
@@ -11,6 +12,7 @@ import org.xml.sax.SAXException;
 
 public class IdContentHandler implements ContentHandler {
   private final IdSoundnessChecker checker;
+  private final NameTable nameTable = new NameTable();
   private Locator locator;
 
   public IdContentHandler(IdTypeMap idTypeMap, ErrorHandler eh) {
@@ -46,10 +48,10 @@ public class IdContentHandler implements ContentHandler {
 
   public void startElement(String namespaceUri, String localName, String qName, Attributes attributes)
           throws SAXException {
-    Name elementName = new Name(namespaceUri, localName);
+    Name elementName = nameTable.get(namespaceUri, localName);
     int len = attributes.getLength();
     for (int i = 0; i < len; i++) {
-      Name attributeName = new Name(attributes.getURI(i), attributes.getLocalName(i));
+      Name attributeName = nameTable.get(attributes.getURI(i), attributes.getLocalName(i));
       String value = attributes.getValue(i);
       checker.attribute(elementName, attributeName, value, locator);
     }
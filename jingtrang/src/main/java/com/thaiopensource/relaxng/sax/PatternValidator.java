@@ -5,6 +5,8 @@ import com.thaiopensource.relaxng.pattern.Pattern;
 import com.thaiopensource.relaxng.pattern.PatternMatcher;
 import com.thaiopensource.relaxng.pattern.ValidatorPatternBuilder;
 import com.thaiopensource.xml.util.Name;
+import com.thaiopensource.xml.util.NameTable;
+import com.thaiopensource.xml.util.WhiteSpace;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.DTDHandler;
@@ -18,6 +20,7 @@ public class PatternValidator extends Context implements ContentHandler, DTDHand
   private final ErrorHandler eh;
   private boolean bufferingCharacters = false;
   private final StringBuilder charBuf = new StringBuilder();
+  private final NameTable nameTable = new NameTable();
   private Locator locator = null;
 
   public void startElement(String namespaceURI,
@@ -26,13 +29,15 @@ public class PatternValidator extends Context implements ContentHandler, DTDHand
 			   Attributes atts) throws SAXException {
     if (bufferingCharacters) {
       bufferingCharacters = false;
-      check(matcher.matchTextBeforeStartTag(charBuf.toString(), this));
+      // same as matchTextBeforeStartTag (see Matcher), but without turning charBuf into a String
+      if (!WhiteSpace.isBlank(charBuf))
+        check(matcher.matchUntypedText(this));
     }
-    Name name = new Name(namespaceURI, localName);
+    Name name = nameTable.get(namespaceURI, localName);
     check(matcher.matchStartTagOpen(name, qName, this));
     int len = atts.getLength();
     for (int i = 0; i < len; i++) {
-      Name attName = new Name(atts.getURI(i), atts.getLocalName(i));
+      Name attName = nameTable.get(atts.getURI(i), atts.getLocalName(i));
       String attQName = atts.getQName(i);
       check(matcher.matchAttributeName(attName, attQName, this));
       check(matcher.matchAttributeValue(atts.getValue(i), attName, attQName, this));
@@ -47,13 +52,13 @@ public class PatternValidator extends Context implements ContentHandler, DTDHand
   public void endElement(String namespaceURI,
 			 String localName,
 			 String qName) throws SAXException {
+    Name name = nameTable.get(namespaceURI, localName);
     if (bufferingCharacters) {
       bufferingCharacters = false;
       if (charBuf.length() > 0)
-        check(matcher.matchTextBeforeEndTag(charBuf.toString(), new Name(namespaceURI, localName),
-                                            qName, this));
+        check(matcher.matchTextBeforeEndTag(charBuf, name, qName, this));
     }
-    check(matcher.matchEndTag(new Name(namespaceURI, localName), qName, this));
+    check(matcher.matchEndTag(name, qName, this));
   }
 
   public void characters(char ch[], int start, int length) throws SAXException {
@@ -94,7 +99,8 @@ public class PatternValidator extends Context implements ContentHandler, DTDHand
   public void startPrefixMapping(String prefix, String uri) throws SAXException {
     if (bufferingCharacters) {
       bufferingCharacters = false;
-      check(matcher.matchTextBeforeStartTag(charBuf.toString(), this));
+      if (!WhiteSpace.isBlank(charBuf))
+        check(matcher.matchUntypedText(this));
     }
     super.startPrefixMapping(prefix, uri);
   }
@@ -17,11 +17,26 @@ import java.util.List;
 
 /**
  * A Resolver that uses OASIS XML catalogs.
+ * The catalogs are loaded once; after that, system and URI lookups that the entries of an OasisCatalog decide
+ * are answered from a CompiledCatalog without locking, and every result is kept in a ResolutionCache.
+ * Only the remaining lookups, which may load subordinate catalogs, hold the lock of the Catalog.
  */
 public class CatalogResolver extends AbstractResolver {
+  private static final int CACHE_CAPACITY = 1024;
+  private static final char SYSTEM = 'S';
+  private static final char URI = 'U';
+  private static final char ENTITY = 'E';
+  private static final char DOCTYPE = 'D';
+  private static final char PUBLIC = 'P';
+
   private final Catalog catalog;
-  private boolean catalogLoaded = false;
-  private boolean hadCatalogError = false;
+  // system and URI lookups, by far the most frequent, are keyed by the URI itself
+  private final ResolutionCache<String> systemCache = new ResolutionCache<String>(CACHE_CAPACITY);
+  private final ResolutionCache<String> uriCache = new ResolutionCache<String>(CACHE_CAPACITY);
+  private final ResolutionCache<LookupKey> externalIdCache = new ResolutionCache<LookupKey>(CACHE_CAPACITY);
+  private volatile boolean catalogLoaded = false;
+  private volatile boolean hadCatalogError = false;
+  private volatile CompiledCatalog compiledCatalog;
 
   // Allow somebody to customize in a different way, but still use our resolve logic.
   public CatalogResolver(Catalog catalog) {
@@ -40,7 +55,7 @@ public class CatalogResolver extends AbstractResolver {
     this(catalogUris, new SAXResolver());
   }
   
-  public synchronized void resolve(Identifier id, Input input) throws IOException, ResolverException {
+  public void resolve(Identifier id, Input input) throws IOException, ResolverException {
     if (input.isResolved())
       return;
     if (hadCatalogError)
@@ -57,26 +72,23 @@ public class CatalogResolver extends AbstractResolver {
     String resolved = null;
     boolean isExternalIdentifier = (id instanceof ExternalIdentifier);
     try {
-      if (!catalogLoaded) {
-        catalogLoaded = true;
-        catalog.loadSystemCatalogs();
-      }
+      loadCatalog();
       if (absoluteUri != null)
-        resolved = isExternalIdentifier ? catalog.resolveSystem(absoluteUri) : catalog.resolveURI(absoluteUri);
+        resolved = isExternalIdentifier ? lookup(SYSTEM, null, null, absoluteUri) : lookup(URI, null, null, absoluteUri);
       if (resolved == null) {
         if (!isExternalIdentifier)
-          resolved = catalog.resolveURI(id.getUriReference());
+          resolved = lookup(URI, null, null, id.getUriReference());
         else if (id instanceof ExternalEntityIdentifier) {
           ExternalEntityIdentifier xid = (ExternalEntityIdentifier)id;
-          resolved = catalog.resolveEntity(xid.getEntityName(), xid.getPublicId(), xid.getUriReference());
+          resolved = lookup(ENTITY, xid.getEntityName(), xid.getPublicId(), xid.getUriReference());
         }
         else if (id instanceof ExternalDTDSubsetIdentifier) {
           ExternalDTDSubsetIdentifier xid = (ExternalDTDSubsetIdentifier)id;
-          resolved = catalog.resolveDoctype(xid.getDoctypeName(), xid.getPublicId(), xid.getUriReference());
+          resolved = lookup(DOCTYPE, xid.getDoctypeName(), xid.getPublicId(), xid.getUriReference());
         }
         else {
           ExternalIdentifier xid = (ExternalIdentifier)id;
-          resolved = catalog.resolvePublic(xid.getPublicId(), xid.getUriReference());
+          resolved = lookup(PUBLIC, null, xid.getPublicId(), xid.getUriReference());
         }
       }
     }
@@ -87,4 +99,108 @@ public class CatalogResolver extends AbstractResolver {
     if (resolved != null)
       input.setUri(resolved);
   }
+
+  private void loadCatalog() throws IOException {
+    if (catalogLoaded)
+      return;
+    synchronized (catalog) {
+      if (catalogLoaded)
+        return;
+      try {
+        catalog.loadSystemCatalogs();
+        // a subclass may resolve differently from the entries it holds
+        if (catalog.getClass() == OasisCatalog.class)
+          compiledCatalog = ((OasisCatalog)catalog).compile();
+      }
+      finally {
+        catalogLoaded = true;
+      }
+    }
+  }
+
+  private String lookup(char kind, String name, String publicId, String uri) throws IOException {
+    String resolved;
+    LookupKey key = null;
+    if (kind == SYSTEM)
+      resolved = systemCache.get(uri);
+    else if (kind == URI)
+      resolved = uriCache.get(uri);
+    else {
+      key = new LookupKey(kind, name, publicId, uri);
+      resolved = externalIdCache.get(key);
+    }
+    if (resolved == null) {
+      CompiledCatalog compiled = compiledCatalog;
+      if (compiled != null) {
+        if (kind == SYSTEM)
+          resolved = compiled.resolveSystem(uri);
+        else if (kind == URI)
+          resolved = compiled.resolveURI(uri);
+      }
+      if (resolved == null) {
+        synchronized (catalog) {
+          resolved = lookupCatalog(kind, name, publicId, uri);
+        }
+        if (resolved == null)
+          resolved = CompiledCatalog.NOT_FOUND;
+      }
+      if (kind == SYSTEM)
+        systemCache.put(uri, resolved);
+      else if (kind == URI)
+        uriCache.put(uri, resolved);
+      else
+        externalIdCache.put(key, resolved);
+    }
+    return resolved == CompiledCatalog.NOT_FOUND ? null : resolved;
+  }
+
+  private String lookupCatalog(char kind, String name, String publicId, String uri) throws IOException {
+    switch (kind) {
+    case SYSTEM:
+      return catalog.resolveSystem(uri);
+    case URI:
+      return catalog.resolveURI(uri);
+    case ENTITY:
+      return catalog.resolveEntity(name, publicId, uri);
+    case DOCTYPE:
+      return catalog.resolveDoctype(name, publicId, uri);
+    default:
+      return catalog.resolvePublic(publicId, uri);
+    }
+  }
+
+  private static final class LookupKey {
+    private final char kind;
+    private final String name;
+    private final String publicId;
+    private final String uri;
+
+    LookupKey(char kind, String name, String publicId, String uri) {
+      this.kind = kind;
+      this.name = name;
+      this.publicId = publicId;
+      this.uri = uri;
+    }
+
+    public boolean equals(Object obj) {
+      if (!(obj instanceof LookupKey))
+        return false;
+      LookupKey other = (LookupKey)obj;
+      return kind == other.kind
+             && equal(name, other.name)
+             && equal(publicId, other.publicId)
+             && equal(uri, other.uri);
+    }
+
+    public int hashCode() {
+      int hc = kind;
+      hc = hc * 31 + (name == null ? 0 : name.hashCode());
+      hc = hc * 31 + (publicId == null ? 0 : publicId.hashCode());
+      return hc * 31 + (uri == null ? 0 : uri.hashCode());
+    }
+
+    private static boolean equal(String s1, String s2) {
+      return s1 == null ? s2 == null : s1.equals(s2);
+    }
+  }
 }
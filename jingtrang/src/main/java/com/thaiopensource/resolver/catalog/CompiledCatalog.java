@@ -0,0 +1,172 @@
+package com.thaiopensource.resolver.catalog;
+
+import org.apache.xml.resolver.Catalog;
+import org.apache.xml.resolver.CatalogEntry;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The system and URI entries of a loaded OasisCatalog, compiled into structures that are never modified
+ * after construction and so can be searched by any number of threads without locking.
+ * Exact entries are kept in hash maps, rewrite prefixes and suffixes in tries. The lookups give the same
+ * results as Catalog.resolveSystem and Catalog.resolveURI, as far as the entries of the catalog itself decide
+ * them; whatever depends on delegated or subordinate catalogs, or on public identifiers, is left to the catalog.
+ */
+class CompiledCatalog {
+  /**
+   * Returned by the lookups when it is certain that the catalog would not resolve the identifier.
+   */
+  static final String NOT_FOUND = new String("");
+
+  private static final String PUBLIC_ID_URN = "urn:publicid:";
+
+  private final OasisCatalog catalog;
+  private final boolean ignoreSystemCase;
+  private final Map<String, String> systemEntries = new HashMap<String, String>();
+  private final Trie rewriteSystemEntries = new Trie(false);
+  private final Trie systemSuffixEntries = new Trie(true);
+  private final boolean systemFinal;
+  private final Map<String, String> uriEntries = new HashMap<String, String>();
+  private final Trie rewriteUriEntries = new Trie(false);
+  private final Trie uriSuffixEntries = new Trie(true);
+  private final boolean uriFinal;
+
+  CompiledCatalog(OasisCatalog catalog, List<CatalogEntry> entries, boolean hasSubordinates) {
+    this.catalog = catalog;
+    // Catalog compares system entries ignoring case on Windows
+    this.ignoreSystemCase = System.getProperty("os.name", "").indexOf("Windows") >= 0;
+    boolean delegatesSystem = false;
+    boolean delegatesUri = false;
+    for (CatalogEntry entry : entries) {
+      int type = entry.getEntryType();
+      if (type == Catalog.SYSTEM)
+        putFirst(systemEntries, systemKey(entry.getEntryArg(0)), entry.getEntryArg(1));
+      else if (type == Catalog.REWRITE_SYSTEM)
+        rewriteSystemEntries.add(entry.getEntryArg(0), entry.getEntryArg(1));
+      else if (type == Catalog.SYSTEM_SUFFIX)
+        systemSuffixEntries.add(entry.getEntryArg(0), entry.getEntryArg(1));
+      else if (type == Catalog.DELEGATE_SYSTEM)
+        delegatesSystem = true;
+      else if (type == Catalog.URI)
+        putFirst(uriEntries, entry.getEntryArg(0), entry.getEntryArg(1));
+      else if (type == Catalog.REWRITE_URI)
+        rewriteUriEntries.add(entry.getEntryArg(0), entry.getEntryArg(1));
+      else if (type == Catalog.URI_SUFFIX)
+        uriSuffixEntries.add(entry.getEntryArg(0), entry.getEntryArg(1));
+      else if (type == Catalog.DELEGATE_URI)
+        delegatesUri = true;
+    }
+    this.systemFinal = !hasSubordinates && !delegatesSystem;
+    this.uriFinal = !hasSubordinates && !delegatesUri;
+  }
+
+  /**
+   * Returns the resolved system identifier, NOT_FOUND, or null if only the catalog can tell.
+   */
+  String resolveSystem(String systemId) {
+    systemId = catalog.normalize(systemId);
+    if (systemId == null || systemId.startsWith(PUBLIC_ID_URN))
+      return null;
+    String resolved = systemEntries.get(systemKey(systemId));
+    if (resolved == null)
+      resolved = rewriteSystemEntries.rewrite(systemId);
+    if (resolved == null)
+      resolved = systemSuffixEntries.match(systemId);
+    if (resolved == null && systemFinal)
+      return NOT_FOUND;
+    return resolved;
+  }
+
+  /**
+   * Returns the resolved URI, NOT_FOUND, or null if only the catalog can tell.
+   */
+  String resolveURI(String uri) {
+    uri = catalog.normalize(uri);
+    if (uri == null || uri.startsWith(PUBLIC_ID_URN))
+      return null;
+    String resolved = uriEntries.get(uri);
+    if (resolved == null)
+      resolved = rewriteUriEntries.rewrite(uri);
+    if (resolved == null)
+      resolved = uriSuffixEntries.match(uri);
+    if (resolved == null && uriFinal)
+      return NOT_FOUND;
+    return resolved;
+  }
+
+  private String systemKey(String systemId) {
+    return ignoreSystemCase ? systemId.toLowerCase(Locale.ROOT) : systemId;
+  }
+
+  // the first entry for an identifier wins, as in Catalog
+  private static void putFirst(Map<String, String> map, String key, String value) {
+    if (!map.containsKey(key))
+      map.put(key, value);
+  }
+
+  /**
+   * Maps the longest matching prefix, or suffix, of an identifier to the value of its entry.
+   */
+  static private class Trie {
+    private final boolean suffixes;
+    private final Node root = new Node();
+
+    Trie(boolean suffixes) {
+      this.suffixes = suffixes;
+    }
+
+    void add(String key, String value) {
+      // Catalog never matches an empty prefix or suffix
+      if (key.length() == 0)
+        return;
+      Node node = root;
+      for (int i = 0, len = key.length(); i < len; i++) {
+        char c = key.charAt(suffixes ? len - 1 - i : i);
+        Node child = node.children == null ? null : node.children.get(c);
+        if (child == null) {
+          if (node.children == null)
+            node.children = new HashMap<Character, Node>();
+          child = new Node();
+          node.children.put(c, child);
+        }
+        node = child;
+      }
+      if (node.value == null) {
+        node.value = value;
+        node.depth = key.length();
+      }
+    }
+
+    private Node longestMatch(String id) {
+      Node match = null;
+      Node node = root;
+      for (int i = 0, len = id.length(); i < len && node.children != null; i++) {
+        node = node.children.get(id.charAt(suffixes ? len - 1 - i : i));
+        if (node == null)
+          break;
+        if (node.value != null)
+          match = node;
+      }
+      return match;
+    }
+
+    String rewrite(String id) {
+      Node match = longestMatch(id);
+      return match == null ? null : match.value + id.substring(match.depth);
+    }
+
+    String match(String id) {
+      Node match = longestMatch(id);
+      return match == null ? null : match.value;
+    }
+  }
+
+  static private class Node {
+    Map<Character, Node> children;
+    String value;
+    int depth;
+  }
+}
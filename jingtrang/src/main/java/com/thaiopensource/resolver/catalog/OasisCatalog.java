@@ -5,6 +5,7 @@ import com.thaiopensource.resolver.xml.XMLDocumentIdentifier;
 import com.thaiopensource.resolver.xml.sax.SAXResolver;
 import com.thaiopensource.xml.sax.DraconianErrorHandler;
 import org.apache.xml.resolver.Catalog;
+import org.apache.xml.resolver.CatalogEntry;
 import org.apache.xml.resolver.CatalogManager;
 import org.apache.xml.resolver.readers.OASISXMLCatalogReader;
 import org.xml.sax.SAXException;
@@ -13,6 +14,8 @@ import org.xml.sax.XMLReader;
 import javax.xml.transform.sax.SAXSource;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A catalog with customized parsing of catalog files. In particular, it only supports
@@ -52,6 +55,20 @@ class OasisCatalog extends Catalog {
     }
   }
 
+  String normalize(String uri) {
+    return normalizeURI(uri);
+  }
+
+  /**
+   * Compiles the entries of this catalog for lock-free lookups; the catalogs must have been loaded.
+   */
+  CompiledCatalog compile() {
+    List<CatalogEntry> entries = new ArrayList<CatalogEntry>();
+    for (Object entry : catalogEntries)
+      entries.add((CatalogEntry)entry);
+    return new CompiledCatalog(this, entries, !catalogs.isEmpty());
+  }
+
   protected Catalog newCatalog() {
     return new OasisCatalog(catalogManager, saxResolver);
   }
@@ -0,0 +1,80 @@
+package com.thaiopensource.resolver.catalog;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of catalog lookups that can be used from many threads without locking.
+ * When it grows past its capacity, the least recently used quarter of the entries is dropped.
+ * <p>
+ * Recency is approximate: the clock only advances when an entry is added, and a hit merely stamps
+ * its entry with the current time, so hits never contend on a shared counter. Entries used
+ * between the same two additions count as equally recent.
+ */
+class ResolutionCache<K> {
+  private final int capacity;
+  private final Map<K, Entry> entries = new ConcurrentHashMap<K, Entry>();
+  private final AtomicLong clock = new AtomicLong();
+  private final AtomicBoolean evicting = new AtomicBoolean();
+
+  static private class Entry {
+    final String value;
+    volatile long lastUse;
+
+    Entry(String value, long lastUse) {
+      this.value = value;
+      this.lastUse = lastUse;
+    }
+  }
+
+  ResolutionCache(int capacity) {
+    this.capacity = capacity;
+  }
+
+  String get(K key) {
+    Entry entry = entries.get(key);
+    if (entry == null)
+      return null;
+    long now = clock.get();
+    // avoid writing to an entry that is already up to date, which most hits on a hot entry are
+    if (entry.lastUse != now)
+      entry.lastUse = now;
+    return entry.value;
+  }
+
+  void put(K key, String value) {
+    entries.put(key, new Entry(value, clock.incrementAndGet()));
+    // only one thread evicts; the others carry on and may overshoot the capacity for a moment
+    if (entries.size() > capacity && evicting.compareAndSet(false, true)) {
+      try {
+        evict();
+      }
+      finally {
+        evicting.set(false);
+      }
+    }
+  }
+
+  private void evict() {
+    long[] uses = new long[entries.size()];
+    int n = 0;
+    for (Entry entry : entries.values()) {
+      if (n == uses.length)
+        break;
+      uses[n++] = entry.lastUse;
+    }
+    int excess = n - capacity * 3 / 4;
+    if (excess <= 0)
+      return;
+    Arrays.sort(uses, 0, n);
+    long threshold = uses[excess - 1];
+    for (Iterator<Entry> iter = entries.values().iterator(); iter.hasNext();) {
+      if (iter.next().lastUse <= threshold)
+        iter.remove();
+    }
+  }
+}
@@ -16,6 +16,7 @@ public class RngProperty {
           = PropertyId.newInstance("DATATYPE_LIBRARY_FACTORY", DatatypeLibraryFactory.class);
   public static final FlagPropertyId CHECK_ID_IDREF = new FlagPropertyId("CHECK_ID_IDREF");
   public static final FlagPropertyId FEASIBLE = new FlagPropertyId("FEASIBLE");
+  public static final FlagPropertyId COMPILED = new FlagPropertyId("COMPILED");
   public static final StringPropertyId SIMPLIFIED_SCHEMA = new StringPropertyId("SIMPLIFIED_SCHEMA");
 
   public static Option getOption(String uri) {
@@ -26,6 +27,8 @@ public class RngProperty {
       return new FlagOption(FEASIBLE);
     if (uri.equals("check-id-idref"))
       return new FlagOption(CHECK_ID_IDREF);
+    if (uri.equals("compiled"))
+      return new FlagOption(COMPILED);
     return null;
   }
 }
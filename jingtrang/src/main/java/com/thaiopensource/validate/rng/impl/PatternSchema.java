@@ -7,20 +7,22 @@ import com.thaiopensource.util.PropertyMap;
 import com.thaiopensource.validate.AbstractSchema;
 import com.thaiopensource.validate.ValidateProperty;
 import com.thaiopensource.validate.Validator;
+import com.thaiopensource.validate.prop.rng.RngProperty;
 import org.xml.sax.ErrorHandler;
 
 public class PatternSchema extends AbstractSchema {
-  private final SchemaPatternBuilder spb;
+  private final ValidatorPatternBuilder vpb;
   private final Pattern start;
 
   public PatternSchema(SchemaPatternBuilder spb, Pattern start, PropertyMap properties) {
     super(properties);
-    this.spb = spb;
+    // shared by all validators, so derivatives are computed once per schema
+    this.vpb = new ValidatorPatternBuilder(spb, start, properties.contains(RngProperty.COMPILED));
     this.start = start;
   }
 
   public Validator createValidator(PropertyMap properties) {
     ErrorHandler eh = properties.get(ValidateProperty.ERROR_HANDLER);
-    return new RngValidator(start, new ValidatorPatternBuilder(spb), eh);
+    return new RngValidator(start, vpb, eh);
   }
 }
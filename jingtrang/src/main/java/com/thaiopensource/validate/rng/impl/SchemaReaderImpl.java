@@ -45,6 +45,7 @@ public abstract class SchemaReaderImpl extends AbstractSchemaReader {
     RngProperty.DATATYPE_LIBRARY_FACTORY,
     RngProperty.CHECK_ID_IDREF,
     RngProperty.FEASIBLE,
+    RngProperty.COMPILED,
     WrapProperty.ATTRIBUTE_OWNER,
   };
 
@@ -11,15 +11,28 @@ import javax.xml.transform.sax.SAXTransformerFactory;
 class SchemaImpl extends AbstractSchema {
   private final Templates templates;
   private final Class<? extends SAXTransformerFactory> factoryClass;
+  private final StreamingSchema streamingSchema;
 
   SchemaImpl(Templates templates, Class<? extends SAXTransformerFactory> factoryClass,
              PropertyMap properties, PropertyId<?>[] supportedPropertyIds) {
+    this(templates, factoryClass, null, properties, supportedPropertyIds);
+  }
+
+  /**
+   * If streamingSchema is not null, validators check its rules as the instance is parsed
+   * instead of transforming the instance with templates.
+   */
+  SchemaImpl(Templates templates, Class<? extends SAXTransformerFactory> factoryClass, StreamingSchema streamingSchema,
+             PropertyMap properties, PropertyId<?>[] supportedPropertyIds) {
     super(properties, supportedPropertyIds);
     this.templates = templates;
     this.factoryClass = factoryClass;
+    this.streamingSchema = streamingSchema;
   }
 
   public Validator createValidator(PropertyMap properties) {
+    if (streamingSchema != null)
+      return new StreamingValidator(streamingSchema, properties);
     try {
       return new ValidatorImpl(templates, factoryClass.newInstance(), properties);
     }
@@ -17,6 +17,7 @@ import com.thaiopensource.validate.rng.CompactSchemaReader;
 import com.thaiopensource.xml.sax.CountingErrorHandler;
 import com.thaiopensource.xml.sax.DelegatingContentHandler;
 import com.thaiopensource.xml.sax.DraconianErrorHandler;
+import com.thaiopensource.xml.sax.ForkContentHandler;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.ErrorHandler;
@@ -343,7 +344,9 @@ class SchemaReaderImpl extends AbstractSchemaReader {
       SAXTransformerFactory factory = (SAXTransformerFactory)transformerFactoryClass.newInstance();
       initTransformerFactory(factory);
       TransformerHandler transformerHandler = factory.newTransformerHandler(schematron);
-      ifValidHandler.setDelegate(transformerHandler);
+      // the stylesheet still checks the schema; the builder only records the rules
+      StreamingSchema.Builder streamingBuilder = new StreamingSchema.Builder(SCHEMATRON_URI);
+      ifValidHandler.setDelegate(new ForkContentHandler(transformerHandler, streamingBuilder));
       Transformer transformer = transformerHandler.getTransformer();
       String phase = properties.get(SchematronProperty.PHASE);
       if (phase != null)
@@ -378,6 +381,7 @@ class SchemaReaderImpl extends AbstractSchemaReader {
         throw new IncorrectSchemaException();
       return new SchemaImpl(templates,
                             transformerFactoryClass,
+                            streamingBuilder.getSchema(phase, diagnose),
                             properties,
                             supportedPropertyIds);
     }
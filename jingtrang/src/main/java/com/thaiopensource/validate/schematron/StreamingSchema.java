@@ -0,0 +1,387 @@
+package com.thaiopensource.validate.schematron;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+/**
+ * The active rules of a Schematron schema, in a form that StreamingValidator can check in a single pass
+ * over the instance, as the SAX events arrive. A StreamingSchema exists only when every rule that
+ * the selected phase makes active stays within what StreamingXPath can evaluate; otherwise the
+ * schema is checked by running the stylesheet generated from it.
+ */
+class StreamingSchema {
+  final Rule[][] patterns;
+
+  static class Rule {
+    final StreamingXPath.PathPattern context;
+    final Assertion[] assertions;
+    final StreamingXPath.NameTest[] childTests;
+    final boolean needsChildren;
+
+    Rule(StreamingXPath.PathPattern context, Assertion[] assertions, StreamingXPath.NameTest[] childTests) {
+      this.context = context;
+      this.assertions = assertions;
+      this.childTests = childTests;
+      boolean needsChildren = false;
+      for (int i = 0; i < assertions.length; i++)
+        if (assertions[i].test.needsChildren())
+          needsChildren = true;
+      this.needsChildren = needsChildren;
+    }
+  }
+
+  static class Assertion {
+    final boolean isReport;
+    final StreamingXPath.Expr test;
+    final Message statement;      // null if there is nothing to say
+    final Message[] diagnostics;
+
+    Assertion(boolean isReport, StreamingXPath.Expr test, Message statement, Message[] diagnostics) {
+      this.isReport = isReport;
+      this.test = test;
+      this.statement = statement;
+      this.diagnostics = diagnostics;
+    }
+
+    /**
+     * Returns true if the assertion is to be reported for the context element.
+     */
+    boolean fires(StreamingXPath.Context context) {
+      return test.evaluateBoolean(context) == isReport;
+    }
+  }
+
+  /**
+   * The text of a statement or diagnostic. Each part is either a String, NAME or an Expr giving
+   * the value of an attribute.
+   */
+  static class Message {
+    private final Object[] parts;
+
+    static final Object NAME = new Object();
+
+    Message(Object[] parts) {
+      this.parts = parts;
+    }
+
+    String format(StreamingXPath.Context context) {
+      StringBuilder buf = new StringBuilder();
+      for (int i = 0; i < parts.length; i++) {
+        Object part = parts[i];
+        if (part == NAME)
+          buf.append(context.getQName());
+        else if (part instanceof StreamingXPath.Expr)
+          buf.append(StreamingXPath.stringValue(((StreamingXPath.Expr)part).evaluate(context)));
+        else
+          buf.append((String)part);
+      }
+      return buf.toString();
+    }
+  }
+
+  private StreamingSchema(Rule[][] patterns) {
+    this.patterns = patterns;
+  }
+
+  static private class RawRule {
+    final String context;
+    final List<RawAssertion> assertions = new ArrayList<RawAssertion>();
+    boolean unsupported;
+
+    RawRule(String context) {
+      this.context = context;
+    }
+  }
+
+  static private class RawAssertion {
+    final boolean isReport;
+    final String test;
+    final String diagnostics;
+    final RawMessage message = new RawMessage();
+
+    RawAssertion(boolean isReport, String test, String diagnostics) {
+      this.isReport = isReport;
+      this.test = test;
+      this.diagnostics = diagnostics;
+    }
+  }
+
+  /**
+   * The content of an assert, report or diagnostic. The parts are Strings, NAME, and the select attributes
+   * of value-of elements wrapped in a ValueOf.
+   */
+  static private class RawMessage {
+    final List<Object> parts = new ArrayList<Object>();
+    final StringBuilder text = new StringBuilder();
+    final StringBuilder allText = new StringBuilder();
+    boolean hasChildElement;
+    boolean unsupported;
+
+    void characters(char[] ch, int start, int length) {
+      text.append(ch, start, length);
+      allText.append(ch, start, length);
+    }
+
+    // The stylesheet generated from the schema has an element in place of name, value-of, emph, dir and span,
+    // and drops the text nodes in between that are only whitespace, as it does for any stylesheet.
+    void boundary() {
+      if (StreamingXPath.normalizeSpace(text.toString()).length() > 0)
+        parts.add(text.toString());
+      text.setLength(0);
+    }
+
+    Message compile(Map<String, String> namespaces) {
+      boundary();
+      Object[] compiled = new Object[parts.size()];
+      for (int i = 0; i < compiled.length; i++) {
+        Object part = parts.get(i);
+        if (part instanceof ValueOf) {
+          part = StreamingXPath.parseAttributeReference(((ValueOf)part).select, namespaces);
+          if (part == null)
+            return null;
+        }
+        compiled[i] = part;
+      }
+      return new Message(compiled);
+    }
+  }
+
+  static private class ValueOf {
+    final String select;
+
+    ValueOf(String select) {
+      this.select = select;
+    }
+  }
+
+  /**
+   * Records a schema from the SAX events of its XML form.
+   */
+  static class Builder extends DefaultHandler {
+    private final String schematronUri;
+    private String defaultPhase;
+    private final Map<String, String> namespaces = new HashMap<String, String>();
+    private boolean namespacesUnsupported;
+    private final Map<String, Set<String>> phaseActivePatterns = new HashMap<String, Set<String>>();
+    private final List<String> patternIds = new ArrayList<String>();
+    private final List<List<RawRule>> patternRules = new ArrayList<List<RawRule>>();
+    private final Map<String, RawMessage> diagnostics = new HashMap<String, RawMessage>();
+    private final List<String> openElements = new ArrayList<String>();
+    private String currentPhase;
+    private RawRule currentRule;
+    private RawMessage currentMessage;
+    private int messageDepth;   // the depth of the element holding currentMessage
+    private int skipDepth = -1; // the depth of a foreign element in a message, whose content is ignored
+
+    Builder(String schematronUri) {
+      this.schematronUri = schematronUri;
+    }
+
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+      int depth = openElements.size();
+      openElements.add(uri.equals(schematronUri) ? localName : null);
+      if (skipDepth >= 0)
+        return;
+      if (currentMessage != null) {
+        if (depth == messageDepth + 1)
+          currentMessage.hasChildElement = true;
+        if (!uri.equals(schematronUri)) {
+          skipDepth = depth;
+          return;
+        }
+        if (localName.equals("name")) {
+          currentMessage.boundary();
+          if (attributes.getValue("", "path") != null)
+            currentMessage.unsupported = true;
+          currentMessage.parts.add(Message.NAME);
+          skipDepth = depth;
+        }
+        else if (localName.equals("value-of")) {
+          currentMessage.boundary();
+          String select = attributes.getValue("", "select");
+          currentMessage.parts.add(new ValueOf(select == null ? "" : select));
+          skipDepth = depth;
+        }
+        else if (localName.equals("emph") || localName.equals("dir") || localName.equals("span"))
+          currentMessage.boundary();
+        else
+          skipDepth = depth;
+        return;
+      }
+      if (!uri.equals(schematronUri))
+        return;
+      String parent = depth == 0 ? null : openElements.get(depth - 1);
+      if (localName.equals("schema") && depth == 0)
+        defaultPhase = attributes.getValue("", "defaultPhase");
+      else if (localName.equals("ns") && "schema".equals(parent)) {
+        String prefix = attributes.getValue("", "prefix");
+        String nsUri = attributes.getValue("", "uri");
+        if (prefix == null || nsUri == null)
+          namespacesUnsupported = true;
+        else
+          namespaces.put(prefix, nsUri);
+      }
+      else if (localName.equals("phase") && "schema".equals(parent)) {
+        currentPhase = normalize(attributes.getValue("", "id"));
+        if (!phaseActivePatterns.containsKey(currentPhase))
+          phaseActivePatterns.put(currentPhase, new HashSet<String>());
+      }
+      else if (localName.equals("active") && "phase".equals(parent))
+        phaseActivePatterns.get(currentPhase).add(normalize(attributes.getValue("", "pattern")));
+      else if (localName.equals("pattern") && "schema".equals(parent)) {
+        patternIds.add(normalize(attributes.getValue("", "id")));
+        patternRules.add(new ArrayList<RawRule>());
+      }
+      else if (localName.equals("rule") && "pattern".equals(parent)) {
+        currentRule = new RawRule(attributes.getValue("", "context"));
+        if (!"true".equals(attributes.getValue("", "abstract")))
+          patternRules.get(patternRules.size() - 1).add(currentRule);
+      }
+      else if ((localName.equals("assert") || localName.equals("report")) && "rule".equals(parent)) {
+        RawAssertion assertion = new RawAssertion(localName.equals("report"),
+                                                  attributes.getValue("", "test"),
+                                                  attributes.getValue("", "diagnostics"));
+        if (attributes.getValue("", "subject") != null)
+          currentRule.unsupported = true;
+        currentRule.assertions.add(assertion);
+        startMessage(assertion.message, depth);
+      }
+      else if ((localName.equals("extends") || localName.equals("key")) && "rule".equals(parent))
+        currentRule.unsupported = true;
+      else if (localName.equals("diagnostic") && "diagnostics".equals(parent)) {
+        RawMessage message = new RawMessage();
+        String id = normalize(attributes.getValue("", "id"));
+        if (!diagnostics.containsKey(id))
+          diagnostics.put(id, message);
+        startMessage(message, depth);
+      }
+    }
+
+    private void startMessage(RawMessage message, int depth) {
+      currentMessage = message;
+      messageDepth = depth;
+    }
+
+    public void endElement(String uri, String localName, String qName) {
+      int depth = openElements.size() - 1;
+      openElements.remove(depth);
+      if (depth == skipDepth)
+        skipDepth = -1;
+      else if (skipDepth < 0 && currentMessage != null) {
+        if (depth == messageDepth)
+          currentMessage = null;
+        else
+          currentMessage.boundary();
+      }
+    }
+
+    public void characters(char[] ch, int start, int length) {
+      if (currentMessage != null && skipDepth < 0)
+        currentMessage.characters(ch, start, length);
+    }
+
+    /**
+     * Returns the rules that are active in the given phase, or null if some of them cannot be checked in a single pass.
+     */
+    StreamingSchema getSchema(String phase, boolean diagnose) {
+      if (namespacesUnsupported)
+        return null;
+      phase = phase == null ? "#DEFAULT" : normalize(phase);
+      if (phase.equals("#DEFAULT"))
+        phase = defaultPhase == null ? "#ALL" : normalize(defaultPhase);
+      Set<String> activePatterns = null;
+      if (!phase.equals("#ALL")) {
+        activePatterns = phaseActivePatterns.get(phase);
+        if (activePatterns == null)
+          return null;
+      }
+      Map<String, Message> compiledDiagnostics = new HashMap<String, Message>();
+      List<Rule[]> patterns = new ArrayList<Rule[]>();
+      for (int i = 0; i < patternIds.size(); i++) {
+        if (activePatterns != null && !activePatterns.contains(patternIds.get(i)))
+          continue;
+        List<RawRule> rawRules = patternRules.get(i);
+        Rule[] rules = new Rule[rawRules.size()];
+        for (int j = 0; j < rules.length; j++) {
+          rules[j] = compileRule(rawRules.get(j), diagnose, compiledDiagnostics);
+          if (rules[j] == null)
+            return null;
+        }
+        patterns.add(rules);
+      }
+      return new StreamingSchema(patterns.toArray(new Rule[patterns.size()][]));
+    }
+
+    private Rule compileRule(RawRule rawRule, boolean diagnose, Map<String, Message> compiledDiagnostics) {
+      if (rawRule.unsupported || rawRule.context == null)
+        return null;
+      StreamingXPath.PathPattern context = StreamingXPath.parsePattern(rawRule.context, namespaces);
+      if (context == null)
+        return null;
+      List<StreamingXPath.NameTest> childTests = new ArrayList<StreamingXPath.NameTest>();
+      Assertion[] assertions = new Assertion[rawRule.assertions.size()];
+      for (int i = 0; i < assertions.length; i++) {
+        RawAssertion rawAssertion = rawRule.assertions.get(i);
+        if (rawAssertion.test == null || rawAssertion.message.unsupported)
+          return null;
+        StreamingXPath.Expr test = StreamingXPath.parseTest(rawAssertion.test, namespaces, childTests);
+        if (test == null)
+          return null;
+        Message statement = null;
+        RawMessage rawMessage = rawAssertion.message;
+        // the stylesheet puts out a statement only for boolean(*) or normalize-space(text())
+        if (rawMessage.hasChildElement || StreamingXPath.normalizeSpace(rawMessage.allText.toString()).length() > 0) {
+          statement = rawMessage.compile(namespaces);
+          if (statement == null)
+            return null;
+        }
+        List<Message> assertionDiagnostics = new ArrayList<Message>();
+        if (diagnose && rawAssertion.diagnostics != null) {
+          // The call-diagnostics template of the stylesheet passes on what follows the second
+          // identifier rather than the first, so only every other identifier is used.
+          StringTokenizer tokens = new StringTokenizer(rawAssertion.diagnostics, " \t\r\n");
+          for (int n = 0; tokens.hasMoreTokens(); n++) {
+            String id = tokens.nextToken();
+            if (n % 2 != 0)
+              continue;
+            Message diagnostic = compileDiagnostic(id, compiledDiagnostics);
+            if (diagnostic == null)
+              return null;
+            assertionDiagnostics.add(diagnostic);
+          }
+        }
+        assertions[i] = new Assertion(rawAssertion.isReport,
+                                      test,
+                                      statement,
+                                      assertionDiagnostics.toArray(new Message[assertionDiagnostics.size()]));
+      }
+      return new Rule(context, assertions, childTests.toArray(new StreamingXPath.NameTest[childTests.size()]));
+    }
+
+    private Message compileDiagnostic(String id, Map<String, Message> compiledDiagnostics) {
+      Message message = compiledDiagnostics.get(id);
+      if (message == null) {
+        RawMessage rawMessage = diagnostics.get(id);
+        if (rawMessage == null || rawMessage.unsupported)
+          return null;
+        message = rawMessage.compile(namespaces);
+        if (message == null)
+          return null;
+        compiledDiagnostics.put(id, message);
+      }
+      return message;
+    }
+
+    private static String normalize(String str) {
+      return str == null ? "" : StreamingXPath.normalizeSpace(str);
+    }
+  }
+}
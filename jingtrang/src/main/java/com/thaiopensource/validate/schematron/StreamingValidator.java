@@ -0,0 +1,258 @@
+package com.thaiopensource.validate.schematron;
+
+import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.validate.ValidateProperty;
+import com.thaiopensource.validate.Validator;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Checks an instance against a StreamingSchema as it is parsed. Only the open elements are kept:
+ * an assertion that looks at the children of its context element is decided at the end tag, and
+ * is held in a queue meanwhile so that the messages come out in the same order as from the stylesheet.
+ */
+class StreamingValidator extends DefaultHandler implements Validator, StreamingXPath.ElementStack {
+  private final StreamingSchema schema;
+  private final ContentHandler outputHandler;
+  private Locator locator;
+  private final List<Element> openElements = new ArrayList<Element>();
+  private final LinkedList<Report> queue = new LinkedList<Report>();
+  private static final Attributes EMPTY_ATTRIBUTES = new AttributesImpl();
+
+  static private class Element implements StreamingXPath.Context {
+    final String uri;
+    final String localName;
+    final String qName;
+    final Attributes attributes;
+    // the rules that matched and still have to be checked at the end tag
+    final List<RuleMatch> pendingRules = new ArrayList<RuleMatch>();
+
+    Element(String uri, String localName, String qName, Attributes attributes) {
+      this.uri = uri;
+      this.localName = localName;
+      this.qName = qName;
+      this.attributes = attributes;
+    }
+
+    public Attributes getAttributes() {
+      return attributes;
+    }
+
+    public String getQName() {
+      return qName;
+    }
+
+    public String getLocalName() {
+      return localName;
+    }
+
+    public int getChildCount(int childTestIndex) {
+      throw new IllegalStateException();
+    }
+  }
+
+  static private class RuleMatch implements StreamingXPath.Context {
+    final Element element;
+    final StreamingSchema.Rule rule;
+    final int[] childCounts;
+    final Report[] reports;
+
+    RuleMatch(Element element, StreamingSchema.Rule rule, Report[] reports) {
+      this.element = element;
+      this.rule = rule;
+      this.childCounts = new int[rule.childTests.length];
+      this.reports = reports;
+    }
+
+    void childElement(String uri, String localName) {
+      for (int i = 0; i < childCounts.length; i++)
+        if (rule.childTests[i].matches(uri, localName))
+          childCounts[i]++;
+    }
+
+    public Attributes getAttributes() {
+      return element.attributes;
+    }
+
+    public String getQName() {
+      return element.qName;
+    }
+
+    public String getLocalName() {
+      return element.localName;
+    }
+
+    public int getChildCount(int childTestIndex) {
+      return childCounts[childTestIndex];
+    }
+  }
+
+  static private class Report {
+    final StreamingSchema.Assertion assertion;
+    final String systemId;
+    final int lineNumber;
+    final int columnNumber;
+    final String statement;
+    final String[] diagnostics;
+    boolean decided;
+    boolean fires;
+
+    Report(StreamingSchema.Assertion assertion, StreamingXPath.Context context, Locator locator) {
+      this.assertion = assertion;
+      if (locator == null) {
+        systemId = null;
+        lineNumber = -1;
+        columnNumber = -1;
+      }
+      else {
+        systemId = locator.getSystemId();
+        lineNumber = locator.getLineNumber();
+        columnNumber = locator.getColumnNumber();
+      }
+      // everything a message can refer to is known from the start tag
+      statement = assertion.statement == null ? null : assertion.statement.format(context);
+      diagnostics = new String[assertion.diagnostics.length];
+      for (int i = 0; i < diagnostics.length; i++)
+        diagnostics[i] = assertion.diagnostics[i].format(context);
+    }
+  }
+
+  StreamingValidator(StreamingSchema schema, PropertyMap properties) {
+    this.schema = schema;
+    ErrorHandler eh = properties.get(ValidateProperty.ERROR_HANDLER);
+    outputHandler = new OutputHandler(eh);
+  }
+
+  public ContentHandler getContentHandler() {
+    return this;
+  }
+
+  public DTDHandler getDTDHandler() {
+    return null;
+  }
+
+  public void reset() {
+    locator = null;
+    openElements.clear();
+    queue.clear();
+  }
+
+  public int getDepth() {
+    return openElements.size();
+  }
+
+  public StreamingXPath.Context getElement(int depth) {
+    return openElements.get(depth);
+  }
+
+  public String getNamespaceUri(int depth) {
+    return openElements.get(depth).uri;
+  }
+
+  public void setDocumentLocator(Locator locator) {
+    this.locator = locator;
+  }
+
+  public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+    int depth = openElements.size();
+    if (depth > 0) {
+      List<RuleMatch> parentRules = openElements.get(depth - 1).pendingRules;
+      for (int i = 0, len = parentRules.size(); i < len; i++)
+        parentRules.get(i).childElement(uri, localName);
+    }
+    Element element = new Element(uri, localName, qName,
+                                  attributes.getLength() == 0 ? EMPTY_ATTRIBUTES : new AttributesImpl(attributes));
+    openElements.add(element);
+    // as in the stylesheet, the first rule of each pattern that matches applies
+    for (int i = 0; i < schema.patterns.length; i++) {
+      StreamingSchema.Rule[] rules = schema.patterns[i];
+      for (int j = 0; j < rules.length; j++) {
+        if (rules[j].context.matches(this)) {
+          fire(element, rules[j]);
+          break;
+        }
+      }
+    }
+    flush();
+  }
+
+  private void fire(Element element, StreamingSchema.Rule rule) {
+    StreamingSchema.Assertion[] assertions = rule.assertions;
+    Report[] reports = new Report[assertions.length];
+    RuleMatch match = new RuleMatch(element, rule, reports);
+    for (int i = 0; i < assertions.length; i++) {
+      Report report = new Report(assertions[i], element, locator);
+      if (!assertions[i].test.needsChildren()) {
+        report.fires = assertions[i].fires(element);
+        report.decided = true;
+      }
+      reports[i] = report;
+      queue.add(report);
+    }
+    if (rule.needsChildren)
+      element.pendingRules.add(match);
+  }
+
+  public void endElement(String uri, String localName, String qName) throws SAXException {
+    Element element = openElements.remove(openElements.size() - 1);
+    for (int i = 0, len = element.pendingRules.size(); i < len; i++) {
+      RuleMatch match = element.pendingRules.get(i);
+      for (int j = 0; j < match.reports.length; j++) {
+        Report report = match.reports[j];
+        if (!report.decided) {
+          report.fires = report.assertion.fires(match);
+          report.decided = true;
+        }
+      }
+    }
+    flush();
+  }
+
+  public void endDocument() throws SAXException {
+    flush();
+  }
+
+  private void flush() throws SAXException {
+    while (!queue.isEmpty() && queue.getFirst().decided) {
+      Report report = queue.removeFirst();
+      if (report.fires)
+        output(report);
+    }
+  }
+
+  /**
+   * Gives OutputHandler the same events as the result of the stylesheet.
+   */
+  private void output(Report report) throws SAXException {
+    AttributesImpl atts = new AttributesImpl();
+    if (report.lineNumber >= 0)
+      atts.addAttribute("", "line-number", "line-number", "CDATA", Integer.toString(report.lineNumber));
+    if (report.columnNumber >= 0)
+      atts.addAttribute("", "column-number", "column-number", "CDATA", Integer.toString(report.columnNumber));
+    if (report.systemId != null)
+      atts.addAttribute("", "system-id", "system-id", "CDATA", report.systemId);
+    String name = report.assertion.isReport ? "report" : "failed-assertion";
+    outputHandler.startElement("", name, name, atts);
+    if (report.statement != null)
+      outputMessage("statement", report.statement);
+    for (int i = 0; i < report.diagnostics.length; i++)
+      outputMessage("diagnostic", report.diagnostics[i]);
+    outputHandler.endElement("", name, name);
+  }
+
+  private void outputMessage(String name, String text) throws SAXException {
+    outputHandler.startElement("", name, name, EMPTY_ATTRIBUTES);
+    outputHandler.characters(text.toCharArray(), 0, text.length());
+    outputHandler.endElement("", name, name);
+  }
+}
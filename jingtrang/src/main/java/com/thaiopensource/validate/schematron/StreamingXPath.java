@@ -0,0 +1,779 @@
+package com.thaiopensource.validate.schematron;
+
+import org.xml.sax.Attributes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses the part of XPath 1.0 that can be evaluated while an instance is being parsed, without keeping
+ * any of it in memory: rule contexts made of element name tests with attribute predicates, and tests that
+ * look only at the attributes of the context element and at the names of its children.
+ * Anything outside that subset makes the parse methods return null.
+ */
+class StreamingXPath {
+  private final String str;
+  private final Map<String, String> namespaces;
+  private final List<NameTest> childTests;
+  private int pos = 0;
+  private int tokenType;
+  private String tokenValue;
+
+  private static final int EOF = 0;
+  private static final int NAME = 1;    // a name test: "*", "p:*", "n" or "p:n"
+  private static final int LITERAL = 2;
+  private static final int NUMBER = 3;
+  private static final int OP = 4;      // tokenValue is the operator or punctuation
+
+  static private class UnsupportedException extends Exception { }
+
+  /**
+   * The element currently being looked at.
+   */
+  interface Context {
+    Attributes getAttributes();
+    String getQName();
+    String getLocalName();
+    int getChildCount(int childTestIndex);
+  }
+
+  /**
+   * The elements that are open, from the document element down to the current one.
+   */
+  interface ElementStack {
+    int getDepth();
+    Context getElement(int depth);
+    String getNamespaceUri(int depth);
+  }
+
+  static class NameTest {
+    private final String uri;       // null matches any namespace
+    private final String localName; // null matches any local name
+
+    NameTest(String uri, String localName) {
+      this.uri = uri;
+      this.localName = localName;
+    }
+
+    boolean matches(String uri, String localName) {
+      return (this.uri == null || this.uri.equals(uri))
+             && (this.localName == null || this.localName.equals(localName));
+    }
+  }
+
+  /**
+   * The value of an expression is a Boolean, a Double, a String, an Attribute or a Children.
+   */
+  static abstract class Expr {
+    abstract Object evaluate(Context context);
+
+    /**
+     * Returns true if the expression can be evaluated only once the end tag of the context element has been seen.
+     */
+    boolean needsChildren() {
+      return false;
+    }
+
+    boolean isNumber() {
+      return false;
+    }
+
+    boolean evaluateBoolean(Context context) {
+      return toBoolean(evaluate(context));
+    }
+  }
+
+  static private class Attribute {
+    final String value; // null if the attribute is not there
+
+    Attribute(String value) {
+      this.value = value;
+    }
+  }
+
+  static private class Children {
+    final int count;
+
+    Children(int count) {
+      this.count = count;
+    }
+  }
+
+  static private class ConstantExpr extends Expr {
+    private final Object value;
+
+    ConstantExpr(Object value) {
+      this.value = value;
+    }
+
+    Object evaluate(Context context) {
+      return value;
+    }
+
+    boolean isNumber() {
+      return value instanceof Double;
+    }
+  }
+
+  static private class AttributeExpr extends Expr {
+    private final String uri;
+    private final String localName;
+
+    AttributeExpr(String uri, String localName) {
+      this.uri = uri;
+      this.localName = localName;
+    }
+
+    Object evaluate(Context context) {
+      return new Attribute(context.getAttributes().getValue(uri, localName));
+    }
+  }
+
+  static private class ChildrenExpr extends Expr {
+    private final int childTestIndex;
+
+    ChildrenExpr(int childTestIndex) {
+      this.childTestIndex = childTestIndex;
+    }
+
+    Object evaluate(Context context) {
+      return new Children(context.getChildCount(childTestIndex));
+    }
+
+    boolean needsChildren() {
+      return true;
+    }
+  }
+
+  static private class NotExpr extends Expr {
+    private final Expr expr;
+
+    NotExpr(Expr expr) {
+      this.expr = expr;
+    }
+
+    Object evaluate(Context context) {
+      return !expr.evaluateBoolean(context);
+    }
+
+    boolean needsChildren() {
+      return expr.needsChildren();
+    }
+  }
+
+  static private class LogicalExpr extends Expr {
+    private final boolean isAnd;
+    private final Expr expr1;
+    private final Expr expr2;
+
+    LogicalExpr(boolean isAnd, Expr expr1, Expr expr2) {
+      this.isAnd = isAnd;
+      this.expr1 = expr1;
+      this.expr2 = expr2;
+    }
+
+    Object evaluate(Context context) {
+      if (expr1.evaluateBoolean(context) != isAnd)
+        return !isAnd;
+      return expr2.evaluateBoolean(context);
+    }
+
+    boolean needsChildren() {
+      return expr1.needsChildren() || expr2.needsChildren();
+    }
+  }
+
+  static private class FunctionExpr extends Expr {
+    private final String name;
+    private final Expr arg; // null for name() and local-name()
+
+    FunctionExpr(String name, Expr arg) {
+      this.name = name;
+      this.arg = arg;
+    }
+
+    Object evaluate(Context context) {
+      if (name.equals("name"))
+        return context.getQName();
+      if (name.equals("local-name"))
+        return context.getLocalName();
+      Object value = arg.evaluate(context);
+      if (name.equals("count")) {
+        if (value instanceof Children)
+          return (double)((Children)value).count;
+        return ((Attribute)value).value == null ? 0.0 : 1.0;
+      }
+      String s = stringValue(value);
+      if (name.equals("string-length"))
+        return (double)s.length();
+      if (name.equals("normalize-space"))
+        return normalizeSpace(s);
+      return s;
+    }
+
+    boolean needsChildren() {
+      return arg != null && arg.needsChildren();
+    }
+
+    boolean isNumber() {
+      return name.equals("count") || name.equals("string-length");
+    }
+  }
+
+  static private class ComparisonExpr extends Expr {
+    private final String op;
+    private final Expr expr1;
+    private final Expr expr2;
+
+    ComparisonExpr(String op, Expr expr1, Expr expr2) {
+      this.op = op;
+      this.expr1 = expr1;
+      this.expr2 = expr2;
+    }
+
+    Object evaluate(Context context) {
+      Object value1 = expr1.evaluate(context);
+      Object value2 = expr2.evaluate(context);
+      boolean isEquality = op.equals("=") || op.equals("!=");
+      if (value1 instanceof Attribute || value2 instanceof Attribute) {
+        if (value1 instanceof Boolean || value2 instanceof Boolean) {
+          if (isEquality)
+            return compare(toBoolean(value1) == toBoolean(value2));
+          return compare(toNumber(toBoolean(value1)), toNumber(toBoolean(value2)));
+        }
+        // a comparison with an empty node-set is always false
+        if ((value1 instanceof Attribute && ((Attribute)value1).value == null)
+            || (value2 instanceof Attribute && ((Attribute)value2).value == null))
+          return false;
+      }
+      if (isEquality) {
+        if (value1 instanceof Boolean || value2 instanceof Boolean)
+          return compare(toBoolean(value1) == toBoolean(value2));
+        if (value1 instanceof Double || value2 instanceof Double)
+          return compare(toNumber(value1), toNumber(value2));
+        return compare(stringValue(value1).equals(stringValue(value2)));
+      }
+      return compare(toNumber(value1), toNumber(value2));
+    }
+
+    private boolean compare(boolean equal) {
+      return op.equals("=") ? equal : !equal;
+    }
+
+    private boolean compare(double d1, double d2) {
+      if (op.equals("="))
+        return d1 == d2;
+      if (op.equals("!="))
+        return d1 != d2;
+      if (op.equals("<"))
+        return d1 < d2;
+      if (op.equals("<="))
+        return d1 <= d2;
+      if (op.equals(">"))
+        return d1 > d2;
+      return d1 >= d2;
+    }
+
+    boolean needsChildren() {
+      return expr1.needsChildren() || expr2.needsChildren();
+    }
+  }
+
+  /**
+   * A pattern such as "a/b", "//p:a[@x]//*" or "/a".
+   */
+  static class PathPattern {
+    private final Step[][] alternatives;
+
+    PathPattern(Step[][] alternatives) {
+      this.alternatives = alternatives;
+    }
+
+    /**
+     * Returns true if the element at the top of the stack matches.
+     */
+    boolean matches(ElementStack stack) {
+      for (int i = 0; i < alternatives.length; i++)
+        if (matches(alternatives[i], alternatives[i].length - 1, stack, stack.getDepth() - 1))
+          return true;
+      return false;
+    }
+
+    private static boolean matches(Step[] steps, int stepIndex, ElementStack stack, int depth) {
+      Step step = steps[stepIndex];
+      if (!step.matches(stack, depth))
+        return false;
+      if (stepIndex == 0)
+        return !step.rooted || depth == 0;
+      if (!step.anyAncestor)
+        return depth > 0 && matches(steps, stepIndex - 1, stack, depth - 1);
+      for (int d = depth - 1; d >= 0; d--)
+        if (matches(steps, stepIndex - 1, stack, d))
+          return true;
+      return false;
+    }
+  }
+
+  static private class Step {
+    final NameTest nameTest;
+    final Expr[] predicates;
+    // for the first step, whether the element must be the document element
+    final boolean rooted;
+    // for the other steps, whether the preceding step may match any ancestor rather than the parent
+    final boolean anyAncestor;
+
+    Step(NameTest nameTest, Expr[] predicates, boolean rooted, boolean anyAncestor) {
+      this.nameTest = nameTest;
+      this.predicates = predicates;
+      this.rooted = rooted;
+      this.anyAncestor = anyAncestor;
+    }
+
+    boolean matches(ElementStack stack, int depth) {
+      Context element = stack.getElement(depth);
+      if (!nameTest.matches(stack.getNamespaceUri(depth), element.getLocalName()))
+        return false;
+      for (int i = 0; i < predicates.length; i++)
+        if (!predicates[i].evaluateBoolean(element))
+          return false;
+      return true;
+    }
+  }
+
+  private StreamingXPath(String str, Map<String, String> namespaces, List<NameTest> childTests) {
+    this.str = str;
+    this.namespaces = namespaces;
+    this.childTests = childTests;
+  }
+
+  /**
+   * Parses the context of a rule. Returns null if the pattern cannot be matched against the open elements alone.
+   */
+  static PathPattern parsePattern(String str, Map<String, String> namespaces) {
+    StreamingXPath parser = new StreamingXPath(str, namespaces, null);
+    try {
+      parser.next();
+      List<Step[]> alternatives = new ArrayList<Step[]>();
+      for (;;) {
+        alternatives.add(parser.parseLocationPathPattern());
+        if (!parser.isOp("|"))
+          break;
+        parser.next();
+      }
+      if (parser.tokenType != EOF)
+        return null;
+      return new PathPattern(alternatives.toArray(new Step[alternatives.size()][]));
+    }
+    catch (UnsupportedException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Parses the test of an assertion. The name tests of the children that the test looks at are appended
+   * to childTests. Returns null if the test needs more than the context element and the names of its children.
+   */
+  static Expr parseTest(String str, Map<String, String> namespaces, List<NameTest> childTests) {
+    StreamingXPath parser = new StreamingXPath(str, namespaces, childTests);
+    int childTestCount = childTests.size();
+    try {
+      parser.next();
+      Expr expr = parser.parseOrExpr();
+      if (parser.tokenType != EOF)
+        throw new UnsupportedException();
+      return expr;
+    }
+    catch (UnsupportedException e) {
+      while (childTests.size() > childTestCount)
+        childTests.remove(childTests.size() - 1);
+      return null;
+    }
+  }
+
+  /**
+   * Parses the select attribute of a value-of. Only a reference to an attribute of the context element is allowed.
+   */
+  static Expr parseAttributeReference(String str, Map<String, String> namespaces) {
+    StreamingXPath parser = new StreamingXPath(str, namespaces, null);
+    try {
+      parser.next();
+      if (!parser.isOp("@"))
+        return null;
+      parser.next();
+      Expr expr = parser.parseAttributeName();
+      if (parser.tokenType != EOF)
+        return null;
+      return expr;
+    }
+    catch (UnsupportedException e) {
+      return null;
+    }
+  }
+
+  private Step[] parseLocationPathPattern() throws UnsupportedException {
+    List<Step> steps = new ArrayList<Step>();
+    boolean rooted = false;
+    boolean anyAncestor = false;
+    if (isOp("/")) {
+      rooted = true;
+      next();
+    }
+    else if (isOp("//"))
+      next();
+    for (;;) {
+      if (tokenType != NAME || isFunctionCall())
+        throw new UnsupportedException();
+      NameTest nameTest = parseNameTest();
+      List<Expr> predicates = new ArrayList<Expr>();
+      while (isOp("[")) {
+        next();
+        Expr predicate = parseOrExpr();
+        // a number would be a position, which needs the preceding siblings
+        if (predicate.needsChildren() || predicate.isNumber())
+          throw new UnsupportedException();
+        expectOp("]");
+        predicates.add(predicate);
+      }
+      steps.add(new Step(nameTest, predicates.toArray(new Expr[predicates.size()]), rooted, anyAncestor));
+      rooted = false;
+      if (isOp("/"))
+        anyAncestor = false;
+      else if (isOp("//"))
+        anyAncestor = true;
+      else
+        break;
+      next();
+    }
+    return steps.toArray(new Step[steps.size()]);
+  }
+
+  private Expr parseOrExpr() throws UnsupportedException {
+    Expr expr = parseAndExpr();
+    while (isOperatorName("or")) {
+      next();
+      expr = new LogicalExpr(false, expr, parseAndExpr());
+    }
+    return expr;
+  }
+
+  private Expr parseAndExpr() throws UnsupportedException {
+    Expr expr = parseComparisonExpr();
+    while (isOperatorName("and")) {
+      next();
+      expr = new LogicalExpr(true, expr, parseComparisonExpr());
+    }
+    return expr;
+  }
+
+  private Expr parseComparisonExpr() throws UnsupportedException {
+    Expr expr = parsePrimaryExpr();
+    while (tokenType == OP && isComparisonOp(tokenValue)) {
+      String op = tokenValue;
+      next();
+      Expr expr2 = parsePrimaryExpr();
+      // comparing children would need their string values
+      if (expr instanceof ChildrenExpr || expr2 instanceof ChildrenExpr)
+        throw new UnsupportedException();
+      expr = new ComparisonExpr(op, expr, expr2);
+    }
+    return expr;
+  }
+
+  private Expr parsePrimaryExpr() throws UnsupportedException {
+    switch (tokenType) {
+    case LITERAL:
+      {
+        Expr expr = new ConstantExpr(tokenValue);
+        next();
+        return expr;
+      }
+    case NUMBER:
+      {
+        Expr expr = new ConstantExpr(Double.valueOf(tokenValue));
+        next();
+        return expr;
+      }
+    case NAME:
+      if (isFunctionCall())
+        return parseFunctionCall();
+      if (childTests == null)
+        throw new UnsupportedException();
+      childTests.add(parseNameTest());
+      return new ChildrenExpr(childTests.size() - 1);
+    case OP:
+      if (tokenValue.equals("@")) {
+        next();
+        return parseAttributeName();
+      }
+      if (tokenValue.equals("(")) {
+        next();
+        Expr expr = parseOrExpr();
+        expectOp(")");
+        return expr;
+      }
+      break;
+    }
+    throw new UnsupportedException();
+  }
+
+  private Expr parseFunctionCall() throws UnsupportedException {
+    String name = tokenValue;
+    next();
+    expectOp("(");
+    Expr arg = null;
+    if (name.equals("true") || name.equals("false")) {
+      expectOp(")");
+      return new ConstantExpr(Boolean.valueOf(name));
+    }
+    if (name.equals("name") || name.equals("local-name")) {
+      // with an argument, these would be about some other node
+      expectOp(")");
+      return new FunctionExpr(name, null);
+    }
+    if (name.equals("not")) {
+      arg = parseOrExpr();
+      expectOp(")");
+      return new NotExpr(arg);
+    }
+    if (name.equals("count")) {
+      arg = parsePrimaryExpr();
+      if (!(arg instanceof ChildrenExpr || arg instanceof AttributeExpr))
+        throw new UnsupportedException();
+    }
+    else if (name.equals("string-length") || name.equals("normalize-space") || name.equals("string")) {
+      // without an argument, these would need the string value of the context element
+      arg = parsePrimaryExpr();
+      if (arg instanceof ChildrenExpr)
+        throw new UnsupportedException();
+    }
+    else
+      throw new UnsupportedException();
+    expectOp(")");
+    return new FunctionExpr(name, arg);
+  }
+
+  private Expr parseAttributeName() throws UnsupportedException {
+    if (tokenType != NAME || isFunctionCall() || tokenValue.endsWith("*"))
+      throw new UnsupportedException();
+    String name = tokenValue;
+    next();
+    int colon = name.indexOf(':');
+    if (colon < 0)
+      return new AttributeExpr("", name);
+    return new AttributeExpr(lookupPrefix(name.substring(0, colon)), name.substring(colon + 1));
+  }
+
+  private NameTest parseNameTest() throws UnsupportedException {
+    String name = tokenValue;
+    next();
+    if (name.equals("*"))
+      return new NameTest(null, null);
+    int colon = name.indexOf(':');
+    if (colon < 0)
+      return new NameTest("", name);
+    String uri = lookupPrefix(name.substring(0, colon));
+    String localName = name.substring(colon + 1);
+    return new NameTest(uri, localName.equals("*") ? null : localName);
+  }
+
+  private String lookupPrefix(String prefix) throws UnsupportedException {
+    String uri = namespaces.get(prefix);
+    if (uri == null)
+      throw new UnsupportedException();
+    return uri;
+  }
+
+  private boolean isOp(String op) {
+    return tokenType == OP && tokenValue.equals(op);
+  }
+
+  private void expectOp(String op) throws UnsupportedException {
+    if (!isOp(op))
+      throw new UnsupportedException();
+    next();
+  }
+
+  private boolean isOperatorName(String name) {
+    return tokenType == NAME && tokenValue.equals(name);
+  }
+
+  private boolean isFunctionCall() {
+    if (tokenValue.indexOf(':') >= 0 || tokenValue.equals("*"))
+      return false;
+    int i = pos;
+    while (i < str.length() && isWhitespace(str.charAt(i)))
+      i++;
+    return i < str.length() && str.charAt(i) == '(';
+  }
+
+  private static boolean isComparisonOp(String op) {
+    return op.equals("=") || op.equals("!=") || op.equals("<") || op.equals("<=")
+           || op.equals(">") || op.equals(">=");
+  }
+
+  private void next() {
+    while (pos < str.length() && isWhitespace(str.charAt(pos)))
+      pos++;
+    int tokenStart = pos;
+    if (pos == str.length()) {
+      tokenType = EOF;
+      tokenValue = null;
+      return;
+    }
+    char c = str.charAt(pos);
+    if (c == '\'' || c == '"') {
+      int end = str.indexOf(c, pos + 1);
+      if (end < 0) {
+        // an unterminated literal, which no rule of the grammar accepts
+        tokenType = OP;
+        tokenValue = String.valueOf(c);
+        pos = str.length();
+        return;
+      }
+      tokenType = LITERAL;
+      tokenValue = str.substring(pos + 1, end);
+      pos = end + 1;
+      return;
+    }
+    if (isDigit(c) || (c == '.' && pos + 1 < str.length() && isDigit(str.charAt(pos + 1)))) {
+      pos++;
+      while (pos < str.length() && (isDigit(str.charAt(pos)) || str.charAt(pos) == '.'))
+        pos++;
+      tokenType = NUMBER;
+      tokenValue = str.substring(tokenStart, pos);
+      if (Double.isNaN(parseNumber(tokenValue)))
+        tokenType = OP; // something like "1.2.3", which no operator matches
+      return;
+    }
+    if (c == '*') {
+      pos++;
+      tokenType = NAME;
+      tokenValue = "*";
+      return;
+    }
+    if (isNameStartChar(c)) {
+      pos++;
+      while (pos < str.length() && isNameChar(str.charAt(pos)))
+        pos++;
+      if (pos + 1 < str.length() && str.charAt(pos) == ':') {
+        char c2 = str.charAt(pos + 1);
+        if (c2 == '*')
+          pos += 2;
+        else if (isNameStartChar(c2)) {
+          pos += 2;
+          while (pos < str.length() && isNameChar(str.charAt(pos)))
+            pos++;
+        }
+      }
+      tokenType = NAME;
+      tokenValue = str.substring(tokenStart, pos);
+      return;
+    }
+    tokenType = OP;
+    if (pos + 1 < str.length()) {
+      String two = str.substring(pos, pos + 2);
+      if (two.equals("//") || two.equals("!=") || two.equals("<=") || two.equals(">=")
+          || two.equals("::") || two.equals("..")) {
+        pos += 2;
+        tokenValue = two;
+        return;
+      }
+    }
+    pos++;
+    tokenValue = String.valueOf(c);
+  }
+
+  static boolean toBoolean(Object value) {
+    if (value instanceof Boolean)
+      return (Boolean)value;
+    if (value instanceof Double) {
+      double d = (Double)value;
+      return d != 0 && !Double.isNaN(d);
+    }
+    if (value instanceof String)
+      return ((String)value).length() > 0;
+    if (value instanceof Attribute)
+      return ((Attribute)value).value != null;
+    return ((Children)value).count > 0;
+  }
+
+  static double toNumber(Object value) {
+    if (value instanceof Boolean)
+      return (Boolean)value ? 1 : 0;
+    if (value instanceof Double)
+      return (Double)value;
+    return parseNumber(stringValue(value));
+  }
+
+  static String stringValue(Object value) {
+    if (value instanceof String)
+      return (String)value;
+    if (value instanceof Attribute) {
+      String s = ((Attribute)value).value;
+      return s == null ? "" : s;
+    }
+    if (value instanceof Boolean)
+      return value.toString();
+    double d = (Double)value;
+    if (d == Math.rint(d) && !Double.isInfinite(d) && Math.abs(d) < 1e15)
+      return Long.toString((long)d);
+    return Double.toString(d);
+  }
+
+  /**
+   * Converts a string to a number the way the XPath number function does.
+   */
+  static double parseNumber(String s) {
+    s = s.trim();
+    int start = s.startsWith("-") ? 1 : 0;
+    boolean hasDigit = false;
+    boolean hasPoint = false;
+    for (int i = start; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (isDigit(c))
+        hasDigit = true;
+      else if (c == '.' && !hasPoint)
+        hasPoint = true;
+      else
+        return Double.NaN;
+    }
+    if (!hasDigit)
+      return Double.NaN;
+    return Double.parseDouble(s);
+  }
+
+  static String normalizeSpace(String s) {
+    StringBuilder buf = new StringBuilder();
+    boolean pendingSpace = false;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (isWhitespace(c))
+        pendingSpace = buf.length() > 0;
+      else {
+        if (pendingSpace)
+          buf.append(' ');
+        pendingSpace = false;
+        buf.append(c);
+      }
+    }
+    return buf.toString();
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isNameStartChar(char c) {
+    return Character.isLetter(c) || c == '_' || c > 0x7F && Character.isUnicodeIdentifierStart(c);
+  }
+
+  private static boolean isNameChar(char c) {
+    return isNameStartChar(c) || isDigit(c) || c == '.' || c == '-'
+           || c > 0x7F && Character.isUnicodeIdentifierPart(c);
+  }
+}
@@ -13,6 +13,12 @@ public abstract class ContentModelInferrer {
 
   public abstract Set<Name> getElementNames();
 
+  /**
+   * Adds the sequences of another inferrer created by createContentModelInferrer,
+   * as if they had been added to this one.
+   */
+  public abstract void merge(ContentModelInferrer other);
+
   public static ContentModelInferrer createContentModelInferrer() {
     return new ContentModelInferrerImpl();
   }
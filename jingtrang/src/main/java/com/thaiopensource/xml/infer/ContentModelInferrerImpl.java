@@ -2,11 +2,13 @@ package com.thaiopensource.xml.infer;
 
 import com.thaiopensource.xml.util.Name;
 
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.TreeSet;
 
 class ContentModelInferrerImpl extends ContentModelInferrer {
   private static final Name START = new Name("", "#start");
@@ -21,8 +23,24 @@ class ContentModelInferrerImpl extends ContentModelInferrer {
   private final SingleNode startNode;
   private final SingleNode endNode;
 
+  /**
+   * Orders nodes by index, so that the content model does not depend on where the nodes happen to be allocated.
+   * The indices of single nodes follow the order in which the names first occur.
+   */
+  private static final Comparator<SingleNode> SINGLE_NODE_ORDER = new Comparator<SingleNode>() {
+    public int compare(SingleNode n1, SingleNode n2) {
+      return n1.index - n2.index;
+    }
+  };
+
+  private static final Comparator<ParticleNode> PARTICLE_NODE_ORDER = new Comparator<ParticleNode>() {
+    public int compare(ParticleNode n1, ParticleNode n2) {
+      return n1.index - n2.index;
+    }
+  };
+
   private static class SingleNode {
-    final Set<SingleNode> followingNodes = new HashSet<SingleNode>();
+    final Set<SingleNode> followingNodes = new TreeSet<SingleNode>(SINGLE_NODE_ORDER);
     final Name name;
     final int index;
     boolean repeated = false;
@@ -37,7 +55,7 @@ class ContentModelInferrerImpl extends ContentModelInferrer {
     final int index;
     Particle particle;
     int refCount = 0;
-    Set<ParticleNode> followingNodes = new HashSet<ParticleNode>();
+    Set<ParticleNode> followingNodes = new TreeSet<ParticleNode>(PARTICLE_NODE_ORDER);
 
     ParticleNode(int index) {
       this.index = index;
@@ -223,6 +241,27 @@ class ContentModelInferrerImpl extends ContentModelInferrer {
     prevNode = startNode;
   }
 
+  public void merge(ContentModelInferrer other) {
+    if (prevNode != startNode)
+      throw new IllegalStateException();
+    // The graph is a union of the sequences, so it does not matter which were added first.
+    // Names new to this inferrer get their indices in the order of their first occurrence in the other one,
+    // as they would have had the sequences been added here.
+    Map<Name, SingleNode> otherNameMap = ((ContentModelInferrerImpl)other).nameMap;
+    SingleNode[] otherNodes = new SingleNode[otherNameMap.size()];
+    for (SingleNode node : otherNameMap.values())
+      otherNodes[node.index] = node;
+    for (SingleNode node : otherNodes)
+      lookup(node.name);
+    for (SingleNode node : otherNodes) {
+      SingleNode mergedNode = lookup(node.name);
+      if (node.repeated)
+        mergedNode.repeated = true;
+      for (SingleNode following : node.followingNodes)
+        mergedNode.followingNodes.add(lookup(following.name));
+    }
+  }
+
   private SingleNode lookup(Name name) {
     SingleNode node = nameMap.get(name);
     if (node == null) {
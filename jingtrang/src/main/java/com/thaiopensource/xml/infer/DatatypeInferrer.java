@@ -37,6 +37,33 @@ class DatatypeInferrer {
       allWhiteSpace = false;
   }
 
+  /**
+   * Adds the values of another inferrer, as if they had been added to this one.
+   */
+  void merge(DatatypeInferrer other) {
+    int nDeleted = 0;
+    for (int i = 0; i < nTypes; i++) {
+      if (!other.isPossible(possibleTypes[i].getIndex()))
+        nDeleted++;
+      else if (nDeleted > 0) {
+        possibleTypes[i - nDeleted] = possibleTypes[i];
+        possibleTypes[i] = null;
+      }
+    }
+    nTypes -= nDeleted;
+    // bits of types that did not survive in both are never looked at
+    typicalMask |= other.typicalMask;
+    if (!other.allWhiteSpace)
+      allWhiteSpace = false;
+  }
+
+  private boolean isPossible(int typeIndex) {
+    for (int i = 0; i < nTypes; i++)
+      if (possibleTypes[i].getIndex() == typeIndex)
+        return true;
+    return false;
+  }
+
   static boolean isWhiteSpace(String value) {
     for (int i = 0; i < value.length(); i++)
       switch (value.charAt(i)) {
@@ -106,6 +106,56 @@ class ElementDeclInferrer {
     }
   }
 
+  /**
+   * Adds the occurrences seen by another inferrer for the same element, as if they had followed the occurrences
+   * seen by this one. The other inferrer must not be used afterwards.
+   */
+  void merge(ElementDeclInferrer other) {
+    requiredAttributeNames.retainAll(other.requiredAttributeNames);
+    for (Map.Entry<Name, DatatypeInferrer> entry : other.attributeTypeMap.entrySet()) {
+      DatatypeInferrer dt = attributeTypeMap.get(entry.getKey());
+      if (dt == null)
+        attributeTypeMap.put(entry.getKey(), entry.getValue());
+      else
+        dt.merge(entry.getValue());
+    }
+    if (other.mixedContentNames != null) {
+      useMixedContent();
+      mixedContentNames.addAll(other.mixedContentNames);
+    }
+    else if (other.contentModelInferrer != null) {
+      // what addElement does when the first element of the other occurrences comes along
+      if (valueInferrer != null) {
+        if (valueInferrer.isAllWhiteSpace()) {
+          contentModelInferrer = ContentModelInferrer.createContentModelInferrer();
+          contentModelInferrer.endSequence();
+          valueInferrer = null;
+        }
+        else
+          useMixedContent();
+      }
+      if (mixedContentNames != null)
+        mixedContentNames.addAll(other.contentModelInferrer.getElementNames());
+      else if (contentModelInferrer == null)
+        contentModelInferrer = other.contentModelInferrer;
+      else
+        contentModelInferrer.merge(other.contentModelInferrer);
+    }
+    else if (other.valueInferrer != null && mixedContentNames == null) {
+      // with a content model, each of the other occurrences is either an empty sequence or text
+      if (contentModelInferrer != null) {
+        if (other.valueInferrer.isAllWhiteSpace())
+          contentModelInferrer.endSequence();
+        else
+          useMixedContent();
+      }
+      else if (valueInferrer == null)
+        valueInferrer = other.valueInferrer;
+      else
+        valueInferrer.merge(other.valueInferrer);
+    }
+  }
+
   void addAttributeNames(List<Name> attributeNames) {
     requiredAttributeNames.retainAll(attributeNames);
   }
@@ -8,6 +8,7 @@ import org.xml.sax.helpers.DefaultHandler;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -23,6 +24,10 @@ public class InferHandler extends DefaultHandler {
   private final Set<String> usedNamespaceUris = new HashSet<String>();
   private final Schema schema = new Schema();
   private final Set<String> assignedPrefixes = new HashSet<String>();
+  /**
+   * The prefix declarations seen, in document order, as names whose local part is the prefix.
+   */
+  private final Set<Name> prefixDeclarations = new LinkedHashSet<Name>();
 
   private static class OpenElement {
     final OpenElement parent;
@@ -65,15 +70,44 @@ public class InferHandler extends DefaultHandler {
 
   public void startPrefixMapping(String prefix, String uri)
           throws SAXException {
-    if (prefix != null
-        && !prefix.equals("")
-        && schema.getPrefixMap().get(uri) == null
+    if (prefix != null && !prefix.equals("")) {
+      prefixDeclarations.add(new Name(uri, prefix));
+      declarePrefix(prefix, uri);
+    }
+  }
+
+  private void declarePrefix(String prefix, String uri) {
+    if (schema.getPrefixMap().get(uri) == null
         && !assignedPrefixes.contains(prefix)) {
       assignedPrefixes.add(prefix);
       schema.getPrefixMap().put(uri, prefix);
     }
   }
 
+  /**
+   * Adds what another handler has inferred from its documents, as if they had been parsed by this handler after
+   * its own documents; so documents can be parsed by several handlers in parallel and the handlers merged in
+   * document order, giving the same schema as parsing all of them with one handler.
+   * Both handlers must be between documents, and the other handler must not be used afterwards.
+   */
+  public void merge(InferHandler other) {
+    if (openElement != null || other.openElement != null)
+      throw new IllegalStateException();
+    for (Map.Entry<Name, ElementDeclInferrer> entry : other.inferrerMap.entrySet()) {
+      ElementDeclInferrer inferrer = inferrerMap.get(entry.getKey());
+      if (inferrer == null)
+        inferrerMap.put(entry.getKey(), entry.getValue());
+      else
+        inferrer.merge(entry.getValue());
+    }
+    startSet.addAll(other.startSet);
+    usedNamespaceUris.addAll(other.usedNamespaceUris);
+    // a declaration seen before has already had its effect
+    for (Name declaration : other.prefixDeclarations)
+      if (prefixDeclarations.add(declaration))
+        declarePrefix(declaration.getLocalName(), declaration.getNamespaceUri());
+  }
+
   private Name makeName(String uri, String localName) {
     if (!uri.equals(""))
       usedNamespaceUris.add(uri);
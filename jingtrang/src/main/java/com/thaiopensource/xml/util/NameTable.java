@@ -0,0 +1,60 @@
+package com.thaiopensource.xml.util;
+
+/**
+ * Maps a namespace URI and local name to a Name, returning the same Name
+ * for repeated lookups so that no Name is allocated once a name has been seen.
+ * The table stops growing after MAX_NAMES (16K) names; further names are
+ * still returned, but are not remembered.
+ * Not thread-safe.
+ */
+public final class NameTable {
+  private static final int INIT_SIZE = 64;
+  private static final int MAX_NAMES = 1 << 14;
+  private Name[] table = new Name[INIT_SIZE];
+  private int used = 0;
+
+  public Name get(String namespaceUri, String localName) {
+    int hc = namespaceUri.hashCode() ^ localName.hashCode();
+    int h;
+    for (h = firstIndex(hc); table[h] != null; h = nextIndex(h)) {
+      Name name = table[h];
+      if (name.hashCode() == hc
+          && name.getLocalName().equals(localName)
+          && name.getNamespaceUri().equals(namespaceUri))
+        return name;
+    }
+    Name name = new Name(namespaceUri, localName);
+    // at most half full, so that a probe always ends at an empty slot
+    if ((used + 1) << 1 > table.length) {
+      if (used >= MAX_NAMES)
+        return name;
+      rehash();
+      for (h = firstIndex(hc); table[h] != null; h = nextIndex(h))
+        ;
+    }
+    used++;
+    table[h] = name;
+    return name;
+  }
+
+  private void rehash() {
+    Name[] oldTable = table;
+    table = new Name[oldTable.length << 1];
+    for (Name name : oldTable) {
+      if (name != null) {
+        int h;
+        for (h = firstIndex(name.hashCode()); table[h] != null; h = nextIndex(h))
+          ;
+        table[h] = name;
+      }
+    }
+  }
+
+  private int firstIndex(int hc) {
+    return hc & (table.length - 1);
+  }
+
+  private int nextIndex(int i) {
+    return i == 0 ? table.length - 1 : i - 1;
+  }
+}
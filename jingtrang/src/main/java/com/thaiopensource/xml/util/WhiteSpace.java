@@ -0,0 +1,28 @@
+package com.thaiopensource.xml.util;
+
+public class WhiteSpace {
+  private WhiteSpace() { }
+
+  public static boolean isWhiteSpace(char c) {
+    switch (c) {
+    case '\r':
+    case '\n':
+    case ' ':
+    case '\t':
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Tests whether text consists of white space (' ', '\r', '\n', '\t') only.
+   */
+  public static boolean isBlank(CharSequence str) {
+    int len = str.length();
+    for (int i = 0; i < len; i++) {
+      if (!isWhiteSpace(str.charAt(i)))
+        return false;
+    }
+    return true;
+  }
+}
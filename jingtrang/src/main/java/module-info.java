@@ -12,6 +12,7 @@ module com.intellij.xml.jingtrang {
     exports com.thaiopensource.datatype;
     exports com.thaiopensource.datatype.xsd;
     exports com.thaiopensource.datatype.xsd.regex;
+    exports com.thaiopensource.datatype.xsd.regex.automaton;
     exports com.thaiopensource.datatype.xsd.regex.java;
     exports com.thaiopensource.datatype.xsd.regex.java.gen;
     exports com.thaiopensource.datatype.xsd.regex.xerces2;
@@ -0,0 +1,726 @@
+package org.kohsuke.rngom.digested;
+
+import org.kohsuke.rngom.ast.builder.GrammarSection;
+import org.kohsuke.rngom.ast.util.LocatorImpl;
+import org.kohsuke.rngom.nc.AnyNameExceptNameClass;
+import org.kohsuke.rngom.nc.ChoiceNameClass;
+import org.kohsuke.rngom.nc.NameClass;
+import org.kohsuke.rngom.nc.NameClassVisitor;
+import org.kohsuke.rngom.nc.NsNameClass;
+import org.kohsuke.rngom.nc.NsNameExceptNameClass;
+import org.kohsuke.rngom.nc.SimpleNameClass;
+import org.kohsuke.rngom.parse.Context;
+import org.xml.sax.Locator;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Writes a digested pattern to a compact binary form and reads it back.
+ *
+ * <p>
+ * Locations, annotation attributes, datatype parameters and the namespace
+ * context of values and parameters are preserved, so a restored pattern can be
+ * used in place of a freshly parsed one. Child elements of annotations are not
+ * written.
+ *
+ * <p>
+ * The format is private to this class; callers should store {@link #FORMAT_VERSION}
+ * along with the data and discard data written by a different version.
+ *
+ * <p>
+ * System IDs of locations and base URIs of contexts can be rewritten on the
+ * way out and back in, so that a pattern written from one location, for
+ * example a build directory, can be read as if it had been parsed from
+ * another.
+ */
+public final class DPatternSerializer {
+    /**
+     * Changes whenever the binary format changes.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int STRING_NULL = -1;
+    private static final int STRING_NEW = -2;
+
+    private static final byte ATTRIBUTE = 1;
+    private static final byte CHOICE = 2;
+    private static final byte DATA = 3;
+    private static final byte ELEMENT = 4;
+    private static final byte EMPTY = 5;
+    private static final byte GRAMMAR = 6;
+    private static final byte GROUP = 7;
+    private static final byte INTERLEAVE = 8;
+    private static final byte LIST = 9;
+    private static final byte MIXED = 10;
+    private static final byte NOT_ALLOWED = 11;
+    private static final byte ONE_OR_MORE = 12;
+    private static final byte OPTIONAL = 13;
+    private static final byte REF = 14;
+    private static final byte TEXT = 15;
+    private static final byte VALUE = 16;
+    private static final byte ZERO_OR_MORE = 17;
+    private static final byte NULL_PATTERN = 0;
+
+    private static final byte NC_CHOICE = 1;
+    private static final byte NC_NS_NAME = 2;
+    private static final byte NC_NS_NAME_EXCEPT = 3;
+    private static final byte NC_ANY_NAME = 4;
+    private static final byte NC_ANY_NAME_EXCEPT = 5;
+    private static final byte NC_NAME = 6;
+    private static final byte NC_NULL = 7;
+
+    private static final byte COMBINE_NONE = 0;
+    private static final byte COMBINE_CHOICE = 1;
+    private static final byte COMBINE_INTERLEAVE = 2;
+
+    private DPatternSerializer() {}
+
+    public static void write(DPattern pattern, DataOutput out) throws IOException {
+        write(pattern,out,UnaryOperator.<String>identity());
+    }
+
+    /**
+     * @param systemIds
+     *      applied to every non-null system ID and base URI before it is written.
+     */
+    public static void write(DPattern pattern, DataOutput out, UnaryOperator<String> systemIds) throws IOException {
+        new Writer(out,systemIds).writePattern(pattern);
+    }
+
+    public static DPattern read(DataInput in) throws IOException {
+        return read(in,UnaryOperator.<String>identity());
+    }
+
+    /**
+     * @param systemIds
+     *      applied to every non-null system ID and base URI that is read.
+     */
+    public static DPattern read(DataInput in, UnaryOperator<String> systemIds) throws IOException {
+        return new Reader(in,systemIds).readPattern();
+    }
+
+    private static final class Writer implements DPatternVisitor<Void>, NameClassVisitor<Void> {
+        private final DataOutput out;
+        private final Map<String,Integer> strings = new HashMap<String,Integer>();
+        private final Map<DDefine,Integer> defines = new IdentityHashMap<DDefine,Integer>();
+        private final UnaryOperator<String> systemIds;
+
+        Writer(DataOutput out, UnaryOperator<String> systemIds) {
+            this.out = out;
+            this.systemIds = systemIds;
+        }
+
+        void writePattern(DPattern p) throws IOException {
+            if(p==null) {
+                out.writeByte(NULL_PATTERN);
+                return;
+            }
+            try {
+                p.accept(this);
+            } catch (WrappedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void writeChild(DPattern p) {
+            try {
+                writePattern(p);
+            } catch (IOException e) {
+                throw new WrappedIOException(e);
+            }
+        }
+
+        private void header(byte tag, DPattern p) {
+            try {
+                out.writeByte(tag);
+                writeLocation(p.location);
+                writeAnnotation(p.annotation);
+            } catch (IOException e) {
+                throw new WrappedIOException(e);
+            }
+        }
+
+        private void writeString(String s) throws IOException {
+            if(s==null) {
+                out.writeInt(STRING_NULL);
+                return;
+            }
+            Integer index = strings.get(s);
+            if(index!=null) {
+                out.writeInt(index);
+                return;
+            }
+            strings.put(s,strings.size());
+            out.writeInt(STRING_NEW);
+            out.writeInt(s.length());
+            out.writeChars(s);
+        }
+
+        private void writeSystemId(String systemId) throws IOException {
+            writeString(systemId!=null ? systemIds.apply(systemId) : null);
+        }
+
+        private void writeLocation(Locator loc) throws IOException {
+            out.writeBoolean(loc!=null);
+            if(loc!=null) {
+                writeSystemId(loc.getSystemId());
+                out.writeInt(loc.getLineNumber());
+                out.writeInt(loc.getColumnNumber());
+            }
+        }
+
+        private void writeAnnotation(DAnnotation anno) throws IOException {
+            if(anno==null || anno.attributes==null) {
+                out.writeInt(0);
+                return;
+            }
+            out.writeInt(anno.attributes.size());
+            for (DAnnotation.Attribute a : anno.attributes.values()) {
+                writeString(a.getNs());
+                writeString(a.getLocalName());
+                writeString(a.getPrefix());
+                writeString(a.getValue());
+                writeLocation(a.getLoc());
+            }
+        }
+
+        private void writeContext(Context context) throws IOException {
+            out.writeBoolean(context!=null);
+            if(context==null)
+                return;
+            writeSystemId(context.getBaseUri());
+            List<String> prefixes = new ArrayList<String>();
+            for (Enumeration e = context.prefixes(); e.hasMoreElements(); )
+                prefixes.add((String)e.nextElement());
+            Collections.sort(prefixes);
+            out.writeInt(prefixes.size());
+            for (String prefix : prefixes) {
+                writeString(prefix);
+                writeString(context.resolveNamespacePrefix(prefix));
+            }
+        }
+
+        private void writeDefine(DDefine d) throws IOException {
+            Integer id = defines.get(d);
+            if(id!=null) {
+                out.writeInt(id);
+                out.writeBoolean(false);
+                return;
+            }
+            id = defines.size();
+            defines.put(d,id);
+            out.writeInt(id);
+            out.writeBoolean(true);
+            writeString(d.getName());
+            GrammarSection.Combine combine = d.getCombine();
+            out.writeByte(combine==GrammarSection.COMBINE_CHOICE ? COMBINE_CHOICE
+                : combine==GrammarSection.COMBINE_INTERLEAVE ? COMBINE_INTERLEAVE : COMBINE_NONE);
+            writeAnnotation(d.annotation);
+        }
+
+        private void writeNameClass(NameClass nc) {
+            nc.accept(this);
+        }
+
+        private Void unary(byte tag, DUnaryPattern p) {
+            header(tag,p);
+            writeChild(p.getChild());
+            return null;
+        }
+
+        private Void container(byte tag, DContainerPattern p) {
+            header(tag,p);
+            try {
+                out.writeInt(p.countChildren());
+            } catch (IOException e) {
+                throw new WrappedIOException(e);
+            }
+            for (DPattern child : p)
+                writeChild(child);
+            return null;
+        }
+
+        private Void xmlToken(byte tag, DXmlTokenPattern p) {
+            header(tag,p);
+            writeNameClass(p.getName());
+            writeChild(p.getChild());
+            return null;
+        }
+
+        public Void onAttribute(DAttributePattern p) {
+            return xmlToken(ATTRIBUTE,p);
+        }
+
+        public Void onChoice(DChoicePattern p) {
+            return container(CHOICE,p);
+        }
+
+        public Void onData(DDataPattern p) {
+            header(DATA,p);
+            try {
+                writeString(p.datatypeLibrary);
+                writeString(p.type);
+                out.writeInt(p.params.size());
+                for (DDataPattern.Param param : p.params) {
+                    writeString(param.name);
+                    writeString(param.value);
+                    writeString(param.ns);
+                    writeContext(param.context);
+                    writeLocation(param.loc instanceof Locator ? (Locator)param.loc : null);
+                }
+            } catch (IOException e) {
+                throw new WrappedIOException(e);
+            }
+            writeChild(p.except);
+            return null;
+        }
+
+        public Void onElement(DElementPattern p) {
+            return xmlToken(ELEMENT,p);
+        }
+
+        public Void onEmpty(DEmptyPattern p) {
+            header(EMPTY,p);
+            return null;
+        }
+
+        public Void onGrammar(DGrammarPattern p) {
+            header(GRAMMAR,p);
+            List<DDefine> list = new ArrayList<DDefine>();
+            for (DDefine d : p)
+                list.add(d);
+            // sorted so that equal grammars always produce equal bytes
+            Collections.sort(list,new Comparator<DDefine>() {
+                public int compare(DDefine d1, DDefine d2) {
+                    return d1.getName().compareTo(d2.getName());
+                }
+            });
+            try {
+                out.writeInt(list.size());
+                for (DDefine d : list)
+                    writeDefine(d);
+            } catch (IOException e) {
+                throw new WrappedIOException(e);
+            }
+            writeChild(p.start);
+            for (DDefine d : list)
+                writeChild(d.getPattern());
+            return null;
+        }
+
+        public Void onGroup(DGroupPattern p) {
+            return container(GROUP,p);
+        }
+
+        public Void onInterleave(DInterleavePattern p) {
+            return container(INTERLEAVE,p);
+        }
+
+        public Void onList(DListPattern p) {
+            return unary(LIST,p);
+        }
+
+        public Void onMixed(DMixedPattern p) {
+            return unary(MIXED,p);
+        }
+
+        public Void onNotAllowed(DNotAllowedPattern p) {
+            header(NOT_ALLOWED,p);
+            return null;
+        }
+
+        public Void onOneOrMore(DOneOrMorePattern p) {
+            return unary(ONE_OR_MORE,p);
+        }
+
+        public Void onOptional(DOptionalPattern p) {
+            return unary(OPTIONAL,p);
+        }
+
+        public Void onRef(DRefPattern p) {
+            header(REF,p);
+            try {
+                writeDefine(p.getTarget());
+            } catch (IOException e) {
+                throw new WrappedIOException(e);
+            }
+            return null;
+        }
+
+        public Void onText(DTextPattern p) {
+            header(TEXT,p);
+            return null;
+        }
+
+        public Void onValue(DValuePattern p) {
+            header(VALUE,p);
+            try {
+                writeString(p.getDatatypeLibrary());
+                writeString(p.getType());
+                writeString(p.getValue());
+                writeString(p.getNs());
+                writeContext(p.getContext());
+            } catch (IOException e) {
+                throw new WrappedIOException(e);
+            }
+            return null;
+        }
+
+        public Void onZeroOrMore(DZeroOrMorePattern p) {
+            return unary(ZERO_OR_MORE,p);
+        }
+
+        private Void nameClassTag(byte tag) {
+            try {
+                out.writeByte(tag);
+            } catch (IOException e) {
+                throw new WrappedIOException(e);
+            }
+            return null;
+        }
+
+        private Void nameClassString(String s) {
+            try {
+                writeString(s);
+            } catch (IOException e) {
+                throw new WrappedIOException(e);
+            }
+            return null;
+        }
+
+        public Void visitChoice(NameClass nc1, NameClass nc2) {
+            nameClassTag(NC_CHOICE);
+            writeNameClass(nc1);
+            writeNameClass(nc2);
+            return null;
+        }
+
+        public Void visitNsName(String ns) {
+            nameClassTag(NC_NS_NAME);
+            return nameClassString(ns);
+        }
+
+        public Void visitNsNameExcept(String ns, NameClass nc) {
+            nameClassTag(NC_NS_NAME_EXCEPT);
+            nameClassString(ns);
+            writeNameClass(nc);
+            return null;
+        }
+
+        public Void visitAnyName() {
+            return nameClassTag(NC_ANY_NAME);
+        }
+
+        public Void visitAnyNameExcept(NameClass nc) {
+            nameClassTag(NC_ANY_NAME_EXCEPT);
+            writeNameClass(nc);
+            return null;
+        }
+
+        public Void visitName(QName name) {
+            nameClassTag(NC_NAME);
+            nameClassString(name.getNamespaceURI());
+            nameClassString(name.getLocalPart());
+            return nameClassString(name.getPrefix());
+        }
+
+        public Void visitNull() {
+            return nameClassTag(NC_NULL);
+        }
+    }
+
+    private static final class Reader {
+        private final DataInput in;
+        private final List<String> strings = new ArrayList<String>();
+        private final List<DDefine> defines = new ArrayList<DDefine>();
+        private final UnaryOperator<String> systemIds;
+        private final Map<String,String> mappedSystemIds = new HashMap<String,String>();
+
+        Reader(DataInput in, UnaryOperator<String> systemIds) {
+            this.in = in;
+            this.systemIds = systemIds;
+        }
+
+        DPattern readPattern() throws IOException {
+            byte tag = in.readByte();
+            if(tag==NULL_PATTERN)
+                return null;
+            Locator location = readLocation();
+            DAnnotation annotation = readAnnotation();
+            DPattern p;
+            switch (tag) {
+            case ATTRIBUTE:
+                p = readUnary(new DAttributePattern(readNameClass()));
+                break;
+            case ELEMENT:
+                p = readUnary(new DElementPattern(readNameClass()));
+                break;
+            case CHOICE:
+                p = readContainer(new DChoicePattern());
+                break;
+            case GROUP:
+                p = readContainer(new DGroupPattern());
+                break;
+            case INTERLEAVE:
+                p = readContainer(new DInterleavePattern());
+                break;
+            case LIST:
+                p = readUnary(new DListPattern());
+                break;
+            case MIXED:
+                p = readUnary(new DMixedPattern());
+                break;
+            case ONE_OR_MORE:
+                p = readUnary(new DOneOrMorePattern());
+                break;
+            case OPTIONAL:
+                p = readUnary(new DOptionalPattern());
+                break;
+            case ZERO_OR_MORE:
+                p = readUnary(new DZeroOrMorePattern());
+                break;
+            case EMPTY:
+                p = new DEmptyPattern();
+                break;
+            case NOT_ALLOWED:
+                p = new DNotAllowedPattern();
+                break;
+            case TEXT:
+                p = new DTextPattern();
+                break;
+            case DATA:
+                p = readData();
+                break;
+            case VALUE:
+                p = readValue();
+                break;
+            case REF:
+                p = new DRefPattern(readDefine(null));
+                break;
+            case GRAMMAR:
+                p = readGrammar();
+                break;
+            default:
+                throw new IOException("unknown pattern tag "+tag);
+            }
+            p.location = location;
+            p.annotation = annotation;
+            return p;
+        }
+
+        private DPattern readUnary(DUnaryPattern p) throws IOException {
+            p.setChild(readPattern());
+            return p;
+        }
+
+        private DPattern readContainer(DContainerPattern p) throws IOException {
+            int n = in.readInt();
+            for (int i = 0; i < n; i++)
+                p.add(readPattern());
+            return p;
+        }
+
+        private DPattern readData() throws IOException {
+            DDataPattern p = new DDataPattern();
+            p.datatypeLibrary = readString();
+            p.type = readString();
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String name = readString();
+                String value = readString();
+                String ns = readString();
+                Context context = readContext();
+                Locator loc = readLocation();
+                p.params.add(p.new Param(name,value,context,ns,(LocatorImpl)loc,null));
+            }
+            p.except = readPattern();
+            return p;
+        }
+
+        private DPattern readValue() throws IOException {
+            String datatypeLibrary = readString();
+            String type = readString();
+            String value = readString();
+            String ns = readString();
+            return new DValuePattern(datatypeLibrary,type,value,readContext(),ns);
+        }
+
+        private DPattern readGrammar() throws IOException {
+            DGrammarPattern p = new DGrammarPattern();
+            int n = in.readInt();
+            List<DDefine> list = new ArrayList<DDefine>(n);
+            for (int i = 0; i < n; i++)
+                list.add(readDefine(p));
+            p.start = readPattern();
+            for (DDefine d : list)
+                d.setPattern(readPattern());
+            return p;
+        }
+
+        private DDefine readDefine(DGrammarPattern grammar) throws IOException {
+            int id = in.readInt();
+            if(!in.readBoolean())
+                return defines.get(id);
+            String name = readString();
+            byte combine = in.readByte();
+            DDefine d = grammar!=null ? grammar.getOrAdd(name) : new DDefine(name);
+            d.setCombine(combine==COMBINE_CHOICE ? GrammarSection.COMBINE_CHOICE
+                : combine==COMBINE_INTERLEAVE ? GrammarSection.COMBINE_INTERLEAVE : null);
+            d.annotation = readAnnotation();
+            if(id!=defines.size())
+                throw new IOException("corrupted define table");
+            defines.add(d);
+            return d;
+        }
+
+        private String readString() throws IOException {
+            int index = in.readInt();
+            if(index==STRING_NULL)
+                return null;
+            if(index!=STRING_NEW)
+                return strings.get(index);
+            int len = in.readInt();
+            char[] buf = new char[len];
+            for (int i = 0; i < len; i++)
+                buf[i] = in.readChar();
+            String s = new String(buf);
+            strings.add(s);
+            return s;
+        }
+
+        private String readSystemId() throws IOException {
+            String systemId = readString();
+            if(systemId==null)
+                return null;
+            // the same few IDs occur at nearly every location
+            String mapped = mappedSystemIds.get(systemId);
+            if(mapped==null) {
+                mapped = systemIds.apply(systemId);
+                mappedSystemIds.put(systemId,mapped);
+            }
+            return mapped;
+        }
+
+        private Locator readLocation() throws IOException {
+            if(!in.readBoolean())
+                return null;
+            return new LocatorImpl(readSystemId(),in.readInt(),in.readInt());
+        }
+
+        private DAnnotation readAnnotation() throws IOException {
+            int n = in.readInt();
+            if(n==0)
+                return null;
+            DAnnotation anno = new DAnnotation();
+            anno.attributes = new HashMap<QName,DAnnotation.Attribute>();
+            for (int i = 0; i < n; i++) {
+                String ns = readString();
+                String localName = readString();
+                String prefix = readString();
+                String value = readString();
+                Locator loc = readLocation();
+                anno.attributes.put(new QName(ns,localName),new DAnnotation.Attribute(ns,localName,prefix,value,loc));
+            }
+            return anno;
+        }
+
+        private Context readContext() throws IOException {
+            if(!in.readBoolean())
+                return null;
+            String baseUri = readSystemId();
+            int n = in.readInt();
+            Map<String,String> prefixes = new HashMap<String,String>();
+            for (int i = 0; i < n; i++)
+                prefixes.put(readString(),readString());
+            return new SnapshotContext(baseUri,prefixes);
+        }
+
+        private NameClass readNameClass() throws IOException {
+            byte tag = in.readByte();
+            switch (tag) {
+            case NC_CHOICE:
+                return new ChoiceNameClass(readNameClass(),readNameClass());
+            case NC_NS_NAME:
+                return new NsNameClass(readString());
+            case NC_NS_NAME_EXCEPT:
+                return new NsNameExceptNameClass(readString(),readNameClass());
+            case NC_ANY_NAME:
+                return NameClass.ANY;
+            case NC_ANY_NAME_EXCEPT:
+                return new AnyNameExceptNameClass(readNameClass());
+            case NC_NAME:
+                return new SimpleNameClass(readString(),readString(),readString());
+            case NC_NULL:
+                return NameClass.NULL;
+            default:
+                throw new IOException("unknown name class tag "+tag);
+            }
+        }
+    }
+
+    /**
+     * Immutable context restored from the prefix bindings that were in scope
+     * when the pattern was written.
+     */
+    private static final class SnapshotContext implements Context {
+        private final String baseUri;
+        private final Map<String,String> prefixes;
+
+        SnapshotContext(String baseUri, Map<String,String> prefixes) {
+            this.baseUri = baseUri;
+            this.prefixes = prefixes;
+        }
+
+        public Enumeration prefixes() {
+            return Collections.enumeration(prefixes.keySet());
+        }
+
+        public Context copy() {
+            return this;
+        }
+
+        public String resolveNamespacePrefix(String prefix) {
+            if(prefix.equals("xml"))
+                return XMLConstants.XML_NS_URI;
+            return prefixes.get(prefix);
+        }
+
+        public String getBaseUri() {
+            return baseUri;
+        }
+
+        public boolean isUnparsedEntity(String entityName) {
+            return true;
+        }
+
+        public boolean isNotation(String notationName) {
+            return true;
+        }
+    }
+
+    /**
+     * Carries an {@link IOException} out of the visitor methods.
+     */
+    private static final class WrappedIOException extends RuntimeException {
+        WrappedIOException(IOException cause) {
+            super(cause);
+        }
+
+        public IOException getCause() {
+            return (IOException)super.getCause();
+        }
+    }
+}
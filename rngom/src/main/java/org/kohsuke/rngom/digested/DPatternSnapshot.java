@@ -0,0 +1,120 @@
+package org.kohsuke.rngom.digested;
+
+import org.kohsuke.rngom.parse.Parseable;
+import org.kohsuke.rngom.parse.compact.CompactParseable;
+import org.kohsuke.rngom.parse.xml.SAXParseable;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.function.UnaryOperator;
+
+/**
+ * A precompiled schema: a digested pattern written by {@link DPatternSerializer}
+ * behind a small header, stored next to the schema it was compiled from under
+ * the schema's name plus {@link #SUFFIX}.
+ *
+ * <p>
+ * System IDs of the files inside the schema's directory are stored relative to
+ * it, so a snapshot compiled in a build directory can be read from wherever the
+ * schema is finally deployed, for example from inside a jar.
+ *
+ * <p>
+ * The {@link #main(String[])} method compiles snapshots at build time.
+ */
+public final class DPatternSnapshot {
+    public static final String SUFFIX = ".dpattern";
+
+    private static final int MAGIC = 0x44504154;
+
+    private DPatternSnapshot() {}
+
+    /**
+     * @param baseUri
+     *      URI of the directory that relative system IDs are stored against, ending in a slash.
+     */
+    public static void write(DPattern pattern, OutputStream out, final URI baseUri) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(DPatternSerializer.FORMAT_VERSION);
+        DPatternSerializer.write(pattern,data,new UnaryOperator<String>() {
+            public String apply(String systemId) {
+                try {
+                    return baseUri.relativize(new URI(systemId).normalize()).toString();
+                } catch (URISyntaxException e) {
+                    return systemId;
+                }
+            }
+        });
+        data.flush();
+    }
+
+    /**
+     * @param baseUri
+     *      prepended to the relative system IDs; need not be a hierarchical URI.
+     * @return
+     *      null if the snapshot was written by a different version of the serializer.
+     */
+    public static DPattern read(InputStream in, final String baseUri) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if(data.readInt()!=MAGIC || data.readInt()!=DPatternSerializer.FORMAT_VERSION)
+            return null;
+        return DPatternSerializer.read(data,new UnaryOperator<String>() {
+            public String apply(String systemId) {
+                try {
+                    return new URI(systemId).isAbsolute() ? systemId : baseUri+systemId;
+                } catch (URISyntaxException e) {
+                    return systemId;
+                }
+            }
+        });
+    }
+
+    /**
+     * Compiles snapshots of schemas.
+     *
+     * <p>
+     * Usage: {@code DPatternSnapshot <directory> <schema>...}, where each schema is a
+     * path relative to the directory; its snapshot is written next to it.
+     * A schema with an error fails the whole run.
+     */
+    public static void main(String[] args) throws Exception {
+        if(args.length<2)
+            throw new IllegalArgumentException("usage: DPatternSnapshot <directory> <schema>...");
+        File dir = new File(args[0]).getCanonicalFile();
+        URI baseUri = dir.toURI();
+        ErrorHandler eh = new DefaultHandler() {
+            public void error(SAXParseException e) throws SAXException {
+                throw e;
+            }
+        };
+        for (int i = 1; i < args.length; i++) {
+            File schema = new File(dir,args[i]);
+            InputSource in = new InputSource(schema.toURI().toString());
+            Parseable p = args[i].endsWith(".rnc") ? new CompactParseable(in,eh) : new SAXParseable(in,eh);
+            // no datatype checks, as datatype libraries used by the schema need not be available at build time
+            DPattern pattern = (DPattern)p.parse(new DSchemaBuilderImpl());
+
+            File snapshot = new File(schema.getPath()+SUFFIX);
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(snapshot));
+            try {
+                write(pattern,out,baseUri);
+            } finally {
+                out.close();
+            }
+            System.out.println("compiled "+schema+" to "+snapshot.getName()+" ("+snapshot.length()+" bytes)");
+        }
+    }
+}
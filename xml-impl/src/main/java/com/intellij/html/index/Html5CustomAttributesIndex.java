@@ -15,16 +15,13 @@
  */
 package com.intellij.html.index;
 
-import com.intellij.xml.util.HtmlUtil;
 import consulo.annotation.component.ExtensionImpl;
 import consulo.index.io.DataIndexer;
 import consulo.index.io.EnumeratorStringDescriptor;
 import consulo.index.io.ID;
 import consulo.index.io.KeyDescriptor;
 import consulo.language.Language;
-import consulo.language.ast.IElementType;
 import consulo.language.file.LanguageFileType;
-import consulo.language.lexer.Lexer;
 import consulo.language.psi.stub.FileBasedIndex;
 import consulo.language.psi.stub.FileContent;
 import consulo.language.psi.stub.ScalarIndexExtension;
@@ -35,9 +32,6 @@ import consulo.xml.ide.highlighter.HtmlFileType;
 import consulo.xml.ide.highlighter.XHtmlFileType;
 import consulo.xml.lang.html.HTMLLanguage;
 import consulo.xml.lang.xhtml.XHTMLLanguage;
-import consulo.xml.language.psi.XmlTokenType;
-import consulo.xml.lexer.HtmlHighlightingLexer;
-import consulo.xml.lexer.XHtmlHighlightingLexer;
 
 import java.util.Collections;
 import java.util.HashMap;
@@ -56,24 +50,8 @@ public class Html5CustomAttributesIndex extends ScalarIndexExtension<String> {
             CharSequence input = inputData.getContentAsText();
             Language language = ((LanguageFileType)inputData.getFileType()).getLanguage();
             if (language == HTMLLanguage.INSTANCE || language == XHTMLLanguage.INSTANCE) {
-                final Lexer lexer = (language == HTMLLanguage.INSTANCE ? new HtmlHighlightingLexer() : new XHtmlHighlightingLexer());
-                lexer.start(input);
                 Map<String, Void> result = new HashMap<>();
-                IElementType tokenType = lexer.getTokenType();
-                while (tokenType != null) {
-                    if (tokenType == XmlTokenType.XML_NAME) {
-                        String xmlName = input.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()).toString();
-                        if (HtmlUtil.isCustomHtml5Attribute(xmlName)) {
-                            result.put(xmlName, null);
-                        }
-                    }
-                    else if (tokenType == XmlTokenType.XML_DOCTYPE_PUBLIC || tokenType == XmlTokenType.XML_DOCTYPE_SYSTEM) {
-                        // this is not an HTML5 context
-                        break;
-                    }
-                    lexer.advance();
-                    tokenType = lexer.getTokenType();
-                }
+                Html5CustomAttributesScanner.scan(input, language == XHTMLLanguage.INSTANCE, name -> result.put(name, null));
                 return result;
             }
             return Collections.emptyMap();
@@ -116,6 +94,6 @@ public class Html5CustomAttributesIndex extends ScalarIndexExtension<String> {
 
     @Override
     public int getVersion() {
-        return 1;
+        return 3;
     }
 }
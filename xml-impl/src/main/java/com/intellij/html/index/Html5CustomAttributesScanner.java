@@ -0,0 +1,424 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.html.index;
+
+import java.util.function.Consumer;
+
+/**
+ * Finds the {@code data-*} attribute names of an HTML or XHTML file for {@link Html5CustomAttributesIndex}.
+ * It follows the rules of {@code _HtmlLexer} (for XHTML, {@code _XmlLexer}) for tags, attributes, comments
+ * and the doctype, and skips the bodies of {@code script} and {@code style} elements, but builds no tokens:
+ * only the names that start with {@code data-} are turned into strings.
+ * <p>
+ * Scanning stops at a doctype with a public (or, in XHTML, a system) identifier,
+ * since such a file is not HTML5.
+ */
+final class Html5CustomAttributesScanner {
+    private static final String DATA_PREFIX = "data-";
+
+    private final CharSequence myText;
+    private final int myLength;
+    private final boolean myXhtml;
+    private final Consumer<String> myConsumer;
+    // whether the last tag scanned was closed by '>', so that raw text may follow
+    private boolean myTagClosed;
+
+    private Html5CustomAttributesScanner(CharSequence text, boolean xhtml, Consumer<String> consumer) {
+        myText = text;
+        myLength = text.length();
+        myXhtml = xhtml;
+        myConsumer = consumer;
+    }
+
+    static void scan(CharSequence text, boolean xhtml, Consumer<String> consumer) {
+        new Html5CustomAttributesScanner(text, xhtml, consumer).scan();
+    }
+
+    private void scan() {
+        int i = 0;
+        while (i < myLength) {
+            char c = myText.charAt(i);
+            if (c == '<') {
+                if (startsWith(i, "<!--")) {
+                    i = skipComment(i + 4);
+                    continue;
+                }
+                if (myXhtml ? startsWith(i, "<!DOCTYPE") : startsWithIgnoreCase(i, "<!doctype")) {
+                    i = skipDoctype(i + 9);
+                    if (i < 0) {
+                        // this is not an HTML5 context
+                        return;
+                    }
+                    continue;
+                }
+                if (startsWith(i, "<?")) {
+                    i = myXhtml ? skipPast(i + 2, "?>") : skipPast(i + 2, '>');
+                    continue;
+                }
+                if (myXhtml && startsWith(i, "<![CDATA[")) {
+                    i = skipPast(i + 9, "]]>");
+                    continue;
+                }
+                boolean endTag = i + 1 < myLength && myText.charAt(i + 1) == '/';
+                int nameStart = endTag ? i + 2 : i + 1;
+                if (myXhtml) {
+                    // the XML lexer allows white space before the tag name
+                    nameStart = skipWhitespace(nameStart);
+                }
+                if (nameStart < myLength && isNameStart(myText.charAt(nameStart))) {
+                    // tag names are not attribute names
+                    int nameEnd = skipName(nameStart);
+                    i = scanAttributes(nameEnd);
+                    if (!endTag && myTagClosed && (isTagName(nameStart, nameEnd, "script") || isTagName(nameStart, nameEnd, "style"))) {
+                        i = skipRawText(i, nameStart, nameEnd);
+                    }
+                    continue;
+                }
+                if (!myXhtml && !endTag && nameStart < myLength && myText.charAt(nameStart) == '#') {
+                    i = skipPast(nameStart, '>');
+                    continue;
+                }
+                i++;
+            }
+            else if (!myXhtml && c == '\\' && i + 1 < myLength && (myText.charAt(i + 1) == '$' || myText.charAt(i + 1) == '#')) {
+                i += 2;
+            }
+            else if (!myXhtml && c == '$' && i + 1 < myLength && myText.charAt(i + 1) == '{') {
+                int end = skipExpression(i);
+                i = end >= 0 ? end : i + 1;
+            }
+            else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Reports the attribute names up to the end of the tag.
+     *
+     * @return the offset after the tag, or of the first character that cannot be part of it
+     */
+    private int scanAttributes(int i) {
+        myTagClosed = false;
+        // in XHTML, '=' is only allowed after an attribute name
+        boolean afterName = false;
+        while (true) {
+            i = skipWhitespace(i);
+            if (i >= myLength) {
+                return myLength;
+            }
+            char c = myText.charAt(i);
+            if (c == '>') {
+                myTagClosed = true;
+                return i + 1;
+            }
+            if (c == '/' && i + 1 < myLength && myText.charAt(i + 1) == '>') {
+                return i + 2;
+            }
+            if (isNameStart(c)) {
+                int nameEnd = skipName(i);
+                if (startsWith(i, DATA_PREFIX)) {
+                    myConsumer.accept(myText.subSequence(i, nameEnd).toString());
+                }
+                i = nameEnd;
+                afterName = true;
+            }
+            else if (c == '=' && myXhtml) {
+                if (!afterName) {
+                    return i;
+                }
+                i = skipXmlValue(i);
+                afterName = false;
+            }
+            else if (c == '=') {
+                i = skipWhitespace(i + 1);
+                // the lexer's ATTRIBUTE_VALUE_START state, which expressions do not leave
+                while (true) {
+                    if (i >= myLength) {
+                        return myLength;
+                    }
+                    c = myText.charAt(i);
+                    if (c == '>') {
+                        myTagClosed = true;
+                        return i + 1;
+                    }
+                    if (c == '/' && i + 1 < myLength && myText.charAt(i + 1) == '>') {
+                        return i + 2;
+                    }
+                    if (c == '"' || c == '\'') {
+                        i = skipPast(i + 1, c);
+                        break;
+                    }
+                    int end = skipUnquotedValue(i);
+                    int expressionEnd = startsWith(i, "${") ? skipExpression(i) : -1;
+                    if (expressionEnd < end) {
+                        i = end;
+                        break;
+                    }
+                    // an expression at least as long as the value wins
+                    i = skipWhitespace(expressionEnd);
+                }
+                afterName = false;
+            }
+            else {
+                int entityEnd = c == '&' ? skipEntity(i) : -1;
+                if (entityEnd < 0) {
+                    // the lexer leaves the tag here and reads on as text
+                    return i;
+                }
+                i = entityEnd;
+                afterName = false;
+            }
+        }
+    }
+
+    /**
+     * Skips the value of an attribute in the {@code _HtmlLexer} way: up to white space, a quote or {@code >},
+     * with a slash followed by any other character taken along, so that a slash just before {@code >} ends
+     * the value instead of the tag.
+     */
+    private int skipUnquotedValue(int i) {
+        while (i < myLength) {
+            char c = myText.charAt(i);
+            if (c == '/') {
+                i += i + 1 < myLength && myText.charAt(i + 1) != '>' ? 2 : 1;
+            }
+            else if (isWhitespace(c) || c == '\'' || c == '"' || c == '>') {
+                break;
+            }
+            else {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Skips {@code =} and a quoted value in the {@code _XmlLexer} way. Anything else after the {@code =} is
+     * read as if the value were missing, so an unquoted value that looks like a name is an attribute name.
+     */
+    private int skipXmlValue(int i) {
+        while (i < myLength && (myText.charAt(i) == '=' || isWhitespace(myText.charAt(i)))) {
+            i++;
+        }
+        if (i < myLength && (myText.charAt(i) == '"' || myText.charAt(i) == '\'')) {
+            return skipPast(i + 1, myText.charAt(i));
+        }
+        return i;
+    }
+
+    /**
+     * @return the offset after the closing brace of an expression, or -1 if it is not closed
+     */
+    private int skipExpression(int start) {
+        int end = indexOf(start + 2, '}');
+        return end >= 0 ? end + 1 : -1;
+    }
+
+    private int skipComment(int i) {
+        for (; i + 1 < myLength; i++) {
+            if (myText.charAt(i) == '-' && myText.charAt(i + 1) == '-') {
+                int end = myXhtml ? i + 2 : skipWhitespace(i + 2);
+                if (end < myLength && myText.charAt(end) == '>') {
+                    return end + 1;
+                }
+            }
+        }
+        return myLength;
+    }
+
+    /**
+     * @return the offset after the doctype, or -1 if it has a public or system identifier
+     */
+    private int skipDoctype(int i) {
+        while (i < myLength) {
+            char c = myText.charAt(i);
+            if (c == '>') {
+                return i + 1;
+            }
+            if (myXhtml ? startsWith(i, "PUBLIC") || startsWith(i, "SYSTEM") : startsWithIgnoreCase(i, "public")) {
+                return -1;
+            }
+            if (c == '"' || c == '\'') {
+                int end = indexOf(i + 1, c);
+                i = end >= 0 ? end + 1 : i + 1;
+            }
+            else if (c == '&') {
+                int end = skipEntity(i);
+                i = end >= 0 ? end : i + 1;
+            }
+            else {
+                i++;
+            }
+        }
+        return myLength;
+    }
+
+    /**
+     * Skips the text of a script or style element up to its end tag.
+     */
+    private int skipRawText(int i, int nameStart, int nameEnd) {
+        while (true) {
+            int end = indexOf(i, '<');
+            if (end < 0 || end + 1 >= myLength) {
+                return myLength;
+            }
+            i = end + 1;
+            if (myText.charAt(i) != '/') {
+                continue;
+            }
+            // the HTML lexer reads a name after "</ " as text
+            int name = myXhtml ? skipWhitespace(i + 1) : i + 1;
+            int length = nameEnd - nameStart;
+            if (name + length <= myLength && regionMatches(name, nameStart, length)
+                && (name + length == myLength || !isNameChar(myText.charAt(name + length)) && myText.charAt(name + length) != ':')) {
+                return end;
+            }
+        }
+    }
+
+    /**
+     * @return the offset after an entity or character reference, or -1 if there is none at the offset
+     */
+    private int skipEntity(int i) {
+        int j = i + 1;
+        if (j < myLength && myText.charAt(j) == '#') {
+            j++;
+            boolean hex = j < myLength && myText.charAt(j) == 'x';
+            if (hex) {
+                j++;
+            }
+            int digits = j;
+            while (j < myLength && (hex ? Character.digit(myText.charAt(j), 16) >= 0 && myText.charAt(j) < 128 : isDigit(myText.charAt(j)))) {
+                j++;
+            }
+            if (j == digits) {
+                return -1;
+            }
+        }
+        else if (j < myLength && isNameStart(myText.charAt(j))) {
+            j = skipName(j);
+        }
+        else {
+            return -1;
+        }
+        return j < myLength && myText.charAt(j) == ';' ? j + 1 : -1;
+    }
+
+    private boolean isTagName(int start, int end, String name) {
+        if (end - start != name.length()) {
+            return false;
+        }
+        return myXhtml ? startsWith(start, name) : startsWithIgnoreCase(start, name);
+    }
+
+    private boolean regionMatches(int offset, int otherOffset, int length) {
+        for (int k = 0; k < length; k++) {
+            char c1 = myText.charAt(offset + k);
+            char c2 = myText.charAt(otherOffset + k);
+            if (c1 != c2 && (myXhtml || Character.toLowerCase(c1) != Character.toLowerCase(c2))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean startsWith(int offset, String prefix) {
+        if (offset + prefix.length() > myLength) {
+            return false;
+        }
+        for (int k = 0; k < prefix.length(); k++) {
+            if (myText.charAt(offset + k) != prefix.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the prefix is in lower case
+    private boolean startsWithIgnoreCase(int offset, String prefix) {
+        if (offset + prefix.length() > myLength) {
+            return false;
+        }
+        for (int k = 0; k < prefix.length(); k++) {
+            if (Character.toLowerCase(myText.charAt(offset + k)) != prefix.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skipPast(int i, char c) {
+        int end = indexOf(i, c);
+        return end >= 0 ? end + 1 : myLength;
+    }
+
+    private int skipPast(int i, String terminator) {
+        for (; i < myLength; i++) {
+            if (startsWith(i, terminator)) {
+                return i + terminator.length();
+            }
+        }
+        return myLength;
+    }
+
+    private int indexOf(int i, char c) {
+        for (; i < myLength; i++) {
+            if (myText.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int skipName(int i) {
+        i++;
+        while (i < myLength && isNameChar(myText.charAt(i))) {
+            i++;
+        }
+        if (myXhtml && i < myLength && myText.charAt(i) == ':') {
+            // an XML name has at most one colon
+            i++;
+            while (i < myLength && isNameChar(myText.charAt(i))) {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    private int skipWhitespace(int i) {
+        while (i < myLength && isWhitespace(myText.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private boolean isNameStart(char c) {
+        return Character.isLetter(c) || c == '_' || !myXhtml && c == ':';
+    }
+
+    private boolean isNameChar(char c) {
+        return isNameStart(c) || isDigit(c) || c == '.' || c == '-';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f';
+    }
+}
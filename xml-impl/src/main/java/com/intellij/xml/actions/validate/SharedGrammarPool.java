@@ -0,0 +1,157 @@
+package com.intellij.xml.actions.validate;
+
+import com.intellij.xml.util.XmlResourceResolver;
+import consulo.language.psi.PsiFile;
+import consulo.util.dataholder.Key;
+import consulo.virtualFileSystem.VirtualFile;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.jspecify.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The grammar pool of a single parse: the file's own pool, backed by the project's {@link XmlGrammarCache}
+ * for XML Schema grammars. Schema grammars compiled during the parse are published to the cache by
+ * {@link #publish} once the document's dependencies are known.
+ */
+class SharedGrammarPool implements XMLGrammarPool {
+    private static final Key<ContentDigest> CONTENT_DIGEST_KEY = Key.create("SharedGrammarPool.contentDigest");
+
+    private final XMLGrammarPool myFilePool;
+    private final XmlGrammarCache myCache;
+    private final XmlResourceResolver myResolver;
+    private final Map<MissedGrammar, XmlGrammarCache.GrammarKey> myMissedKeys = new HashMap<>();
+    private final List<Grammar> myCompiledGrammars = new ArrayList<>();
+    private final Set<VirtualFile> myInheritedDependencies = new LinkedHashSet<>();
+
+    /**
+     * Identifies a grammar by its target namespace and the location it was requested from, both of which the
+     * compiled grammar's description keeps: several schemas may have the same (or no) target namespace.
+     */
+    private record MissedGrammar(@Nullable String namespace, @Nullable String literalSystemId, @Nullable String baseSystemId) {
+        static MissedGrammar of(XMLGrammarDescription desc) {
+            return new MissedGrammar(desc.getNamespace(), desc.getLiteralSystemId(), desc.getBaseSystemId());
+        }
+    }
+
+    private record ContentDigest(long stamp, String digest) {
+    }
+
+    SharedGrammarPool(XMLGrammarPool filePool, XmlGrammarCache cache, XmlResourceResolver resolver) {
+        myFilePool = filePool;
+        myCache = cache;
+        myResolver = resolver;
+    }
+
+    @Override
+    public Grammar[] retrieveInitialGrammarSet(String grammarType) {
+        return myFilePool.retrieveInitialGrammarSet(grammarType);
+    }
+
+    @Override
+    public void cacheGrammars(String grammarType, Grammar[] grammars) {
+        myFilePool.cacheGrammars(grammarType, grammars);
+        if (XMLGrammarDescription.XML_SCHEMA.equals(grammarType)) {
+            Collections.addAll(myCompiledGrammars, grammars);
+        }
+    }
+
+    @Override
+    public Grammar retrieveGrammar(XMLGrammarDescription desc) {
+        Grammar grammar = myFilePool.retrieveGrammar(desc);
+        if (grammar != null || !XMLGrammarDescription.XML_SCHEMA.equals(desc.getGrammarType())) {
+            return grammar;
+        }
+        XmlGrammarCache.GrammarKey key = createKey(desc);
+        if (key == null) {
+            return null;
+        }
+        grammar = myCache.acquire(key, myFilePool, myInheritedDependencies);
+        if (grammar != null) {
+            myFilePool.cacheGrammars(desc.getGrammarType(), new Grammar[]{grammar});
+        }
+        else {
+            myMissedKeys.put(MissedGrammar.of(desc), key);
+        }
+        return grammar;
+    }
+
+    @Nullable
+    private XmlGrammarCache.GrammarKey createKey(XMLGrammarDescription desc) {
+        String systemId = desc.getLiteralSystemId() != null ? desc.getLiteralSystemId() : desc.getNamespace();
+        PsiFile schema;
+        try {
+            schema = myResolver.resolve(desc.getBaseSystemId(), systemId);
+        }
+        catch (XmlResourceResolver.IgnoredResourceException e) {
+            return null; // leave it to the parser's own resolution
+        }
+        VirtualFile file = schema != null ? schema.getVirtualFile() : null;
+        if (file == null) {
+            return null;
+        }
+        return new XmlGrammarCache.GrammarKey(desc.getGrammarType(), desc.getNamespace(), file.getUrl(), getContentDigest(schema));
+    }
+
+    private static String getContentDigest(PsiFile file) {
+        long stamp = file.getViewProvider().getModificationStamp();
+        ContentDigest cached = file.getUserData(CONTENT_DIGEST_KEY);
+        if (cached != null && cached.stamp() == stamp) {
+            return cached.digest();
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        String result = HexFormat.of().formatHex(digest.digest(file.getText().getBytes(StandardCharsets.UTF_8)));
+        file.putUserData(CONTENT_DIGEST_KEY, new ContentDigest(stamp, result));
+        return result;
+    }
+
+    /**
+     * Dependencies of the grammars taken from the cache, which the document depends on without having resolved them.
+     */
+    Set<VirtualFile> getInheritedDependencies() {
+        return myInheritedDependencies;
+    }
+
+    void publish(VirtualFile[] dependencies, long timeStamp) {
+        for (Grammar grammar : myCompiledGrammars) {
+            XmlGrammarCache.GrammarKey key = myMissedKeys.get(MissedGrammar.of(grammar.getGrammarDescription()));
+            if (key != null) {
+                myCache.publish(key, grammar, dependencies, timeStamp, myFilePool);
+            }
+        }
+        myCompiledGrammars.clear();
+    }
+
+    @Override
+    public void lockPool() {
+        myFilePool.lockPool();
+    }
+
+    @Override
+    public void unlockPool() {
+        myFilePool.unlockPool();
+    }
+
+    @Override
+    public void clear() {
+        myFilePool.clear();
+    }
+}
@@ -2,6 +2,7 @@
 package com.intellij.xml.actions.validate;
 
 import com.intellij.xml.util.XmlResourceResolver;
+import consulo.application.progress.ProgressManager;
 import consulo.language.psi.PsiFile;
 import consulo.language.psi.PsiManager;
 import consulo.logging.Logger;
@@ -21,6 +22,7 @@ import org.apache.xerces.jaxp.SAXParserFactoryImpl;
 import org.apache.xerces.util.SecurityManager;
 import org.apache.xerces.util.XMLGrammarPoolImpl;
 import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXNotRecognizedException;
@@ -34,7 +36,10 @@ import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import java.io.StringReader;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Mike
@@ -53,10 +58,19 @@ public class ValidateXmlActionHandler implements ValidateXmlHandler {
     private static final Key<Map<String, XMLEntityManager.Entity>> ENTITIES_KEY = Key.create("EntityManagerKey");
     public static final String JDK_XML_MAX_OCCUR_LIMIT = "jdk.xml.maxOccurLimit";
 
+    /**
+     * Idle parsers of the current thread, indexed by {@link #getParserSlot}. A parser is taken out of its slot
+     * while in use and {@link SAXParser#reset() reset} before it is put back, so it keeps no file-specific state
+     * (resolver, grammar pool, features set by subclasses) between validations.
+     */
+    private static final ThreadLocal<SAXParser[]> ourIdleParsers = ThreadLocal.withInitial(() -> new SAXParser[4]);
+
     private Project myProject;
     private XmlFile myFile;
     private ErrorReporter myErrorReporter;
     private SAXParser myParser;
+    private int myParserSlot;
+    private SharedGrammarPool mySharedGrammarPool;
     private XmlResourceResolver myXmlResourceResolver;
     private final boolean myForceChecking;
     private static final String ENTITY_RESOLVER_PROPERTY_NAME = "http://apache.org/xml/properties/internal/entity-resolver";
@@ -149,6 +163,35 @@ public class ValidateXmlActionHandler implements ValidateXmlHandler {
         }
     }
 
+    private static int getParserSlot(boolean validating, boolean schemaChecking) {
+        return (validating ? 1 : 0) | (schemaChecking ? 2 : 0);
+    }
+
+    private void releaseParser() {
+        SAXParser parser = myParser;
+        myParser = null;
+        if (parser == null) {
+            return;
+        }
+        try {
+            // the file keeps the parser's own entity map, which the next parse with this parser would clear
+            XMLEntityManager entityManager = (XMLEntityManager)parser.getXMLReader().getProperty(ENTITY_MANAGER_PROPERTY_ID);
+            Map<String, XMLEntityManager.Entity> entities = XercesAccessor.getEntities(entityManager);
+            if (myFile.getUserData(ENTITIES_KEY) == entities) {
+                myFile.putUserData(ENTITIES_KEY, new HashMap<>(entities));
+            }
+            parser.reset();
+        }
+        catch (SAXException | UnsupportedOperationException e) {
+            LOG.debug(e);
+            return;
+        }
+        SAXParser[] idleParsers = ourIdleParsers.get();
+        if (idleParsers[myParserSlot] == null) {
+            idleParsers[myParserSlot] = parser;
+        }
+    }
+
     private void filterAppException(Exception exception) {
         if (!myErrorReporter.filterValidationException(exception)) {
             LOG.error(exception);
@@ -156,6 +199,7 @@ public class ValidateXmlActionHandler implements ValidateXmlHandler {
     }
 
     public void doParse() {
+        boolean reusable = true;
         try {
             InputSource inputSource = new InputSource(new StringReader(myFile.getText()));
             inputSource.setSystemId(myFile.getVirtualFile().getUrl().replace("file:", "file:/"));
@@ -190,6 +234,11 @@ public class ValidateXmlActionHandler implements ValidateXmlHandler {
                     return new InputSource(new StringReader(psiFile.getText()));
                 }
 
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    ProgressManager.checkCanceled();
+                }
+
                 @Override
                 public void startDocument() throws SAXException {
                     super.startDocument();
@@ -203,13 +252,22 @@ public class ValidateXmlActionHandler implements ValidateXmlHandler {
 
             final String[] resourcePaths = myXmlResourceResolver.getResourcePaths();
             if (resourcePaths.length > 0) { // if caches are used
-                final VirtualFile[] files = new VirtualFile[resourcePaths.length];
+                VirtualFile[] files = new VirtualFile[resourcePaths.length];
                 for (int i = 0; i < resourcePaths.length; ++i) {
                     files[i] = UriUtil.findRelativeFile(resourcePaths[i], null);
                 }
+                if (mySharedGrammarPool != null && !mySharedGrammarPool.getInheritedDependencies().isEmpty()) {
+                    Set<VirtualFile> allFiles = new LinkedHashSet<>(Arrays.asList(files));
+                    allFiles.addAll(mySharedGrammarPool.getInheritedDependencies());
+                    files = allFiles.toArray(new VirtualFile[allFiles.size()]);
+                }
+                long timeStamp = calculateTimeStamp(files, myProject);
 
                 myFile.putUserData(DEPENDENT_FILES_KEY, files);
-                myFile.putUserData(GRAMMAR_POOL_TIME_STAMP_KEY, calculateTimeStamp(files, myProject));
+                myFile.putUserData(GRAMMAR_POOL_TIME_STAMP_KEY, timeStamp);
+                if (mySharedGrammarPool != null) {
+                    mySharedGrammarPool.publish(files, timeStamp);
+                }
             }
             myFile.putUserData(KNOWN_NAMESPACES_KEY, getNamespaces(myFile));
         }
@@ -221,6 +279,15 @@ public class ValidateXmlActionHandler implements ValidateXmlHandler {
         }
         catch (StackOverflowError error) {
             // http://issues.apache.org/jira/browse/XERCESJ-589
+            reusable = false;
+        }
+        finally {
+            if (reusable) {
+                releaseParser();
+            }
+            else {
+                myParser = null;
+            }
         }
     }
 
@@ -229,32 +296,17 @@ public class ValidateXmlActionHandler implements ValidateXmlHandler {
             return null;
         }
 
-        SAXParserFactory factory = new SAXParserFactoryImpl();
-        boolean schemaChecking = false;
+        boolean schemaChecking = needsSchemaChecking();
+        boolean validating = schemaChecking || hasDtdDeclaration();
 
-        if (hasDtdDeclaration()) {
-            factory.setValidating(true);
+        myParserSlot = getParserSlot(validating, schemaChecking);
+        SAXParser[] idleParsers = ourIdleParsers.get();
+        SAXParser parser = idleParsers[myParserSlot];
+        idleParsers[myParserSlot] = null;
+        if (parser == null) {
+            parser = newParser(validating, schemaChecking);
         }
 
-        if (needsSchemaChecking()) {
-            factory.setValidating(true);
-            factory.setNamespaceAware(true);
-            //jdk 1.5 API
-            try {
-                factory.setXIncludeAware(true);
-            }
-            catch (NoSuchMethodError ignore) {
-            }
-            schemaChecking = true;
-        }
-        try {
-            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-        }
-        catch (Exception ignore) {
-        }
-
-        SAXParser parser = factory.newSAXParser();
-
         parser.setProperty(ENTITY_RESOLVER_PROPERTY_NAME, myXmlResourceResolver);
 
         try {
@@ -272,6 +324,10 @@ public class ValidateXmlActionHandler implements ValidateXmlHandler {
 
         if (schemaChecking) { // when dtd checking schema refs could not be validated @see http://marc.theaimsgroup.com/?l=xerces-j-user&m=112504202423704&w=2
             XMLGrammarPool grammarPool = getGrammarPool(myFile, myForceChecking);
+            if (!myForceChecking) { // explicit validation always compiles the schemas anew
+                mySharedGrammarPool = new SharedGrammarPool(grammarPool, XmlGrammarCache.getInstance(myProject), myXmlResourceResolver);
+                grammarPool = mySharedGrammarPool;
+            }
             configureEntityManager(myFile, parser);
             parser.getXMLReader().setProperty(GRAMMAR_FEATURE_ID, grammarPool);
         }
@@ -299,6 +355,28 @@ public class ValidateXmlActionHandler implements ValidateXmlHandler {
         return parser;
     }
 
+    private static SAXParser newParser(boolean validating, boolean schemaChecking) throws SAXException, ParserConfigurationException {
+        SAXParserFactory factory = new SAXParserFactoryImpl();
+        factory.setValidating(validating);
+
+        if (schemaChecking) {
+            factory.setNamespaceAware(true);
+            //jdk 1.5 API
+            try {
+                factory.setXIncludeAware(true);
+            }
+            catch (NoSuchMethodError ignore) {
+            }
+        }
+        try {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        }
+        catch (Exception ignore) {
+        }
+
+        return factory.newSAXParser();
+    }
+
     public static XMLGrammarPool getGrammarPool(XmlFile file, boolean forceChecking) {
         final XMLGrammarPool previousGrammarPool = getGrammarPool(file);
         XMLGrammarPool grammarPool = null;
@@ -309,6 +387,9 @@ public class ValidateXmlActionHandler implements ValidateXmlHandler {
         }
 
         if (grammarPool == null) {
+            if (previousGrammarPool != null) {
+                XmlGrammarCache.getInstance(file.getProject()).release(previousGrammarPool);
+            }
             invalidateEntityManager(file);
             grammarPool = new XMLGrammarPoolImpl();
             file.putUserData(GRAMMAR_POOL_KEY, grammarPool);
@@ -370,7 +451,7 @@ public class ValidateXmlActionHandler implements ValidateXmlHandler {
         return ContainerUtil.mapNotNull(rootTag.getAttributes(), attribute -> attribute.getValue(), ArrayUtil.EMPTY_STRING_ARRAY);
     }
 
-    private static long calculateTimeStamp(final VirtualFile[] files, Project myProject) {
+    static long calculateTimeStamp(final VirtualFile[] files, Project myProject) {
         long timestamp = 0;
 
         for (VirtualFile file : files) {
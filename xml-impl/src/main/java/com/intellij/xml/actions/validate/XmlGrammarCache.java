@@ -0,0 +1,169 @@
+package com.intellij.xml.actions.validate;
+
+import consulo.annotation.component.ComponentScope;
+import consulo.annotation.component.ServiceAPI;
+import consulo.annotation.component.ServiceImpl;
+import consulo.project.Project;
+import consulo.virtualFileSystem.VirtualFile;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compiled Xerces grammars shared by all instance documents of a project.
+ * <p>
+ * A grammar is keyed by the location and content hash of the schema file it was compiled from, and stays valid
+ * while the files the publishing document depended on (see {@code DEPENDENT_FILES_KEY} in
+ * {@link ValidateXmlActionHandler}) keep their modification stamps. Each entry counts the per-file grammar pools
+ * that use it. When the cache exceeds its capacity, least recently used entries without users are evicted first;
+ * if that is not enough, least recently used entries are evicted even if they have users. The per-file pools keep
+ * their own reference to the grammar, so they are not affected, but the next document to ask for it compiles it again.
+ */
+@Singleton
+@ServiceAPI(ComponentScope.PROJECT)
+@ServiceImpl
+public class XmlGrammarCache {
+    private static final int CAPACITY = Integer.getInteger("xml.validation.grammar.cache.size", 64);
+
+    /**
+     * @param contentDigest digest of the text of the schema file at {@code location}
+     */
+    public record GrammarKey(String grammarType, @Nullable String namespace, String location, String contentDigest) {
+    }
+
+    private static class Entry {
+        final Grammar grammar;
+        final VirtualFile[] dependencies;
+        final long timeStamp;
+        final Set<Object> holders = Collections.newSetFromMap(new WeakHashMap<>());
+
+        Entry(Grammar grammar, VirtualFile[] dependencies, long timeStamp) {
+            this.grammar = grammar;
+            this.dependencies = dependencies;
+            this.timeStamp = timeStamp;
+        }
+    }
+
+    private final Project myProject;
+    private final LinkedHashMap<GrammarKey, Entry> myEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong myHits = new AtomicLong();
+    private final AtomicLong myMisses = new AtomicLong();
+    private final AtomicLong myEvictions = new AtomicLong();
+
+    @Inject
+    public XmlGrammarCache(Project project) {
+        myProject = project;
+    }
+
+    public static XmlGrammarCache getInstance(Project project) {
+        return project.getInstance(XmlGrammarCache.class);
+    }
+
+    /**
+     * Returns the grammar cached under the key and registers {@code holder} as its user,
+     * or returns {@code null} if there is none or its dependencies have changed since it was published.
+     * On a hit the grammar's dependencies are added to {@code dependencies}.
+     */
+    @Nullable
+    Grammar acquire(GrammarKey key, Object holder, Collection<VirtualFile> dependencies) {
+        Entry entry;
+        synchronized (myEntries) {
+            entry = myEntries.get(key);
+        }
+        if (entry != null && ValidateXmlActionHandler.calculateTimeStamp(entry.dependencies, myProject) != entry.timeStamp) {
+            synchronized (myEntries) {
+                myEntries.remove(key, entry);
+            }
+            entry = null;
+        }
+        if (entry == null) {
+            myMisses.incrementAndGet();
+            return null;
+        }
+        synchronized (myEntries) {
+            entry.holders.add(holder);
+        }
+        myHits.incrementAndGet();
+        Collections.addAll(dependencies, entry.dependencies);
+        return entry.grammar;
+    }
+
+    void publish(GrammarKey key, Grammar grammar, VirtualFile[] dependencies, long timeStamp, Object holder) {
+        Entry entry = new Entry(grammar, dependencies, timeStamp);
+        entry.holders.add(holder);
+        synchronized (myEntries) {
+            myEntries.put(key, entry);
+            evict();
+        }
+    }
+
+    /**
+     * Unregisters {@code holder} from all grammars it uses. Holders that are garbage collected are unregistered implicitly.
+     */
+    void release(Object holder) {
+        synchronized (myEntries) {
+            for (Entry entry : myEntries.values()) {
+                entry.holders.remove(holder);
+            }
+            evict();
+        }
+    }
+
+    private void evict() {
+        int excess = myEntries.size() - CAPACITY;
+        for (Iterator<Map.Entry<GrammarKey, Entry>> it = myEntries.entrySet().iterator(); excess > 0 && it.hasNext(); ) {
+            if (it.next().getValue().holders.isEmpty()) {
+                it.remove();
+                excess--;
+                myEvictions.incrementAndGet();
+            }
+        }
+        // the grammars in use by loaded files alone may exceed the capacity
+        for (Iterator<Map.Entry<GrammarKey, Entry>> it = myEntries.entrySet().iterator(); excess > 0 && it.hasNext(); ) {
+            it.next();
+            it.remove();
+            excess--;
+            myEvictions.incrementAndGet();
+        }
+    }
+
+    public void clear() {
+        synchronized (myEntries) {
+            myEntries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (myEntries) {
+            return myEntries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return myHits.get();
+    }
+
+    public long getMissCount() {
+        return myMisses.get();
+    }
+
+    public long getEvictionCount() {
+        return myEvictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "XmlGrammarCache{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() +
+            ", evictions=" + getEvictionCount() + "}";
+    }
+}
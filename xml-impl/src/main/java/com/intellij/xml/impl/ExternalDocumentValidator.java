@@ -20,6 +20,7 @@ import com.intellij.xml.actions.validate.ValidateXmlActionHandler;
 import com.intellij.xml.util.XmlResourceResolver;
 import com.intellij.xml.util.XmlUtil;
 import consulo.application.ApplicationManager;
+import consulo.application.progress.ProgressManager;
 import consulo.component.ProcessCanceledException;
 import consulo.document.Document;
 import consulo.language.Language;
@@ -38,7 +39,6 @@ import consulo.logging.Logger;
 import consulo.project.Project;
 import consulo.util.dataholder.Key;
 import consulo.util.lang.Comparing;
-import consulo.util.lang.ref.SoftReference;
 import consulo.virtualFileSystem.VirtualFile;
 import consulo.virtualFileSystem.fileType.FileType;
 import consulo.xml.Validator;
@@ -50,13 +50,21 @@ import org.xml.sax.SAXParseException;
 import java.lang.ref.WeakReference;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * Validates a document with Xerces. Each call uses its own validator instance and a parser pooled per thread,
+ * so different files are validated in parallel; validations of the same file are serialized, since they share
+ * the file's grammar pool and cached result.
+ *
  * @author maxim
  */
 public class ExternalDocumentValidator {
     private static final Logger LOG = Logger.getInstance("#ExternalDocumentValidator");
-    private static final Key<SoftReference<ExternalDocumentValidator>> validatorInstanceKey = Key.create("validatorInstance");
+    private static final Key<ReentrantLock> VALIDATION_LOCK_KEY = Key.create("ExternalDocumentValidator.lock");
+    private static final Key<ValidationResult> VALIDATION_RESULT_KEY = Key.create("ExternalDocumentValidator.result");
+    private static final long LOCK_POLL_MILLIS = 20;
 
     public static final
     String INSPECTION_SHORT_NAME = "CheckXmlFileWithXercesValidator";
@@ -64,8 +72,6 @@ public class ExternalDocumentValidator {
     private ValidateXmlActionHandler myHandler;
     private Validator.ValidationHost myHost;
 
-    private long myModificationStamp;
-    private PsiFile myFile;
     private static final String CANNOT_FIND_DECLARATION_ERROR_PREFIX = "Cannot find the declaration of element";
     private static final String ELEMENT_ERROR_PREFIX = "Element";
     private static final String ROOT_ELEMENT_ERROR_PREFIX = "Document root element";
@@ -78,25 +84,49 @@ public class ExternalDocumentValidator {
     private record ValidationInfo(PsiElement element, LocalizeValue message, Validator.ValidationHost.ErrorType type) {
     }
 
-    private WeakReference<List<ValidationInfo>> myInfos; // last jaxp validation result
+    private record ValidationResult(long modificationStamp, WeakReference<List<ValidationInfo>> infos) {
+    }
 
     private void runJaxpValidation(final XmlElement element, Validator.ValidationHost host) {
         final PsiFile file = element.getContainingFile();
 
-        if (myFile == file &&
-            file != null &&
-            myModificationStamp == file.getModificationStamp() &&
-            !ValidateXmlActionHandler.isValidationDependentFilesOutOfDate((XmlFile)file) &&
-            myInfos != null &&
-            myInfos.get() != null // we have validated before
+        ReentrantLock lock = file.putUserDataIfAbsent(VALIDATION_LOCK_KEY, new ReentrantLock());
+        acquire(lock);
+        try {
+            runJaxpValidation(element, (XmlFile)file, host);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a concurrent validation of the same file, staying responsive to cancellation of the current one.
+     */
+    private static void acquire(ReentrantLock lock) {
+        try {
+            while (!lock.tryLock(LOCK_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                ProgressManager.checkCanceled();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException();
+        }
+    }
+
+    private void runJaxpValidation(final XmlElement element, final XmlFile file, Validator.ValidationHost host) {
+        ValidationResult previous = file.getUserData(VALIDATION_RESULT_KEY);
+        List<ValidationInfo> previousInfos = previous != null ? previous.infos().get() : null;
+        if (previousInfos != null && // we have validated before
+            previous.modificationStamp() == file.getModificationStamp() &&
+            !ValidateXmlActionHandler.isValidationDependentFilesOutOfDate(file)
         ) {
-            addAllInfos(host, myInfos.get());
+            addAllInfos(host, previousInfos);
             return;
         }
 
-        if (myHandler == null) {
-            myHandler = new ValidateXmlActionHandler(false);
-        }
+        myHandler = new ValidateXmlActionHandler(false);
         final Project project = element.getProject();
 
         final Document document = PsiDocumentManager.getInstance(project).getDocument(file);
@@ -273,11 +303,9 @@ public class ExternalDocumentValidator {
 
         });
 
-        myHandler.doValidate((XmlFile)element.getContainingFile());
+        myHandler.doValidate(file);
 
-        myFile = file;
-        myModificationStamp = myFile.getModificationStamp();
-        myInfos = new WeakReference<>(results);
+        file.putUserData(VALIDATION_RESULT_KEY, new ValidationResult(file.getModificationStamp(), new WeakReference<>(results)));
 
         addAllInfos(host, results);
     }
@@ -349,7 +377,7 @@ public class ExternalDocumentValidator {
         }
     }
 
-    public static synchronized void doValidation(final XmlDocument document, final Validator.ValidationHost host) {
+    public static void doValidation(final XmlDocument document, final Validator.ValidationHost host) {
         final PsiFile containingFile = document.getContainingFile();
         if (containingFile == null) {
             return;
@@ -393,14 +421,6 @@ public class ExternalDocumentValidator {
             return;
         }
 
-        SoftReference<ExternalDocumentValidator> validatorReference = project.getUserData(validatorInstanceKey);
-        ExternalDocumentValidator validator = validatorReference != null ? validatorReference.get() : null;
-
-        if (validator == null) {
-            validator = new ExternalDocumentValidator();
-            project.putUserData(validatorInstanceKey, new SoftReference<>(validator));
-        }
-
-        validator.runJaxpValidation(document, host);
+        new ExternalDocumentValidator().runJaxpValidation(document, host);
     }
 }
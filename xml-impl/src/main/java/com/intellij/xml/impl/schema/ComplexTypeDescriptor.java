@@ -31,6 +31,7 @@ import consulo.xml.psi.impl.source.resolve.reference.impl.providers.SchemaRefere
 
 import org.jspecify.annotations.Nullable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Mike
@@ -98,6 +99,7 @@ public class ComplexTypeDescriptor extends TypeDescriptor {
 
     private volatile XmlElementDescriptor[] myElementDescriptors = null;
     private volatile XmlAttributeDescriptor[] myAttributeDescriptors = null;
+    private volatile CachedValue<CompiledContent> myCompiledContent = null;
     private static final String PROHIBITED_ATTR_VALUE = "prohibited";
     private static final String OTHER_NAMESPACE_ATTR_VALUE = "##other";
 
@@ -122,7 +124,45 @@ public class ComplexTypeDescriptor extends TypeDescriptor {
 
     @Nullable
     public XmlElementsGroup getTopGroup() {
-        return XmlElementsGroupProcessor.computeGroups(myDocumentDescriptor, myTag);
+        return getContentModel().getTopGroup();
+    }
+
+    public XmlContentModel getContentModel() {
+        return getCompiledContent().myContentModel;
+    }
+
+    /**
+     * The content model and the answers of canContainTag, computed once until a schema file they were built from changes.
+     */
+    private static class CompiledContent {
+        final XmlContentModel myContentModel;
+        final Map<String, Boolean> myCanContainTag = new ConcurrentHashMap<>();
+
+        CompiledContent(XmlContentModel contentModel) {
+            myContentModel = contentModel;
+        }
+    }
+
+    private CompiledContent getCompiledContent() {
+        CachedValue<CompiledContent> compiledContent = myCompiledContent;
+        if (compiledContent == null) {
+            compiledContent = CachedValuesManager.getManager(myTag.getProject()).createCachedValue(() -> {
+                Set<PsiFile> dependencies = new HashSet<>();
+                dependencies.add(myTag.getContainingFile());
+                XmlTag schemaTag = myDocumentDescriptor.getTag();
+                if (schemaTag != null) {
+                    // substitution groups
+                    dependencies.add(schemaTag.getContainingFile());
+                }
+                XmlElementsGroupProcessor groups = XmlElementsGroupProcessor.process(myDocumentDescriptor, myTag, dependencies);
+                CompiledContent content = new CompiledContent(
+                    XmlContentModel.compile(groups.getRootGroup(), myDocumentDescriptor, groups.hasWildcards())
+                );
+                return CachedValueProvider.Result.create(content, ArrayUtil.toObjectArray(dependencies));
+            }, false);
+            myCompiledContent = compiledContent;
+        }
+        return compiledContent.getValue();
     }
 
     public XmlElementDescriptor[] getElements(XmlElement context) {
@@ -276,15 +316,27 @@ public class ComplexTypeDescriptor extends TypeDescriptor {
     }
 
     public boolean canContainTag(String localName, String namespace, XmlElement context) {
-        return _canContainTag(
+        Map<String, Boolean> cache = getCompiledContent().myCanContainTag;
+        String key = (namespace == null ? "\0" : namespace) + ' ' + localName;
+        Boolean cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        boolean[] contextDependent = new boolean[1];
+        boolean result = _canContainTag(
             localName,
             namespace,
             myTag,
             context,
             new HashSet<>(5),
             new CurrentContextInfo(myDocumentDescriptor, myDocumentDescriptor.getDefaultNamespace()),
-            false
+            false,
+            contextDependent
         );
+        if (!contextDependent[0]) {
+            cache.put(key, result);
+        }
+        return result;
     }
 
     static class CurrentContextInfo {
@@ -322,7 +374,8 @@ public class ComplexTypeDescriptor extends TypeDescriptor {
         XmlElement context,
         Set<XmlTag> visited,
         CurrentContextInfo info,
-        boolean restriction
+        boolean restriction,
+        boolean[] contextDependent
     ) {
         if (visited.contains(tag)) {
             return false;
@@ -344,7 +397,9 @@ public class ComplexTypeDescriptor extends TypeDescriptor {
             if (ref != null) {
                 XmlTag groupTag = info.documentDescriptor.findGroup(ref);
                 if (groupTag != null) {
-                    if (_canContainTag(localName, namespace, groupTag, context, visited, getContextInfo(info, ref), restriction)) {
+                    if (_canContainTag(localName, namespace, groupTag, context, visited, getContextInfo(info, ref), restriction,
+                        contextDependent
+                    )) {
                         return true;
                     }
                 }
@@ -363,7 +418,7 @@ public class ComplexTypeDescriptor extends TypeDescriptor {
                         getContextInfo(info, base), restriction || XmlNSDescriptorImpl.equalsToSchemaName(
                             tag,
                             RESTRICTION_TAG_NAME
-                        )
+                        ), contextDependent
                     )) {
                         myHasAnyInContentModel |= complexTypeDescriptor.myHasAnyInContentModel;
                         return true;
@@ -386,6 +441,8 @@ public class ComplexTypeDescriptor extends TypeDescriptor {
             if (TRUE_ATTR_VALUE.equals(descriptorTag.getAttributeValue("abstract"))) {
                 XmlNSDescriptor _nsDescriptor = tag.getNSDescriptor(namespace, true);
                 if (_nsDescriptor == null && context instanceof XmlTag) {
+                    // the answer now depends on the instance document, so it is not cached
+                    contextDependent[0] = true;
                     _nsDescriptor = ((XmlTag)context).getNSDescriptor(namespace, true);
                 }
                 final XmlNSDescriptorImpl nsDescriptor =
@@ -405,7 +462,7 @@ public class ComplexTypeDescriptor extends TypeDescriptor {
         }
 
         for (XmlTag subTag : tag.getSubTags()) {
-            if (_canContainTag(localName, namespace, subTag, context, visited, info, restriction)) {
+            if (_canContainTag(localName, namespace, subTag, context, visited, info, restriction, contextDependent)) {
                 return true;
             }
         }
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2000-2010 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.xml.impl.schema;
+
+import consulo.xml.descriptor.XmlElementDescriptor;
+import consulo.xml.descriptor.XmlElementsGroup;
+import org.jspecify.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The content model of a complex type compiled into a position (Glushkov) automaton.
+ * Every element particle of the flattened model, after group references and base types have been expanded,
+ * is a position; a state is the set of positions the children seen so far may have ended on.
+ * Position 0 is the start state, before any child.
+ * <p>
+ * Occurrence bounds above {@link #MAX_UNROLLED_OCCURS} are treated as unbounded, and {@code all} groups as
+ * a repeated choice, which is enough for completion but more lenient than the schema.
+ * Wildcards ({@code any} particles) are not positions: a model that has them only records the fact,
+ * see {@link #hasWildcards()}.
+ */
+public class XmlContentModel {
+    private static final int MAX_UNROLLED_OCCURS = 4;
+    private static final int MAX_POSITIONS = 4096;
+
+    private final XmlElementsGroup myTopGroup;
+    // the element and its substitution group members that each position accepts
+    private final XmlElementDescriptor[][] myPositionElements;
+    private final BitSet[] myFollow;
+    private final boolean myHasWildcards;
+
+    private XmlContentModel(XmlElementsGroup topGroup, XmlElementDescriptor[][] positionElements, BitSet[] follow, boolean hasWildcards) {
+        myTopGroup = topGroup;
+        myPositionElements = positionElements;
+        myFollow = follow;
+        myHasWildcards = hasWildcards;
+    }
+
+    public static XmlContentModel compile(XmlElementsGroup topGroup, XmlNSDescriptorImpl nsDescriptor, boolean hasWildcards) {
+        Builder builder = new Builder(nsDescriptor);
+        int start = builder.newPosition(XmlElementDescriptor.EMPTY_ARRAY);
+        Fragment fragment = builder.compileParticle(topGroup);
+        builder.myFollow.get(start).or(fragment.first);
+        return new XmlContentModel(
+            topGroup,
+            builder.myPositions.toArray(new XmlElementDescriptor[builder.myPositions.size()][]),
+            builder.myFollow.toArray(new BitSet[builder.myFollow.size()]),
+            hasWildcards
+        );
+    }
+
+    public XmlElementsGroup getTopGroup() {
+        return myTopGroup;
+    }
+
+    /**
+     * Whether the content model has {@code any} particles. The automaton leaves them out, so it cannot
+     * follow the children of such a type.
+     */
+    public boolean hasWildcards() {
+        return myHasWildcards;
+    }
+
+    /**
+     * The state before the first child. States must not be modified by callers.
+     */
+    public BitSet getStartState() {
+        BitSet state = new BitSet();
+        state.set(0);
+        return state;
+    }
+
+    /**
+     * @return the state after a child with the given descriptor, or null if the model does not allow it here
+     */
+    @Nullable
+    public BitSet transition(BitSet state, XmlElementDescriptor element) {
+        BitSet next = null;
+        BitSet candidates = getFollow(state);
+        for (int p = candidates.nextSetBit(0); p >= 0; p = candidates.nextSetBit(p + 1)) {
+            if (accepts(p, element)) {
+                if (next == null) {
+                    next = new BitSet();
+                }
+                next.set(p);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * @return the elements that may follow in the given state, in the order they appear in the schema
+     */
+    public List<XmlElementDescriptor> getPossibleElements(BitSet state) {
+        Set<XmlElementDescriptor> result = new LinkedHashSet<>();
+        BitSet candidates = getFollow(state);
+        for (int p = candidates.nextSetBit(0); p >= 0; p = candidates.nextSetBit(p + 1)) {
+            for (XmlElementDescriptor element : myPositionElements[p]) {
+                if (!(element instanceof XmlElementDescriptorImpl elementImpl && elementImpl.isAbstract())) {
+                    result.add(element);
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    private BitSet getFollow(BitSet state) {
+        int first = state.nextSetBit(0);
+        if (first >= 0 && state.nextSetBit(first + 1) < 0) {
+            return myFollow[first];
+        }
+        BitSet follow = new BitSet();
+        for (int p = first; p >= 0; p = state.nextSetBit(p + 1)) {
+            follow.or(myFollow[p]);
+        }
+        return follow;
+    }
+
+    private boolean accepts(int position, XmlElementDescriptor element) {
+        for (XmlElementDescriptor descriptor : myPositionElements[position]) {
+            if (descriptor.equals(element)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Fragment {
+        final BitSet first = new BitSet();
+        final BitSet last = new BitSet();
+        boolean nullable;
+
+        Fragment(boolean nullable) {
+            this.nullable = nullable;
+        }
+    }
+
+    private static class Builder {
+        private final XmlNSDescriptorImpl myNsDescriptor;
+        final List<XmlElementDescriptor[]> myPositions = new ArrayList<>();
+        final List<BitSet> myFollow = new ArrayList<>();
+
+        Builder(XmlNSDescriptorImpl nsDescriptor) {
+            myNsDescriptor = nsDescriptor;
+        }
+
+        int newPosition(XmlElementDescriptor[] elements) {
+            myPositions.add(elements);
+            myFollow.add(new BitSet());
+            return myPositions.size() - 1;
+        }
+
+        Fragment compileParticle(XmlElementsGroup group) {
+            int min = group.getMinOccurs();
+            int max = group.getMaxOccurs();
+            if (max <= 0) {
+                return new Fragment(true);
+            }
+            boolean unroll = myPositions.size() < MAX_POSITIONS;
+            int required = Math.min(min, unroll ? MAX_UNROLLED_OCCURS : 1);
+            boolean loop = max > MAX_UNROLLED_OCCURS || min > required || !unroll && max > 1;
+            Fragment result = new Fragment(true);
+            Fragment copy = null;
+            for (int i = 0; i < required; i++) {
+                copy = compileBody(group);
+                result = concat(result, copy);
+            }
+            if (loop) {
+                if (copy == null) {
+                    copy = compileBody(group);
+                    copy.nullable = true;
+                    result = concat(result, copy);
+                }
+                addFollow(copy.last, copy.first);
+            }
+            else {
+                for (int i = required; i < max; i++) {
+                    copy = compileBody(group);
+                    copy.nullable = true;
+                    result = concat(result, copy);
+                }
+            }
+            return result;
+        }
+
+        private Fragment compileBody(XmlElementsGroup group) {
+            switch (group.getGroupType()) {
+                case LEAF: {
+                    XmlElementDescriptor descriptor = group.getLeafDescriptor();
+                    if (descriptor == null) {
+                        return new Fragment(true);
+                    }
+                    int position = newPosition(getElements(descriptor));
+                    Fragment fragment = new Fragment(false);
+                    fragment.first.set(position);
+                    fragment.last.set(position);
+                    return fragment;
+                }
+                case CHOICE:
+                case ALL: {
+                    List<XmlElementsGroup> subGroups = group.getSubGroups();
+                    boolean isAll = group.getGroupType() == XmlElementsGroup.Type.ALL;
+                    // an empty choice cannot be satisfied; let what follows it be offered anyway
+                    Fragment result = new Fragment(subGroups.isEmpty() || isAll);
+                    for (XmlElementsGroup subGroup : subGroups) {
+                        Fragment fragment = compileParticle(subGroup);
+                        result.first.or(fragment.first);
+                        result.last.or(fragment.last);
+                        result.nullable = isAll ? result.nullable && fragment.nullable : result.nullable || fragment.nullable;
+                    }
+                    if (isAll) {
+                        addFollow(result.last, result.first);
+                    }
+                    return result;
+                }
+                default: {
+                    Fragment result = new Fragment(true);
+                    for (XmlElementsGroup subGroup : group.getSubGroups()) {
+                        result = concat(result, compileParticle(subGroup));
+                    }
+                    return result;
+                }
+            }
+        }
+
+        private Fragment concat(Fragment fragment1, Fragment fragment2) {
+            addFollow(fragment1.last, fragment2.first);
+            Fragment result = new Fragment(fragment1.nullable && fragment2.nullable);
+            result.first.or(fragment1.first);
+            if (fragment1.nullable) {
+                result.first.or(fragment2.first);
+            }
+            result.last.or(fragment2.last);
+            if (fragment2.nullable) {
+                result.last.or(fragment1.last);
+            }
+            return result;
+        }
+
+        private void addFollow(BitSet from, BitSet to) {
+            for (int p = from.nextSetBit(0); p >= 0; p = from.nextSetBit(p + 1)) {
+                myFollow.get(p).or(to);
+            }
+        }
+
+        // the element itself and, transitively, the members of its substitution group
+        private XmlElementDescriptor[] getElements(XmlElementDescriptor descriptor) {
+            Set<XmlElementDescriptor> elements = new LinkedHashSet<>();
+            List<XmlElementDescriptor> queue = new ArrayList<>();
+            elements.add(descriptor);
+            queue.add(descriptor);
+            for (int i = 0; i < queue.size() && myNsDescriptor.hasSubstitutions(); i++) {
+                if (queue.get(i) instanceof XmlElementDescriptorImpl element) {
+                    for (XmlElementDescriptor substitute : myNsDescriptor.getSubstitutes(element.getName(), element.getNamespace())) {
+                        if (elements.add(substitute)) {
+                            queue.add(substitute);
+                        }
+                    }
+                }
+            }
+            return elements.toArray(new XmlElementDescriptor[elements.size()]);
+        }
+    }
+}
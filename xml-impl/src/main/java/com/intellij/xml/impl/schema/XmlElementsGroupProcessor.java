@@ -15,29 +15,52 @@
  */
 package com.intellij.xml.impl.schema;
 
+import java.util.Set;
 import java.util.Stack;
 
+import consulo.language.psi.PsiFile;
 import consulo.xml.descriptor.XmlElementsGroup;
 import consulo.xml.language.psi.XmlTag;
+import org.jspecify.annotations.Nullable;
 
 /**
  * @author Dmitry Avdeev
  */
 public class XmlElementsGroupProcessor extends XmlSchemaTagsProcessor {
     final Stack<XmlElementsGroup> myGroups = new Stack<>();
+    @Nullable
+    private final Set<PsiFile> myDependencies;
+    // the base type of a complex content restriction, whose particles the restriction replaces
+    private XmlTag myRestrictedBase;
+    private boolean myHasWildcards;
 
     public static XmlElementsGroup computeGroups(XmlNSDescriptorImpl descriptor, XmlTag tag) {
-        XmlElementsGroupProcessor processor = new XmlElementsGroupProcessor(descriptor);
+        return process(descriptor, tag, null).getRootGroup();
+    }
+
+    /**
+     * @param dependencies if not null, receives the files of all the schema tags the groups were built from
+     */
+    static XmlElementsGroupProcessor process(XmlNSDescriptorImpl descriptor, XmlTag tag, @Nullable Set<PsiFile> dependencies) {
+        XmlElementsGroupProcessor processor = new XmlElementsGroupProcessor(descriptor, dependencies);
         processor.startProcessing(tag);
-        return processor.getRootGroup();
+        return processor;
     }
 
-    private XmlElementsGroup getRootGroup() {
+    XmlElementsGroup getRootGroup() {
         return myGroups.get(0);
     }
 
-    private XmlElementsGroupProcessor(XmlNSDescriptorImpl nsDescriptor) {
+    /**
+     * Whether the content model has an {@code any} particle, which the groups do not represent.
+     */
+    boolean hasWildcards() {
+        return myHasWildcards;
+    }
+
+    private XmlElementsGroupProcessor(XmlNSDescriptorImpl nsDescriptor, @Nullable Set<PsiFile> dependencies) {
         super(nsDescriptor, "attribute");
+        myDependencies = dependencies;
         myGroups.push(new XmlElementsGroupImpl(null, null, null) {
             @Override
             public XmlElementsGroup.Type getGroupType() {
@@ -53,6 +76,21 @@ public class XmlElementsGroupProcessor extends XmlSchemaTagsProcessor {
 
     @Override
     protected void tagStarted(XmlTag tag, String tagName, XmlTag context, XmlTag ref) {
+        if (myDependencies != null) {
+            myDependencies.add(tag.getContainingFile());
+        }
+        if (myRestrictedBase != null) {
+            return;
+        }
+        // the base type is processed in the context of the restriction too, but is not one of its children
+        if (context != null && tag != context && tag.getParentTag() != context
+            && XmlNSDescriptorImpl.equalsToSchemaName(context, "restriction")) {
+            XmlTag parent = context.getParentTag();
+            if (parent != null && XmlNSDescriptorImpl.equalsToSchemaName(parent, "complexContent")) {
+                myRestrictedBase = tag;
+                return;
+            }
+        }
         XmlElementsGroup.Type type = XmlElementsGroupImpl.getTagType(tag);
         if (type != null) {
             XmlElementsGroupImpl group = new XmlElementsGroupImpl(tag, myGroups.peek(), ref);
@@ -68,10 +106,19 @@ public class XmlElementsGroupProcessor extends XmlSchemaTagsProcessor {
                 myGroups.push(group);
             }
         }
+        else if ("any".equals(tagName)) {
+            myHasWildcards = true;
+        }
     }
 
     @Override
     protected void tagFinished(XmlTag tag) {
+        if (myRestrictedBase != null) {
+            if (tag == myRestrictedBase) {
+                myRestrictedBase = null;
+            }
+            return;
+        }
         if (!myGroups.empty() && XmlElementsGroupImpl.getTagType(tag) != null) {
             myGroups.pop();
         }
@@ -47,6 +47,7 @@ import consulo.xml.language.psi.XmlTag;
 
 import org.jspecify.annotations.Nullable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Mike
@@ -63,13 +64,11 @@ public class XmlNSDescriptorImpl implements XmlNSDescriptorEx, Validator<XmlDocu
     private static final Logger LOG = Logger.getInstance("#XmlNSDescriptorImpl");
     private static final Set<String> STD_TYPES = new HashSet<>();
     private static final Set<String> UNDECLARED_STD_TYPES = new HashSet<>();
-    private static final String INCLUDE_TAG_NAME = "include";
-    private static final String REDEFINE_TAG_NAME = "redefine";
+    static final String INCLUDE_TAG_NAME = "include";
+    static final String REDEFINE_TAG_NAME = "redefine";
     private static final ThreadLocal<Set<PsiFile>> myRedefinedDescriptorsInProcessing = new ThreadLocal<>();
-    private final Map<QNameKey, CachedValue<XmlElementDescriptor>> myDescriptorsMap =
-        Collections.synchronizedMap(new HashMap<QNameKey, CachedValue<XmlElementDescriptor>>());
-    private final Map<Pair<QNameKey, XmlTag>, CachedValue<TypeDescriptor>> myTypesMap =
-        Collections.synchronizedMap(new HashMap<Pair<QNameKey, XmlTag>, CachedValue<TypeDescriptor>>());
+    private final Map<QNameKey, CachedValue<XmlElementDescriptor>> myDescriptorsMap = new ConcurrentHashMap<>();
+    private final Map<Pair<QNameKey, XmlTag>, CachedValue<TypeDescriptor>> myTypesMap = new ConcurrentHashMap<>();
     private XmlFile myFile;
     private XmlTag myTag;
     private String myTargetNamespace;
@@ -414,10 +413,10 @@ public class XmlNSDescriptorImpl implements XmlNSDescriptorEx, Validator<XmlDocu
         if (rootTag == null) {
             return null;
         }
-        XmlTag[] tags = rootTag.getSubTags();
         visited.add(this);
 
         LOG.assertTrue(rootTag.isValid());
+        XmlTag[] tags = XmlSchemaDeclarations.getDeclarations(rootTag).getElementCandidates(localName);
         for (final XmlTag tag : tags) {
             if (equalsToSchemaName(tag, ELEMENT_TAG_NAME)) {
                 String name = tag.getAttributeValue("name");
@@ -538,7 +537,7 @@ public class XmlNSDescriptorImpl implements XmlNSDescriptorEx, Validator<XmlDocu
             return null;
         }
         visited.add(myTag);
-        XmlTag[] tags = myTag.getSubTags();
+        XmlTag[] tags = XmlSchemaDeclarations.getDeclarations(myTag).getAttributeCandidates(localName);
 
         for (XmlTag tag : tags) {
             if (equalsToSchemaName(tag, ATTRIBUTE_TAG_NAME)) {
@@ -679,7 +678,9 @@ public class XmlNSDescriptorImpl implements XmlNSDescriptorEx, Validator<XmlDocu
                 }
             }
 
-            XmlTag[] tags = rootTag.getSubTags();
+            XmlTag[] tags = name != null && rootTag.getParent() instanceof XmlDocument
+                ? XmlSchemaDeclarations.getDeclarations(rootTag).getTypeCandidates(name)
+                : rootTag.getSubTags();
             return doFindIn(tags, name, namespace, pair, rootTag);
         });
     }
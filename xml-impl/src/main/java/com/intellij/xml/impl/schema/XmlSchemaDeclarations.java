@@ -0,0 +1,109 @@
+package com.intellij.xml.impl.schema;
+
+import com.intellij.xml.util.XmlUtil;
+import consulo.application.util.CachedValueProvider;
+import consulo.language.psi.util.LanguageCachedValueUtil;
+import consulo.util.collection.ArrayUtil;
+import consulo.xml.language.psi.XmlTag;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Top-level declarations of a schema document by name, built once per root tag and dropped when the file changes.
+ * <p>
+ * Lookups return the sub tags of the root tag that a search for the name has to look at, in document order:
+ * the declarations with that name plus every {@code include}, {@code import} and {@code redefine}, which are
+ * searched through the declarations of the referenced documents. A search over this subset finds the same
+ * declaration as a search over all sub tags.
+ */
+final class XmlSchemaDeclarations {
+    private final XmlTag[] mySubTags;
+    private final Map<String, int[]> myElements = new HashMap<>();
+    private final Map<String, int[]> myAttributes = new HashMap<>();
+    private final Map<String, int[]> myTypes = new HashMap<>();
+    private int[] myReferences = ArrayUtil.EMPTY_INT_ARRAY;
+
+    private XmlSchemaDeclarations(XmlTag rootTag) {
+        mySubTags = rootTag.getSubTags();
+        for (int i = 0; i < mySubTags.length; i++) {
+            XmlTag tag = mySubTags[i];
+            if (XmlNSDescriptorImpl.equalsToSchemaName(tag, XmlNSDescriptorImpl.ELEMENT_TAG_NAME)) {
+                add(myElements, localName(tag.getAttributeValue("name")), i);
+            }
+            else if (XmlNSDescriptorImpl.equalsToSchemaName(tag, XmlNSDescriptorImpl.ATTRIBUTE_TAG_NAME)) {
+                add(myAttributes, localName(tag.getAttributeValue("name")), i);
+            }
+            else if (XmlNSDescriptorImpl.equalsToSchemaName(tag, XmlNSDescriptorImpl.COMPLEX_TYPE_TAG_NAME)
+                || XmlNSDescriptorImpl.equalsToSchemaName(tag, "simpleType")) {
+                add(myTypes, tag.getAttributeValue("name"), i);
+            }
+            else if (XmlNSDescriptorImpl.equalsToSchemaName(tag, XmlNSDescriptorImpl.INCLUDE_TAG_NAME)
+                || XmlNSDescriptorImpl.equalsToSchemaName(tag, XmlNSDescriptorImpl.IMPORT_TAG_NAME)
+                || XmlNSDescriptorImpl.equalsToSchemaName(tag, XmlNSDescriptorImpl.REDEFINE_TAG_NAME)) {
+                myReferences = ArrayUtil.append(myReferences, i);
+            }
+        }
+    }
+
+    static XmlSchemaDeclarations getDeclarations(XmlTag rootTag) {
+        return LanguageCachedValueUtil.getCachedValue(
+            rootTag,
+            () -> CachedValueProvider.Result.create(new XmlSchemaDeclarations(rootTag), rootTag)
+        );
+    }
+
+    /**
+     * Sub tags to search for a global element with the given local name.
+     */
+    XmlTag[] getElementCandidates(String localName) {
+        return select(myElements.get(localName), null);
+    }
+
+    /**
+     * Sub tags to search for a global attribute with the given local name.
+     */
+    XmlTag[] getAttributeCandidates(String localName) {
+        return select(myAttributes.get(localName), null);
+    }
+
+    /**
+     * Sub tags to search for a named type, given as written in a reference, possibly prefixed.
+     */
+    XmlTag[] getTypeCandidates(String name) {
+        String localName = XmlUtil.findLocalNameByQualifiedName(name);
+        return select(myTypes.get(name), localName.equals(name) ? null : myTypes.get(localName));
+    }
+
+    private XmlTag[] select(int @Nullable [] declarations, int @Nullable [] moreDeclarations) {
+        int[] indices = myReferences;
+        if (declarations != null) {
+            indices = ArrayUtil.mergeArrays(indices, declarations);
+        }
+        if (moreDeclarations != null) {
+            indices = ArrayUtil.mergeArrays(indices, moreDeclarations);
+        }
+        if (indices != myReferences) {
+            Arrays.sort(indices);
+        }
+        XmlTag[] tags = new XmlTag[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            tags[i] = mySubTags[indices[i]];
+        }
+        return tags;
+    }
+
+    private static void add(Map<String, int[]> map, @Nullable String name, int index) {
+        if (name != null) {
+            int[] indices = map.get(name);
+            map.put(name, indices == null ? new int[]{index} : ArrayUtil.append(indices, index));
+        }
+    }
+
+    @Nullable
+    private static String localName(@Nullable String name) {
+        return name == null ? null : XmlUtil.findLocalNameByQualifiedName(name);
+    }
+}
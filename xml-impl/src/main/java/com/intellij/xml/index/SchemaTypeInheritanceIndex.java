@@ -106,8 +106,7 @@ public class SchemaTypeInheritanceIndex extends XmlIndex<Set<SchemaTypeInfo>> {
             @Override
             public Map<String, Set<SchemaTypeInfo>> map(FileContent inputData) {
                 final Map<String, Set<SchemaTypeInfo>> map = new HashMap<>();
-                final MultiMap<SchemaTypeInfo, SchemaTypeInfo> multiMap =
-                    XsdComplexTypeInfoBuilder.parse(Readers.readerFromCharSequence(inputData.getContentAsText()));
+                final MultiMap<SchemaTypeInfo, SchemaTypeInfo> multiMap = XsdIndexData.get(inputData).getTypeInheritance();
                 for (SchemaTypeInfo key : multiMap.keySet()) {
                     map.put(
                         NsPlusTag.INSTANCE.encode(Pair.create(key.getNamespaceUri(), key.getTagName())),
@@ -119,6 +119,6 @@ public abstract class XmlIndex<V> extends FileBasedIndexExtension<String, V> {
 
     @Override
     public int getVersion() {
-        return 0;
+        return 1;
     }
 }
@@ -28,7 +28,6 @@ import consulo.language.util.ModuleUtilCore;
 import consulo.module.Module;
 import consulo.project.DumbService;
 import consulo.project.Project;
-import consulo.util.io.Readers;
 import consulo.util.io.StreamUtil;
 import consulo.util.lang.Comparing;
 import consulo.virtualFileSystem.VirtualFile;
@@ -108,7 +107,7 @@ public class XmlNamespaceIndex extends XmlIndex<XsdNamespaceBuilder> {
                     );
                 }
                 else {
-                    builder = XsdNamespaceBuilder.computeNamespace(Readers.readerFromCharSequence(inputData.getContentAsText()));
+                    builder = XsdIndexData.get(inputData).getNamespaceBuilder();
                 }
                 final HashMap<String, XsdNamespaceBuilder> map = new HashMap<>(2);
                 String namespace = builder.getNamespace();
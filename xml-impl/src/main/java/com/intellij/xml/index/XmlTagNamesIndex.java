@@ -20,13 +20,14 @@ import consulo.annotation.component.ExtensionImpl;
 import consulo.index.io.DataIndexer;
 import consulo.index.io.ID;
 import consulo.index.io.data.DataExternalizer;
+import consulo.language.psi.scope.GlobalSearchScope;
 import consulo.language.psi.stub.FileBasedIndex;
 import consulo.language.psi.stub.FileContent;
 import consulo.language.psi.stub.ScalarIndexExtension;
 import consulo.project.Project;
-import consulo.util.io.Readers;
 import consulo.util.lang.StringUtil;
 import consulo.virtualFileSystem.VirtualFile;
+import consulo.xml.ide.highlighter.XmlFileType;
 
 import java.util.Collection;
 import java.util.Collections;
@@ -46,6 +47,26 @@ public class XmlTagNamesIndex extends XmlIndex<Void> {
         return FileBasedIndex.getInstance().getAllKeys(NAME, project);
     }
 
+    /**
+     * Whether the file is a schema this index covers, so that {@link #getFilesByTagName} is complete for it.
+     * A schema that declares no global element is left out, as it may have indexed no names at all.
+     */
+    public static boolean isIndexedSchema(VirtualFile file, Project project) {
+        if (file.getFileType() != XmlFileType.INSTANCE || !"xsd".equals(file.getExtension())) {
+            return false;
+        }
+        GlobalSearchScope filter = createFilter(project);
+        if (!filter.contains(file)) {
+            return false;
+        }
+        for (XsdNamespaceBuilder builder : FileBasedIndex.getInstance().getValues(XmlNamespaceIndex.NAME, file.getUrl(), filter)) {
+            if (!builder.getTags().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     static final ID<String, Void> NAME = ID.create("XmlTagNames");
 
     @Override
@@ -62,7 +83,7 @@ public class XmlTagNamesIndex extends XmlIndex<Void> {
                 if (StringUtil.indexOf(text, XmlUtil.XML_SCHEMA_URI) == -1) {
                     return Collections.emptyMap();
                 }
-                Collection<String> tags = XsdTagNameBuilder.computeTagNames(Readers.readerFromCharSequence(text));
+                Collection<String> tags = XsdIndexData.get(inputData).getTagNames();
                 Map<String, Void> map = new HashMap<>(tags.size());
                 for (String tag : tags) {
                     map.put(tag, null);
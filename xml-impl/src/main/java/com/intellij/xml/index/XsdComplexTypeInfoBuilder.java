@@ -49,10 +49,8 @@ public class XsdComplexTypeInfoBuilder extends NanoXmlUtil.IXMLBuilderAdapter {
 
     public static MultiMap<SchemaTypeInfo, SchemaTypeInfo> parse(final Reader reader) {
         try {
-            final XsdComplexTypeInfoBuilder builder = new XsdComplexTypeInfoBuilder();
-            final NameSpaceHelper helper = new NameSpaceHelper();
-            builder.setNameSpaceHelper(helper);
-            NanoXmlUtil.parse(reader, builder, helper);
+            final XsdComplexTypeInfoBuilder builder = create();
+            NanoXmlUtil.parse(reader, builder, builder.myNameSpaceHelper);
             final MultiMap<SchemaTypeInfo, SchemaTypeInfo> map = builder.getMap();
             return map;
         }
@@ -68,10 +66,23 @@ public class XsdComplexTypeInfoBuilder extends NanoXmlUtil.IXMLBuilderAdapter {
         }
     }
 
+    /**
+     * Creates a builder with its namespace helper; the helper ({@link #getValidator()}) must be passed to the parser with it.
+     */
+    static XsdComplexTypeInfoBuilder create() {
+        final XsdComplexTypeInfoBuilder builder = new XsdComplexTypeInfoBuilder();
+        builder.setNameSpaceHelper(new NameSpaceHelper());
+        return builder;
+    }
+
     private XsdComplexTypeInfoBuilder() {
         myMap = new MultiMap<SchemaTypeInfo, SchemaTypeInfo>();
     }
 
+    NanoXmlUtil.EmptyValidator getValidator() {
+        return myNameSpaceHelper;
+    }
+
     public MultiMap<SchemaTypeInfo, SchemaTypeInfo> getMap() {
         return myMap;
     }
@@ -0,0 +1,104 @@
+package com.intellij.xml.index;
+
+import consulo.language.psi.stub.FileContent;
+import consulo.util.collection.MultiMap;
+import consulo.util.dataholder.Key;
+import consulo.util.io.Readers;
+import consulo.util.xml.fastReader.NanoXmlUtil;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collection;
+
+/**
+ * Values of {@link XmlNamespaceIndex}, {@link XmlTagNamesIndex} and {@link SchemaTypeInheritanceIndex} for one file,
+ * extracted in a single parse and kept on the {@link FileContent}, so that the indexes of a file share it.
+ *
+ * @see #get(FileContent)
+ */
+class XsdIndexData {
+    private static final Key<XsdIndexData> KEY = Key.create("XsdIndexData");
+
+    private final XsdNamespaceBuilder myNamespaceBuilder;
+    private final Collection<String> myTagNames;
+    private final MultiMap<SchemaTypeInfo, SchemaTypeInfo> myTypeInheritance;
+
+    private XsdIndexData(
+        XsdNamespaceBuilder namespaceBuilder,
+        Collection<String> tagNames,
+        MultiMap<SchemaTypeInfo, SchemaTypeInfo> typeInheritance
+    ) {
+        myNamespaceBuilder = namespaceBuilder;
+        myTagNames = tagNames;
+        myTypeInheritance = typeInheritance;
+    }
+
+    static XsdIndexData get(FileContent content) {
+        XsdIndexData data = content.getUserData(KEY);
+        if (data == null) {
+            data = compute(Readers.readerFromCharSequence(content.getContentAsText()));
+            content.putUserData(KEY, data);
+        }
+        return data;
+    }
+
+    static XsdIndexData compute(Reader reader) {
+        try {
+            XsdNamespaceBuilder namespaceBuilder = new XsdNamespaceBuilder();
+            XsdTagNameBuilder tagNameBuilder = new XsdTagNameBuilder();
+            XsdComplexTypeInfoBuilder typeInfoBuilder = XsdComplexTypeInfoBuilder.create();
+            NanoXmlUtil.parse(reader, new CompositeBuilder(namespaceBuilder, tagNameBuilder, typeInfoBuilder), typeInfoBuilder.getValidator());
+            namespaceBuilder.computeRootTags();
+            return new XsdIndexData(namespaceBuilder, tagNameBuilder.getTagNames(), typeInfoBuilder.getMap());
+        }
+        finally {
+            try {
+                reader.close();
+            }
+            catch (IOException e) {
+                // can never happen
+            }
+        }
+    }
+
+    XsdNamespaceBuilder getNamespaceBuilder() {
+        return myNamespaceBuilder;
+    }
+
+    Collection<String> getTagNames() {
+        return myTagNames;
+    }
+
+    MultiMap<SchemaTypeInfo, SchemaTypeInfo> getTypeInheritance() {
+        return myTypeInheritance;
+    }
+
+    private static class CompositeBuilder extends NanoXmlUtil.IXMLBuilderAdapter {
+        private final NanoXmlUtil.IXMLBuilderAdapter[] myBuilders;
+
+        CompositeBuilder(NanoXmlUtil.IXMLBuilderAdapter... builders) {
+            myBuilders = builders;
+        }
+
+        @Override
+        public void startElement(String name, String nsPrefix, String nsURI, String systemID, int lineNr) throws Exception {
+            for (NanoXmlUtil.IXMLBuilderAdapter builder : myBuilders) {
+                builder.startElement(name, nsPrefix, nsURI, systemID, lineNr);
+            }
+        }
+
+        @Override
+        public void addAttribute(String key, String nsPrefix, String nsURI, String value, String type) throws Exception {
+            for (NanoXmlUtil.IXMLBuilderAdapter builder : myBuilders) {
+                builder.addAttribute(key, nsPrefix, nsURI, value, type);
+            }
+        }
+
+        @Override
+        public void endElement(String name, String nsPrefix, String nsURI) throws Exception {
+            for (NanoXmlUtil.IXMLBuilderAdapter builder : myBuilders) {
+                builder.endElement(name, nsPrefix, nsURI);
+            }
+        }
+    }
+}
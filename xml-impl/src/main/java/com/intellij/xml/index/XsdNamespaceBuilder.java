@@ -44,9 +44,7 @@ public class XsdNamespaceBuilder extends NanoXmlUtil.IXMLBuilderAdapter implemen
         try {
             final XsdNamespaceBuilder builder = new XsdNamespaceBuilder();
             NanoXmlUtil.parse(reader, builder);
-            HashSet<String> tags = new HashSet<String>(builder.getTags());
-            tags.removeAll(builder.myReferencedTags);
-            builder.getRootTags().addAll(tags);
+            builder.computeRootTags();
             return builder;
         }
         finally {
@@ -61,6 +59,12 @@ public class XsdNamespaceBuilder extends NanoXmlUtil.IXMLBuilderAdapter implemen
         }
     }
 
+    void computeRootTags() {
+        HashSet<String> tags = new HashSet<String>(getTags());
+        tags.removeAll(myReferencedTags);
+        getRootTags().addAll(tags);
+    }
+
     private String myCurrentTag;
 
     private int myCurrentDepth;
@@ -139,7 +143,7 @@ public class XsdNamespaceBuilder extends NanoXmlUtil.IXMLBuilderAdapter implemen
         return rate;
     }
 
-    private XsdNamespaceBuilder() {
+    XsdNamespaceBuilder() {
         myTags = new ArrayList<>();
         myRootTags = new ArrayList<>();
     }
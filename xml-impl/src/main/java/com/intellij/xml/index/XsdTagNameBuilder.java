@@ -57,6 +57,10 @@ public class XsdTagNameBuilder extends NanoXmlUtil.IXMLBuilderAdapter {
     private final Collection<String> myTagNames = new ArrayList<String>();
     private boolean myElementStarted;
 
+    Collection<String> getTagNames() {
+        return myTagNames;
+    }
+
     public void startElement(
         final String name,
         final String nsPrefix,
@@ -66,7 +70,7 @@ public class XsdTagNameBuilder extends NanoXmlUtil.IXMLBuilderAdapter {
     )
         throws Exception {
 
-        myElementStarted = nsPrefix != null && nsURI.equals("http://www.w3.org/2001/XMLSchema") && name.equals("element");
+        myElementStarted = "http://www.w3.org/2001/XMLSchema".equals(nsURI) && name.equals("element");
     }
 
     public void addAttribute(final String key, final String nsPrefix, final String nsURI, final String value, final String type)
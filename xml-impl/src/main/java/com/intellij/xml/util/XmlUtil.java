@@ -242,6 +242,16 @@ public class XmlUtil {
         return xmlFile == null ? findXmlFile(base, location) : xmlFile;
     }
 
+    /**
+     * The file {@link #findNamespace} returns for a location mapped in the {@link ExternalResourceManager},
+     * found without loading its PSI; {@code null} if the location is not mapped or the file does not exist.
+     */
+    @Nullable
+    public static VirtualFile findMappedNamespaceFile(PsiFile base, String nsLocation) {
+        final String location = ExternalResourceManager.getInstance().getResourceLocation(nsLocation, base.getProject());
+        return location.equals(nsLocation) ? null : UriUtil.findRelative(location, base.getOriginalFile());
+    }
+
     @Nullable
     public static XmlFile findNamespaceByLocation(PsiFile base, String nsLocation) {
         final String location = ExternalResourceManager.getInstance().getResourceLocation(nsLocation, base.getProject());
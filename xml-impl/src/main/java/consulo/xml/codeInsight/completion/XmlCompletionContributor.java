@@ -55,8 +55,11 @@ import consulo.xml.language.psi.*;
 import consulo.xml.localize.XmlLocalize;
 import consulo.xml.patterns.XmlPatterns;
 import consulo.xml.psi.impl.source.html.dtd.HtmlElementDescriptorImpl;
+import consulo.xml.psi.impl.source.xml.XmlEntityCache;
+import consulo.xml.psi.impl.source.xml.XmlEntityTable;
 import org.jspecify.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -346,7 +349,9 @@ public class XmlCompletionContributor extends CompletionContributor {
                 return true;
             };
 
-            XmlUtil.processXmlElements(descriptorFile, processor, true);
+            for (XmlEntityDecl decl : getEntityCandidates(descriptorFile, resultSet.getPrefixMatcher().getPrefix())) {
+                processor.execute(decl);
+            }
             if (descriptorFile != containingFile && acceptSystemEntities) {
                 XmlProlog element = containingFile.getDocument().getProlog();
                 if (element != null) {
@@ -356,6 +361,25 @@ public class XmlCompletionContributor extends CompletionContributor {
         }
     }
 
+    /**
+     * The entities of the DTD whose names start with the first character of the prefix, in either case;
+     * the prefix matcher decides about the rest.
+     */
+    private static List<XmlEntityDecl> getEntityCandidates(XmlFile descriptorFile, String prefix) {
+        XmlEntityTable entityTable = XmlEntityCache.getEntityTable(descriptorFile);
+        if (prefix.isEmpty()) {
+            return entityTable.getEntities();
+        }
+        char first = prefix.charAt(0);
+        List<XmlEntityDecl> result = new ArrayList<>(entityTable.getEntitiesByPrefix(String.valueOf(first)));
+        for (char otherCase : new char[]{Character.toLowerCase(first), Character.toUpperCase(first)}) {
+            if (otherCase != first) {
+                result.addAll(entityTable.getEntitiesByPrefix(String.valueOf(otherCase)));
+            }
+        }
+        return result;
+    }
+
     @Nullable
     private static LookupElementBuilder buildEntityLookupItem(XmlEntityDecl decl) {
         String name = decl.getName();
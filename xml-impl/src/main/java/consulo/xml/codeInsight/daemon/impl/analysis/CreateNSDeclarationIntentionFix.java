@@ -20,6 +20,7 @@ import com.intellij.xml.XmlExtension;
 import com.intellij.xml.XmlNamespaceHelper;
 import com.intellij.xml.impl.schema.AnyXmlElementDescriptor;
 import com.intellij.xml.impl.schema.XmlNSDescriptorImpl;
+import com.intellij.xml.index.XmlTagNamesIndex;
 import com.intellij.xml.util.XmlUtil;
 import consulo.annotation.access.RequiredReadAction;
 import consulo.application.progress.ProgressIndicator;
@@ -53,6 +54,7 @@ import consulo.ui.ex.popup.JBPopup;
 import consulo.undoRedo.CommandProcessor;
 import consulo.util.collection.ArrayUtil;
 import consulo.util.lang.StringUtil;
+import consulo.virtualFileSystem.VirtualFile;
 import consulo.xml.application.options.XmlSettings;
 import consulo.xml.codeInsight.completion.ExtendedTagInsertHandler;
 import consulo.xml.impl.localize.XmlErrorLocalize;
@@ -402,17 +404,34 @@ public class CreateNSDeclarationIntentionFix implements HintAction, LocalQuickFi
         String[] availableUrls = instanceEx.getResourceUrls(null, true);
         int i = 0;
 
+        // the indexed schemas that declare the tag; the others are not worth loading
+        Project project = file.getProject();
+        Set<VirtualFile> declaringSchemas = metaHandler instanceof TagMetaHandler && !StringUtil.isEmpty(searchFor)
+            ? new HashSet<>(XmlTagNamesIndex.getFilesByTagName(searchFor, project))
+            : null;
+
         for (String url : availableUrls) {
             if (pi != null) {
                 pi.setFraction((double)i / availableUrls.length);
                 pi.setText2(url);
                 ++i;
             }
+            if (declaringSchemas != null) {
+                VirtualFile mappedFile = XmlUtil.findMappedNamespaceFile(file, url);
+                if (mappedFile != null && !declaringSchemas.contains(mappedFile) && XmlTagNamesIndex.isIndexedSchema(mappedFile, project)) {
+                    continue;
+                }
+            }
             XmlFile xmlFile = XmlUtil.findNamespace(file, url);
 
             if (xmlFile != null) {
-                boolean wordFound = checkIfGivenXmlHasTheseWords(searchFor, xmlFile);
-                if (!wordFound) {
+                VirtualFile virtualFile = xmlFile.getVirtualFile();
+                if (declaringSchemas != null && virtualFile != null && XmlTagNamesIndex.isIndexedSchema(virtualFile, project)) {
+                    if (!declaringSchemas.contains(virtualFile)) {
+                        continue;
+                    }
+                }
+                else if (!checkIfGivenXmlHasTheseWords(searchFor, xmlFile)) {
                     continue;
                 }
                 XmlDocument document = xmlFile.getDocument();
@@ -21,8 +21,6 @@ import com.intellij.xml.index.XmlNamespaceIndex;
 import com.intellij.xml.util.XmlUtil;
 import consulo.application.ApplicationManager;
 import consulo.application.macro.PathMacros;
-import consulo.application.util.CachedValueProvider;
-import consulo.application.util.CachedValuesManager;
 import consulo.application.util.SystemInfo;
 import consulo.component.macro.ExpandMacroToPathMap;
 import consulo.component.macro.ReplacePathToMacroMap;
@@ -47,6 +45,7 @@ import org.jdom.Element;
 import org.jspecify.annotations.Nullable;
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class ExternalResourceManagerExImpl extends SimpleModificationTracker implements ExternalResourceManagerEx, PersistentStateComponent<Element>
 {
@@ -60,12 +59,44 @@ public abstract class ExternalResourceManagerExImpl extends SimpleModificationTr
 	private static final String CATALOG_PROPERTIES_ELEMENT = "CATALOG_PROPERTIES";
 	private static final String XSD_1_1 = new ExternalResource("/standardSchemas/XMLSchema-1_1/XMLSchema.xsd", ExternalResourceManagerExImpl.class.getClassLoader()).getResourceUrl();
 
-	private final Map<String, Map<String, String>> myResources = new HashMap<>();
-	private final Set<String> myResourceLocations = new HashSet<>();
+	private static final int MAX_MEMOIZED_LOCATIONS = 4096;
 
-	private final Set<String> myIgnoredResources = new TreeSet<>();
+	/**
+	 * User resources and ignored resources as of one modification. A snapshot is never changed once published:
+	 * every modification builds a new one and replaces {@link #mySnapshot}, so that highlighting threads read it,
+	 * and the locations and namespaces memoized in it, without locking.
+	 */
+	private static final class Snapshot
+	{
+		private final Map<String, Map<String, String>> myResources;
+		private final Set<String> myResourceLocations;
+		private final Set<String> myIgnoredResources;
+
+		private final Map<String, String> myLocations = new ConcurrentHashMap<>();
+		private volatile MultiMap<String, String> myUrlsByNamespace;
+
+		private Snapshot(Map<String, Map<String, String>> resources, Set<String> resourceLocations, Set<String> ignoredResources)
+		{
+			myResources = resources;
+			myResourceLocations = resourceLocations;
+			myIgnoredResources = ignoredResources;
+		}
+
+		private Map<String, Map<String, String>> copyResources()
+		{
+			Map<String, Map<String, String>> resources = new HashMap<>();
+			for(Map.Entry<String, Map<String, String>> entry : myResources.entrySet())
+			{
+				resources.put(entry.getKey(), new HashMap<>(entry.getValue()));
+			}
+			return resources;
+		}
+	}
+
+	private final Object mySnapshotLock = new Object();
+	private volatile Snapshot mySnapshot = new Snapshot(Collections.emptyMap(), Collections.emptySet(), Collections.emptySet());
 
-	private final CachedValueProvider<MultiMap<String, String>> myUrlByNamespaceProvider = () ->
+	private MultiMap<String, String> computeUrlsByNamespace()
 	{
 		MultiMap<String, String> result = new MultiMap<>();
 
@@ -89,14 +120,14 @@ public abstract class ExternalResourceManagerExImpl extends SimpleModificationTr
 				}
 			}
 		}
-		return CachedValueProvider.Result.create(result, this);
-	};
+		return result;
+	}
 
 	private String myDefaultHtmlDoctype = HTML5_DOCTYPE_ELEMENT;
 	private XMLSchemaVersion myXMLSchemaVersion = XMLSchemaVersion.XMLSchema_1_0;
 
-	private String myCatalogPropertiesFile;
-	private XMLCatalogManager myCatalogManager;
+	private volatile String myCatalogPropertiesFile;
+	private volatile XMLCatalogManager myCatalogManager;
 	private static final String HTML5_DOCTYPE_ELEMENT = "HTML5";
 
 	private final List<ExternalResourceListener> myListeners = Lists.newLockFreeCopyOnWriteList();
@@ -121,7 +152,7 @@ public abstract class ExternalResourceManagerExImpl extends SimpleModificationTr
 	@Override
 	public boolean isUserResource(VirtualFile file)
 	{
-		return myResourceLocations.contains(file.getUrl());
+		return mySnapshot.myResourceLocations.contains(file.getUrl());
 	}
 
 	@Nullable
@@ -153,7 +184,28 @@ public abstract class ExternalResourceManagerExImpl extends SimpleModificationTr
 	@Override
 	public String getResourceLocation(String url, @Nullable String version)
 	{
-		String result = getUserResource(url, StringUtil.notNullize(version, DEFAULT_VERSION));
+		Snapshot snapshot = mySnapshot;
+		version = StringUtil.notNullize(version, DEFAULT_VERSION);
+		if(url == null)
+		{
+			return computeResourceLocation(snapshot, url, version);
+		}
+		String key = version.isEmpty() ? url : version + '\n' + url;
+		String result = snapshot.myLocations.get(key);
+		if(result == null)
+		{
+			result = computeResourceLocation(snapshot, url, version);
+			if(result != null && snapshot.myLocations.size() < MAX_MEMOIZED_LOCATIONS)
+			{
+				snapshot.myLocations.put(key, result);
+			}
+		}
+		return result;
+	}
+
+	private String computeResourceLocation(Snapshot snapshot, String url, String version)
+	{
+		String result = getUserResource(snapshot, url, version);
 		if(result == null)
 		{
 			XMLCatalogManager manager = getCatalogManager();
@@ -201,7 +253,13 @@ public abstract class ExternalResourceManagerExImpl extends SimpleModificationTr
 	@Nullable
 	private String getUserResource(String url, @Nullable String version)
 	{
-		Map<String, String> map = getMap(myResources, version, false);
+		return getUserResource(mySnapshot, url, version);
+	}
+
+	@Nullable
+	private static String getUserResource(Snapshot snapshot, String url, @Nullable String version)
+	{
+		Map<String, String> map = getMap(snapshot.myResources, version, false);
 		return map != null ? map.get(url) : null;
 	}
 
@@ -259,7 +317,7 @@ public abstract class ExternalResourceManagerExImpl extends SimpleModificationTr
 	public String[] getResourceUrls(@Nullable FileType fileType, @Nullable String version, boolean includeStandard)
 	{
 		List<String> result = new LinkedList<>();
-		addResourcesFromMap(result, version, myResources);
+		addResourcesFromMap(result, version, mySnapshot.myResources);
 
 		if(includeStandard)
 		{
@@ -294,11 +352,23 @@ public abstract class ExternalResourceManagerExImpl extends SimpleModificationTr
 
 	private void addSilently(String url, @Nullable String version, String location)
 	{
-		Map<String, String> map = getMap(myResources, version, true);
+		synchronized(mySnapshotLock)
+		{
+			Snapshot snapshot = mySnapshot;
+			Map<String, Map<String, String>> resources = snapshot.copyResources();
+			Set<String> locations = new HashSet<>(snapshot.myResourceLocations);
+			putResource(resources, locations, url, version, location);
+			mySnapshot = new Snapshot(resources, locations, snapshot.myIgnoredResources);
+		}
+		incModificationCount();
+	}
+
+	private static void putResource(Map<String, Map<String, String>> resources, Set<String> locations, String url, @Nullable String version, String location)
+	{
+		Map<String, String> map = getMap(resources, version, true);
 		assert map != null;
 		map.put(url, location);
-		myResourceLocations.add(location);
-		incModificationCount();
+		locations.add(location);
 	}
 
 	@Override
@@ -311,14 +381,27 @@ public abstract class ExternalResourceManagerExImpl extends SimpleModificationTr
 	public void removeResource(String url, @Nullable String version)
 	{
 		ApplicationManager.getApplication().assertWriteAccessAllowed();
-		Map<String, String> map = getMap(myResources, version, false);
-		if(map != null)
-		{
-			String location = map.remove(url);
-			if(location != null)
+		boolean removed;
+		synchronized(mySnapshotLock)
+		{
+			Snapshot snapshot = mySnapshot;
+			Map<String, Map<String, String>> resources = snapshot.copyResources();
+			Map<String, String> map = getMap(resources, version, false);
+			removed = map != null;
+			if(removed)
 			{
-				myResourceLocations.remove(location);
+				Set<String> locations = snapshot.myResourceLocations;
+				String location = map.remove(url);
+				if(location != null)
+				{
+					locations = new HashSet<>(locations);
+					locations.remove(location);
+				}
+				mySnapshot = new Snapshot(resources, locations, snapshot.myIgnoredResources);
 			}
+		}
+		if(removed)
+		{
 			incModificationCount();
 			fireExternalResourceChanged();
 		}
@@ -340,7 +423,7 @@ public abstract class ExternalResourceManagerExImpl extends SimpleModificationTr
 	public String[] getAvailableUrls()
 	{
 		Set<String> urls = new HashSet<>();
-		for(Map<String, String> map : myResources.values())
+		for(Map<String, String> map : mySnapshot.myResources.values())
 		{
 			urls.addAll(map.keySet());
 		}
@@ -356,8 +439,10 @@ public abstract class ExternalResourceManagerExImpl extends SimpleModificationTr
 	@Override
 	public void clearAllResources()
 	{
-		myResources.clear();
-		myIgnoredResources.clear();
+		synchronized(mySnapshotLock)
+		{
+			mySnapshot = new Snapshot(Collections.emptyMap(), Collections.emptySet(), Collections.emptySet());
+		}
 	}
 
 	@Override
@@ -387,32 +472,44 @@ public abstract class ExternalResourceManagerExImpl extends SimpleModificationTr
 			return false;
 		}
 
-		if(myIgnoredResources.add(url))
+		synchronized(mySnapshotLock)
 		{
-			incModificationCount();
-			return true;
-		}
-		else
-		{
-			return false;
+			Snapshot snapshot = mySnapshot;
+			if(snapshot.myIgnoredResources.contains(url))
+			{
+				return false;
+			}
+			Set<String> ignored = new TreeSet<>(snapshot.myIgnoredResources);
+			ignored.add(url);
+			mySnapshot = new Snapshot(snapshot.myResources, snapshot.myResourceLocations, ignored);
 		}
+		incModificationCount();
+		return true;
 	}
 
 	@Override
 	public void removeIgnoredResource(String url)
 	{
 		ApplicationManager.getApplication().assertWriteAccessAllowed();
-		if(myIgnoredResources.remove(url))
+		synchronized(mySnapshotLock)
 		{
-			incModificationCount();
-			fireExternalResourceChanged();
+			Snapshot snapshot = mySnapshot;
+			if(!snapshot.myIgnoredResources.contains(url))
+			{
+				return;
+			}
+			Set<String> ignored = new TreeSet<>(snapshot.myIgnoredResources);
+			ignored.remove(url);
+			mySnapshot = new Snapshot(snapshot.myResources, snapshot.myResourceLocations, ignored);
 		}
+		incModificationCount();
+		fireExternalResourceChanged();
 	}
 
 	@Override
 	public boolean isIgnoredResource(String url)
 	{
-		if(myIgnoredResources.contains(url))
+		if(mySnapshot.myIgnoredResources.contains(url))
 		{
 			return true;
 		}
@@ -437,7 +534,7 @@ public abstract class ExternalResourceManagerExImpl extends SimpleModificationTr
 	public String[] getIgnoredResources()
 	{
 		StandardExternalResourceData data = getData();
-		if(myIgnoredResources.isEmpty())
+		if(mySnapshot.myIgnoredResources.isEmpty())
 		{
 			return ArrayUtil.toStringArray(data.ignored());
 		}
@@ -460,8 +557,9 @@ public abstract class ExternalResourceManagerExImpl extends SimpleModificationTr
 	{
 		Element element = new Element("state");
 
+		Snapshot snapshot = mySnapshot;
 		Set<String> urls = new TreeSet<>();
-		for(Map<String, String> map : myResources.values())
+		for(Map<String, String> map : snapshot.myResources.values())
 		{
 			urls.addAll(map.keySet());
 		}
@@ -485,9 +583,13 @@ public abstract class ExternalResourceManagerExImpl extends SimpleModificationTr
 			element.addContent(e);
 		}
 
-		myIgnoredResources.removeAll(getData().ignored());
-		for(String ignoredResource : myIgnoredResources)
+		Set<String> standardIgnored = getData().ignored();
+		for(String ignoredResource : snapshot.myIgnoredResources)
 		{
+			if(standardIgnored.contains(ignoredResource))
+			{
+				continue;
+			}
 			Element e = new Element(IGNORED_RESOURCE_ELEMENT);
 			e.setAttribute(URL_ATTR, ignoredResource);
 			element.addContent(e);
@@ -525,21 +627,33 @@ public abstract class ExternalResourceManagerExImpl extends SimpleModificationTr
 		PathMacros.getInstance().addMacroExpands(macroExpands);
 		macroExpands.substitute(state, SystemInfo.isFileSystemCaseSensitive);
 
-		incModificationCount();
-		for(Element element : state.getChildren(RESOURCE_ELEMENT))
+		Set<String> standardIgnored = getData().ignored();
+		synchronized(mySnapshotLock)
 		{
-			String url = element.getAttributeValue(URL_ATTR);
-			if(!StringUtil.isEmpty(url))
+			Snapshot snapshot = mySnapshot;
+			Map<String, Map<String, String>> resources = snapshot.copyResources();
+			Set<String> locations = new HashSet<>(snapshot.myResourceLocations);
+			for(Element element : state.getChildren(RESOURCE_ELEMENT))
 			{
-				addSilently(url, DEFAULT_VERSION, element.getAttributeValue(LOCATION_ATTR).replace('/', File.separatorChar));
+				String url = element.getAttributeValue(URL_ATTR);
+				if(!StringUtil.isEmpty(url))
+				{
+					putResource(resources, locations, url, DEFAULT_VERSION, element.getAttributeValue(LOCATION_ATTR).replace('/', File.separatorChar));
+				}
 			}
-		}
 
-		myIgnoredResources.clear();
-		for(Element element : state.getChildren(IGNORED_RESOURCE_ELEMENT))
-		{
-			addIgnoredSilently(element.getAttributeValue(URL_ATTR));
+			Set<String> ignored = new TreeSet<>();
+			for(Element element : state.getChildren(IGNORED_RESOURCE_ELEMENT))
+			{
+				String url = element.getAttributeValue(URL_ATTR);
+				if(!standardIgnored.contains(url))
+				{
+					ignored.add(url);
+				}
+			}
+			mySnapshot = new Snapshot(resources, locations, ignored);
 		}
+		incModificationCount();
 
 		Element child = state.getChild(HTML_DEFAULT_DOCTYPE_ELEMENT);
 		if(child != null)
@@ -638,23 +752,39 @@ public abstract class ExternalResourceManagerExImpl extends SimpleModificationTr
 	{
 		myCatalogManager = null;
 		myCatalogPropertiesFile = filePath;
+		synchronized(mySnapshotLock)
+		{
+			// locations memoized so far may have been resolved through the previous catalog
+			Snapshot snapshot = mySnapshot;
+			mySnapshot = new Snapshot(snapshot.myResources, snapshot.myResourceLocations, snapshot.myIgnoredResources);
+		}
 		incModificationCount();
 	}
 
 	@Override
 	public MultiMap<String, String> getUrlsByNamespace(Project project)
 	{
-		return CachedValuesManager.getManager(project).getCachedValue(project, myUrlByNamespaceProvider);
+		Snapshot snapshot = mySnapshot;
+		MultiMap<String, String> urlsByNamespace = snapshot.myUrlsByNamespace;
+		if(urlsByNamespace == null)
+		{
+			urlsByNamespace = computeUrlsByNamespace();
+			snapshot.myUrlsByNamespace = urlsByNamespace;
+		}
+		return urlsByNamespace;
 	}
 
 	@Nullable
 	private XMLCatalogManager getCatalogManager()
 	{
-		if(myCatalogManager == null && myCatalogPropertiesFile != null)
+		XMLCatalogManager manager = myCatalogManager;
+		String propertiesFile = myCatalogPropertiesFile;
+		if(manager == null && propertiesFile != null)
 		{
-			myCatalogManager = new XMLCatalogManager(myCatalogPropertiesFile);
+			manager = new XMLCatalogManager(propertiesFile);
+			myCatalogManager = manager;
 		}
-		return myCatalogManager;
+		return manager;
 	}
 
 	private void setDefaultHtmlDoctype(String defaultHtmlDoctype)
@@ -36,7 +36,9 @@ public abstract class XmlContentDFA {
 
     if (TemplateLanguageUtil.isInsideTemplateFile(parentTag)) return null;
 
-    XmlContentDFA contentDFA = XsContentDFA.createContentDFA(parentTag);
+    XmlContentDFA contentDFA = XsdContentModelDFA.createContentDFA(parentTag);
+    if (contentDFA != null) return contentDFA;
+    contentDFA = XsContentDFA.createContentDFA(parentTag);
     if (contentDFA != null) return contentDFA;
     return XmlContentDFAImpl.createContentDFA(parentTag);
   }
@@ -25,14 +25,19 @@ import consulo.application.util.CachedValuesManager;
 import consulo.xml.language.psi.XmlEntityDecl;
 import consulo.language.psi.PsiFile;
 import consulo.util.dataholder.Key;
+import consulo.xml.language.psi.XmlFile;
+import com.intellij.xml.util.XmlUtil;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class XmlEntityCache
 {
 	static final Object LOCK = new Object();
 	private static final Key<Map<String, CachedValue<XmlEntityDecl>>> XML_ENTITY_DECL_MAP = Key.create("XML_ENTITY_DECL_MAP");
+	private static final Key<CachedValue<XmlEntityTable>> XML_ENTITY_TABLE = Key.create("XML_ENTITY_TABLE");
 
 	public static void cacheParticularEntity(PsiFile file, XmlEntityDecl decl)
 	{
@@ -93,4 +98,32 @@ public class XmlEntityCache
 		}
 		return cachedValue != null ? cachedValue.getValue() : null;
 	}
+
+	/**
+	 * The entities declared in a DTD file and in the files it includes through parameter entities.
+	 * Built once and kept until one of these files changes.
+	 */
+	public static XmlEntityTable getEntityTable(final XmlFile file)
+	{
+		CachedValue<XmlEntityTable> cachedValue = file.getUserData(XML_ENTITY_TABLE);
+		if(cachedValue == null)
+		{
+			cachedValue = CachedValuesManager.getManager(file.getProject()).createCachedValue(() ->
+			{
+				final List<XmlEntityDecl> declarations = new ArrayList<>();
+				XmlUtil.processXmlElements(file, element ->
+				{
+					if(element instanceof XmlEntityDecl)
+					{
+						declarations.add((XmlEntityDecl) element);
+					}
+					return true;
+				}, true);
+				XmlEntityTable table = new XmlEntityTable(file, declarations);
+				return new CachedValueProvider.Result<>(table, (Object[]) table.getFiles());
+			}, false);
+			cachedValue = file.putUserDataIfAbsent(XML_ENTITY_TABLE, cachedValue);
+		}
+		return cachedValue.getValue();
+	}
 }
@@ -30,6 +30,7 @@ import consulo.language.psi.*;
 import consulo.language.psi.resolve.PsiElementProcessor;
 import consulo.language.psi.util.PsiTreeUtil;
 import consulo.util.collection.ArrayUtil;
+import consulo.util.collection.ContainerUtil;
 import consulo.util.dataholder.Key;
 import consulo.util.lang.StringUtil;
 import consulo.xml.ide.highlighter.DTDFileType;
@@ -134,9 +135,12 @@ public class XmlEntityRefImpl extends XmlElementImpl implements XmlEntityRef
 								{
 									if(xmlFile != targetElement)
 									{
-										deps.add(xmlFile);
-										if(!XmlUtil.processXmlElements(xmlFile, this, true))
+										XmlEntityTable table = XmlEntityCache.getEntityTable(xmlFile);
+										ContainerUtil.addAll(deps, table.getFiles());
+										XmlEntityDecl entityDecl = table.getEntity(entityName);
+										if(entityDecl != null)
 										{
+											result[0] = entityDecl;
 											return false;
 										}
 									}
@@ -201,8 +205,9 @@ public class XmlEntityRefImpl extends XmlElementImpl implements XmlEntityRef
 					}
 					if(descriptorFile != null && !descriptorFile.getName().equals(((XmlFile) targetElement).getName() + ".dtd"))
 					{
-						deps.add(descriptorFile);
-						XmlUtil.processXmlElements(descriptorFile, processor, true);
+						XmlEntityTable table = XmlEntityCache.getEntityTable(descriptorFile);
+						ContainerUtil.addAll(deps, table.getFiles());
+						result[0] = table.getEntity(entityName);
 					}
 				}
 
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2000-2014 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.xml.psi.impl.source.xml;
+
+import consulo.language.psi.PsiFile;
+import consulo.xml.language.psi.XmlEntityDecl;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The entities declared by a DTD, collected once per version of the file.
+ * Obtained through {@link XmlEntityCache#getEntityTable}.
+ */
+public class XmlEntityTable
+{
+	private final Map<String, XmlEntityDecl> myDeclarations;
+	// the names in sorted order, with their declarations at the same index
+	private final String[] mySortedNames;
+	private final XmlEntityDecl[] mySortedDeclarations;
+	private final PsiFile[] myFiles;
+
+	XmlEntityTable(PsiFile file, List<XmlEntityDecl> declarations)
+	{
+		Map<String, XmlEntityDecl> map = new HashMap<>();
+		Set<PsiFile> files = new LinkedHashSet<>();
+		files.add(file);
+		for(XmlEntityDecl declaration : declarations)
+		{
+			String name = declaration.getName();
+			// the first declaration of an entity is binding
+			if(name != null && !map.containsKey(name))
+			{
+				map.put(name, declaration);
+			}
+			files.add(declaration.getContainingFile());
+		}
+		myDeclarations = map;
+		mySortedNames = map.keySet().toArray(new String[map.size()]);
+		Arrays.sort(mySortedNames);
+		mySortedDeclarations = new XmlEntityDecl[mySortedNames.length];
+		for(int i = 0; i < mySortedNames.length; i++)
+		{
+			mySortedDeclarations[i] = map.get(mySortedNames[i]);
+		}
+		myFiles = files.toArray(new PsiFile[files.size()]);
+	}
+
+	@Nullable
+	public XmlEntityDecl getEntity(String name)
+	{
+		return myDeclarations.get(name);
+	}
+
+	/**
+	 * @return the declarations of the entities whose names start with the prefix, ordered by name
+	 */
+	public List<XmlEntityDecl> getEntitiesByPrefix(String prefix)
+	{
+		int from = firstIndexNotBefore(prefix);
+		int to = from;
+		while(to < mySortedNames.length && mySortedNames[to].startsWith(prefix))
+		{
+			to++;
+		}
+		return from == to ? Collections.emptyList() : Arrays.asList(mySortedDeclarations).subList(from, to);
+	}
+
+	public List<XmlEntityDecl> getEntities()
+	{
+		return Arrays.asList(mySortedDeclarations);
+	}
+
+	/**
+	 * The files the declarations come from; the DTD itself and the ones it includes through parameter entities.
+	 */
+	PsiFile[] getFiles()
+	{
+		return myFiles;
+	}
+
+	private int firstIndexNotBefore(String name)
+	{
+		int index = Arrays.binarySearch(mySortedNames, name);
+		return index >= 0 ? index : -index - 1;
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2000-2010 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulo.xml.psi.impl.source.xml;
+
+import com.intellij.xml.impl.schema.ComplexTypeDescriptor;
+import com.intellij.xml.impl.schema.TypeDescriptor;
+import com.intellij.xml.impl.schema.XmlContentModel;
+import com.intellij.xml.impl.schema.XmlElementDescriptorImpl;
+import com.intellij.xml.util.XmlUtil;
+import consulo.xml.descriptor.XmlElementDescriptor;
+import consulo.xml.language.psi.XmlTag;
+import org.jspecify.annotations.Nullable;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Runs the children of a tag through the compiled content model of its schema type.
+ * Types with wildcards are left to {@link XsContentDFA}, since the model does not represent them.
+ */
+class XsdContentModelDFA extends XmlContentDFA {
+  private final XmlContentModel myModel;
+  private BitSet myState;
+  private boolean myFailed;
+
+  @Nullable
+  public static XmlContentDFA createContentDFA(XmlTag parentTag) {
+    XmlElementDescriptor descriptor = XmlUtil.findXmlDescriptorByType(parentTag);
+    if (descriptor == null) {
+      descriptor = parentTag.getDescriptor();
+    }
+    if (!(descriptor instanceof XmlElementDescriptorImpl)) {
+      return null;
+    }
+    TypeDescriptor type = ((XmlElementDescriptorImpl)descriptor).getType(parentTag);
+    if (!(type instanceof ComplexTypeDescriptor)) {
+      return null;
+    }
+    XmlContentModel model = ((ComplexTypeDescriptor)type).getContentModel();
+    return model.hasWildcards() ? null : new XsdContentModelDFA(model);
+  }
+
+  private XsdContentModelDFA(XmlContentModel model) {
+    myModel = model;
+    myState = model.getStartState();
+  }
+
+  @Override
+  public List<XmlElementDescriptor> getPossibleElements() {
+    return myModel.getPossibleElements(myState);
+  }
+
+  @Override
+  public void transition(XmlTag xmlTag) {
+    if (myFailed) {
+      return;
+    }
+    XmlElementDescriptor descriptor = xmlTag.getDescriptor();
+    BitSet next = descriptor != null ? myModel.transition(myState, descriptor) : null;
+    if (next != null) {
+      myState = next;
+    }
+    else {
+      // like the Xerces automaton, stay in the state before the first child the model does not allow
+      myFailed = true;
+    }
+  }
+}
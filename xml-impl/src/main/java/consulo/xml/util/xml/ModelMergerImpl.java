@@ -1,5 +1,6 @@
 package consulo.xml.util.xml;
 
+import consulo.xml.language.psi.XmlFile;
 import consulo.xml.util.xml.impl.DomInvocationHandler;
 import consulo.xml.util.xml.impl.DomManagerImpl;
 import consulo.xml.util.xml.reflect.AbstractDomChildrenDescription;
@@ -12,11 +13,15 @@ import consulo.util.lang.reflect.ReflectionUtil;
 import consulo.xml.dom.util.proxy.InvocationHandlerOwner;
 
 import org.jspecify.annotations.Nullable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author peter
@@ -28,6 +33,13 @@ public class ModelMergerImpl implements ModelMerger
 	private final List<Class> myMergingStrategyClasses = new ArrayList<Class>();
 	private static final Class<MergedObject> MERGED_OBJECT_CLASS = MergedObject.class;
 
+	/**
+	 * Merged objects by the implementations they merge, so that merging the same implementations again returns the same
+	 * object with the children it has already merged. An entry lives as long as its merged object is referenced.
+	 */
+	private final Map<MergedKey, MergedReference> myMergedObjects = new ConcurrentHashMap<MergedKey, MergedReference>();
+	private final ReferenceQueue<Object> myCollectedMergedObjects = new ReferenceQueue<Object>();
+
 	private final Map<Method, List<Pair<InvocationStrategy, Class>>> myAcceptsCache = ConcurrentFactoryMap.createMap(method -> {
 		List<Pair<InvocationStrategy, Class>> result = new ArrayList<Pair<InvocationStrategy, Class>>();
 		for(int i = myInvocationStrategies.size() - 1; i >= 0; i--)
@@ -54,7 +66,7 @@ public class ModelMergerImpl implements ModelMerger
 					throws IllegalAccessException, InvocationTargetException
 			{
 				final Method method = javaMethod.getMethod();
-				List<Object> results = getMergedImplementations(method, args, method.getReturnType(), implementations, isIntersectionMethod(javaMethod));
+				List<Object> results = getMergedImplementations(method, proxy, args, method.getReturnType(), implementations, isIntersectionMethod(javaMethod));
 				return results.isEmpty() ? null : results.get(0);
 			}
 		});
@@ -72,7 +84,7 @@ public class ModelMergerImpl implements ModelMerger
 
 				final Type type = DomReflectionUtil.extractCollectionElementType(method.getGenericReturnType());
 				assert type != null : "No generic return type in method " + method;
-				return getMergedImplementations(method.getMethod(), args, ReflectionUtil.getRawType(type), implementations, isIntersectionMethod(method));
+				return getMergedImplementations(method.getMethod(), proxy, args, ReflectionUtil.getRawType(type), implementations, isIntersectionMethod(method));
 			}
 		});
 
@@ -222,18 +234,31 @@ public class ModelMergerImpl implements ModelMerger
 		myMergingStrategyClasses.add(aClass);
 	}
 
+	@SuppressWarnings("unchecked")
 	public <T> T mergeModels(final Class<T> aClass, final T... implementations)
 	{
-	/*final Object o = myMergedMap.get(aClass).get(implementations);
-	if (o != null) {
-      return (T)o;
-    }*/
 		if(implementations.length == 1)
 		{
 			return implementations[0];
 		}
+
+		Reference<?> collected;
+		while((collected = myCollectedMergedObjects.poll()) != null)
+		{
+			myMergedObjects.remove(((MergedReference) collected).myKey, collected);
+		}
+
+		final MergedKey key = new MergedKey(aClass, implementations);
+		final MergedReference reference = myMergedObjects.get(key);
+		final Object merged = reference == null ? null : reference.get();
+		if(merged != null)
+		{
+			return (T) merged;
+		}
 		final MergingInvocationHandler<T> handler = new MergingInvocationHandler<T>(aClass, Arrays.asList(implementations));
-		return _mergeModels(aClass, handler, implementations);
+		final T t = _mergeModels(aClass, handler, implementations);
+		myMergedObjects.put(key, new MergedReference(key, t, myCollectedMergedObjects));
+		return t;
 	}
 
 	public <T> T mergeModels(final Class<T> aClass, final Collection<? extends T> implementations)
@@ -250,9 +275,7 @@ public class ModelMergerImpl implements ModelMerger
 		commonClasses.add(MERGED_OBJECT_CLASS);
 		commonClasses.add(aClass);
 		commonClasses.add(InvocationHandlerOwner.class);
-		final T t = (T) AdvancedProxyBuilder.create(Object.class).withInvocationHandler(handler).withInterfaces(commonClasses.toArray(new Class[commonClasses.size()])).build();
-		//myMergedMap.get(aClass).put(implementations, t);
-		return t;
+		return (T) AdvancedProxyBuilder.create(Object.class).withInvocationHandler(handler).withInterfaces(commonClasses.toArray(new Class[commonClasses.size()])).build();
 	}
 
 	private static <T extends Collection<Class>> T getCommonClasses(final T result, final Object... implementations)
@@ -277,6 +300,7 @@ public class ModelMergerImpl implements ModelMerger
 	{
 		private final Class<? super T> myClass;
 		private List<T> myImplementations;
+		private final Map<Method, MergedChildren> myMergedChildren = new ConcurrentHashMap<Method, MergedChildren>();
 
 		public MergingInvocationHandler(final Class<T> aClass, final List<T> implementations)
 		{
@@ -337,6 +361,93 @@ public class ModelMergerImpl implements ModelMerger
 			}
 			return JavaMethod.getMethod(method.getDeclaringClass(), method);
 		}
+
+		/**
+		 * Children merged by a fixed or collection child getter, re-collected only from the implementations whose files
+		 * have changed since the last call: such children depend on nothing but the XML of the implementations. Groups of unchanged children get the same merged objects as before, together with their own
+		 * merged children.
+		 */
+		@SuppressWarnings("unchecked")
+		List<Object> getMergedChildren(final Method method, final Class returnType, final boolean intersect)
+				throws IllegalAccessException, InvocationTargetException
+		{
+			final List<Object> implementations = (List<Object>) myImplementations;
+			final long[] stamps = getModificationStamps(implementations);
+			if(stamps == null)
+			{
+				return mergeContributions(returnType, collectContributions(method, null, implementations), intersect);
+			}
+
+			final MergedChildren previous = myMergedChildren.get(method);
+			if(previous != null && previous.isReusable() && Arrays.equals(previous.myStamps, stamps))
+			{
+				return new ArrayList<Object>(previous.myResults);
+			}
+
+			final Contribution[] contributions = new Contribution[implementations.size()];
+			for(int i = 0; i < contributions.length; i++)
+			{
+				final Contribution old = previous == null || previous.myStamps[i] != stamps[i] ? null : previous.myContributions[i];
+				contributions[i] = old != null && old.myReusable ? old : collectContribution(method, null, implementations.get(i));
+			}
+			final List<Object> results = mergeContributions(returnType, contributions, intersect);
+			myMergedChildren.put(method, new MergedChildren(stamps, contributions, results));
+			return new ArrayList<Object>(results);
+		}
+	}
+
+	/**
+	 * Whether the method gets fixed or collection children of every implementation, according to its static DOM info.
+	 * Other getters may depend on more than the files of the implementations, so their results are not kept.
+	 */
+	private static boolean isChildrenGetter(final Method method, final List<Object> implementations)
+	{
+		final JavaMethodSignature signature = new JavaMethodSignature(method);
+		for(final Object implementation : implementations)
+		{
+			if(!(implementation instanceof DomElement) || !(implementation instanceof InvocationHandlerOwner))
+			{
+				return false;
+			}
+			final DomInvocationHandler handler = DomManagerImpl.getDomInvocationHandler((DomElement) implementation);
+			if(handler == null ||
+					!handler.getManager().getApplicationComponent().getStaticGenericInfo(handler.getDomElementType()).isChildrenGetter(signature))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Nullable
+	private static long[] getModificationStamps(final List<Object> implementations)
+	{
+		final long[] stamps = new long[implementations.size()];
+		for(int i = 0; i < stamps.length; i++)
+		{
+			final XmlFile file = getContainingFile(implementations.get(i));
+			if(file == null)
+			{
+				return null;
+			}
+			stamps[i] = file.getModificationStamp();
+		}
+		return stamps;
+	}
+
+	@Nullable
+	private static XmlFile getContainingFile(final Object implementation)
+	{
+		if(implementation instanceof DomFileElement)
+		{
+			return ((DomFileElement) implementation).getFile();
+		}
+		if(implementation instanceof DomElement && implementation instanceof InvocationHandlerOwner)
+		{
+			final DomInvocationHandler handler = DomManagerImpl.getDomInvocationHandler((DomElement) implementation);
+			return handler == null ? null : handler.getFile();
+		}
+		return null;
 	}
 
 	@Nullable
@@ -392,66 +503,102 @@ public class ModelMergerImpl implements ModelMerger
 	}
 
 	private List<Object> getMergedImplementations(final Method method,
+												  final Object proxy,
 												  final Object[] args,
 												  final Class returnType,
 												  final List<Object> implementations,
 												  final boolean intersect) throws IllegalAccessException, InvocationTargetException
 	{
-
-		final List<Object> results = new ArrayList<Object>();
-
 		if(returnType.isInterface())
 		{
-			final List<Object> orderedPrimaryKeys = new SmartList<Object>();
-			final Map<Object, List<Set<Object>>> map = FactoryMap.create(key ->
-			{
-				orderedPrimaryKeys.add(key);
-				return new SmartList<Set<Object>>();
-			});
-			final Map<Object, int[]> counts = FactoryMap.create(k -> new int[implementations.size()]);
-			for(int i = 0; i < implementations.size(); i++)
+			if((args == null || args.length == 0) && isChildrenGetter(method, implementations))
 			{
-				Object t = implementations.get(i);
-				final Object o = method.invoke(t, args);
-				if(o instanceof Collection)
+				final InvocationHandler handler = InvocationHandlerOwner.getHandler(proxy);
+				if(handler instanceof MergingInvocationHandler)
 				{
-					for(final Object o1 : (Collection) o)
-					{
-						addToMaps(o1, counts, map, i, results, false, intersect);
-					}
-				}
-				else if(o != null)
-				{
-					addToMaps(o, counts, map, i, results, true, intersect);
+					return ((MergingInvocationHandler<?>) handler).getMergedChildren(method, returnType, intersect);
 				}
+			}
+			return mergeContributions(returnType, collectContributions(method, args, implementations), intersect);
+		}
 
+		final List<Object> results = new ArrayList<Object>();
+		HashSet<Object> map = new HashSet<Object>();
+		for(final Object t : implementations)
+		{
+			final Object o = method.invoke(t, args);
+			if(o instanceof Collection)
+			{
+				map.addAll((Collection<Object>) o);
 			}
+			else if(o != null)
+			{
+				map.add(o);
+				break;
+			}
+		}
+		results.addAll(map);
+		return results;
+	}
 
-			for(final Object primaryKey : orderedPrimaryKeys)
+	private static Contribution[] collectContributions(final Method method, final Object[] args, final List<Object> implementations)
+			throws IllegalAccessException, InvocationTargetException
+	{
+		final Contribution[] contributions = new Contribution[implementations.size()];
+		for(int i = 0; i < contributions.length; i++)
+		{
+			contributions[i] = collectContribution(method, args, implementations.get(i));
+		}
+		return contributions;
+	}
+
+	private static Contribution collectContribution(final Method method, final Object[] args, final Object implementation)
+			throws IllegalAccessException, InvocationTargetException
+	{
+		final Object o = method.invoke(implementation, args);
+		if(o instanceof Collection)
+		{
+			final Contribution contribution = new Contribution(false);
+			for(final Object o1 : (Collection) o)
 			{
-				for(final Set<Object> objects : map.get(primaryKey))
-				{
-					results.add(mergeImplementations(returnType, new ArrayList<Object>(objects)));
-				}
+				contribution.add(o1);
 			}
+			return contribution;
 		}
-		else
+		final Contribution contribution = new Contribution(true);
+		if(o != null)
 		{
-			HashSet<Object> map = new HashSet<Object>();
-			for(final Object t : implementations)
+			contribution.add(o);
+		}
+		return contribution;
+	}
+
+	private List<Object> mergeContributions(final Class returnType, final Contribution[] contributions, final boolean intersect)
+			throws IllegalAccessException, InvocationTargetException
+	{
+		final List<Object> results = new ArrayList<Object>();
+		final List<Object> orderedPrimaryKeys = new SmartList<Object>();
+		final Map<Object, List<Set<Object>>> map = FactoryMap.create(key ->
+		{
+			orderedPrimaryKeys.add(key);
+			return new SmartList<Set<Object>>();
+		});
+		final Map<Object, int[]> counts = FactoryMap.create(k -> new int[contributions.length]);
+		for(int i = 0; i < contributions.length; i++)
+		{
+			final Contribution contribution = contributions[i];
+			for(int j = 0; j < contribution.myValues.size(); j++)
 			{
-				final Object o = method.invoke(t, args);
-				if(o instanceof Collection)
-				{
-					map.addAll((Collection<Object>) o);
-				}
-				else if(o != null)
-				{
-					map.add(o);
-					break;
-				}
+				addToMaps(contribution.myValues.get(j), contribution.myPrimaryKeys.get(j), counts, map, i, results, contribution.mySingleValued, intersect);
+			}
+		}
+
+		for(final Object primaryKey : orderedPrimaryKeys)
+		{
+			for(final Set<Object> objects : map.get(primaryKey))
+			{
+				results.add(mergeImplementations(returnType, new ArrayList<Object>(objects)));
 			}
-			results.addAll(map);
 		}
 		return results;
 	}
@@ -477,6 +624,7 @@ public class ModelMergerImpl implements ModelMerger
 	}
 
 	private boolean addToMaps(final Object o,
+							  @Nullable final Object primaryKey,
 							  final Map<Object, int[]> counts,
 							  final Map<Object, List<Set<Object>>> map,
 							  final int index,
@@ -484,7 +632,6 @@ public class ModelMergerImpl implements ModelMerger
 							  final boolean singleValuedInvocation,
 							  final boolean intersect) throws IllegalAccessException, InvocationTargetException
 	{
-		final Object primaryKey = getPrimaryKey(o, singleValuedInvocation);
 		if(primaryKey != null || singleValuedInvocation)
 		{
 			final List<Set<Object>> list = map.get(primaryKey);
@@ -502,5 +649,101 @@ public class ModelMergerImpl implements ModelMerger
 		return true;
 	}
 
+	/**
+	 * What one implementation returned from a getter, with the primary keys of the values.
+	 */
+	private static class Contribution
+	{
+		private final boolean mySingleValued;
+		private final List<Object> myValues = new SmartList<Object>();
+		private final List<Object> myPrimaryKeys = new SmartList<Object>();
+		/**
+		 * Whether the contribution depends on its file only. Primary keys other than strings and booleans may be
+		 * resolved against other files.
+		 */
+		private boolean myReusable = true;
+
+		Contribution(final boolean singleValued)
+		{
+			mySingleValued = singleValued;
+		}
+
+		void add(final Object value)
+		{
+			final Object primaryKey = getPrimaryKey(value, mySingleValued);
+			myValues.add(value);
+			myPrimaryKeys.add(primaryKey);
+			myReusable &= primaryKey == null || primaryKey instanceof String || primaryKey instanceof Boolean;
+		}
+	}
+
+	private static class MergedChildren
+	{
+		private final long[] myStamps;
+		private final Contribution[] myContributions;
+		private final List<Object> myResults;
+
+		MergedChildren(final long[] stamps, final Contribution[] contributions, final List<Object> results)
+		{
+			myStamps = stamps;
+			myContributions = contributions;
+			myResults = results;
+		}
+
+		boolean isReusable()
+		{
+			for(final Contribution contribution : myContributions)
+			{
+				if(!contribution.myReusable)
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static final class MergedKey
+	{
+		private final Class myClass;
+		private final List<Object> myImplementations;
+
+		MergedKey(final Class aClass, final Object[] implementations)
+		{
+			myClass = aClass;
+			myImplementations = Arrays.asList(implementations.clone());
+		}
+
+		@Override
+		public boolean equals(final Object o)
+		{
+			if(this == o)
+			{
+				return true;
+			}
+			if(!(o instanceof MergedKey))
+			{
+				return false;
+			}
+			final MergedKey that = (MergedKey) o;
+			return myClass.equals(that.myClass) && myImplementations.equals(that.myImplementations);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * myClass.hashCode() + myImplementations.hashCode();
+		}
+	}
+
+	private static final class MergedReference extends WeakReference<Object>
+	{
+		private final MergedKey myKey;
 
+		MergedReference(final MergedKey key, final Object merged, final ReferenceQueue<Object> queue)
+		{
+			super(merged, queue);
+			myKey = key;
+		}
+	}
 }
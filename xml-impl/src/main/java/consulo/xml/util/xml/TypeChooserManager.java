@@ -43,6 +43,10 @@ public class TypeChooserManager {
     };
   }
 
+  public boolean hasTypeChooser(final Type type) {
+    return myClassChoosers.containsKey(type);
+  }
+
   public void registerTypeChooser(final Type aClass, final TypeChooser typeChooser) {
     myClassChoosers.put(aClass, typeChooser);
   }
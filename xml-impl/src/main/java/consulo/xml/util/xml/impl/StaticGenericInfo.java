@@ -241,6 +241,14 @@ public class StaticGenericInfo extends DomGenericInfoEx {
     return myCollections.getDescriptions();
   }
 
+  /**
+   * @return whether the method gets a fixed child or a collection of children
+   */
+  public boolean isChildrenGetter(final JavaMethodSignature signature) {
+    buildMethodMaps();
+    return myFixedChildrenMethods.containsKey(signature) || myCollectionChildrenGetterMethods.containsKey(signature);
+  }
+
   public boolean isTagValueElement() {
     buildMethodMaps();
     return myValueElement;
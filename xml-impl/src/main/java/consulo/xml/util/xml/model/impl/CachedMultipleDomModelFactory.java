@@ -108,6 +108,8 @@ public abstract class CachedMultipleDomModelFactory<Scope extends UserDataHolder
         }
         configFiles.addAll(files);
       }
+      // the merger returns the merged model it returned for the same file elements before, whose children are then only
+      // merged again for the files that have changed since
       final DomFileElement<T> mergedModel = getModelMerger().mergeModels(DomFileElement.class, list);
       final M firstModel = models.get(0);
       return createCombinedModel(configFiles, mergedModel, firstModel, scope);
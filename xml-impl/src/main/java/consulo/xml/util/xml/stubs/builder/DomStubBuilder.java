@@ -80,10 +80,16 @@ public class DomStubBuilder implements BinaryFileStubBuilder {
       if (header.getRootTagLocalName() == null) {
         LOG.error("null root tag for " + fileElement + " for " + file);
       }
-      FileStub fileStub = new FileStub(header);
+      DomManagerImpl domManager = DomManagerImpl.getDomManager(project);
+      FileStub fileStub = new LightDomStubBuilder(fileContent.getContentAsText(), domManager, fileElement.getFileDescription()).build(header);
+      if (fileStub != null) {
+        return fileStub;
+      }
+
+      fileStub = new FileStub(header);
       XmlTag rootTag = xmlFile.getRootTag();
       if (rootTag != null) {
-        new DomStubBuilderVisitor(DomManagerImpl.getDomManager(project)).visitXmlElement(rootTag, fileStub, 0);
+        new DomStubBuilderVisitor(domManager).visitXmlElement(rootTag, fileStub, 0);
       }
       return fileStub;
     } finally {
@@ -0,0 +1,386 @@
+package consulo.xml.util.xml.stubs.builder;
+
+import com.intellij.xml.util.XmlPsiUtil;
+import com.intellij.xml.util.XmlUtil;
+import consulo.annotation.access.RequiredReadAction;
+import consulo.index.io.StringRef;
+import consulo.localize.LocalizeValue;
+import consulo.util.lang.Pair;
+import consulo.util.lang.reflect.ReflectionUtil;
+import consulo.util.xml.fastReader.XmlFileHeader;
+import consulo.xml.psi.impl.source.parsing.xml.XmlBuilder;
+import consulo.xml.psi.impl.source.parsing.xml.XmlBuilderDriver;
+import consulo.xml.util.xml.DomFileDescription;
+import consulo.xml.util.xml.DomReflectionUtil;
+import consulo.xml.util.xml.Stubbed;
+import consulo.xml.util.xml.StubbedOccurrence;
+import consulo.xml.util.xml.XmlName;
+import consulo.xml.util.xml.impl.DomImplUtil;
+import consulo.xml.util.xml.impl.DomManagerImpl;
+import consulo.xml.util.xml.impl.StaticGenericInfo;
+import consulo.xml.util.xml.reflect.DomChildrenDescription;
+import consulo.xml.util.xml.reflect.DomExtender;
+import consulo.xml.util.xml.reflect.DomFixedChildDescription;
+import consulo.xml.util.xml.stubs.AttributeStub;
+import consulo.xml.util.xml.stubs.ElementStub;
+import consulo.xml.util.xml.stubs.FileStub;
+import org.jspecify.annotations.Nullable;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds the same stub tree as {@link DomStubBuilderVisitor}, but from the light tree of the file text walked by
+ * {@link XmlBuilderDriver}, matching tags and attributes against the {@link StaticGenericInfo} of the element types
+ * instead of creating PSI and DOM handlers for them.
+ * <p>
+ * Whatever can change the children of an element beyond its static generic info, or needs the PSI to be matched,
+ * makes the builder give up and {@link #build} return null: DOM extenders, custom children, namespace keys, type
+ * choosers, XInclude and references to entities other than the predefined ones.
+ */
+class LightDomStubBuilder implements XmlBuilder
+{
+	private static final Set<String> PREDEFINED_ENTITY_REFS = Set.of("&amp;", "&lt;", "&gt;", "&apos;", "&quot;");
+
+	private final CharSequence myText;
+	private final DomManagerImpl myManager;
+	private final DomFileDescription<?> myDescription;
+	private final List<DomExtender> myExtenders;
+	private final Map<Type, Boolean> myStaticTypes = new HashMap<Type, Boolean>();
+	private final Deque<Frame> myFrames = new ArrayDeque<Frame>();
+
+	private FileStub myFileStub;
+	private boolean myRootSeen;
+	private int mySkippedDepth;
+	private boolean myFailed;
+
+	LightDomStubBuilder(CharSequence text, DomManagerImpl manager, DomFileDescription<?> description)
+	{
+		myText = text;
+		myManager = manager;
+		myDescription = description;
+		myExtenders = manager.getProject().getApplication().getExtensionPoint(DomExtender.class).getExtensionList();
+	}
+
+	@Nullable
+	@RequiredReadAction
+	FileStub build(XmlFileHeader header)
+	{
+		XmlName rootTagName = DomImplUtil.createXmlName(myDescription.getRootTagName(), myDescription.getRootElementClass(), null);
+		if(rootTagName == null || rootTagName.getNamespaceKey() != null || myDescription.acceptsOtherRootTagNames())
+		{
+			return null;
+		}
+
+		myFileStub = new FileStub(header);
+		new XmlBuilderDriver(myText).build(this);
+		return myFailed ? null : myFileStub;
+	}
+
+	@Override
+	public ProcessingOrder startTag(CharSequence localName, String namespace, int startoffset, int endoffset, int headerEndOffset)
+	{
+		if(myFailed || mySkippedDepth > 0)
+		{
+			return skip();
+		}
+		if(XmlPsiUtil.XINCLUDE_URI.equals(namespace))
+		{
+			return fail();
+		}
+
+		String name = getTagName(startoffset);
+		if(!name.endsWith(localName.toString()))
+		{
+			return fail();
+		}
+
+		Frame parent = myFrames.peek();
+		if(parent == null)
+		{
+			return startRootTag(name, localName.toString());
+		}
+
+		int index = next(parent.indices, name);
+		int occurrence = next(parent.occurrences, Pair.create(localName.toString(), namespace));
+
+		DomChildrenDescription description = findChildrenDescription(parent.info.getFixedChildrenDescriptions(), localName, name);
+		if(description != null && occurrence >= ((DomFixedChildDescription) description).getCount())
+		{
+			description = null;
+		}
+		if(description == null)
+		{
+			description = findChildrenDescription(parent.info.getCollectionChildrenDescriptions(), localName, name);
+			if(description != null && myManager.getTypeChooserManager().hasTypeChooser(description.getType()))
+			{
+				return fail();
+			}
+		}
+		if(description == null || getAnnotation(description, Stubbed.class) == null && !description.isStubbed())
+		{
+			return skip();
+		}
+
+		String elementClass = null;
+		if(getAnnotation(description, StubbedOccurrence.class) != null)
+		{
+			elementClass = ((Class) description.getType()).getName();
+		}
+		ElementStub stub = new ElementStub(parent.stub, StringRef.fromString(name), StringRef.fromNullableString(description.getXmlName().getNamespaceKey()), index,
+				false, elementClass == null ? null : StringRef.fromNullableString(elementClass));
+		return enter(stub, description.getType());
+	}
+
+	private ProcessingOrder startRootTag(String name, String localName)
+	{
+		// tags after the first one are not the root tag, and a root tag of another name has no DOM element
+		if(myRootSeen)
+		{
+			return skip();
+		}
+		myRootSeen = true;
+		if(!localName.equals(myDescription.getRootTagName()))
+		{
+			return skip();
+		}
+
+		Class<?> rootClass = myDescription.getRootElementClass();
+		if(DomReflectionUtil.findAnnotationDFS(rootClass, Stubbed.class) == null)
+		{
+			return skip();
+		}
+		String elementClass = rootClass.getAnnotation(StubbedOccurrence.class) == null ? null : rootClass.getName();
+		ElementStub stub = new ElementStub(myFileStub, StringRef.fromString(name), StringRef.fromNullableString(""), 0, false,
+				elementClass == null ? null : StringRef.fromNullableString(elementClass));
+		return enter(stub, rootClass);
+	}
+
+	private ProcessingOrder enter(ElementStub stub, Type type)
+	{
+		StaticGenericInfo info = myManager.getApplicationComponent().getStaticGenericInfo(type);
+		Boolean isStatic = myStaticTypes.get(type);
+		if(isStatic == null)
+		{
+			isStatic = isStatic(info, ReflectionUtil.getRawType(type));
+			myStaticTypes.put(type, isStatic);
+		}
+		if(!isStatic)
+		{
+			return fail();
+		}
+		myFrames.push(new Frame(stub, info));
+		return ProcessingOrder.TAGS_AND_ATTRIBUTES;
+	}
+
+	private boolean isStatic(StaticGenericInfo info, Class<?> rawType)
+	{
+		if(!info.getCustomNameChildrenDescription().isEmpty())
+		{
+			return false;
+		}
+		for(DomExtender extender : myExtenders)
+		{
+			// the proxy of an element may implement more than its type does, so subtypes are not trusted either
+			Class<?> elementClass = extender.getElementClass();
+			if(elementClass.isAssignableFrom(rawType) || rawType.isAssignableFrom(elementClass))
+			{
+				return false;
+			}
+		}
+		return hasNoNamespaceKeys(info.getFixedChildrenDescriptions()) && hasNoNamespaceKeys(info.getCollectionChildrenDescriptions()) &&
+				hasNoNamespaceKeys(info.getAttributeChildrenDescriptions());
+	}
+
+	private static boolean hasNoNamespaceKeys(List<? extends DomChildrenDescription> descriptions)
+	{
+		for(DomChildrenDescription description : descriptions)
+		{
+			if(description.getXmlName().getNamespaceKey() != null)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void endTag(CharSequence localName, String namespace, int startoffset, int endoffset)
+	{
+		if(mySkippedDepth > 0)
+		{
+			mySkippedDepth--;
+		}
+		else
+		{
+			myFrames.pop();
+		}
+	}
+
+	@Override
+	public void attribute(CharSequence name, CharSequence value, int startoffset, int endoffset)
+	{
+		Frame frame = myFrames.peek();
+		if(myFailed || mySkippedDepth > 0 || frame == null)
+		{
+			return;
+		}
+
+		String attributeName = name.toString();
+		String localName = XmlUtil.findLocalNameByQualifiedName(attributeName);
+		DomChildrenDescription description = null;
+		for(DomChildrenDescription each : frame.info.getAttributeChildrenDescriptions())
+		{
+			if(each.getXmlName().getLocalName().equals(localName))
+			{
+				description = each;
+				break;
+			}
+		}
+		if(description == null)
+		{
+			return;
+		}
+		// a prefixed attribute belongs to the element only if its prefix is bound to the namespace of the element
+		if(!localName.equals(attributeName))
+		{
+			fail();
+			return;
+		}
+		if(getAnnotation(description, Stubbed.class) == null && !description.isStubbed())
+		{
+			return;
+		}
+
+		String attributeValue = getAttributeValue(value, endoffset);
+		if(attributeValue == null)
+		{
+			fail();
+			return;
+		}
+		new AttributeStub(frame.stub, StringRef.fromString(localName), StringRef.fromNullableString(description.getXmlName().getNamespaceKey()), attributeValue);
+	}
+
+	/**
+	 * The value as {@link consulo.xml.language.psi.XmlAttribute#getValue()} returns it: the text between the quotes.
+	 * The driver strips double quotes only.
+	 */
+	@Nullable
+	private String getAttributeValue(CharSequence value, int endoffset)
+	{
+		char quote = endoffset > 0 ? myText.charAt(endoffset - 1) : 0;
+		if(quote == '"')
+		{
+			return value.toString();
+		}
+		if(quote == '\'' && value.length() >= 2 && value.charAt(0) == '\'')
+		{
+			return value.subSequence(1, value.length() - 1).toString();
+		}
+		return null;
+	}
+
+	@Override
+	public void entityRef(CharSequence ref, int startOffset, int endOffset)
+	{
+		// other entities may expand to tags, which the PSI shows among the sub tags
+		if(!myFailed && mySkippedDepth == 0 && !myFrames.isEmpty() && !PREDEFINED_ENTITY_REFS.contains(ref.toString()))
+		{
+			fail();
+		}
+	}
+
+	@Override
+	public void doctype(@Nullable CharSequence publicId, @Nullable CharSequence systemId, int startOffset, int endOffset)
+	{
+	}
+
+	@Override
+	public void textElement(CharSequence display, CharSequence physical, int startoffset, int endoffset)
+	{
+	}
+
+	@Override
+	public void error(LocalizeValue message, int startOffset, int endOffset)
+	{
+	}
+
+	private ProcessingOrder skip()
+	{
+		mySkippedDepth++;
+		return ProcessingOrder.TAGS;
+	}
+
+	private ProcessingOrder fail()
+	{
+		myFailed = true;
+		return skip();
+	}
+
+	private String getTagName(int startoffset)
+	{
+		int end = startoffset + 1;
+		while(end < myText.length())
+		{
+			char c = myText.charAt(end);
+			if(Character.isWhitespace(c) || c == '/' || c == '>' || c == '<')
+			{
+				break;
+			}
+			end++;
+		}
+		return myText.subSequence(Math.min(startoffset + 1, end), end).toString();
+	}
+
+	@Nullable
+	private static DomChildrenDescription findChildrenDescription(List<? extends DomChildrenDescription> descriptions, CharSequence localName, String qName)
+	{
+		// without namespace keys any namespace is allowed, see EvaluatedXmlNameImpl.isNamespaceAllowed
+		for(DomChildrenDescription description : descriptions)
+		{
+			String name = description.getXmlName().getLocalName();
+			if(name.contentEquals(localName) || name.equals(qName))
+			{
+				return description;
+			}
+		}
+		return null;
+	}
+
+	@Nullable
+	private static <T extends Annotation> T getAnnotation(DomChildrenDescription description, Class<T> annotationClass)
+	{
+		T annotation = description.getAnnotation(annotationClass);
+		return annotation != null ? annotation : ReflectionUtil.getRawType(description.getType()).getAnnotation(annotationClass);
+	}
+
+	private static <K> int next(Map<K, Integer> counters, K key)
+	{
+		Integer count = counters.get(key);
+		int result = count == null ? 0 : count + 1;
+		counters.put(key, result);
+		return result;
+	}
+
+	private static class Frame
+	{
+		final ElementStub stub;
+		final StaticGenericInfo info;
+		// by qualified name, as DomStubBuilderVisitor indexes the stubs
+		final Map<String, Integer> indices = new HashMap<String, Integer>();
+		// by local name and namespace, as DomSemContributor counts the occurrences of fixed children
+		final Map<Pair<String, String>, Integer> occurrences = new HashMap<Pair<String, String>, Integer>();
+
+		Frame(ElementStub stub, StaticGenericInfo info)
+		{
+			this.stub = stub;
+			this.info = info;
+		}
+	}
+}
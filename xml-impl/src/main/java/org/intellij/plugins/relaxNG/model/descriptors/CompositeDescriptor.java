@@ -20,6 +20,8 @@ import consulo.xml.language.psi.XmlTag;
 import consulo.xml.descriptor.XmlAttributeDescriptor;
 import consulo.xml.descriptor.XmlElementDescriptor;
 import consulo.util.collection.ContainerUtil;
+import consulo.util.lang.Pair;
+import org.kohsuke.rngom.digested.DAttributePattern;
 import org.kohsuke.rngom.digested.DElementPattern;
 import org.kohsuke.rngom.digested.DPattern;
 
@@ -27,7 +29,9 @@ import org.jspecify.annotations.Nullable;
 import javax.xml.namespace.QName;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class CompositeDescriptor extends RngElementDescriptor {
   private final DElementPattern[] myPatterns;
@@ -41,7 +45,7 @@ public class CompositeDescriptor extends RngElementDescriptor {
   protected XmlElementDescriptor findElementDescriptor(XmlTag childTag) {
     final List<DElementPattern> patterns = new ArrayList<>();
     for (DElementPattern pattern : myPatterns) {
-      patterns.addAll(ChildElementFinder.find(2, pattern));
+      patterns.addAll(myNsDescriptor.getElementInfo(pattern).getChildren());
     }
     // TODO: filter out impossible variants:
     /*
@@ -62,8 +66,8 @@ public class CompositeDescriptor extends RngElementDescriptor {
   public XmlElementDescriptor[] getElementsDescriptors(XmlTag context) {
     final List<XmlElementDescriptor> descriptors = new ArrayList<>(Arrays.asList(super.getElementsDescriptors(context)));
     for (DElementPattern pattern : myPatterns) {
-      final List<DElementPattern> list = ChildElementFinder.find(2, pattern);
-      descriptors.addAll(Arrays.asList(myNsDescriptor.convertElementDescriptors(list)));
+      final Map<QName, List<DElementPattern>> children = myNsDescriptor.getElementInfo(pattern).getNamedChildren();
+      descriptors.addAll(Arrays.asList(myNsDescriptor.convertElementDescriptors(children)));
     }
     return descriptors.toArray(new XmlElementDescriptor[descriptors.size()]);
   }
@@ -72,7 +76,14 @@ public class CompositeDescriptor extends RngElementDescriptor {
   protected XmlAttributeDescriptor getAttributeDescriptor(String namespace, String localName) {
     final QName qname = new QName(namespace, localName);
 
-    return computeAttributeDescriptor(AttributeFinder.find(qname, myPatterns));
+    final Map<DAttributePattern, Pair<? extends Map<String, String>, Boolean>> attributes = new LinkedHashMap<>();
+    for (DElementPattern pattern : myPatterns) {
+      for (Map.Entry<DAttributePattern, Pair<? extends Map<String, String>, Boolean>> entry :
+        myNsDescriptor.getElementInfo(pattern).getAttributes(qname).entrySet()) {
+        attributes.putIfAbsent(entry.getKey(), entry.getValue());
+      }
+    }
+    return computeAttributeDescriptor(attributes);
   }
 
   @Override
@@ -86,7 +97,15 @@ public class CompositeDescriptor extends RngElementDescriptor {
       patterns = p.toArray(new DPattern[p.size()]);
     }
 
-    return computeAttributeDescriptors(AttributeFinder.find(patterns));
+    // each attribute may belong to only some of the patterns, so none of them is required
+    final Map<DAttributePattern, Pair<? extends Map<String, String>, Boolean>> attributes = new LinkedHashMap<>();
+    for (DPattern pattern : patterns) {
+      for (Map.Entry<DAttributePattern, Pair<? extends Map<String, String>, Boolean>> entry :
+        myNsDescriptor.getElementInfo((DElementPattern)pattern).getAttributes().entrySet()) {
+        attributes.putIfAbsent(entry.getKey(), Pair.create(entry.getValue().first, Boolean.TRUE));
+      }
+    }
+    return computeAttributeDescriptors(attributes);
   }
 
   public boolean equals(Object o) {
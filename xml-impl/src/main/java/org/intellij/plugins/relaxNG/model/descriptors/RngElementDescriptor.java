@@ -92,12 +92,11 @@ public class RngElementDescriptor implements XmlElementDescriptor {
       pattern = myElementPattern;
     }
 
-    final List<DElementPattern> patterns = ChildElementFinder.find(2, pattern);
-    return myNsDescriptor.convertElementDescriptors(patterns);
+    return myNsDescriptor.convertElementDescriptors(myNsDescriptor.getElementInfo(pattern).getNamedChildren());
   }
 
   protected XmlElementDescriptor findElementDescriptor(XmlTag childTag) {
-    final List<DElementPattern> patterns = ChildElementFinder.find(2, myElementPattern);
+    final List<DElementPattern> patterns = myNsDescriptor.getElementInfo(myElementPattern).getChildren();
     final XmlElementDescriptor d = myNsDescriptor.findDescriptor(childTag, patterns);
     return d == null ? NULL : d;
   }
@@ -139,7 +138,7 @@ public class RngElementDescriptor implements XmlElementDescriptor {
   }
 
   protected XmlAttributeDescriptor[] collectAttributeDescriptors(@Nullable XmlTag context) {
-    return computeAttributeDescriptors(AttributeFinder.find((QName)null, myElementPattern));
+    return computeAttributeDescriptors(myNsDescriptor.getElementInfo(myElementPattern).getAttributes());
   }
 
   protected XmlAttributeDescriptor[] computeAttributeDescriptors(final Map<DAttributePattern, Pair<? extends Map<String, String>, Boolean>> map) {
@@ -177,7 +176,7 @@ public class RngElementDescriptor implements XmlElementDescriptor {
   protected XmlAttributeDescriptor getAttributeDescriptor(String namespace, String localName) {
     final QName qname = new QName(namespace, localName);
 
-    return computeAttributeDescriptor(AttributeFinder.find(qname, myElementPattern));
+    return computeAttributeDescriptor(myNsDescriptor.getElementInfo(myElementPattern).getAttributes(qname));
   }
 
   protected XmlAttributeDescriptor computeAttributeDescriptor(final Map<DAttributePattern, Pair<? extends Map<String, String>, Boolean>> attributes) {
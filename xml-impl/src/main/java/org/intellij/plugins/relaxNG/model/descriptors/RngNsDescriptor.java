@@ -47,14 +47,14 @@ import org.kohsuke.rngom.nc.NameClass;
 import org.jspecify.annotations.Nullable;
 import javax.xml.namespace.QName;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author sweinreuter
  * @since 2007-08-17
  */
 public class RngNsDescriptor implements XmlNSDescriptorEx, Validator {
-  private final Map<QName, CachedValue<XmlElementDescriptor>> myDescriptorsMap =
-    Collections.synchronizedMap(new HashMap<QName, CachedValue<XmlElementDescriptor>>());
+  private final Map<QName, CachedValue<XmlElementDescriptor>> myDescriptorsMap = new ConcurrentHashMap<>();
 
   private static final Key<ParameterizedCachedValue<XmlElementDescriptor, RngNsDescriptor>> ROOT_KEY = Key.create("ROOT_DESCRIPTOR");
 
@@ -63,6 +63,7 @@ public class RngNsDescriptor implements XmlNSDescriptorEx, Validator {
   private String myUrl;
 
   private DPattern myPattern;
+  private RngPatternIndex myIndex;
   private PsiManager myManager;
 
   @Override
@@ -117,15 +118,17 @@ public class RngNsDescriptor implements XmlNSDescriptorEx, Validator {
   }
 
   private XmlElementDescriptor findRootDescriptorInner(XmlTag tag) {
-    final List<DElementPattern> allNamedPatterns =
-      ContainerUtil.findAll(ChildElementFinder.find(-1, myPattern), NamedPatternFilter.INSTANCE);
-    XmlElementDescriptor descriptor = findDescriptor(tag, allNamedPatterns);
-    return descriptor != null ? descriptor : findDescriptor(tag, ChildElementFinder.find(myPattern));
+    XmlElementDescriptor descriptor = findDescriptor(tag, myIndex.getNamedElements());
+    return descriptor != null ? descriptor : findDescriptor(tag, myIndex.getTopLevelElements());
   }
 
   private XmlElementDescriptor findRootDescriptorInner(QName qName) {
-    return findDescriptor(qName, ContainerUtil.findAll(
-      ChildElementFinder.find(-1, myPattern), NamedPatternFilter.INSTANCE));
+    return findDescriptor(qName, myIndex.getNamedElements());
+  }
+
+  RngPatternIndex.ElementInfo getElementInfo(DElementPattern pattern) {
+    final RngPatternIndex index = myIndex;
+    return index != null ? index.getElement(pattern) : new RngPatternIndex.ElementInfo(pattern);
   }
 
   public XmlElementDescriptor findDescriptor(XmlTag tag, List<DElementPattern> list) {
@@ -169,25 +172,14 @@ public class RngNsDescriptor implements XmlNSDescriptorEx, Validator {
       return XmlElementDescriptor.EMPTY_ARRAY;
     }
 
-    final List<DElementPattern> list = ChildElementFinder.find(-1, myPattern);
-    return convertElementDescriptors(list);
+    return convertElementDescriptors(myIndex.getElementsByName());
   }
 
   XmlElementDescriptor[] convertElementDescriptors(List<DElementPattern> patterns) {
-    patterns = ContainerUtil.findAll(patterns, NamedPatternFilter.INSTANCE);
-
-    final Map<QName, List<DElementPattern>> name2patterns = new HashMap<>();
-    for (DElementPattern pattern : patterns) {
-      for (QName qName : pattern.getName().listNames()) {
-        List<DElementPattern> dPatterns = name2patterns.get(qName);
-        if (dPatterns == null) {
-          dPatterns = new ArrayList<>();
-          name2patterns.put(qName, dPatterns);
-        }
-        if (!dPatterns.contains(pattern)) dPatterns.add(pattern);
-      }
-    }
+    return convertElementDescriptors(RngPatternIndex.groupByName(patterns));
+  }
 
+  XmlElementDescriptor[] convertElementDescriptors(Map<QName, List<DElementPattern>> name2patterns) {
     final List<XmlElementDescriptor> result = new ArrayList<>();
 
     for (QName qName : name2patterns.keySet()) {
@@ -265,7 +257,9 @@ public class RngNsDescriptor implements XmlNSDescriptorEx, Validator {
       myUrl = file.getUrl();
     }
 
-    myPattern = RngParser.getCachedPattern(getDescriptorFile(), RngParser.DEFAULT_HANDLER);
+    final PsiFile descriptorFile = getDescriptorFile();
+    myPattern = RngParser.getCachedPattern(descriptorFile, RngParser.DEFAULT_HANDLER);
+    myIndex = myPattern != null ? RngPatternIndex.get(descriptorFile, myPattern) : null;
   }
 
   @Override
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2007 Sascha Weinreuter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.intellij.plugins.relaxNG.model.descriptors;
+
+import consulo.language.psi.PsiFile;
+import consulo.util.collection.ContainerUtil;
+import consulo.util.dataholder.Key;
+import consulo.util.lang.Pair;
+import org.intellij.plugins.relaxNG.validation.RngParser;
+import org.kohsuke.rngom.digested.DAttributePattern;
+import org.kohsuke.rngom.digested.DElementPattern;
+import org.kohsuke.rngom.digested.DPattern;
+
+import javax.xml.namespace.QName;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What the descriptors ask about a grammar, computed once per parsed pattern and shared by all descriptors of it:
+ * the elements of the grammar, and for each element pattern its child elements and attributes.
+ * Everything handed out is immutable.
+ */
+final class RngPatternIndex {
+  private static final Key<RngPatternIndex> INDEX_KEY = Key.create("RNG_PATTERN_INDEX");
+
+  private final List<DElementPattern> myNamedElements;
+  private final List<DElementPattern> myTopLevelElements;
+  private final Map<QName, List<DElementPattern>> myElementsByName;
+  private final Map<DElementPattern, ElementInfo> myElements = new ConcurrentHashMap<>();
+
+  static final class ElementInfo {
+    private final DElementPattern myPattern;
+    private final List<DElementPattern> myChildren;
+    private final Map<QName, List<DElementPattern>> myNamedChildren;
+    private final Map<DAttributePattern, Pair<? extends Map<String, String>, Boolean>> myAttributes;
+    private final Map<QName, Map<DAttributePattern, Pair<? extends Map<String, String>, Boolean>>> myAttributesByName =
+      new ConcurrentHashMap<>();
+
+    ElementInfo(DElementPattern pattern) {
+      myPattern = pattern;
+      myChildren = Collections.unmodifiableList(ChildElementFinder.find(2, pattern));
+      myNamedChildren = groupByName(myChildren);
+      myAttributes = freeze(AttributeFinder.find((QName)null, pattern));
+    }
+
+    List<DElementPattern> getChildren() {
+      return myChildren;
+    }
+
+    /**
+     * The child element patterns with a name, by each of the names they allow.
+     */
+    Map<QName, List<DElementPattern>> getNamedChildren() {
+      return myNamedChildren;
+    }
+
+    /**
+     * All attributes of the element, with their values and whether they are optional.
+     */
+    Map<DAttributePattern, Pair<? extends Map<String, String>, Boolean>> getAttributes() {
+      return myAttributes;
+    }
+
+    /**
+     * The attributes that may have the name, with their values and whether they are optional.
+     */
+    Map<DAttributePattern, Pair<? extends Map<String, String>, Boolean>> getAttributes(QName name) {
+      return myAttributesByName.computeIfAbsent(name, n -> freeze(AttributeFinder.find(n, myPattern)));
+    }
+  }
+
+  private RngPatternIndex(DPattern pattern) {
+    myNamedElements = Collections.unmodifiableList(ContainerUtil.findAll(ChildElementFinder.find(-1, pattern), NamedPatternFilter.INSTANCE));
+    myTopLevelElements = Collections.unmodifiableList(ChildElementFinder.find(pattern));
+    myElementsByName = groupByName(myNamedElements);
+  }
+
+  /**
+   * @param pattern the cached pattern of the schema file, with which the index is kept
+   */
+  static RngPatternIndex get(PsiFile descriptorFile, DPattern pattern) {
+    return RngParser.getCachedPatternData(descriptorFile, pattern, INDEX_KEY, RngPatternIndex::new);
+  }
+
+  /**
+   * The element patterns of the grammar with a name.
+   */
+  List<DElementPattern> getNamedElements() {
+    return myNamedElements;
+  }
+
+  /**
+   * The element patterns the grammar may start with.
+   */
+  List<DElementPattern> getTopLevelElements() {
+    return myTopLevelElements;
+  }
+
+  /**
+   * The element patterns of the grammar, by each of the names they allow.
+   */
+  Map<QName, List<DElementPattern>> getElementsByName() {
+    return myElementsByName;
+  }
+
+  ElementInfo getElement(DElementPattern pattern) {
+    return myElements.computeIfAbsent(pattern, ElementInfo::new);
+  }
+
+  static Map<QName, List<DElementPattern>> groupByName(List<DElementPattern> patterns) {
+    final Map<QName, List<DElementPattern>> name2patterns = new LinkedHashMap<>();
+    for (DElementPattern pattern : patterns) {
+      for (QName qName : pattern.getName().listNames()) {
+        List<DElementPattern> dPatterns = name2patterns.computeIfAbsent(qName, k -> new ArrayList<>());
+        if (!dPatterns.contains(pattern)) dPatterns.add(pattern);
+      }
+    }
+    for (Map.Entry<QName, List<DElementPattern>> entry : name2patterns.entrySet()) {
+      entry.setValue(Collections.unmodifiableList(entry.getValue()));
+    }
+    return Collections.unmodifiableMap(name2patterns);
+  }
+
+  private static Map<DAttributePattern, Pair<? extends Map<String, String>, Boolean>> freeze(
+    Map<DAttributePattern, Pair<? extends Map<String, String>, Boolean>> attributes) {
+    final Map<DAttributePattern, Pair<? extends Map<String, String>, Boolean>> result = new LinkedHashMap<>();
+    for (Map.Entry<DAttributePattern, Pair<? extends Map<String, String>, Boolean>> entry : attributes.entrySet()) {
+      final Pair<? extends Map<String, String>, Boolean> value = entry.getValue();
+      result.put(entry.getKey(), Pair.create(Collections.unmodifiableMap(value.first), value.second));
+    }
+    return Collections.unmodifiableMap(result);
+  }
+}
@@ -16,7 +16,7 @@
 package org.intellij.plugins.relaxNG.validation;
 
 import com.thaiopensource.datatype.xsd.DatatypeLibraryFactoryImpl;
-import com.thaiopensource.datatype.xsd.regex.java.RegexEngineImpl;
+import com.thaiopensource.datatype.xsd.regex.automaton.RegexEngineImpl;
 import com.thaiopensource.relaxng.pattern.AnnotationsImpl;
 import com.thaiopensource.relaxng.pattern.CommentListImpl;
 import com.thaiopensource.relaxng.pattern.NameClass;
@@ -37,7 +37,6 @@ import consulo.component.ProcessCanceledException;
 import consulo.language.psi.PsiFile;
 import consulo.language.psi.resolve.PsiElementProcessor;
 import consulo.logging.Logger;
-import consulo.util.collection.ContainerUtil;
 import consulo.util.dataholder.Key;
 import consulo.virtualFileSystem.VirtualFile;
 import consulo.virtualFileSystem.util.VirtualFileUtil;
@@ -69,7 +68,7 @@ import org.xml.sax.helpers.DefaultHandler;
 
 import javax.xml.transform.sax.SAXSource;
 import java.io.StringReader;
-import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
 /**
  * @author sweinreuter
@@ -97,10 +96,9 @@ public class RngParser {
         }
     };
 
-    private static final ConcurrentMap<String, DPattern> ourCache = ContainerUtil.createConcurrentSoftMap();
-
     private static DatatypeLibraryFactory createXsdDatatypeFactory() {
         try {
+            // pattern facets of a schema being edited must not make highlighting backtrack exponentially
             return new DatatypeLibraryFactoryImpl(new RegexEngineImpl());
         }
         catch (Throwable e) {
@@ -121,23 +119,39 @@ public class RngParser {
     static final PropertyMap EMPTY_PROPS = new PropertyMapBuilder().toPropertyMap();
 
     public static DPattern getCachedPattern(final PsiFile descriptorFile, final ErrorHandler eh) {
-        final VirtualFile file = descriptorFile.getVirtualFile();
-
-        if (file == null) {
+        if (!(descriptorFile instanceof XmlFile) || descriptorFile.getVirtualFile() == null) {
             return parsePattern(descriptorFile, eh, false);
         }
-        String url = file.getUrl();
-        DPattern pattern = ourCache.get(url);
-        if (pattern == null) {
-            pattern = parsePattern(descriptorFile, eh, false);
+        final DPattern snapshot = RngSchemaSnapshots.getPattern((XmlFile)descriptorFile);
+        if (snapshot != null) {
+            return snapshot;
         }
-        if (pattern != null) {
-            DPattern oldPattern = ourCache.putIfAbsent(url, pattern);
-            if (oldPattern != null) {
-                return oldPattern;
+        final RngSchemaCache.ContentKey key = RngSchemaCache.getContentKey((XmlFile)descriptorFile);
+        return RngSchemaCache.getPattern(key, () -> parsePattern(descriptorFile, eh, false));
+    }
+
+    /**
+     * Returns data computed from a pattern returned by {@link #getCachedPattern}, kept with the cached pattern so that
+     * it lives exactly as long as the pattern. A pattern that is not (or no longer) cached gets its data computed anew.
+     */
+    public static <T> T getCachedPatternData(final PsiFile descriptorFile, final DPattern pattern, Key<T> key,
+                                             Function<DPattern, T> computer) {
+        RngSchemaCache.Entry entry = null;
+        if (descriptorFile instanceof XmlFile && descriptorFile.getVirtualFile() != null) {
+            entry = RngSchemaSnapshots.getEntry((XmlFile)descriptorFile);
+            if (entry == null) {
+                entry = RngSchemaCache.findEntry(RngSchemaCache.getContentKey((XmlFile)descriptorFile));
             }
         }
-        return pattern;
+        if (entry == null || entry.getPattern() != pattern) {
+            return computer.apply(pattern);
+        }
+        T data = entry.getUserData(key);
+        if (data == null) {
+            // two threads may both compute it, which is harmless
+            data = entry.putUserDataIfAbsent(key, computer.apply(pattern));
+        }
+        return data;
     }
 
     public static DPattern parsePattern(final PsiFile file, final ErrorHandler eh, boolean checking) {
@@ -211,7 +225,15 @@ public class RngParser {
                     properties.put(ValidateProperty.RESOLVER, new VirtualFileSystemResolver());
                     properties.put(RngProperty.DATATYPE_LIBRARY_FACTORY, DT_LIBRARY_FACTORY.get());
 
-                    final Schema schema = new MySchemaReader(descriptorFile).createSchema(inputSource, properties.toPropertyMap());
+                    final RngSchemaCache.Entry entry = descriptorFile.getVirtualFile() != null
+                        ? RngSchemaCache.getEntry(RngSchemaCache.getContentKey(descriptorFile)) : null;
+                    Schema schema = entry != null ? entry.getSchema() : null;
+                    if (schema == null) {
+                        schema = new MySchemaReader(descriptorFile).createSchema(inputSource, properties.toPropertyMap());
+                        if (entry != null && schema != null) {
+                            schema = entry.setSchema(schema);
+                        }
+                    }
                     final PsiElementProcessor.CollectElements<XmlFile> processor = new PsiElementProcessor.CollectElements<>();
                     RelaxIncludeIndex.processForwardDependencies(descriptorFile, processor);
                     if (processor.getCollection().size() > 0) {
@@ -0,0 +1,260 @@
+package org.intellij.plugins.relaxNG.validation;
+
+import com.thaiopensource.validate.Schema;
+import consulo.application.util.CachedValueProvider;
+import consulo.container.boot.ContainerPathManager;
+import consulo.language.psi.resolve.PsiElementProcessor;
+import consulo.language.psi.util.LanguageCachedValueUtil;
+import consulo.logging.Logger;
+import consulo.util.dataholder.UserDataHolderBase;
+import consulo.virtualFileSystem.VirtualFile;
+import consulo.xml.language.psi.XmlFile;
+import org.intellij.plugins.relaxNG.model.resolve.RelaxIncludeIndex;
+import org.jspecify.annotations.Nullable;
+import org.kohsuke.rngom.digested.DPattern;
+import org.kohsuke.rngom.digested.DPatternSerializer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Parsed RELAX NG schemas shared by all open projects.
+ * <p>
+ * Entries are keyed by a digest of the URLs and texts of a schema file and all files it includes, so editing any
+ * of them yields a new key instead of a stale hit, and the same library schema opened from several projects is
+ * parsed once. The in-memory cache keeps the most recently used {@link #CAPACITY} schemas. Patterns of schemas
+ * whose files are all read-only (e.g. bundled or library schemas) are also written to the system directory and
+ * reused across restarts.
+ */
+final class RngSchemaCache {
+    private static final Logger LOG = Logger.getInstance(RngSchemaCache.class);
+
+    private static final int CAPACITY = Integer.getInteger("relaxng.schema.cache.size", 16);
+    private static final int DISK_CAPACITY = Integer.getInteger("relaxng.schema.cache.disk.size", 64);
+    private static final String DISK_FOLDER = "rng-patterns";
+    private static final int MAGIC = 0x524e4750;
+
+    /**
+     * @param hash       digest of the schema and its includes
+     * @param persistent whether all of these files are read-only, so the parsed pattern may be stored on disk
+     */
+    record ContentKey(String hash, boolean persistent) {
+    }
+
+    /**
+     * The parsed pattern and schema of one content key. Whatever is computed from the pattern is kept in the user data
+     * of the entry, so that it is dropped together with the pattern.
+     */
+    static final class Entry extends UserDataHolderBase {
+        private volatile DPattern myPattern;
+        private volatile Schema mySchema;
+
+        @Nullable
+        DPattern getPattern() {
+            return myPattern;
+        }
+
+        @Nullable
+        Schema getSchema() {
+            return mySchema;
+        }
+
+        synchronized Schema setSchema(Schema schema) {
+            if (mySchema == null) {
+                mySchema = schema;
+            }
+            return mySchema;
+        }
+
+        synchronized DPattern setPattern(DPattern pattern) {
+            if (myPattern == null) {
+                myPattern = pattern;
+            }
+            return myPattern;
+        }
+    }
+
+    private static final LinkedHashMap<String, Entry> ourEntries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    private RngSchemaCache() {
+    }
+
+    /**
+     * Returns the content key of a schema file, cached on the file until it or one of its includes changes.
+     */
+    static ContentKey getContentKey(XmlFile file) {
+        return LanguageCachedValueUtil.getCachedValue(file, () -> {
+            List<XmlFile> closure = collectIncludes(file);
+            return CachedValueProvider.Result.create(computeKey(closure), closure.toArray());
+        });
+    }
+
+    static Entry getEntry(ContentKey key) {
+        synchronized (ourEntries) {
+            return ourEntries.computeIfAbsent(key.hash(), k -> new Entry());
+        }
+    }
+
+    @Nullable
+    static Entry findEntry(ContentKey key) {
+        synchronized (ourEntries) {
+            return ourEntries.get(key.hash());
+        }
+    }
+
+    /**
+     * Returns the pattern cached under the key, reading it from disk or running {@code parser} if needed.
+     */
+    @Nullable
+    static DPattern getPattern(ContentKey key, Supplier<DPattern> parser) {
+        Entry entry = getEntry(key);
+        DPattern pattern = entry.myPattern;
+        if (pattern != null) {
+            return pattern;
+        }
+        if (key.persistent()) {
+            pattern = load(key.hash());
+        }
+        if (pattern == null) {
+            pattern = parser.get();
+            if (pattern == null) {
+                return null;
+            }
+            if (key.persistent()) {
+                store(key.hash(), pattern);
+            }
+        }
+        return entry.setPattern(pattern);
+    }
+
+    private static List<XmlFile> collectIncludes(XmlFile file) {
+        Set<XmlFile> visited = new LinkedHashSet<>();
+        Deque<XmlFile> queue = new ArrayDeque<>();
+        visited.add(file);
+        queue.add(file);
+        while (!queue.isEmpty()) {
+            PsiElementProcessor.CollectElements<XmlFile> processor = new PsiElementProcessor.CollectElements<>();
+            RelaxIncludeIndex.processForwardDependencies(queue.poll(), processor);
+            for (XmlFile include : processor.getCollection()) {
+                if (visited.add(include)) {
+                    queue.add(include);
+                }
+            }
+        }
+        return new ArrayList<>(visited);
+    }
+
+    private static ContentKey computeKey(List<XmlFile> files) {
+        List<XmlFile> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparing(RngSchemaCache::getUrl));
+        boolean persistent = true;
+        MessageDigest digest = createDigest();
+        for (XmlFile file : sorted) {
+            VirtualFile virtualFile = file.getVirtualFile();
+            if (virtualFile == null || virtualFile.isWritable()) {
+                persistent = false;
+            }
+            digest.update(getUrl(file).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(file.getText().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return new ContentKey(toHex(digest.digest()), persistent);
+    }
+
+    private static String getUrl(XmlFile file) {
+        VirtualFile virtualFile = file.getVirtualFile();
+        return virtualFile != null ? virtualFile.getUrl() : file.getName();
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static File getDiskFolder() {
+        return new File(ContainerPathManager.get().getSystemPath(), DISK_FOLDER);
+    }
+
+    @Nullable
+    private static DPattern load(String hash) {
+        File file = new File(getDiskFolder(), hash + ".bin");
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != DPatternSerializer.FORMAT_VERSION || !hash.equals(in.readUTF())) {
+                return null;
+            }
+            DPattern pattern = DPatternSerializer.read(in);
+            file.setLastModified(System.currentTimeMillis());
+            return pattern;
+        }
+        catch (IOException | RuntimeException e) {
+            LOG.info("cannot read cached schema " + file + ": " + e.getMessage());
+            file.delete();
+            return null;
+        }
+    }
+
+    private static void store(String hash, DPattern pattern) {
+        File folder = getDiskFolder();
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            return;
+        }
+        File file = new File(folder, hash + ".bin");
+        try {
+            File temp = File.createTempFile(hash, ".tmp", folder);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(DPatternSerializer.FORMAT_VERSION);
+                out.writeUTF(hash);
+                DPatternSerializer.write(pattern, out);
+            }
+            catch (IOException | RuntimeException e) {
+                temp.delete();
+                throw e;
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException | RuntimeException e) {
+            LOG.info("cannot write cached schema " + file + ": " + e.getMessage());
+            return;
+        }
+        prune(folder);
+    }
+
+    private static void prune(File folder) {
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(".bin"));
+        if (files == null || files.length <= DISK_CAPACITY) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length - DISK_CAPACITY; i++) {
+            files[i].delete();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.intellij.plugins.relaxNG.validation;
+
+import com.intellij.xml.Html5SchemaProvider;
+import consulo.logging.Logger;
+import consulo.virtualFileSystem.VirtualFile;
+import consulo.virtualFileSystem.util.VirtualFileUtil;
+import consulo.xml.language.psi.XmlFile;
+import org.jspecify.annotations.Nullable;
+import org.kohsuke.rngom.digested.DPattern;
+import org.kohsuke.rngom.digested.DPatternSnapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Patterns of the bundled HTML5 schemas, read from the snapshots that the build compiles next to them with
+ * {@link DPatternSnapshot} instead of being parsed from the more than a hundred files the schemas consist of.
+ * <p>
+ * Only the read-only files at the locations of the {@link Html5SchemaProvider} are served from snapshots; a doctype
+ * the user has mapped to another schema, or a writable copy of the bundled one, is parsed as usual.
+ */
+final class RngSchemaSnapshots {
+    private static final Logger LOG = Logger.getInstance(RngSchemaSnapshots.class);
+
+    private static final Map<String, Optional<RngSchemaCache.Entry>> ourEntries = new ConcurrentHashMap<>();
+
+    private RngSchemaSnapshots() {
+    }
+
+    @Nullable
+    static DPattern getPattern(XmlFile file) {
+        RngSchemaCache.Entry entry = getEntry(file);
+        return entry != null ? entry.getPattern() : null;
+    }
+
+    @Nullable
+    static RngSchemaCache.Entry getEntry(XmlFile file) {
+        VirtualFile virtualFile = file.getVirtualFile();
+        if (virtualFile == null || virtualFile.isWritable() || virtualFile.getParent() == null) {
+            return null;
+        }
+        String path = virtualFile.getPath();
+        URL schemaUrl = getBundledSchemaUrl(path);
+        if (schemaUrl == null) {
+            return null;
+        }
+        // system IDs as RngParser would report them had it parsed the files
+        String baseUri = VirtualFileUtil.fixIDEAUrl(virtualFile.getParent().getUrl()) + "/";
+        return ourEntries.computeIfAbsent(path, p -> {
+            DPattern pattern = load(schemaUrl, baseUri);
+            if (pattern == null) {
+                return Optional.empty();
+            }
+            RngSchemaCache.Entry entry = new RngSchemaCache.Entry();
+            entry.setPattern(pattern);
+            return Optional.of(entry);
+        }).orElse(null);
+    }
+
+    @Nullable
+    private static URL getBundledSchemaUrl(String path) {
+        List<Html5SchemaProvider> providers = Html5SchemaProvider.EP_NAME.getExtensionList();
+        if (providers.isEmpty()) {
+            return null;
+        }
+        if (path.equals(Html5SchemaProvider.getHtml5SchemaLocation())) {
+            return providers.get(0).getHtmlSchemaLocation();
+        }
+        if (path.equals(Html5SchemaProvider.getXhtml5SchemaLocation())) {
+            return providers.get(0).getXhtmlSchemaLocation();
+        }
+        return null;
+    }
+
+    @Nullable
+    private static DPattern load(URL schemaUrl, String baseUri) {
+        String snapshot = schemaUrl.toExternalForm() + DPatternSnapshot.SUFFIX;
+        // a jar entry cannot be mapped, so it is read in one go and deserialized from memory
+        try (InputStream in = new URL(snapshot).openStream()) {
+            DPattern pattern = DPatternSnapshot.read(new ByteArrayInputStream(in.readAllBytes()), baseUri);
+            if (pattern == null) {
+                LOG.warn("schema snapshot " + snapshot + " was written by another version");
+            }
+            return pattern;
+        }
+        catch (IOException | RuntimeException e) {
+            LOG.info("cannot read schema snapshot " + snapshot + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package org.intellij.plugins.relaxNG.validation;
+
+import com.intellij.xml.util.XmlUtil;
+import consulo.application.progress.ProgressManager;
+import consulo.document.Document;
+import consulo.language.ast.ASTNode;
+import consulo.language.ast.IElementType;
+import consulo.language.ast.TokenType;
+import consulo.language.psi.PsiDocumentManager;
+import consulo.language.psi.PsiFile;
+import consulo.util.lang.CharArrayUtil;
+import consulo.virtualFileSystem.VirtualFile;
+import consulo.virtualFileSystem.util.VirtualFileUtil;
+import consulo.xml.language.psi.XmlAttribute;
+import consulo.xml.language.psi.XmlDocument;
+import consulo.xml.language.psi.XmlElementType;
+import consulo.xml.language.psi.XmlTag;
+import consulo.xml.language.psi.XmlTokenType;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Feeds an XML document to a {@link ContentHandler} by walking its AST.
+ * <p>
+ * Unlike {@link Psi2SaxAdapter}, character data is passed as slices of one array holding the file text instead of
+ * a string per text node, a single {@link org.xml.sax.Attributes} instance is reused for all tags, and the document
+ * locator is shared and computes line and column only when the handler asks for them. Entity references are rare
+ * and still expanded through {@link Psi2SaxAdapter}.
+ */
+class StreamingPsi2SaxAdapter {
+  private final ContentHandler myHandler;
+  private final Psi2SaxAdapter myEntityAdapter;
+  private final AttributesImpl myAttributes = new AttributesImpl();
+  private final List<String> myPrefixes = new ArrayList<>();
+  private final char[] myCharBuffer = new char[1];
+  private char[] myText;
+  private OffsetLocator myLocator;
+
+  public StreamingPsi2SaxAdapter(ContentHandler handler) {
+    myHandler = handler;
+    myEntityAdapter = new Psi2SaxAdapter(handler);
+  }
+
+  public void process(XmlDocument document) {
+    final PsiFile file = document.getContainingFile();
+    myText = CharArrayUtil.fromSequence(file.getViewProvider().getContents());
+    myLocator = createLocator(file);
+    try {
+      if (myLocator != null) {
+        myHandler.setDocumentLocator(myLocator);
+      }
+      myHandler.startDocument();
+      final XmlTag rootTag = document.getRootTag();
+      if (rootTag != null) {
+        processTag(rootTag.getNode());
+      }
+      myHandler.endDocument();
+    } catch (SAXException e) {
+      throw new Psi2SaxAdapter.ParseError(e);
+    }
+  }
+
+  private void processTag(ASTNode tagNode) throws SAXException {
+    ProgressManager.checkCanceled();
+    setLocation(tagNode);
+
+    final int prefixCount = myPrefixes.size();
+    myAttributes.clear();
+    for (ASTNode child = tagNode.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+      final IElementType type = child.getElementType();
+      if (type == XmlTokenType.XML_TAG_END || type == XmlTokenType.XML_EMPTY_ELEMENT_END) {
+        break;
+      }
+      if (type == XmlElementType.XML_ATTRIBUTE) {
+        addAttribute((XmlAttribute)child.getPsi());
+      }
+    }
+
+    final XmlTag tag = (XmlTag)tagNode.getPsi();
+    final String namespace = tag.getNamespace();
+    final String localName = tag.getLocalName();
+    final String name = tag.getName();
+    myHandler.startElement(namespace, localName, name, myAttributes);
+
+    for (ASTNode child = tagNode.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+      final IElementType type = child.getElementType();
+      if (type == XmlElementType.XML_TAG || type == XmlElementType.HTML_TAG) {
+        processTag(child);
+      }
+      else if (type == XmlElementType.XML_TEXT) {
+        setLocation(child);
+        processText(child);
+      }
+      else if (type == XmlTokenType.XML_DATA_CHARACTERS) {
+        setLocation(child);
+        characters(child);
+      }
+      else if (type == XmlElementType.XML_ENTITY_REF) {
+        child.getPsi().accept(myEntityAdapter);
+        if (myLocator != null) {
+          myHandler.setDocumentLocator(myLocator);
+        }
+      }
+    }
+
+    myHandler.endElement(namespace, localName, name);
+
+    for (int i = myPrefixes.size() - 1; i >= prefixCount; i--) {
+      myHandler.endPrefixMapping(myPrefixes.remove(i));
+    }
+  }
+
+  private void addAttribute(XmlAttribute attribute) throws SAXException {
+    final String s = attribute.getName();
+    if ("xmlns".equals(s)) {
+      startPrefixMapping("", attribute.getValue());
+    }
+    else if (s.startsWith("xmlns:")) {
+      startPrefixMapping(s.substring("xmlns:".length()), attribute.getValue());
+    }
+    else {
+      final String uri = s.indexOf(':') >= 0 ? attribute.getNamespace() : "";
+      myAttributes.addAttribute(uri, attribute.getLocalName(), s, "PCDATA", attribute.getValue());
+    }
+  }
+
+  private void startPrefixMapping(String prefix, String uri) throws SAXException {
+    myPrefixes.add(prefix);
+    myHandler.startPrefixMapping(prefix, uri);
+  }
+
+  /**
+   * Emits the value of an {@code XML_TEXT} node the same way {@code XmlText.getValue()} computes it.
+   */
+  private void processText(ASTNode textNode) throws SAXException {
+    for (ASTNode child = textNode.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+      final IElementType type = child.getElementType();
+      if (type == XmlElementType.XML_CDATA) {
+        processText(child);
+      }
+      else if (type == XmlTokenType.XML_CHAR_ENTITY_REF) {
+        myCharBuffer[0] = XmlUtil.getCharFromEntityRef(child.getText());
+        myHandler.characters(myCharBuffer, 0, 1);
+      }
+      else if (type == XmlTokenType.XML_WHITE_SPACE || type == XmlTokenType.XML_DATA_CHARACTERS ||
+               type == XmlTokenType.XML_ATTRIBUTE_VALUE_TOKEN || type == TokenType.ERROR_ELEMENT ||
+               type == TokenType.NEW_LINE_INDENT) {
+        characters(child);
+      }
+    }
+  }
+
+  private void characters(ASTNode node) throws SAXException {
+    final int length = node.getTextLength();
+    if (length > 0) {
+      myHandler.characters(myText, node.getStartOffset(), length);
+    }
+  }
+
+  private void setLocation(ASTNode node) {
+    if (myLocator != null) {
+      myLocator.myOffset = node.getStartOffset() + node.getTextLength();
+    }
+  }
+
+  private static OffsetLocator createLocator(PsiFile file) {
+    final Document document = PsiDocumentManager.getInstance(file.getProject()).getDocument(file);
+    if (document == null) {
+      return null;
+    }
+    final VirtualFile virtualFile = file.getVirtualFile();
+    if (virtualFile == null) {
+      return null;
+    }
+    return new OffsetLocator(document, VirtualFileUtil.fixIDEAUrl(virtualFile.getUrl()));
+  }
+
+  /**
+   * Reports the end of the node that is currently being processed, as {@link Psi2SaxAdapter} does.
+   */
+  private static class OffsetLocator implements Locator {
+    private final Document myDocument;
+    private final String mySystemId;
+    int myOffset;
+
+    OffsetLocator(Document document, String systemId) {
+      myDocument = document;
+      mySystemId = systemId;
+    }
+
+    @Override
+    public String getPublicId() {
+      return null;
+    }
+
+    @Override
+    public String getSystemId() {
+      return mySystemId;
+    }
+
+    @Override
+    public int getLineNumber() {
+      return myDocument.getLineNumber(myOffset) + 1;
+    }
+
+    @Override
+    public int getColumnNumber() {
+      return 1 + myOffset - myDocument.getLineStartOffset(myDocument.getLineNumber(myOffset));
+    }
+  }
+}
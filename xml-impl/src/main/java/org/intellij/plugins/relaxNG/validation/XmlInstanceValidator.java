@@ -62,7 +62,7 @@ public class XmlInstanceValidator {
       builder.put(ValidateProperty.ERROR_HANDLER, eh);
 
       final ContentHandler handler = schema.createValidator(builder.toPropertyMap()).getContentHandler();
-      doc.accept(new Psi2SaxAdapter(handler));
+      new StreamingPsi2SaxAdapter(handler).process(doc);
 
     } catch (ProcessCanceledException e) {
       throw e;
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.html.index;
+
+import com.intellij.xml.util.HtmlUtil;
+import consulo.language.ast.IElementType;
+import consulo.language.lexer.Lexer;
+import consulo.xml.language.psi.XmlTokenType;
+import consulo.xml.lexer.HtmlHighlightingLexer;
+import consulo.xml.lexer.XHtmlHighlightingLexer;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Compares the keys {@link Html5CustomAttributesScanner} finds with those of the highlighting lexers
+ * that {@link Html5CustomAttributesIndex} used before, on markup where the two are easy to get apart.
+ * Needs the platform on the class path; exits with status 1 if any keys differ.
+ */
+public class Html5CustomAttributesScannerCheck {
+    private static final String[] HTML = {
+        "<div data-a data-b='1' data-c=\"2\" data-d=3>",
+        "<div data-a=${x} data-b>",
+        "<div data-a=${x}y data-b>",
+        "<div data-a=${x y} data-b>",
+        "<div data-a = ${x} ${y} data-b data-c>",
+        "<img src=a/ data-z>",
+        "<img src=/> <b data-w>",
+        "<img src=a.png/><b data-w>",
+        "<script src=a.js/> var s = '<div data-x>';</script><p data-y>",
+        "<script>x</ script><i data-q></script><p data-r>",
+        "<data-tag data-attr></data-tag>",
+        "</p data-end>",
+        "<p data-a &amp; data-b>",
+        "<p data-a \"x\" data-b>",
+        "<!-- <p data-comment> -- ><p data-after>",
+        "<!DOCTYPE html><p data-html5>",
+        "<!DOCTYPE html PUBLIC \"-//W3C//DTD HTML 4.01//EN\"><p data-html4>",
+        "<?php echo '<p data-pi>' ?><p data-after-pi>",
+        "<#macro data-m><p data-after-macro>",
+        "\\${<p data-escaped>}",
+        "${'<p data-el>'}<p data-after-el>"
+    };
+
+    private static final String[] XHTML = {
+        "<div data-a='1' data-b=\"2\"/>",
+        "<a x=data-y/>",
+        "<a x=1 data-y/>",
+        "< a data-y='1'/>",
+        "<a = 'v' data-y/>",
+        "<a data-a:b:c='1'/>",
+        "<?pi a>b <c data-p>?><d data-d/>",
+        "<script>x</ script><i data-q/></script><p data-r/>",
+        "<![CDATA[<p data-cdata/>]]><p data-after-cdata/>",
+        "<!DOCTYPE html SYSTEM \"about:legacy-compat\"><p data-system/>"
+    };
+
+    public static void main(String[] args) {
+        int failures = 0;
+        for (String text : HTML) {
+            failures += check(text, false);
+        }
+        for (String text : XHTML) {
+            failures += check(text, true);
+        }
+        System.out.println((HTML.length + XHTML.length) + " cases checked, " + failures + " differ");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int check(String text, boolean xhtml) {
+        Set<String> expected = lex(text, xhtml);
+        Set<String> actual = new LinkedHashSet<>();
+        Html5CustomAttributesScanner.scan(text, xhtml, actual::add);
+        if (expected.equals(actual)) {
+            return 0;
+        }
+        System.out.println((xhtml ? "XHTML " : "HTML ") + text + ": lexer " + expected + ", scanner " + actual);
+        return 1;
+    }
+
+    // what Html5CustomAttributesIndex did before it had the scanner
+    private static Set<String> lex(CharSequence input, boolean xhtml) {
+        Lexer lexer = xhtml ? new XHtmlHighlightingLexer() : new HtmlHighlightingLexer();
+        lexer.start(input);
+        Set<String> result = new LinkedHashSet<>();
+        IElementType tokenType = lexer.getTokenType();
+        while (tokenType != null) {
+            if (tokenType == XmlTokenType.XML_NAME) {
+                String xmlName = input.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()).toString();
+                if (HtmlUtil.isCustomHtml5Attribute(xmlName)) {
+                    result.add(xmlName);
+                }
+            }
+            else if (tokenType == XmlTokenType.XML_DOCTYPE_PUBLIC || tokenType == XmlTokenType.XML_DOCTYPE_SYSTEM) {
+                break;
+            }
+            lexer.advance();
+            tokenType = lexer.getTokenType();
+        }
+        return result;
+    }
+}